@@ -0,0 +1,35 @@
+package lwjgl.test.benchmarks;
+
+import lwjgl.test.Cube3D;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cube vertex generation: rebuilding the 24 vertices after the extents changed, against
+ * fetching the cached ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeometryBenchmark {
+
+    private final Cube3D cube = new Cube3D(2.0f);
+    private float stretch = 1.0f;
+
+    @Benchmark
+    public FloatBuffer rebuild() {
+        // A changed extent marks the geometry dirty
+        stretch = stretch == 1.0f ? 2.0f : 1.0f;
+        return cube.setStretchX(stretch).getVertices();
+    }
+
+    @Benchmark
+    public FloatBuffer cached() {
+        return cube.getVertices();
+    }
+}
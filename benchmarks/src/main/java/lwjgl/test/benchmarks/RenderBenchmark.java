@@ -0,0 +1,55 @@
+package lwjgl.test.benchmarks;
+
+import lwjgl.test.CubeScene;
+import lwjgl.test.gl.RecordingBackend;
+import lwjgl.test.raster.Framebuffer;
+import lwjgl.test.raster.SoftwareBackend;
+import lwjgl.test.scene.CubeStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GL path without a GPU: submitting the cube arm and 1 to 1M instanced cubes to a
+ * {@link RecordingBackend}, and drawing the arm with the {@link SoftwareBackend}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    @Param({"1", "1000", "100000", "1000000"})
+    public int cubes;
+
+    private final CubeScene scene = new CubeScene();
+    private final RecordingBackend recording = new RecordingBackend(false);
+    private final SoftwareBackend software = new SoftwareBackend(new Framebuffer(600, 600));
+    private CubeStore store;
+
+    @Setup
+    public void setup() {
+        store = Stores.grid(cubes);
+    }
+
+    @Benchmark
+    public int sceneRecorded() {
+        recording.reset();
+        scene.render(recording, 600, 600);
+        return recording.getVertices();
+    }
+
+    @Benchmark
+    public long sceneRasterized() {
+        scene.render(software, 600, 600);
+        return software.getQuadsSubmitted();
+    }
+
+    @Benchmark
+    public int storeRecorded() {
+        recording.reset();
+        return store.render(recording);
+    }
+}
@@ -0,0 +1,49 @@
+package lwjgl.test.benchmarks;
+
+import lwjgl.test.CubeScene;
+import lwjgl.test.math.Quaternion;
+import lwjgl.test.scene.CubeStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scene updates: one tick of the cube arm including its scene graph, and moving every cube
+ * of a {@link CubeStore} with 1 to 1M cubes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneUpdateBenchmark {
+
+    @Param({"1", "1000", "100000", "1000000"})
+    public int cubes;
+
+    private final CubeScene scene = new CubeScene();
+    private final Quaternion spin = new Quaternion().rotationAxis(0.5f, 0.3f, 1.0f, 0.1f);
+    private CubeStore store;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        store = Stores.grid(cubes);
+    }
+
+    @Benchmark
+    public int armTick() {
+        // Same script as HeadlessRenderer: turn the arm, then swing the second segment
+        boolean swing = (tick++ / 90) % 2 == 1;
+        scene.update(false, false, false, true, swing, false);
+        return scene.getRoot().updateWorld();
+    }
+
+    @Benchmark
+    public CubeStore moveAll() {
+        store.translateAll(0.001f, 0.0f, -0.001f);
+        store.rotateAll(spin);
+        return store;
+    }
+}
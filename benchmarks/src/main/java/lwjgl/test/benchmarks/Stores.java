@@ -0,0 +1,24 @@
+package lwjgl.test.benchmarks;
+
+import lwjgl.test.scene.CubeStore;
+
+// Shared benchmark fixtures
+final class Stores {
+
+    private Stores() {
+    }
+
+    /**
+     * @return {@code cubes} small cubes on a cubic grid, turned and colored a little differently each
+     */
+    static CubeStore grid(int cubes) {
+        CubeStore store = new CubeStore(cubes);
+        int side = (int) Math.ceil(Math.cbrt(cubes));
+        for (int i = 0; i < cubes; i++) {
+            int handle = store.add(0.5f, i % side, (i / side) % side, i / (side * side));
+            store.setRotation(handle, i % 90, i % 45, 0);
+            store.setColor(handle, 0xff000000 | i);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,52 @@
+package lwjgl.test.benchmarks;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.math.Quaternion;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matrix composition: the {@link Matrix4f} building blocks and a full {@link Cube3D} model matrix.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformBenchmark {
+
+    private final Matrix4f a = new Matrix4f().rotate(30.0f, 1.0f, 1.0f, 0.0f).translate(1.0f, 2.0f, 3.0f);
+    private final Matrix4f b = new Matrix4f().rotate(45.0f, 0.0f, 1.0f, 0.0f).scale(2.0f, 1.0f, 1.0f);
+    private final Matrix4f dst = new Matrix4f();
+    private final Quaternion q = new Quaternion();
+    private final Cube3D cube = new Cube3D(2.0f).setRotationPoint(0.0f, 8.0f, 0.0f).setxPos(5.0f);
+    private float angle;
+
+    @Benchmark
+    public Matrix4f multiply() {
+        return dst.mul(a, b);
+    }
+
+    @Benchmark
+    public Matrix4f projection() {
+        // What CubeScene sets up every frame
+        return dst.identity()
+                .ortho(-30, 30, -30, 30, -300, 300)
+                .rotate(1.0f, 1.0f, 0.0f, 0.0f);
+    }
+
+    @Benchmark
+    public Matrix4f quaternionRotation() {
+        q.identity().rotateZ(10.0f).rotateY(angle += 1.0f).rotateX(30.0f);
+        return dst.identity().rotate(q);
+    }
+
+    @Benchmark
+    public Matrix4f cubeModelMatrix() {
+        // Changing a rotation forces the matrix to be recomposed
+        return cube.setRotateY(angle += 1.0f).getModelMatrix();
+    }
+}
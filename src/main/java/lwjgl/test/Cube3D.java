@@ -0,0 +1,439 @@
+package lwjgl.test;
+
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.gl.RenderQueue;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.math.Quaternion;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+public class Cube3D {
+    // 6 faces * 4 vertices
+    public static final int VERTEX_COUNT = 24;
+
+    // Floats written by writeState: size, stretch, rotations, rotation point, position, color flag
+    public static final int STATE_SIZE = 15;
+
+    // Render queue materials: the shared face colors, or plain white, or either tinted
+    public static final int MATERIAL_FACE_COLORS = 1;
+    public static final int MATERIAL_WHITE = 2;
+    public static final int MATERIAL_HIGHLIGHTED = 4;
+
+    // Highlighted cubes are drawn halfway between their colors and this one
+    private static final float[] HIGHLIGHT = {1f, 0.85f, 0.2f};
+    private static final float[] HIGHLIGHTED_WHITE = {(1f + HIGHLIGHT[0]) / 2, (1f + HIGHLIGHT[1]) / 2, (1f + HIGHLIGHT[2]) / 2};
+
+    // Face colors, shared by every cube (front, back, top, bottom, right, left), and tinted
+    private static final FloatBuffer FACE_COLORS = createFaceColors();
+    private static final FloatBuffer HIGHLIGHTED_FACE_COLORS = createHighlightedFaceColors();
+
+    // A 1x1x1 cube around the origin, for instanced drawing
+    private static final FloatBuffer UNIT_VERTICES = createUnitVertices();
+
+    private float size = 1.0f;
+    private float stretchX = 1.0f, stretchY = 1.0f, stretchZ = 1.0f;
+    private float rotateX = 0.0f, rotateY = 0.0f, rotateZ = 0.0f, aRotateY = 0.0f;
+    private float rotPointX = 0.0f, rotPointY = 0.0f, rotPointZ = 0.0f;
+    private float xPos = 0.0f, yPos = 0.0f, zPos = 0.0f;
+    private boolean rndColorize = true;
+    // Not part of the state: a view's own selection, say
+    private boolean highlighted;
+
+    // Geometry around the cube center, kept off-heap and rebuilt only when the extents change
+    private final FloatBuffer vertices = BufferUtils.createFloatBuffer(VERTEX_COUNT * 3);
+    private boolean geometryDirty = true;
+
+    // Model matrix composed on the CPU, recomposed only after a transform setter ran
+    private final Matrix4f model = new Matrix4f();
+    private final Quaternion rotation = new Quaternion();
+    private final FloatBuffer modelBuffer = BufferUtils.createFloatBuffer(16);
+    private boolean matrixDirty = true;
+    private int modelVersion;
+
+    public Cube3D() {
+    }
+
+    public Cube3D(float size) {
+        this.size = size;
+    }
+
+    public Cube3D(float size, float xPos, float yPos, float zPos) {
+        this.size = size;
+        this.xPos = xPos;
+        this.yPos = yPos;
+        this.zPos = zPos;
+    }
+
+    public Cube3D turnOffRndColors() {
+        this.rndColorize = false;
+        return this;
+    }
+
+    public Cube3D turnOnRndColors() {
+        this.rndColorize = true;
+        return this;
+    }
+
+    /**
+     * Tints the cube's colors, for example to show it is selected.
+     */
+    public Cube3D setHighlighted(boolean highlighted) {
+        this.highlighted = highlighted;
+        return this;
+    }
+
+    public boolean isHighlighted() {
+        return highlighted;
+    }
+
+    public float getSize() {
+        return size;
+    }
+
+    public Cube3D setSize(float size) {
+        if (this.size != size) {
+            this.size = size;
+            geometryDirty = true;
+        }
+        return this;
+    }
+
+    public float getxPos() {
+        return xPos;
+    }
+
+    public Cube3D setxPos(float xPos) {
+        this.xPos = xPos;
+        matrixDirty = true;
+        return this;
+    }
+
+    public float getyPos() {
+        return yPos;
+    }
+
+    public Cube3D setyPos(float yPos) {
+        this.yPos = yPos;
+        matrixDirty = true;
+        return this;
+    }
+
+    public float getStretchX() {
+        return stretchX;
+    }
+
+    public Cube3D setStretchX(float stretchX) {
+        if (this.stretchX != stretchX) {
+            this.stretchX = stretchX;
+            geometryDirty = true;
+        }
+        return this;
+    }
+
+    public float getStretchY() {
+        return stretchY;
+    }
+
+    public Cube3D setStretchY(float stretchY) {
+        if (this.stretchY != stretchY) {
+            this.stretchY = stretchY;
+            geometryDirty = true;
+        }
+        return this;
+    }
+
+    public float getStretchZ() {
+        return stretchZ;
+    }
+
+    public Cube3D setStretchZ(float stretchZ) {
+        if (this.stretchZ != stretchZ) {
+            this.stretchZ = stretchZ;
+            geometryDirty = true;
+        }
+        return this;
+    }
+
+    public float getRotateX() {
+        return rotateX;
+    }
+
+    public Cube3D setRotateX(float rotateX) {
+        this.rotateX = rotateX;
+        matrixDirty = true;
+        return this;
+    }
+
+    public float getRotateY() {
+        return rotateY;
+    }
+
+    public Cube3D setRotateY(float rotateY) {
+        this.rotateY = rotateY;
+        matrixDirty = true;
+        return this;
+    }
+
+    public Cube3D setRotationPoint(float x, float y, float z) {
+        this.rotPointX = x;
+        this.rotPointY = y;
+        this.rotPointZ = z;
+        matrixDirty = true;
+        return this;
+    }
+
+    public Cube3D setAddRotateY(float aRotPointY) {
+        this.aRotateY = aRotPointY;
+        matrixDirty = true;
+        return this;
+    }
+
+    public float getAddRotateY() {
+        return this.aRotateY;
+    }
+
+    /**
+     * Copies every property into {@code dst} starting at {@code offset} ({@link #STATE_SIZE} floats).
+     */
+    public void writeState(float[] dst, int offset) {
+        dst[offset] = size;
+        dst[offset + 1] = stretchX;
+        dst[offset + 2] = stretchY;
+        dst[offset + 3] = stretchZ;
+        dst[offset + 4] = rotateX;
+        dst[offset + 5] = rotateY;
+        dst[offset + 6] = rotateZ;
+        dst[offset + 7] = aRotateY;
+        dst[offset + 8] = rotPointX;
+        dst[offset + 9] = rotPointY;
+        dst[offset + 10] = rotPointZ;
+        dst[offset + 11] = xPos;
+        dst[offset + 12] = yPos;
+        dst[offset + 13] = zPos;
+        dst[offset + 14] = rndColorize ? 1.0f : 0.0f;
+    }
+
+    /**
+     * Restores the properties saved by {@link #writeState}. Cached geometry and matrices are
+     * only invalidated for values that actually differ.
+     */
+    public Cube3D readState(float[] src, int offset) {
+        setSize(src[offset]);
+        setStretchX(src[offset + 1]);
+        setStretchY(src[offset + 2]);
+        setStretchZ(src[offset + 3]);
+
+        float rx = src[offset + 4], ry = src[offset + 5], rz = src[offset + 6], ary = src[offset + 7];
+        float px = src[offset + 8], py = src[offset + 9], pz = src[offset + 10];
+        float x = src[offset + 11], y = src[offset + 12], z = src[offset + 13];
+        if (rx != rotateX || ry != rotateY || rz != rotateZ || ary != aRotateY
+                || px != rotPointX || py != rotPointY || pz != rotPointZ
+                || x != xPos || y != yPos || z != zPos) {
+            rotateX = rx;
+            rotateY = ry;
+            rotateZ = rz;
+            aRotateY = ary;
+            rotPointX = px;
+            rotPointY = py;
+            rotPointZ = pz;
+            xPos = x;
+            yPos = y;
+            zPos = z;
+            matrixDirty = true;
+        }
+
+        rndColorize = src[offset + 14] >= 0.5f;
+        return this;
+    }
+
+    /**
+     * @return the off-heap vertex data (24 xyz triples around the cube center), rebuilt if the extents changed
+     */
+    public FloatBuffer getVertices() {
+        if (geometryDirty) {
+            writeGeometry();
+            geometryDirty = false;
+        }
+        return vertices;
+    }
+
+    /**
+     * @return the model matrix (rotation around the rotation point, then the additional
+     * rotation around the cube center), recomposed if a transform setter ran since the last call
+     */
+    public Matrix4f getModelMatrix() {
+        if (matrixDirty) {
+            writeModelMatrix();
+            matrixDirty = false;
+        }
+        return model;
+    }
+
+    /**
+     * @return a counter that changes every time the model matrix is recomposed, so callers
+     * caching something derived from it can tell when to refresh
+     */
+    public int getModelVersion() {
+        getModelMatrix();
+        return modelVersion;
+    }
+
+    /**
+     * Draws the cube. The current modelview matrix is replaced by this cube's model matrix.
+     */
+    public void render(GLBackend gl) {
+        getModelMatrix();
+        render(gl, modelBuffer);
+    }
+
+    /**
+     * Draws the cube with a caller-composed matrix (for example parent * model),
+     * which replaces the current modelview matrix.
+     */
+    public void render(GLBackend gl, FloatBuffer matrix) {
+        FloatBuffer geometry = getVertices();
+
+        gl.loadMatrix(matrix);
+        if (highlighted) {
+            if (!rndColorize)
+                gl.color(HIGHLIGHTED_WHITE[0], HIGHLIGHTED_WHITE[1], HIGHLIGHTED_WHITE[2]);
+            gl.drawQuads(geometry, rndColorize ? HIGHLIGHTED_FACE_COLORS : null, VERTEX_COUNT);
+            return;
+        }
+        gl.drawQuads(geometry, rndColorize ? FACE_COLORS : null, VERTEX_COUNT);
+    }
+
+    /**
+     * Queues the cube with a caller-composed matrix, culled and depth tested.
+     *
+     * @param depth distance from the viewer, 0 (near plane) to 1 (far plane), for sorting
+     */
+    public void submit(RenderQueue queue, FloatBuffer matrix, float depth) {
+        if (highlighted) {
+            long key = RenderQueue.key(0, RenderQueue.STATE_CULL_FACE | RenderQueue.STATE_DEPTH_TEST,
+                    MATERIAL_HIGHLIGHTED, depth);
+            queue.submitQuads(key, matrix, getVertices(), rndColorize ? HIGHLIGHTED_FACE_COLORS : null, VERTEX_COUNT,
+                    HIGHLIGHTED_WHITE[0], HIGHLIGHTED_WHITE[1], HIGHLIGHTED_WHITE[2]);
+            return;
+        }
+        long key = RenderQueue.key(0, RenderQueue.STATE_CULL_FACE | RenderQueue.STATE_DEPTH_TEST,
+                rndColorize ? MATERIAL_FACE_COLORS : MATERIAL_WHITE, depth);
+        queue.submitQuads(key, matrix, getVertices(), rndColorize ? FACE_COLORS : null, VERTEX_COUNT, 1f, 1f, 1f);
+    }
+
+    private void writeModelMatrix() {
+        // Same chain the fixed-function version used to run every frame:
+        // rotation around the rotation point ...
+        rotation.identity()
+                .rotateZ(rotateZ)
+                .rotateY(rotateY)
+                .rotateX(rotateX);
+
+        model.identity()
+                .translate(rotPointX, rotPointY, rotPointZ)
+                .rotate(rotation)
+                // ... then moving to the cube center, where the additional rotation happens
+                .translate(xPos - rotPointX, yPos - rotPointY, zPos - rotPointZ)
+                .rotate(aRotateY, 0.0f, 1.0f, 0.0f);
+
+        model.get(modelBuffer);
+        modelVersion++;
+    }
+
+    /**
+     * @return shared vertices of a cube with edge 1 around the origin; callers must not modify them
+     */
+    public static FloatBuffer getUnitVertices() {
+        return UNIT_VERTICES;
+    }
+
+    /**
+     * @return shared per-vertex face colors matching every cube's vertex order; callers must not modify them
+     */
+    public static FloatBuffer getFaceColors() {
+        return FACE_COLORS;
+    }
+
+    private void writeGeometry() {
+        // Preparing coordinates (just to simplify code below)
+        final float halfSizeX = (size * stretchX) / 2;
+        final float halfSizeY = (size * stretchY) / 2;
+        final float halfSizeZ = (size * stretchZ) / 2;
+
+        writeBox(vertices, halfSizeX, halfSizeY, halfSizeZ);
+    }
+
+    private static void writeBox(FloatBuffer v, float hx, float hy, float hz) {
+        v.clear();
+
+        // Front face
+        v.put(-hx).put(-hy).put(hz);
+        v.put(hx).put(-hy).put(hz);
+        v.put(hx).put(hy).put(hz);
+        v.put(-hx).put(hy).put(hz);
+
+        // Back face
+        v.put(-hx).put(-hy).put(-hz);
+        v.put(-hx).put(hy).put(-hz);
+        v.put(hx).put(hy).put(-hz);
+        v.put(hx).put(-hy).put(-hz);
+
+        // Top face
+        v.put(-hx).put(hy).put(-hz);
+        v.put(-hx).put(hy).put(hz);
+        v.put(hx).put(hy).put(hz);
+        v.put(hx).put(hy).put(-hz);
+
+        // Bottom face
+        v.put(-hx).put(-hy).put(-hz);
+        v.put(hx).put(-hy).put(-hz);
+        v.put(hx).put(-hy).put(hz);
+        v.put(-hx).put(-hy).put(hz);
+
+        // Right face
+        v.put(hx).put(-hy).put(-hz);
+        v.put(hx).put(hy).put(-hz);
+        v.put(hx).put(hy).put(hz);
+        v.put(hx).put(-hy).put(hz);
+
+        // Left face
+        v.put(-hx).put(-hy).put(-hz);
+        v.put(-hx).put(-hy).put(hz);
+        v.put(-hx).put(hy).put(hz);
+        v.put(-hx).put(hy).put(-hz);
+
+        v.flip();
+    }
+
+    private static FloatBuffer createUnitVertices() {
+        FloatBuffer unit = BufferUtils.createFloatBuffer(VERTEX_COUNT * 3);
+        writeBox(unit, 0.5f, 0.5f, 0.5f);
+        return unit;
+    }
+
+    private static FloatBuffer createFaceColors() {
+        final float[][] faces = {
+                {1f, 0f, 0f}, // front
+                {0f, 1f, 0f}, // back
+                {0f, 0f, 1f}, // top
+                {0f, 0f, 1f}, // bottom
+                {1f, 0f, 1f}, // right
+                {0f, 1f, 1f}  // left
+        };
+
+        FloatBuffer colors = BufferUtils.createFloatBuffer(VERTEX_COUNT * 3);
+        for (float[] face : faces)
+            for (int i = 0; i < 4; i++)
+                colors.put(face);
+        colors.flip();
+        return colors;
+    }
+
+    private static FloatBuffer createHighlightedFaceColors() {
+        FloatBuffer colors = BufferUtils.createFloatBuffer(VERTEX_COUNT * 3);
+        for (int i = 0; i < VERTEX_COUNT * 3; i++)
+            colors.put(i, (FACE_COLORS.get(i) + HIGHLIGHT[i % 3]) / 2);
+        return colors;
+    }
+}
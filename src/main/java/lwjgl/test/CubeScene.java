@@ -0,0 +1,584 @@
+package lwjgl.test;
+
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.gl.RenderQueue;
+import lwjgl.test.math.Frustum;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.math.Ray;
+import lwjgl.test.mesh.Mesh;
+import lwjgl.test.scene.Bvh;
+import lwjgl.test.scene.SceneNode;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * The three-segment cube arm standing on a floor, plus the code that moves and draws it.
+ * <p>
+ * Nothing here touches GLFW or a GL context directly: input arrives as plain key flags
+ * and drawing goes through a {@link GLBackend}, so the same scene runs in a window or headless.
+ * <p>
+ * The arm is a small scene graph: the base turns around Y and carries the first cube; a
+ * joint on top of it tilts around X and carries the second and third cubes. Moving a
+ * segment only touches its own node, and the cubes above it follow on the next update.
+ */
+public class CubeScene {
+    // Creating cubes
+    private static final float CUBE_SIZE = 2.0f;
+
+    // Setting up the actual projection position
+    private static final float Z_PROJECTION = 300; // change to increase Z projection distance
+
+    // Key bits for update(int)
+    public static final int KEY_UP = 1;
+    public static final int KEY_DOWN = 1 << 1;
+    public static final int KEY_LEFT = 1 << 2;
+    public static final int KEY_RIGHT = 1 << 3;
+    public static final int KEY_SHIFT = 1 << 4;
+    public static final int KEY_CTRL = 1 << 5;
+    private static final int ARROW_KEYS = KEY_UP | KEY_DOWN | KEY_LEFT | KEY_RIGHT;
+
+    // Modifier an arrow key binding applies under, see bind()
+    public static final int MOD_NONE = 0;
+    public static final int MOD_SHIFT = 1;
+    public static final int MOD_CTRL = 2;
+
+    /**
+     * Everything the arrow keys can do to the arm.
+     */
+    public enum Action {
+        EXTEND_FIRST, SHRINK_FIRST,
+        EXTEND_SECOND, SHRINK_SECOND,
+        EXTEND_THIRD, SHRINK_THIRD,
+        TURN_BASE_LEFT, TURN_BASE_RIGHT,
+        TILT_JOINT_LEFT, TILT_JOINT_RIGHT,
+        SPIN_THIRD_LEFT, SPIN_THIRD_RIGHT
+    }
+
+    /**
+     * Floats needed by {@link #writeState(float[])}.
+     */
+    public static final int STATE_SIZE = 4 * Cube3D.STATE_SIZE + 6 * SceneNode.STATE_SIZE;
+
+    private final Cube3D firstCube = new Cube3D(CUBE_SIZE);
+    private final Cube3D secondCube = new Cube3D(CUBE_SIZE);
+    private final Cube3D thirdCube = new Cube3D(CUBE_SIZE);
+
+    private final Cube3D floorCube = new Cube3D(CUBE_SIZE * 20);
+
+    // Scene graph: root -> base (first cube) -> joint -> second and third cubes; root -> floor
+    private final SceneNode root = new SceneNode("root");
+    private final SceneNode base = new SceneNode("base", firstCube);
+    private final SceneNode joint = new SceneNode("joint");
+    private final SceneNode floor = new SceneNode("floor", floorCube);
+    private final SceneNode second = new SceneNode("second", secondCube);
+    private final SceneNode third = new SceneNode("third", thirdCube);
+
+    // Everything a snapshot covers, in snapshot order
+    private final Cube3D[] cubes = {firstCube, secondCube, thirdCube, floorCube};
+    private final SceneNode[] nodes = {root, base, joint, floor, second, third};
+
+    // Action per modifier and arrow key bit index; bind() changes it
+    private final Action[][] actions = new Action[3][4];
+
+    // CPU copy of the projection set up in render(), for culling against the view volume
+    private final Matrix4f projection = new Matrix4f();
+    private final Frustum frustum = new Frustum();
+    private int cubesDrawn;
+
+    // Picking: the cubes' world boxes in a BVH, refitted per pick, and their inverse model matrices
+    private final SceneNode[] pickNodes = {base, second, third, floor};
+    private final Matrix4f[] pickInverse = new Matrix4f[pickNodes.length];
+    private final float[] pickBounds = new float[pickNodes.length * 6];
+    private final Bvh pickBvh = new Bvh();
+    private final Matrix4f inverseProjection = new Matrix4f();
+    private final float viewDepth;
+    private final Matrix4f pickMatrix = new Matrix4f();
+    private final Ray pickRay = new Ray();
+    private float lastPickDistance = Float.POSITIVE_INFINITY;
+    // Node whose cube is drawn highlighted, or null; not part of the snapshot state
+    private SceneNode selection;
+    private final Bvh.RayTest pickTest = new Bvh.RayTest() {
+        @Override
+        public float intersect(int item, Ray ray, float maxDistance) {
+            Cube3D cube = pickNodes[item].getCube();
+            float size = cube.getSize();
+            return ray.intersectOrientedBox(pickInverse[item], size * cube.getStretchX() / 2,
+                    size * cube.getStretchY() / 2, size * cube.getStretchZ() / 2, maxDistance);
+        }
+    };
+
+    // Meshes drawn next to the arm, with their model matrices and queue keys
+    private static final int MATERIAL_MESH = 3;
+    private final List<Mesh> meshes = new ArrayList<Mesh>();
+    private final List<FloatBuffer> meshMatrices = new ArrayList<FloatBuffer>();
+    private final List<Long> meshKeys = new ArrayList<Long>();
+
+    // Everything is queued first, then drawn sorted by state, material and depth
+    private final RenderQueue queue = new RenderQueue(64);
+
+    public CubeScene() {
+        firstCube.setStretchY(8.0f);
+
+        // Second and third cubes are placed relative to the joint, which sits in the
+        // center of the second cube, one cube size below the top of the first one
+        secondCube
+                .setStretchX(4.0f)
+                .setxPos(secondCube.getStretchX() + secondCube.getSize() / 2);
+
+        thirdCube
+                .setStretchY(4.0f)
+                .setxPos(secondCube.getxPos() + secondCube.getStretchX() - secondCube.getSize() / 2)
+                .setyPos(-thirdCube.getStretchY() - secondCube.getSize() / 2);
+
+        joint.addChild(second)
+                .addChild(third);
+        base.addChild(joint);
+        root.addChild(base)
+                .addChild(floor);
+
+        updateJoint();
+        updateFloor();
+
+        // 1. To move main cube - arrows
+        // 2. To move second cube - SHIFT + arrows
+        // 3. To move third cube - CTRL + arrows
+        bind(KEY_UP, MOD_NONE, Action.EXTEND_FIRST);
+        bind(KEY_DOWN, MOD_NONE, Action.SHRINK_FIRST);
+        bind(KEY_LEFT, MOD_NONE, Action.TURN_BASE_LEFT);
+        bind(KEY_RIGHT, MOD_NONE, Action.TURN_BASE_RIGHT);
+        bind(KEY_UP, MOD_SHIFT, Action.EXTEND_SECOND);
+        bind(KEY_DOWN, MOD_SHIFT, Action.SHRINK_SECOND);
+        bind(KEY_LEFT, MOD_SHIFT, Action.TILT_JOINT_LEFT);
+        bind(KEY_RIGHT, MOD_SHIFT, Action.TILT_JOINT_RIGHT);
+        bind(KEY_UP, MOD_CTRL, Action.EXTEND_THIRD);
+        bind(KEY_DOWN, MOD_CTRL, Action.SHRINK_THIRD);
+        bind(KEY_LEFT, MOD_CTRL, Action.SPIN_THIRD_LEFT);
+        bind(KEY_RIGHT, MOD_CTRL, Action.SPIN_THIRD_RIGHT);
+
+        projection
+                .ortho(-30, 30, -30, 30, -Z_PROJECTION, Z_PROJECTION)
+                .rotate(1.0f, 1.0f, 0.0f, 0.0f);
+        frustum.set(projection);
+        inverseProjection.set(projection).invertAffine();
+        // Rays start on the near plane; anything past the far plane is not on screen
+        viewDepth = 2 * (float) Math.sqrt(inverseProjection.m20 * inverseProjection.m20
+                + inverseProjection.m21 * inverseProjection.m21 + inverseProjection.m22 * inverseProjection.m22);
+
+        for (int i = 0; i < pickNodes.length; i++)
+            pickInverse[i] = new Matrix4f();
+        updatePickBounds();
+        pickBvh.build(pickBounds, pickNodes.length);
+    }
+
+    public Cube3D getFirstCube() {
+        return firstCube;
+    }
+
+    public Cube3D getSecondCube() {
+        return secondCube;
+    }
+
+    public Cube3D getThirdCube() {
+        return thirdCube;
+    }
+
+    public Cube3D getFloorCube() {
+        return floorCube;
+    }
+
+    /**
+     * @return the projection render() sets up, as a matrix
+     */
+    public Matrix4f getProjection() {
+        return projection;
+    }
+
+    public SceneNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the node turning the whole arm around Y
+     */
+    public SceneNode getBase() {
+        return base;
+    }
+
+    /**
+     * @return the node tilting the second and third cubes around X
+     */
+    public SceneNode getJoint() {
+        return joint;
+    }
+
+    /**
+     * @return the node carrying the third cube, under the joint
+     */
+    public SceneNode getThirdNode() {
+        return third;
+    }
+
+    /**
+     * Advances the scene by one step of keyboard input given as {@code KEY_*} bits.
+     * <p>
+     * Every arrow key held does whatever {@link #bind} says it does under the modifier held
+     * (SHIFT wins over CTRL), so several arrows can act in the same step. They are applied in
+     * the fixed order up, down, left, right, whatever order they were pressed in.
+     */
+    public void update(int keys) {
+        int modifier = (keys & KEY_SHIFT) != 0 ? MOD_SHIFT : (keys & KEY_CTRL) != 0 ? MOD_CTRL : MOD_NONE;
+        final Action[] row = actions[modifier];
+
+        for (int arrows = keys & ARROW_KEYS; arrows != 0; arrows &= arrows - 1) {
+            Action action = row[Integer.numberOfTrailingZeros(arrows)];
+            if (action != null)
+                perform(action);
+        }
+
+        updateFloor();
+    }
+
+    /**
+     * Advances the scene by one step of keyboard input.
+     */
+    public void update(boolean up, boolean down, boolean left, boolean right, boolean shift, boolean ctrl) {
+        update((up ? KEY_UP : 0) | (down ? KEY_DOWN : 0) | (left ? KEY_LEFT : 0) | (right ? KEY_RIGHT : 0)
+                | (shift ? KEY_SHIFT : 0) | (ctrl ? KEY_CTRL : 0));
+    }
+
+    /**
+     * Makes an arrow key perform {@code action} while {@code modifier} is held.
+     *
+     * @param arrowKey one of {@link #KEY_UP}, {@link #KEY_DOWN}, {@link #KEY_LEFT}, {@link #KEY_RIGHT}
+     * @param modifier {@link #MOD_NONE}, {@link #MOD_SHIFT} or {@link #MOD_CTRL}
+     * @param action   what to do, or null for nothing
+     */
+    public CubeScene bind(int arrowKey, int modifier, Action action) {
+        if (Integer.bitCount(arrowKey) != 1 || (arrowKey & ARROW_KEYS) == 0)
+            throw new IllegalArgumentException("Not an arrow key bit: " + arrowKey);
+        if (modifier < MOD_NONE || modifier > MOD_CTRL)
+            throw new IllegalArgumentException("Unknown modifier: " + modifier);
+
+        actions[modifier][Integer.numberOfTrailingZeros(arrowKey)] = action;
+        return this;
+    }
+
+    private void perform(Action action) {
+        // Rotation controls (TOUCH CAREFULLY!)
+        final float ROTATION_STEP = 1f;
+
+        switch (action) {
+            case EXTEND_FIRST:
+                firstCube
+                        .setStretchY(firstCube.getStretchY() + ROTATION_STEP)
+                        .setyPos(firstCube.getyPos() + ROTATION_STEP);
+
+                updateJoint();
+                break;
+            case SHRINK_FIRST:
+                if (firstCube.getStretchY() >= secondCube.getSize() / 1.5 + thirdCube.getStretchY()) {
+                    firstCube
+                            .setStretchY(firstCube.getStretchY() - ROTATION_STEP)
+                            .setyPos(firstCube.getyPos() - ROTATION_STEP);
+
+                    updateJoint();
+                }
+                break;
+            case EXTEND_SECOND:
+                secondCube
+                        .setStretchX(secondCube.getStretchX() + ROTATION_STEP)
+                        .setxPos(secondCube.getxPos() + ROTATION_STEP);
+
+                thirdCube
+                        .setxPos(thirdCube.getxPos() + ROTATION_STEP * 2);
+                break;
+            case SHRINK_SECOND:
+                if (secondCube.getStretchX() >= 2) {
+                    secondCube
+                            .setStretchX(secondCube.getStretchX() - ROTATION_STEP)
+                            .setxPos(secondCube.getxPos() - ROTATION_STEP);
+
+                    thirdCube
+                            .setxPos(thirdCube.getxPos() - ROTATION_STEP * 2);
+                }
+                break;
+            case EXTEND_THIRD:
+                float thirdCubeSize = thirdCube.getSize() * thirdCube.getStretchY();
+                float allowedSize = (firstCube.getSize() * firstCube.getStretchY()) - secondCube.getSize();
+
+                if (thirdCubeSize < allowedSize) {
+                    thirdCube
+                            .setStretchY(thirdCube.getStretchY() + ROTATION_STEP)
+                            .setyPos(thirdCube.getyPos() - ROTATION_STEP);
+                }
+                break;
+            case SHRINK_THIRD:
+                if (thirdCube.getStretchY() >= 2) {
+                    thirdCube
+                            .setStretchY(thirdCube.getStretchY() - ROTATION_STEP)
+                            .setyPos(thirdCube.getyPos() + ROTATION_STEP);
+                }
+                break;
+            case TURN_BASE_LEFT:
+                base.setRotateY(base.getRotateY() - ROTATION_STEP);
+                break;
+            case TURN_BASE_RIGHT:
+                base.setRotateY(base.getRotateY() + ROTATION_STEP);
+                break;
+            case TILT_JOINT_LEFT:
+                joint.setRotateX(joint.getRotateX() - ROTATION_STEP);
+                break;
+            case TILT_JOINT_RIGHT:
+                joint.setRotateX(joint.getRotateX() + ROTATION_STEP);
+                break;
+            case SPIN_THIRD_LEFT:
+                thirdCube
+                        .setAddRotateY(thirdCube.getAddRotateY() - ROTATION_STEP);
+                break;
+            case SPIN_THIRD_RIGHT:
+                thirdCube
+                        .setAddRotateY(thirdCube.getAddRotateY() + ROTATION_STEP);
+                break;
+        }
+    }
+
+    /**
+     * Stretches the three arm segments to the given factors at once, moving them as the
+     * extend and shrink actions do so the arm stays connected. Unlike those actions this
+     * applies no limits, beyond requiring positive factors.
+     */
+    public void setStretches(float first, float second, float third) {
+        if (first <= 0 || second <= 0 || third <= 0)
+            throw new IllegalArgumentException("Stretch factors must be positive: " + first + ", " + second + ", " + third);
+
+        float d = first - firstCube.getStretchY();
+        if (d != 0) {
+            firstCube
+                    .setStretchY(first)
+                    .setyPos(firstCube.getyPos() + d);
+            updateJoint();
+        }
+
+        d = second - secondCube.getStretchX();
+        if (d != 0) {
+            secondCube
+                    .setStretchX(second)
+                    .setxPos(secondCube.getxPos() + d);
+            thirdCube
+                    .setxPos(thirdCube.getxPos() + d * 2);
+        }
+
+        d = third - thirdCube.getStretchY();
+        if (d != 0) {
+            thirdCube
+                    .setStretchY(third)
+                    .setyPos(thirdCube.getyPos() - d);
+        }
+
+        updateFloor();
+    }
+
+    /**
+     * Copies the state of every cube and node into {@code dst} ({@link #STATE_SIZE} floats).
+     */
+    public float[] writeState(float[] dst) {
+        int offset = 0;
+        for (Cube3D cube : cubes) {
+            cube.writeState(dst, offset);
+            offset += Cube3D.STATE_SIZE;
+        }
+        for (SceneNode node : nodes) {
+            node.writeState(dst, offset);
+            offset += SceneNode.STATE_SIZE;
+        }
+        return dst;
+    }
+
+    /**
+     * Makes this scene match a snapshot taken by {@link #writeState(float[])}, possibly of another scene.
+     */
+    public CubeScene readState(float[] src) {
+        int offset = 0;
+        for (Cube3D cube : cubes) {
+            cube.readState(src, offset);
+            offset += Cube3D.STATE_SIZE;
+        }
+        for (SceneNode node : nodes) {
+            node.readState(src, offset);
+            offset += SceneNode.STATE_SIZE;
+        }
+        return this;
+    }
+
+    /**
+     * @return a hash of every bit of a snapshot; two scenes with the same hash are, in practice, identical
+     */
+    public static long hash(float[] state) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < STATE_SIZE; i++)
+            hash = 31 * hash + Float.floatToRawIntBits(state[i]);
+        return hash;
+    }
+
+    /**
+     * Blends two snapshots: {@code dst = from + (to - from) * alpha}. Flags are taken from {@code to}.
+     * {@code dst} may be one of the inputs.
+     */
+    public static float[] interpolate(float[] from, float[] to, float alpha, float[] dst) {
+        for (int i = 0; i < STATE_SIZE; i++)
+            dst[i] = from[i] + (to[i] - from[i]) * alpha;
+
+        // Color flags are on or off, never in between
+        for (int i = Cube3D.STATE_SIZE - 1; i < 4 * Cube3D.STATE_SIZE; i += Cube3D.STATE_SIZE)
+            dst[i] = to[i];
+        return dst;
+    }
+
+    /**
+     * Draws one frame: clears, sets up the projection and renders every cube.
+     * <p>
+     * The setup is the same every frame; through a {@link lwjgl.test.gl.GLStateCache} it only
+     * reaches the GL when something changed. Cubes and meshes go through a {@link RenderQueue},
+     * which sets culling and depth testing as the commands need them.
+     */
+    public void render(GLBackend gl, int width, int height) {
+        gl.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
+
+        gl.viewport(0, 0, width, height);
+
+        // Orthogonal projection (useful for getting our model properly visible)
+        gl.matrixMode(GL_PROJECTION);
+
+        // Do not touch. This resets The Current Modelview Matrix
+        gl.loadIdentity();
+
+        gl.ortho(-30, 30, -30, 30, -Z_PROJECTION, Z_PROJECTION);
+        gl.rotate(1.0f, 1.0f, 0.0f, 0.0f);
+
+        // Switching to model view
+        gl.matrixMode(GL_MODELVIEW);
+
+        // Only cubes touching the view volume are submitted
+        root.updateWorld();
+        cubesDrawn = root.submit(queue, frustum, projection);
+
+        for (int i = 0; i < meshes.size(); i++)
+            meshes.get(i).submit(queue, meshKeys.get(i), meshMatrices.get(i), 0.8f, 0.8f, 0.8f);
+
+        queue.flush(gl);
+    }
+
+    /**
+     * @return the queue render() draws through, for its counters
+     */
+    public RenderQueue getRenderQueue() {
+        return queue;
+    }
+
+    /**
+     * Finds the cube under a window point: the ray through it along the view direction is
+     * tested against the cubes' oriented boxes between the near and far planes, nearest
+     * first.
+     *
+     * @param x pixels from the left edge of the window
+     * @param y pixels from the top edge, as the cursor position comes from GLFW
+     * @return the node of the nearest cube hit, or null; the distance is {@link #getLastPickDistance()}
+     */
+    public SceneNode pick(double x, double y, int width, int height) {
+        root.updateWorld();
+        updatePickBounds();
+        pickBvh.refit();
+
+        pickRay.setFromWindow(inverseProjection, x, y, width, height);
+        int hit = pickBvh.raycast(pickRay, pickTest, viewDepth);
+        lastPickDistance = pickBvh.getLastHitDistance();
+        return hit < 0 ? null : pickNodes[hit];
+    }
+
+    /**
+     * @return distance from the near plane to the cube found by the last {@link #pick}, infinite if none
+     */
+    public float getLastPickDistance() {
+        return lastPickDistance;
+    }
+
+    /**
+     * Highlights the cube of {@code node}, one of the nodes {@link #pick} returns, in every
+     * frame drawn from now on, instead of the one selected before; null selects nothing.
+     */
+    public CubeScene setSelection(SceneNode node) {
+        if (node != null && !Arrays.asList(pickNodes).contains(node))
+            throw new IllegalArgumentException("Not a cube of this scene: " + node.getName());
+
+        if (selection != null)
+            selection.getCube().setHighlighted(false);
+        selection = node;
+        if (node != null)
+            node.getCube().setHighlighted(true);
+        return this;
+    }
+
+    /**
+     * @return the selected node, or null
+     */
+    public SceneNode getSelection() {
+        return selection;
+    }
+
+    /**
+     * Draws {@code mesh} with every frame, placed by {@code model}. Meshes are not part of the
+     * snapshot state and are not culled.
+     */
+    public CubeScene addMesh(Mesh mesh, Matrix4f model) {
+        meshes.add(mesh);
+        meshMatrices.add(model.get(BufferUtils.createFloatBuffer(16)));
+
+        // Meshes do not move, so their depth in the view is fixed
+        float z = projection.m02 * model.m30 + projection.m12 * model.m31 + projection.m22 * model.m32 + projection.m32;
+        meshKeys.add(RenderQueue.key(0, RenderQueue.STATE_CULL_FACE | RenderQueue.STATE_DEPTH_TEST,
+                MATERIAL_MESH, (z + 1) * 0.5f));
+        return this;
+    }
+
+    /**
+     * @return how many cubes the last {@link #render} submitted after frustum culling
+     */
+    public int getCubesDrawn() {
+        return cubesDrawn;
+    }
+
+    private void updatePickBounds() {
+        for (int i = 0; i < pickNodes.length; i++) {
+            Cube3D cube = pickNodes[i].getCube();
+            float size = cube.getSize();
+            pickMatrix.mul(pickNodes[i].getWorldMatrix(), cube.getModelMatrix());
+            pickMatrix.transformBox(size * cube.getStretchX() / 2, size * cube.getStretchY() / 2,
+                    size * cube.getStretchZ() / 2, pickBounds, i * 6);
+            pickInverse[i].set(pickMatrix).invertAffine();
+        }
+    }
+
+    // The joint follows the top of the first cube
+    private void updateJoint() {
+        float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
+        float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
+
+        joint.setTranslation(0.0f, rotPointY, 0.0f);
+    }
+
+    private void updateFloor() {
+        float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
+        float rotPointY = firstCube.getyPos() - halfCubeDist;
+
+        floorCube
+                .setyPos(rotPointY * 3.5f)
+                .setStretchX(2000)
+                .setStretchZ(2000);
+    }
+}
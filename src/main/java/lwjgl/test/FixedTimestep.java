@@ -0,0 +1,77 @@
+package lwjgl.test;
+
+/**
+ * Accumulator for running the simulation at a fixed tick rate, independent of how often frames are drawn.
+ * <p>
+ * Call {@link #advance(long)} once per rendered frame with the current time; it returns how many
+ * ticks to simulate. {@link #getAlpha()} then tells how far the frame lies between the last two
+ * ticks, for interpolating what is drawn. When a frame is very late, at most {@code maxTicksPerFrame}
+ * ticks are run and the rest of the backlog is dropped, so a stall slows the simulation down
+ * instead of making every following frame slower still.
+ */
+public class FixedTimestep {
+
+    private final long tickNanos;
+    private final int maxTicksPerFrame;
+
+    private long lastNanos = -1;
+    private long accumulator;
+    private long ticks;
+
+    public FixedTimestep(double ticksPerSecond, int maxTicksPerFrame) {
+        if (ticksPerSecond <= 0)
+            throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+        if (maxTicksPerFrame < 1)
+            throw new IllegalArgumentException("At least one tick per frame must be allowed: " + maxTicksPerFrame);
+
+        this.tickNanos = Math.max(1, Math.round(1e9 / ticksPerSecond));
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /**
+     * Adds the time passed since the previous call.
+     *
+     * @param nowNanos current time from {@link System#nanoTime()}
+     * @return how many ticks to simulate before drawing this frame
+     */
+    public int advance(long nowNanos) {
+        if (lastNanos >= 0)
+            accumulator += Math.max(0, nowNanos - lastNanos);
+        lastNanos = nowNanos;
+
+        long due = accumulator / tickNanos;
+        if (due > maxTicksPerFrame) {
+            due = maxTicksPerFrame;
+            accumulator = 0;
+        } else {
+            accumulator -= due * tickNanos;
+        }
+        ticks += due;
+        return (int) due;
+    }
+
+    /**
+     * @return the fraction of a tick accumulated but not yet simulated, in [0, 1)
+     */
+    public float getAlpha() {
+        return (float) accumulator / tickNanos;
+    }
+
+    /**
+     * @return how long after the last {@link #advance(long)} the next tick falls due
+     */
+    public long getNanosUntilNextTick() {
+        return tickNanos - accumulator;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return ticks handed out by {@link #advance(long)} so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+}
@@ -0,0 +1,76 @@
+package lwjgl.test;
+
+import lwjgl.test.raster.FrameCapture;
+import lwjgl.test.raster.Framebuffer;
+import lwjgl.test.raster.SoftwareBackend;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders the cube scene with the software backend, without a window or a GPU,
+ * and prints how fast it went.
+ * <p>
+ * Usage: {@code HeadlessRenderer [width] [height] [frames] [threads] [occlusion]}. With more
+ * than one thread, tiles are rasterized in parallel; with {@code occlusion} true, cubes are
+ * tested against a Hi-Z pyramid first. The last line of output is tab separated (frames,
+ * seconds, frames per second, checksum of the last frame) so build scripts can track it.
+ */
+public class HeadlessRenderer {
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        boolean occlusion = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        // Warm up so the JIT has compiled the rasterizer before we measure, on a scene and
+        // backend of their own, so the measured frames start from the first pose and leave
+        // the counters and checksum to themselves
+        CubeScene warmupScene = new CubeScene();
+        SoftwareBackend warmup = createBackend(width, height, pool, occlusion);
+        for (int i = 0; i < Math.min(frames, 200); i++)
+            renderFrame(warmupScene, warmup, i, width, height);
+
+        CubeScene scene = new CubeScene();
+        SoftwareBackend gl = createBackend(width, height, pool, occlusion);
+        Framebuffer framebuffer = gl.getFramebuffer();
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++)
+            renderFrame(scene, gl, i, width, height);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (pool != null)
+            pool.shutdown();
+
+        System.out.printf("%dx%d: %d frames in %.3f s, %.1f fps, %d of %d quads culled%n",
+                width, height, frames, seconds, frames / seconds, gl.getQuadsCulled(), gl.getQuadsSubmitted());
+        if (occlusion)
+            System.out.printf("%d of %d objects occluded, %d occluders%n",
+                    gl.getObjectsOccluded(), gl.getObjectsTested(), gl.getOccluders());
+        System.out.printf("%d\t%.6f\t%.1f\t%08x%n", frames, seconds, frames / seconds, FrameCapture.checksum(framebuffer.getColor()));
+    }
+
+    /**
+     * Scripted input: turn the whole arm, then swing the second segment, switching every 90 frames.
+     *
+     * @return {@code CubeScene.KEY_*} bits held down during {@code frame}
+     */
+    static int scriptedKeys(int frame) {
+        boolean swing = (frame / 90) % 2 == 1;
+        return CubeScene.KEY_RIGHT | (swing ? CubeScene.KEY_SHIFT : 0);
+    }
+
+    private static SoftwareBackend createBackend(int width, int height, ForkJoinPool pool, boolean occlusion) {
+        SoftwareBackend gl = new SoftwareBackend(new Framebuffer(width, height), pool).setOcclusionCulling(occlusion);
+        gl.clearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        return gl;
+    }
+
+    private static void renderFrame(CubeScene scene, SoftwareBackend gl, int frame, int width, int height) {
+        scene.update(scriptedKeys(frame));
+        scene.render(gl, width, height);
+        gl.finish();
+    }
+}
@@ -1,7 +1,24 @@
 package lwjgl.test;
 
+import lwjgl.test.anim.AnimationBatch;
+import lwjgl.test.anim.AnimationClip;
+import lwjgl.test.gl.GLStateCache;
+import lwjgl.test.gl.LwjglBackend;
+import lwjgl.test.input.InputRecorder;
+import lwjgl.test.input.InputReplay;
+import lwjgl.test.input.KeyEventQueue;
+import lwjgl.test.input.KeyState;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.mesh.Mesh;
+import lwjgl.test.mesh.ObjLoader;
+import lwjgl.test.metrics.FrameMetrics;
+import lwjgl.test.raster.FrameCapture;
+import lwjgl.test.raster.Framebuffer;
+import lwjgl.test.raster.SoftwareBackend;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWKeyCallback;
+import org.lwjgl.glfw.GLFWMouseButtonCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.glfw.GLFWWindowSizeCallback;
 import org.lwjgl.opengl.GL;
@@ -9,40 +26,86 @@ import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GLUtil;
 import org.lwjgl.system.libffi.Closure;
 
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
 public class HelloWorld {
 
+    // Simulation ticks per second; 60 keeps the speed the arm had when it stepped once per vsync'd frame
+    private static final double UPDATE_RATE = Double.parseDouble(System.getProperty("cubes.updateRate", "60"));
+    // Frames per second to draw; 0 follows the display's refresh rate
+    private static final double RENDER_RATE = Double.parseDouble(System.getProperty("cubes.renderRate", "0"));
+    // Ticks a single late frame may catch up on before the simulation just slows down
+    private static final int MAX_TICKS_PER_FRAME = 8;
+    // Frame phases and counters for FrameMetrics, only recorded with -Dcubes.metrics=true
+    // Input has no phase of its own: key events arrive during poll and are applied by the simulation
+    private static final int PHASE_SIMULATE = 0, PHASE_SUBMIT = 1, PHASE_SWAP = 2, PHASE_POLL = 3;
+    private static final int COUNT_DRAW_CALLS = 0, COUNT_VERTICES = 1, COUNT_CUBES = 2;
+    private static final String METRICS_FILE = System.getProperty("cubes.metrics.file", "frame-metrics.tsv");
+    private static final long METRICS_INTERVAL = Long.getLong("cubes.metrics.interval", 5000);
+
+    // OBJ file drawn beside the arm, if any
+    private static final String MESH = System.getProperty("cubes.mesh");
+
+    // Threads the headless software renderer fills tiles on; 1 draws every triangle immediately
+    private static final int RASTER_THREADS = Integer.getInteger("cubes.rasterThreads", 1);
+
+    // Play a demo clip on the arm; the keys still control whatever it leaves alone
+    private static final boolean ANIMATE = Boolean.getBoolean("cubes.animate");
+
+    // Simulate on a worker thread of its own, or in between frames on the render thread
+    private static final boolean SIMULATION_THREAD = Boolean.parseBoolean(System.getProperty("cubes.simulationThread", "true"));
+
     // We need to strongly reference callback instances.
     private GLFWErrorCallback errorCallback;
     private GLFWKeyCallback keyCallback;
     private GLFWWindowSizeCallback wsCallback;
+    private GLFWMouseButtonCallback mouseCallback;
+    private final DoubleBuffer cursorX = BufferUtils.createDoubleBuffer(1), cursorY = BufferUtils.createDoubleBuffer(1);
     private Closure debugProc;
+    private final LwjglBackend backend = new LwjglBackend();
+    // Drops the per-frame setup calls that repeat the previous frame's
+    private final GLStateCache gl = new GLStateCache(backend);
     private float rotation = 0.0f;
-    // Creating cubes
-    private final float CUBE_SIZE = 2.0f;
 
-    private Cube3D firstCube = new Cube3D(CUBE_SIZE);
-    private Cube3D secondCube = new Cube3D(CUBE_SIZE);
-    private Cube3D thirdCube = new Cube3D(CUBE_SIZE);
+    // The simulation owns one scene; view is what the render thread draws, blended between the last two ticks
+    private final Simulation simulation = new Simulation(new CubeScene(), UPDATE_RATE, MAX_TICKS_PER_FRAME);
+    private final CubeScene view = new CubeScene();
+    private final float[] viewState = new float[CubeScene.STATE_SIZE];
 
-    private Cube3D floorCube = new Cube3D(CUBE_SIZE * 20);
+    // Filled by the key callback, drained by the simulation
+    private final KeyEventQueue keyEvents = new KeyEventQueue(1024);
+
+    private final FrameMetrics metrics = new FrameMetrics(
+            new String[]{"simulate", "submit", "swap", "poll"},
+            new String[]{"drawCalls", "vertices", "cubes"},
+            METRICS_FILE, METRICS_INTERVAL);
 
     // The window handle
     private long window;
     private int width, height;
 
-    public void run() {
+    public void run() throws InterruptedException {
         try {
             init();
-            loop();
+            if (SIMULATION_THREAD)
+                simulation.start();
+            try {
+                loop();
+            } finally {
+                simulation.stop();
+            }
 
             // Release window and window callbacks
             glfwDestroyWindow(window);
             keyCallback.release();
             wsCallback.release();
+            mouseCallback.release();
             //keyCallback.free();
             //wsCallback.free();
             if (debugProc != null)
@@ -81,6 +144,8 @@ public class HelloWorld {
         window = glfwCreateWindow(WIDTH, HEIGHT, "Hello World!", NULL, NULL);
         if (window == NULL)
             throw new RuntimeException("Failed to create the GLFW window");
+        width = WIDTH;
+        height = HEIGHT;
 
         // Setup a key callback. It will be called every time a key is pressed, repeated or released.
         glfwSetKeyCallback(window, keyCallback = new GLFWKeyCallback() {
@@ -88,6 +153,8 @@ public class HelloWorld {
             public void invoke(long window, int key, int scancode, int action, int mods) {
                 if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
                     glfwSetWindowShouldClose(window, GL_TRUE); // We will detect this in our rendering loop
+                else if (key != GLFW_KEY_UNKNOWN)
+                    keyEvents.offer(key, action);
             }
         });
         glfwSetWindowSizeCallback(window, wsCallback = new GLFWWindowSizeCallback() {
@@ -100,25 +167,27 @@ public class HelloWorld {
             }
         });
 
-        firstCube.setStretchY(8.0f);
-
-        secondCube
-                .setStretchX(4.0f)
-                .setyPos(firstCube.getStretchY() - firstCube.getSize() / 2)
-                .setxPos(secondCube.getStretchX() + secondCube.getSize() / 2);
-
-        thirdCube
-                .setStretchY(4.0f)
-                .setxPos(secondCube.getxPos() + secondCube.getStretchX() - secondCube.getSize() / 2)
-                .setyPos(secondCube.getyPos() - thirdCube.getStretchY() - secondCube.getSize() / 2);
+        // Left click selects the cube under the cursor, as the view scene last drew it, or nothing
+        glfwSetMouseButtonCallback(window, mouseCallback = new GLFWMouseButtonCallback() {
+            @Override
+            public void invoke(long window, int button, int action, int mods) {
+                if (button != GLFW_MOUSE_BUTTON_LEFT || action != GLFW_PRESS)
+                    return;
+                glfwGetCursorPos(window, cursorX, cursorY);
+                view.setSelection(view.pick(cursorX.get(0), cursorY.get(0), width, height));
+            }
+        });
 
-        GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
-        glfwSetWindowPos(window, (vidmode.width() - width) / 2, (vidmode.height() - height) / 2);
+        // There is no video mode without a monitor; the window then just stays where it is
+        long monitor = glfwGetPrimaryMonitor();
+        GLFWVidMode vidmode = monitor == NULL ? null : glfwGetVideoMode(monitor);
+        if (vidmode != null)
+            glfwSetWindowPos(window, (vidmode.width() - width) / 2, (vidmode.height() - height) / 2);
 
         // Make the OpenGL context current
         glfwMakeContextCurrent(window);
-        // Enable v-sync
-        glfwSwapInterval(1);
+        // Enable v-sync, unless frames are paced by the render rate instead
+        glfwSwapInterval(RENDER_RATE > 0 ? 0 : 1);
 
         // Make the window visible
         glfwShowWindow(window);
@@ -134,401 +203,204 @@ public class HelloWorld {
         debugProc = GLUtil.setupDebugMessageCallback();
 
         // Set the clear color
-        glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        gl.clearColor(0.0f, 0.0f, 0.0f, 0.0f);
+
+        long frameNanos = RENDER_RATE > 0 ? Math.round(1e9 / RENDER_RATE) : 0;
+        long nextFrame = System.nanoTime();
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
         while (glfwWindowShouldClose(window) == GL_FALSE) {
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
-
-            glViewport(0, 0, width, height);
-
             // Place for my code
+            long t = metrics.start();
 
-            // Orthogonal projection (useful for getting our model properly visible)
-            glMatrixMode(GL_PROJECTION);
-
-            // Do not touch. This resets The Current Modelview Matrix
-            glLoadIdentity();
-
-            // Setting up the actual projection position
-            final float Z_PROJECTION = 300; // change to increase Z projection distance
-
-            glOrtho(-30, 30, -30, 30, -Z_PROJECTION, Z_PROJECTION);
-            glRotatef(1.0f, 1.0f, 0.0f, 0.0f);
-
-            // Switching to model view
-            glMatrixMode(GL_MODELVIEW);
-
-            glEnable(GL_CULL_FACE);
-            glEnable(GL_DEPTH_TEST);
-
-
-            // Rotation controls (TOUCH CAREFULLY!)
-            final float ROTATION_STEP = 1f;
+            if (!SIMULATION_THREAD)
+                simulation.step(System.nanoTime());
+            else if (simulation.getFailure() != null)
+                throw new IllegalStateException("Simulation thread failed", simulation.getFailure());
+            t = metrics.lap(PHASE_SIMULATE, t);
 
-            // HINT:
-            // 1. To rotate main cube - arrows
-            // 2. To rotate second cube - SHIFT + arrows
-            // 3. To rotate third cube - CTRL + arrows
-            if (glfwGetKey(window, GLFW_KEY_UP) == 1) {
-                if (glfwGetKey(window, GLFW_KEY_LEFT_SHIFT) == 1) {
-                    secondCube
-                            .setStretchX(secondCube.getStretchX() + ROTATION_STEP)
-                            .setxPos(secondCube.getxPos() + ROTATION_STEP);
-
-                    thirdCube
-                            .setxPos(thirdCube.getxPos() + ROTATION_STEP * 2);
-                } else if (glfwGetKey(window, GLFW_KEY_LEFT_CONTROL) == 1) {
-                    float thirdCubeSize = thirdCube.getSize() * thirdCube.getStretchY();
-                    float allowedSize = (firstCube.getSize() * firstCube.getStretchY()) - secondCube.getSize();
-
-                    if (thirdCubeSize < allowedSize) {
-                        thirdCube
-                                .setStretchY(thirdCube.getStretchY() + ROTATION_STEP)
-                                .setyPos(thirdCube.getyPos() - ROTATION_STEP);
-                    }
-                } else {
-                    firstCube
-                            .setStretchY(firstCube.getStretchY() + ROTATION_STEP)
-                            .setyPos(firstCube.getyPos() + ROTATION_STEP);
-
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    secondCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setyPos(secondCube.getyPos() + ROTATION_STEP * 2);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setyPos(thirdCube.getyPos() + ROTATION_STEP * 2);
-                }
-            } else if (glfwGetKey(window, GLFW_KEY_DOWN) == 1) {
-                if (glfwGetKey(window, GLFW_KEY_LEFT_SHIFT) == 1) {
-                    if (secondCube.getStretchX() >= 2) {
-                        secondCube
-                                .setStretchX(secondCube.getStretchX() - ROTATION_STEP)
-                                .setxPos(secondCube.getxPos() - ROTATION_STEP);
-
-                        thirdCube
-                                .setxPos(thirdCube.getxPos() - ROTATION_STEP * 2);
-                    }
-                } else if (glfwGetKey(window, GLFW_KEY_LEFT_CONTROL) == 1) {
-                    if (thirdCube.getStretchY() >= 2) {
-                        thirdCube
-                                .setStretchY(thirdCube.getStretchY() - ROTATION_STEP)
-                                .setyPos(thirdCube.getyPos() + ROTATION_STEP);
-                    }
-                } else {
-                    if (firstCube.getStretchY() >= secondCube.getSize() / 1.5 + thirdCube.getStretchY()) {
-                        firstCube
-                                .setStretchY(firstCube.getStretchY() - ROTATION_STEP)
-                                .setyPos(firstCube.getyPos() - ROTATION_STEP);
-
-                        float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                        float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                        secondCube
-                                .setRotationPoint(0.0f, rotPointY, 0.0f)
-                                .setyPos(secondCube.getyPos() - ROTATION_STEP * 2);
-
-                        thirdCube
-                                .setRotationPoint(0.0f, rotPointY, 0.0f)
-                                .setyPos(thirdCube.getyPos() - ROTATION_STEP * 2);
-                    }
-                }
-            } else if (glfwGetKey(window, GLFW_KEY_RIGHT) == 1) {
-                if (glfwGetKey(window, GLFW_KEY_LEFT_SHIFT) == 1) {
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    secondCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateX(secondCube.getRotateX() + ROTATION_STEP);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateX(thirdCube.getRotateX() + ROTATION_STEP);
-                } else if (glfwGetKey(window, GLFW_KEY_LEFT_CONTROL) == 1) {
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setAddRotateY(thirdCube.getAddRotateY() + ROTATION_STEP);
-                } else {
-                    firstCube
-                            .setRotateY(firstCube.getRotateY() + ROTATION_STEP);
-
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    secondCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateY(secondCube.getRotateY() + ROTATION_STEP);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateY(thirdCube.getRotateY() + ROTATION_STEP);
-                }
-            } else if (glfwGetKey(window, GLFW_KEY_LEFT) == 1) {
-                if (glfwGetKey(window, GLFW_KEY_LEFT_SHIFT) == 1) {
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    secondCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateX(secondCube.getRotateX() - ROTATION_STEP);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateX(thirdCube.getRotateX() - ROTATION_STEP);
-                } else if (glfwGetKey(window, GLFW_KEY_LEFT_CONTROL) == 1) {
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setAddRotateY(thirdCube.getAddRotateY() - ROTATION_STEP);
-                } else {
-                    firstCube
-                            .setRotateY(firstCube.getRotateY() - ROTATION_STEP);
-
-                    float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-                    float rotPointY = firstCube.getyPos() + halfCubeDist - (firstCube.getSize() / 2);
-
-                    secondCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateY(secondCube.getRotateY() - ROTATION_STEP);
-
-                    thirdCube
-                            .setRotationPoint(0.0f, rotPointY, 0.0f)
-                            .setRotateY(thirdCube.getRotateY() - ROTATION_STEP);
-                }
-            }
-
-
-            firstCube.render();
-            secondCube.render();
-            thirdCube.render();
-
-            float halfCubeDist = (firstCube.getSize() * firstCube.getStretchY()) / 2;
-            float rotPointY = firstCube.getyPos() - halfCubeDist;
-
-            floorCube
-                    .setyPos(rotPointY * 3.5f)
-                    .setStretchX(2000)
-                    .setStretchZ(2000);
-
-            floorCube.render();
+            // Draw the newest published ticks, never waiting for the simulation
+            simulation.getExchange().acquire().interpolate(System.nanoTime(), simulation.getTickNanos(), viewState);
+            view.readState(viewState)
+                    .render(gl, width, height);
+            t = metrics.lap(PHASE_SUBMIT, t);
 
             // End of my code
             glfwSwapBuffers(window); // swap the color buffers
+            t = metrics.lap(PHASE_SWAP, t);
 
             // Poll for window events. The key callback above will only be
             // invoked during this call.
             glfwPollEvents();
-        }
-    }
-
-
-
-    private class Cube3D {
-        private float size = 1.0f;
-        private float stretchX = 1.0f, stretchY = 1.0f, stretchZ = 1.0f;
-        private float rotateX = 0.0f, rotateY = 0.0f, rotateZ = 0.0f, aRotateY = 0.0f;
-        private float rotPointX = 0.0f, rotPointY = 0.0f, rotPointZ = 0.0f;
-        private float xPos = 0.0f, yPos = 0.0f, zPos = 0.0f;
-        private boolean rndColorize = true;
-
-        public Cube3D() {
-        }
-
-        public Cube3D(float size) {
-            this.size = size;
-        }
-
-        public Cube3D(float size, float xPos, float yPos, float zPos) {
-            this.size = size;
-            this.xPos = xPos;
-            this.yPos = yPos;
-            this.zPos = zPos;
-        }
-
-        public Cube3D turnOffRndColors() {
-            this.rndColorize = false;
-            return this;
-        }
-
-        public Cube3D turnOnRndColors() {
-            this.rndColorize = true;
-            return this;
-        }
-
-        public float getSize() {
-            return size;
-        }
-
-        public float getxPos() {
-            return xPos;
-        }
-
-        public Cube3D setxPos(float xPos) {
-            this.xPos = xPos;
-            return this;
-        }
-
-        public float getyPos() {
-            return yPos;
-        }
-
-        public Cube3D setyPos(float yPos) {
-            this.yPos = yPos;
-            return this;
-        }
-
-        public float getStretchX() {
-            return stretchX;
-        }
-
-        public Cube3D setStretchX(float stretchX) {
-            this.stretchX = stretchX;
-            return this;
-        }
-
-        public float getStretchY() {
-            return stretchY;
-        }
+            metrics.lap(PHASE_POLL, t);
+
+            if (FrameMetrics.ENABLED) {
+                metrics.count(COUNT_DRAW_CALLS, backend.getDrawCalls());
+                metrics.count(COUNT_VERTICES, backend.getVertices());
+                metrics.count(COUNT_CUBES, view.getCubesDrawn());
+                backend.resetCounters();
+                metrics.exportIfDue(metrics.end());
+            }
 
-        public Cube3D setStretchY(float stretchY) {
-            this.stretchY = stretchY;
-            return this;
+            if (frameNanos > 0)
+                nextFrame = waitUntil(nextFrame + frameNanos);
         }
+    }
 
-        public float getStretchZ() {
-            return stretchZ;
-        }
+    // Loads the cubes.mesh OBJ file, scaled to about the size of the arm and stood next to it
+    private static void addMesh(CubeScene scene) throws IOException {
+        if (MESH == null)
+            return;
+
+        long start = System.nanoTime();
+        Mesh mesh = ObjLoader.load(MESH, Runtime.getRuntime().availableProcessors());
+        System.out.printf("Loaded %s: %d vertices, %d triangles in %.1f ms%n", MESH,
+                mesh.getVertexCount(), mesh.getTriangleCount(), (System.nanoTime() - start) / 1e6);
+
+        float[] bounds = new float[6];
+        mesh.getBounds(bounds);
+        float extent = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+        float scale = extent > 0 ? 16.0f / extent : 1.0f;
+        scene.addMesh(mesh, new Matrix4f()
+                .translate(-15.0f, 0.0f, 0.0f)
+                .scale(scale, scale, scale)
+                .translate(-(bounds[0] + bounds[3]) / 2, -(bounds[1] + bounds[4]) / 2, -(bounds[2] + bounds[5]) / 2));
+    }
 
-        public Cube3D setStretchZ(float stretchZ) {
-            this.stretchZ = stretchZ;
-            return this;
+    // Sleeps until the given System.nanoTime(), returning the deadline to pace the next frame from
+    private static long waitUntil(long deadline) {
+        long now = System.nanoTime();
+        if (now >= deadline)
+            return now; // running late, don't try to catch up
+        try {
+            Thread.sleep((deadline - now) / 1000000, (int) ((deadline - now) % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return deadline;
+    }
 
-        public float getRotateX() {
-            return rotateX;
+    /**
+     * Renders {@code frames} frames of scripted input with the software renderer, without a
+     * window, monitor or GL context, capturing each one into {@code capturePath} unless it is null.
+     */
+    static void runHeadless(int frames, int width, int height, String capturePath) throws IOException {
+        CubeScene scene = new CubeScene();
+        addMesh(scene);
+        Framebuffer framebuffer = new Framebuffer(width, height);
+        ForkJoinPool pool = RASTER_THREADS > 1 ? new ForkJoinPool(RASTER_THREADS) : null;
+        SoftwareBackend software = new SoftwareBackend(framebuffer, pool);
+        GLStateCache gl = new GLStateCache(software);
+        gl.clearColor(0.0f, 0.0f, 0.0f, 0.0f);
+
+        FrameCapture capture = capturePath == null ? null : new FrameCapture(capturePath, width, height, frames);
+        int checksum = 0;
+        long start = System.nanoTime();
+        try {
+            for (int frame = 0; frame < frames; frame++) {
+                // One tick per frame, so every run renders exactly the same images
+                scene.update(HeadlessRenderer.scriptedKeys(frame));
+                scene.render(gl, width, height);
+                software.finish();
+                checksum = capture == null
+                        ? FrameCapture.checksum(framebuffer.getColor())
+                        : capture.capture(framebuffer, frame);
+            }
+        } finally {
+            if (capture != null)
+                capture.close();
+            if (pool != null)
+                pool.shutdown();
         }
+        double seconds = (System.nanoTime() - start) / 1e9;
 
-        public Cube3D setRotateX(float rotateX) {
-            this.rotateX = rotateX;
-            return this;
-        }
+        System.out.printf("Headless %dx%d: %d frames in %.3f s, %.1f fps%s, last frame %08x%n", width, height,
+                frames, seconds, frames / seconds, capture == null ? "" : ", captured to " + capturePath, checksum);
+    }
 
-        public float getRotateY() {
-            return rotateY;
+    /**
+     * Feeds a recorded input log to a fresh simulation as fast as possible, without GLFW, and
+     * prints the final state hash.
+     */
+    static void runReplay(String path) throws IOException {
+        long start = System.nanoTime();
+        try (InputReplay replay = new InputReplay(path)) {
+            Simulation simulation = replay(replay);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Replayed %d ticks (%.1f s of input) in %.3f s, state hash %016x%n",
+                    replay.getTicks(), replay.getTicks() * replay.getTickNanos() / 1e9, seconds,
+                    simulation.getStateHash());
         }
+    }
 
-        public Cube3D setRotateY(float rotateY) {
-            this.rotateY = rotateY;
-            return this;
-        }
+    /**
+     * Runs the rest of {@code replay} through a fresh simulation. Ticks run as in the recorded
+     * session, with the demo clip if it played, so the simulation ends in the state the
+     * recording did, with the same {@link Simulation#getStateHash()}.
+     */
+    public static Simulation replay(InputReplay replay) throws IOException {
+        Simulation simulation = new Simulation(new CubeScene(), 1e9 / replay.getTickNanos(), 1);
+        if ((replay.getFlags() & InputRecorder.ANIMATED) != 0)
+            simulation.setAnimation(new AnimationBatch(demoClip(), 1), 0);
+        while (replay.hasNext())
+            simulation.tick(replay.next());
+        return simulation;
+    }
 
-        public Cube3D setRotationPoint(float x, float y, float z) {
-            this.rotPointX = x;
-            this.rotPointY = y;
-            this.rotPointZ = z;
-            return this;
-        }
+    /**
+     * Swings the base, nods the joint and pumps the first segment; spinning the third cube is
+     * left to the keys. Played with {@code -Dcubes.animate=true}.
+     */
+    public static AnimationClip demoClip() {
+        return new AnimationClip()
+                .addChannel(AnimationClip.BASE_ROTATE_Y, AnimationClip.SPLINE,
+                        new float[]{0, 2, 4, 6, 8}, new float[]{0, 60, 0, -60, 0})
+                .addChannel(AnimationClip.JOINT_ROTATE_X, AnimationClip.SPLINE,
+                        new float[]{0, 2, 6, 8}, new float[]{0, 30, -30, 0})
+                .addChannel(AnimationClip.FIRST_STRETCH_Y, AnimationClip.LINEAR,
+                        new float[]{0, 4, 8}, new float[]{8, 12, 8});
+    }
 
-        public Cube3D setAddRotateY(float aRotPointY) {
-            this.aRotateY = aRotPointY;
-            return this;
+    /**
+     * Opens the window, or:
+     * <ul>
+     * <li>{@code --headless [frames] [capture file]} renders without one (600x600, 300 frames into
+     * frames.rgba by default; pass "-" as the file to skip capturing)</li>
+     * <li>{@code --record file} opens the window, logs the keys of every tick to the file and
+     * prints the final state hash, which replaying the file reproduces</li>
+     * <li>{@code --replay file} runs a logged session through the simulation without a window</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+            String capture = args.length > 2 ? args[2] : "frames.rgba";
+            runHeadless(frames, 600, 600, capture.equals("-") ? null : capture);
+            return;
         }
-
-        public float getAddRotateY() {
-            return this.aRotateY;
+        if (args.length > 1 && args[0].equals("--replay")) {
+            runReplay(args[1]);
+            return;
         }
 
-        public void render() {
-            // Saving current matrix state
-            glPushMatrix();
-
-            // Applying rotation transformation
-            glTranslatef(this.rotPointX, this.rotPointY, this.rotPointZ);
-
-            glRotatef(rotateZ, 0.0f, 0.0f, 1.0f);
-            glRotatef(rotateY, 0.0f, 1.0f, 0.0f);
-            glRotatef(rotateX, 1.0f, 0.0f, 0.0f);
-
-            glTranslatef(-this.rotPointX, -this.rotPointY, -this.rotPointZ);
-
-            // Additional rotation
-            glTranslatef(this.xPos, this.yPos, this.zPos);
-
-            glRotatef(aRotateY, 0.0f, 1.0f, 0.0f);
-
-            glTranslatef(-this.xPos, -this.yPos, -this.zPos);
-
-            // Initializing quadratic mode
-            glBegin(GL_QUADS);
-
-            // Preparing coordinates (just to simplify code below)
-            final float halfSizeX = (size * stretchX) / 2;
-            final float halfSizeY = (size * stretchY) / 2;
-            final float halfSizeZ = (size * stretchZ) / 2;
-
-            // Front face
-            if (rndColorize) glColor3f(1f, 0f, 0f);
-            glVertex3f(-halfSizeX + xPos, -halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, -halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, halfSizeY + yPos, halfSizeZ + zPos);
-
-            // Back face
-            if (rndColorize) glColor3f(0f, 1f, 0f);
-            glVertex3f(-halfSizeX + xPos, -halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, -halfSizeY + yPos, -halfSizeZ + zPos);
-
-            // Top face
-            if (rndColorize) glColor3f(0f, 0f, 1f);
-            glVertex3f(-halfSizeX + xPos, halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, halfSizeY + yPos, -halfSizeZ + zPos);
-
-            // Bottom face
-            if (rndColorize) glColor3f(0f, 0f, 1f);
-            glVertex3f(-halfSizeX + xPos, -halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, -halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, -halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, -halfSizeY + yPos, halfSizeZ + zPos);
-
-            // Right face
-            if (rndColorize) glColor3f(1f, 0f, 1f);
-            glVertex3f(halfSizeX + xPos, -halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(halfSizeX + xPos, -halfSizeY + yPos, halfSizeZ + zPos);
-
-            // Left face
-            if (rndColorize) glColor3f(0f, 1f, 1f);
-            glVertex3f(-halfSizeX + xPos, -halfSizeY + yPos, -halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, -halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, halfSizeY + yPos, halfSizeZ + zPos);
-            glVertex3f(-halfSizeX + xPos, halfSizeY + yPos, -halfSizeZ + zPos);
-
-            // We have ended drawing up cube sides
-            glEnd();
-
-            // Saving our figure
-            glPopMatrix();
+        HelloWorld app = new HelloWorld();
+        addMesh(app.view);
+        app.simulation.setInput(app.keyEvents, new KeyState());
+        if (ANIMATE)
+            app.simulation.setAnimation(new AnimationBatch(demoClip(), 1), 0);
+        if (args.length > 1 && args[0].equals("--record")) {
+            try (InputRecorder recorder = new InputRecorder(args[1], app.simulation.getTickNanos(),
+                    ANIMATE ? InputRecorder.ANIMATED : 0)) {
+                app.simulation.setRecorder(recorder);
+                app.run();
+                System.out.printf("Recorded %d ticks to %s, state hash %016x%n", recorder.getTicks(), args[1],
+                        app.simulation.getStateHash());
+            }
+            return;
         }
-    }
-
-    public static void main(String[] args) {
-        new HelloWorld().run();
+        app.run();
     }
 
 }
\ No newline at end of file
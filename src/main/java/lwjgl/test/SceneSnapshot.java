@@ -0,0 +1,52 @@
+package lwjgl.test;
+
+/**
+ * The cube scene's state at the last two simulation ticks, as published by {@link Simulation}.
+ * <p>
+ * Snapshots are recycled through a {@link SnapshotExchange}: only the thread currently holding
+ * one may touch it, so the arrays are reused rather than copied.
+ */
+public class SceneSnapshot {
+
+    final float[] previous = new float[CubeScene.STATE_SIZE];
+    final float[] current = new float[CubeScene.STATE_SIZE];
+    long tick = -1;
+    long publishedNanos;
+
+    /**
+     * @return the state after the tick before the last one
+     */
+    public float[] getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the state after the last tick
+     */
+    public float[] getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return number of the last tick, or -1 for a snapshot that was never published
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the snapshot was published
+     */
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    /**
+     * Blends the last two states for drawing at {@code nowNanos}: the previous state right
+     * after publication, moving towards the current one over one tick.
+     */
+    public float[] interpolate(long nowNanos, long tickNanos, float[] dst) {
+        float alpha = Math.min(1.0f, Math.max(0.0f, (float) (nowNanos - publishedNanos) / tickNanos));
+        return CubeScene.interpolate(previous, current, alpha, dst);
+    }
+}
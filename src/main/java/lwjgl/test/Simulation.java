@@ -0,0 +1,209 @@
+package lwjgl.test;
+
+import lwjgl.test.anim.AnimationBatch;
+import lwjgl.test.input.InputRecorder;
+import lwjgl.test.input.KeyEventQueue;
+import lwjgl.test.input.KeyState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the cube scene's fixed-timestep simulation and publishes its state through a {@link SnapshotExchange}.
+ * <p>
+ * Either {@link #start()} it on a worker thread of its own, leaving the render thread to do
+ * nothing but draw the latest snapshot, or call {@link #step(long)} once per frame to simulate
+ * on the caller's thread. Keys come in either as events through a {@link KeyEventQueue} the window's
+ * key callback fills, or as a mask set with {@link #setKeys(int)} from any thread.
+ */
+public class Simulation implements Runnable {
+
+    private final CubeScene scene;
+    private final FixedTimestep timestep;
+    private final SnapshotExchange exchange = new SnapshotExchange();
+    private final float[] previous = new float[CubeScene.STATE_SIZE];
+    private final float[] current = new float[CubeScene.STATE_SIZE];
+
+    private volatile int keys;
+    private volatile boolean running;
+    private volatile Throwable failure;
+    private Thread thread;
+    private InputRecorder recorder;
+    private KeyEventQueue keyEvents;
+    private KeyState keyState;
+    private AnimationBatch animation;
+    private int animationRig;
+    // Ticks run so far, by step() or tick()
+    private long ticks;
+
+    public Simulation(CubeScene scene, double ticksPerSecond, int maxTicksPerFrame) {
+        this.scene = scene;
+        this.timestep = new FixedTimestep(ticksPerSecond, maxTicksPerFrame);
+
+        scene.writeState(current);
+        System.arraycopy(current, 0, previous, 0, CubeScene.STATE_SIZE);
+        publish(-1);
+    }
+
+    /**
+     * @param keys {@code CubeScene.KEY_*} bits held down, applied from the next tick on
+     */
+    public void setKeys(int keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Logs the keys of every tick from now on; set before {@link #start()}. The caller closes
+     * the recorder once the simulation has stopped.
+     */
+    public Simulation setRecorder(InputRecorder recorder) {
+        this.recorder = recorder;
+        return this;
+    }
+
+    /**
+     * Takes keys from {@code events}, drained into {@code state} before every step, instead of
+     * {@link #setKeys(int)}; set before {@link #start()}.
+     */
+    public Simulation setInput(KeyEventQueue events, KeyState state) {
+        this.keyEvents = events;
+        this.keyState = state;
+        return this;
+    }
+
+    /**
+     * Poses the arm like {@code rig} of {@code animation} every tick, after the keys are
+     * applied, so animated properties follow the clip and the rest stay under key control;
+     * null to stop. Set before {@link #start()}.
+     */
+    public Simulation setAnimation(AnimationBatch animation, int rig) {
+        if (animation != null && (rig < 0 || rig >= animation.getRigCount()))
+            throw new IllegalArgumentException("No rig " + rig + " in a batch of " + animation.getRigCount());
+        this.animation = animation;
+        this.animationRig = rig;
+        return this;
+    }
+
+    public SnapshotExchange getExchange() {
+        return exchange;
+    }
+
+    public long getTickNanos() {
+        return timestep.getTickNanos();
+    }
+
+    /**
+     * Runs the ticks due by {@code nowNanos} and publishes the result if there were any.
+     * Must always be called from the same thread.
+     *
+     * @return how many ticks were run
+     */
+    public int step(long nowNanos) {
+        int due = timestep.advance(nowNanos);
+        if (keyEvents != null) {
+            keyState.drain(keyEvents);
+            keys = keyState.getMask();
+        }
+        for (int i = 0; i < due; i++)
+            runTick(keys);
+        if (due > 0)
+            publish(ticks);
+        return due;
+    }
+
+    /**
+     * Runs and publishes one tick with {@code keys} held, as {@link #step(long)} runs each due
+     * tick, without looking at the clock. For replaying a log on the caller's thread; do not
+     * mix with a started simulation.
+     */
+    public Simulation tick(int keys) {
+        runTick(keys);
+        publish(ticks);
+        return this;
+    }
+
+    /**
+     * @return {@link CubeScene#hash} of the last tick's state; call on the simulating thread or
+     *         after {@link #stop()}
+     */
+    public long getStateHash() {
+        return CubeScene.hash(current);
+    }
+
+    /**
+     * Starts simulating on a daemon worker thread.
+     */
+    public Simulation start() {
+        if (thread != null)
+            throw new IllegalStateException("Simulation already started");
+
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stops the worker thread and waits for it to finish.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join();
+            thread = null;
+        }
+    }
+
+    /**
+     * @return what killed the worker thread, or null while it is fine
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                step(System.nanoTime());
+                // Sleep until the next tick is due
+                LockSupport.parkNanos(timestep.getNanosUntilNextTick());
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    private void runTick(int tickKeys) {
+        if (recorder != null)
+            record(tickKeys);
+        System.arraycopy(current, 0, previous, 0, CubeScene.STATE_SIZE);
+        scene.update(tickKeys);
+        ticks++;
+        if (animation != null) {
+            animation.evaluate(ticks * (timestep.getTickNanos() / 1e9));
+            animation.apply(animationRig, scene);
+        }
+        scene.writeState(current);
+    }
+
+    private void record(int tickKeys) {
+        try {
+            recorder.record(tickKeys);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record input", e);
+        }
+    }
+
+    private void publish(long tick) {
+        SceneSnapshot snapshot = exchange.getBack();
+        System.arraycopy(previous, 0, snapshot.previous, 0, CubeScene.STATE_SIZE);
+        System.arraycopy(current, 0, snapshot.current, 0, CubeScene.STATE_SIZE);
+        snapshot.tick = tick;
+        snapshot.publishedNanos = System.nanoTime();
+        exchange.publish();
+    }
+}
@@ -0,0 +1,48 @@
+package lwjgl.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer handing {@link SceneSnapshot}s from one writer thread to one reader thread.
+ * <p>
+ * The writer fills its back snapshot and {@link #publish()}es it; the reader {@link #acquire()}s
+ * the newest one. Neither side ever waits for the other: a slow reader just skips snapshots and
+ * a slow writer just means the reader keeps drawing the one it has. Nothing is allocated after
+ * construction.
+ */
+public class SnapshotExchange {
+
+    // Set on the middle index when it holds a snapshot the reader hasn't taken yet
+    private static final int FRESH = 4;
+
+    private final SceneSnapshot[] snapshots = {new SceneSnapshot(), new SceneSnapshot(), new SceneSnapshot()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // Only touched by the writer and the reader respectively
+    private int back = 0;
+    private int front = 2;
+
+    /**
+     * @return the snapshot the writer may fill; writer thread only
+     */
+    public SceneSnapshot getBack() {
+        return snapshots[back];
+    }
+
+    /**
+     * Makes the back snapshot the newest one for the reader and hands the writer a new back
+     * snapshot, whose contents are stale. Writer thread only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * @return the newest published snapshot, which stays valid until the next call; reader thread only
+     */
+    public SceneSnapshot acquire() {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & ~FRESH;
+        return snapshots[front];
+    }
+}
@@ -0,0 +1,372 @@
+package lwjgl.test.anim;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.CubeScene;
+import lwjgl.test.math.Quaternion;
+import lwjgl.test.scene.SceneNode;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Poses of many rigs playing the same {@link AnimationClip}, each at its own phase and speed,
+ * evaluated together.
+ * <p>
+ * Results are kept per target as planes over the rigs: scalar target {@code t} of rig
+ * {@code r} is at {@code t * rigs + r}, component {@code c} (x, y, z, w) of rotation target
+ * {@code t} at {@code (t * 4 + c) * rigs + r}. Evaluation walks the rigs in blocks and, within
+ * a block, one channel at a time over every rig, so the keys of a channel stay in cache and
+ * the inner loops are plain array loops. Each rig remembers the key segment it was in per
+ * channel; playback moves forward a little every tick, so the search almost always ends there
+ * or in the next segment.
+ * <p>
+ * {@link #evaluate(double, ForkJoinPool)} splits the rigs into ranges for a fork/join pool.
+ * Rigs are independent and every rig's result is computed the same way either way, so
+ * parallel and serial evaluation give identical poses.
+ */
+public class AnimationBatch {
+
+    // Rigs evaluated together
+    private static final int BLOCK = 256;
+    // Rigs below which a range is not split further
+    private static final int GRAIN = 1024;
+
+    private final AnimationClip clip;
+    private final int rigs;
+    private final int channels;
+
+    private final float[] phase, speed;
+    private final int[] cursors;
+    private final float[] scalars;
+    private final float[] rotations;
+    private final boolean[] scalarAnimated = new boolean[AnimationClip.SCALAR_TARGETS];
+    private final boolean[] rotationAnimated = new boolean[AnimationClip.ROTATION_TARGETS];
+
+    private final ThreadLocal<float[]> blockTimes = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[BLOCK];
+        }
+    };
+
+    private final Quaternion rotation = new Quaternion();
+    private final float[] euler = new float[3];
+
+    public AnimationBatch(AnimationClip clip, int rigs) {
+        if (rigs <= 0)
+            throw new IllegalArgumentException("Rig count must be positive: " + rigs);
+        this.clip = clip;
+        this.rigs = rigs;
+        this.channels = clip.getChannelCount();
+
+        phase = new float[rigs];
+        speed = new float[rigs];
+        Arrays.fill(speed, 1.0f);
+        cursors = new int[channels * rigs];
+        scalars = new float[AnimationClip.SCALAR_TARGETS * rigs];
+        rotations = new float[AnimationClip.ROTATION_TARGETS * 4 * rigs];
+
+        for (int c = 0; c < channels; c++) {
+            if (clip.getMode(c) == AnimationClip.SLERP)
+                rotationAnimated[clip.getTarget(c)] = true;
+            else
+                scalarAnimated[clip.getTarget(c)] = true;
+        }
+    }
+
+    public AnimationClip getClip() {
+        return clip;
+    }
+
+    public int getRigCount() {
+        return rigs;
+    }
+
+    /**
+     * Shifts a rig's playback by {@code seconds}.
+     */
+    public AnimationBatch setPhase(int rig, float seconds) {
+        phase[rig] = seconds;
+        return this;
+    }
+
+    /**
+     * Plays a rig's clip {@code speed} times as fast; 1 by default.
+     */
+    public AnimationBatch setSpeed(int rig, float speed) {
+        this.speed[rig] = speed;
+        return this;
+    }
+
+    public boolean isAnimated(int scalarTarget) {
+        return scalarAnimated[scalarTarget];
+    }
+
+    public boolean isRotationAnimated(int rotationTarget) {
+        return rotationAnimated[rotationTarget];
+    }
+
+    /**
+     * @return scalar target {@code target} of {@code rig} as of the last evaluation
+     */
+    public float getValue(int target, int rig) {
+        return scalars[target * rigs + rig];
+    }
+
+    /**
+     * Copies rotation target {@code target} of {@code rig} as of the last evaluation into {@code dst}.
+     */
+    public Quaternion getRotation(int target, int rig, Quaternion dst) {
+        int o = target * 4 * rigs + rig;
+        return dst.set(rotations[o], rotations[o + rigs], rotations[o + 2 * rigs], rotations[o + 3 * rigs]);
+    }
+
+    /**
+     * @return the scalar planes, for bulk readers; see the class comment for the layout
+     */
+    public float[] getValues() {
+        return scalars;
+    }
+
+    /**
+     * @return the rotation planes, for bulk readers; see the class comment for the layout
+     */
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    /**
+     * Evaluates every rig at {@code time} seconds on the calling thread.
+     */
+    public void evaluate(double time) {
+        evaluate(0, rigs, time);
+    }
+
+    /**
+     * Evaluates every rig at {@code time} seconds, split over {@code pool}, or on the calling
+     * thread if {@code pool} is null.
+     */
+    public void evaluate(double time, ForkJoinPool pool) {
+        if (pool == null || rigs <= GRAIN)
+            evaluate(0, rigs, time);
+        else
+            pool.invoke(new Range(this, 0, rigs, time));
+    }
+
+    /**
+     * Poses the arm of {@code scene} like {@code rig}: every target the clip animates is set,
+     * the others are left as they are. A rotation channel overrides the scalar angle of the
+     * same node.
+     */
+    public void apply(int rig, CubeScene scene) {
+        SceneNode base = scene.getBase(), joint = scene.getJoint();
+        Cube3D third = scene.getThirdCube();
+
+        if (scalarAnimated[AnimationClip.BASE_ROTATE_Y] && base.getRotateY() != getValue(AnimationClip.BASE_ROTATE_Y, rig))
+            base.setRotateY(getValue(AnimationClip.BASE_ROTATE_Y, rig));
+        if (scalarAnimated[AnimationClip.JOINT_ROTATE_X] && joint.getRotateX() != getValue(AnimationClip.JOINT_ROTATE_X, rig))
+            joint.setRotateX(getValue(AnimationClip.JOINT_ROTATE_X, rig));
+        if (scalarAnimated[AnimationClip.THIRD_SPIN] && third.getAddRotateY() != getValue(AnimationClip.THIRD_SPIN, rig))
+            third.setAddRotateY(getValue(AnimationClip.THIRD_SPIN, rig));
+
+        if (scalarAnimated[AnimationClip.FIRST_STRETCH_Y] || scalarAnimated[AnimationClip.SECOND_STRETCH_X]
+                || scalarAnimated[AnimationClip.THIRD_STRETCH_Y]) {
+            scene.setStretches(
+                    value(AnimationClip.FIRST_STRETCH_Y, rig, scene.getFirstCube().getStretchY()),
+                    value(AnimationClip.SECOND_STRETCH_X, rig, scene.getSecondCube().getStretchX()),
+                    value(AnimationClip.THIRD_STRETCH_Y, rig, third.getStretchY()));
+        }
+
+        if (rotationAnimated[AnimationClip.BASE_ROTATION])
+            setRotation(base, AnimationClip.BASE_ROTATION, rig);
+        if (rotationAnimated[AnimationClip.JOINT_ROTATION])
+            setRotation(joint, AnimationClip.JOINT_ROTATION, rig);
+    }
+
+    // Turns a rotation target into the node's angles, touching only those that changed
+    private void setRotation(SceneNode node, int target, int rig) {
+        getRotation(target, rig, rotation).getEulerAngles(euler);
+        if (node.getRotateX() != euler[0])
+            node.setRotateX(euler[0]);
+        if (node.getRotateY() != euler[1])
+            node.setRotateY(euler[1]);
+        if (node.getRotateZ() != euler[2])
+            node.setRotateZ(euler[2]);
+    }
+
+    private float value(int target, int rig, float unanimated) {
+        return scalarAnimated[target] ? getValue(target, rig) : unanimated;
+    }
+
+    // Evaluates rigs [from, to)
+    private void evaluate(int from, int to, double time) {
+        final float[] local = blockTimes.get();
+        final float duration = clip.getDuration();
+        final boolean looping = clip.isLooping();
+
+        for (int start = from; start < to; start += BLOCK) {
+            int end = Math.min(to, start + BLOCK);
+
+            for (int r = start; r < end; r++) {
+                double t = time * speed[r] + phase[r];
+                if (duration <= 0)
+                    t = 0;
+                else if (looping)
+                    t -= Math.floor(t / duration) * duration;
+                else
+                    t = Math.max(0, Math.min(duration, t));
+                local[r - start] = (float) t;
+            }
+
+            for (int c = 0; c < channels; c++) {
+                int mode = clip.getMode(c);
+                if (mode == AnimationClip.SLERP)
+                    slerpChannel(c, local, start, end);
+                else
+                    scalarChannel(c, mode == AnimationClip.SPLINE, local, start, end);
+            }
+        }
+    }
+
+    private void scalarChannel(int channel, boolean spline, float[] local, int start, int end) {
+        final float[] times = clip.times(), values = clip.values();
+        final int first = clip.getFirstKey(channel), count = clip.getKeyCount(channel);
+        final int out = clip.getTarget(channel) * rigs, cursor = channel * rigs;
+
+        for (int r = start; r < end; r++) {
+            float t = local[r - start];
+            int k = segment(times, first, count, t, cursors[cursor + r]);
+            cursors[cursor + r] = k;
+
+            int i = first + k;
+            if (k < 0) {
+                scalars[out + r] = values[first];
+                continue;
+            }
+            if (k >= count - 1) {
+                scalars[out + r] = values[first + count - 1];
+                continue;
+            }
+
+            float t0 = times[i], t1 = times[i + 1], dt = t1 - t0;
+            float u = (t - t0) / dt;
+            float p0 = values[i], p1 = values[i + 1];
+            if (!spline) {
+                scalars[out + r] = p0 + (p1 - p0) * u;
+                continue;
+            }
+
+            // Catmull-Rom tangents over the neighboring keys, scaled to this segment's length;
+            // the end segments use the chord
+            float m0 = k > 0 ? (p1 - values[i - 1]) / (t1 - times[i - 1]) * dt : p1 - p0;
+            float m1 = k + 2 < count ? (values[i + 2] - p0) / (times[i + 2] - t0) * dt : p1 - p0;
+            float u2 = u * u, u3 = u2 * u;
+            scalars[out + r] = (2 * u3 - 3 * u2 + 1) * p0 + (u3 - 2 * u2 + u) * m0
+                    + (-2 * u3 + 3 * u2) * p1 + (u3 - u2) * m1;
+        }
+    }
+
+    private void slerpChannel(int channel, float[] local, int start, int end) {
+        final float[] times = clip.times(), keys = clip.rotations(), arcs = clip.arcs();
+        final int first = clip.getFirstKey(channel), count = clip.getKeyCount(channel);
+        final int out = clip.getTarget(channel) * 4 * rigs, cursor = channel * rigs;
+        final float[] q = rotations;
+
+        for (int r = start; r < end; r++) {
+            float t = local[r - start];
+            int k = segment(times, first, count, t, cursors[cursor + r]);
+            cursors[cursor + r] = k;
+
+            int a = first + Math.max(0, Math.min(count - 1, k));
+            float ax = keys[a * 4], ay = keys[a * 4 + 1], az = keys[a * 4 + 2], aw = keys[a * 4 + 3];
+            if (k < 0 || k >= count - 1) {
+                q[out + r] = ax;
+                q[out + rigs + r] = ay;
+                q[out + 2 * rigs + r] = az;
+                q[out + 3 * rigs + r] = aw;
+                continue;
+            }
+
+            int b = (a + 1) * 4;
+            float bx = keys[b], by = keys[b + 1], bz = keys[b + 2], bw = keys[b + 3];
+            float u = (t - times[a]) / (times[a + 1] - times[a]);
+
+            // As Quaternion.slerp: along the shorter arc, linear where the keys nearly coincide
+            float sign = arcs[a * 3], angle = arcs[a * 3 + 1];
+            float s0, s1;
+            if (angle == 0) {
+                s0 = 1 - u;
+                s1 = u * sign;
+            } else {
+                double invSin = arcs[a * 3 + 2];
+                s0 = (float) (Math.sin((1.0 - u) * angle) * invSin);
+                s1 = (float) (Math.sin(u * angle) * invSin) * sign;
+            }
+            float x = s0 * ax + s1 * bx, y = s0 * ay + s1 * by, z = s0 * az + s1 * bz, w = s0 * aw + s1 * bw;
+            float inv = 1 / (float) Math.sqrt(x * x + y * y + z * z + w * w);
+            q[out + r] = x * inv;
+            q[out + rigs + r] = y * inv;
+            q[out + 2 * rigs + r] = z * inv;
+            q[out + 3 * rigs + r] = w * inv;
+        }
+    }
+
+    /**
+     * @return k such that key k starts the segment holding t, -1 before the first key,
+     * count - 1 at or after the last; {@code hint} is tried first
+     */
+    private static int segment(float[] times, int first, int count, float t, int hint) {
+        if (t < times[first])
+            return -1;
+        if (t >= times[first + count - 1])
+            return count - 1;
+
+        // Same segment as last time, or the next one
+        if (hint >= 0 && hint < count - 1 && times[first + hint] <= t) {
+            if (t < times[first + hint + 1])
+                return hint;
+            if (hint + 2 < count && t < times[first + hint + 2])
+                return hint + 1;
+        }
+
+        // times[first + lo] <= t < times[first + hi]
+        int lo = 0, hi = count - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (times[first + mid] <= t)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Splits the rigs in halves down to GRAIN
+    private static final class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AnimationBatch batch;
+        private final int from, to;
+        private final double time;
+
+        Range(AnimationBatch batch, int from, int to, double time) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.time = time;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                batch.evaluate(from, to, time);
+                return;
+            }
+            // Split on a block boundary, so no block is shared by two tasks
+            int mid = from + ((to - from) / 2 + BLOCK - 1) / BLOCK * BLOCK;
+            invokeAll(new Range(batch, from, mid, time), new Range(batch, mid, to, time));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package lwjgl.test.anim;
+
+import java.util.Arrays;
+
+/**
+ * Keyframed motion of the cube arm's animatable properties, stored in flat primitive arrays.
+ * <p>
+ * A clip is a set of channels, each driving one target. Scalar channels animate one property
+ * of the arm (a rotation angle or a segment stretch) with {@link #LINEAR} or {@link #SPLINE}
+ * (Catmull-Rom) interpolation; rotation channels animate the whole orientation of the base or
+ * the joint with quaternion keys, interpolated by slerp. The keys of all channels live in
+ * shared arrays: channel {@code c} owns times {@code [first[c], first[c] + keys[c])} and the
+ * values (or the four quaternion components of each key) at the same key indices.
+ * <p>
+ * Before its first key a channel holds the first value, after its last key the last one.
+ * Clips are immutable once handed to an {@link AnimationBatch}.
+ */
+public class AnimationClip {
+
+    // Scalar targets, the properties the arrow keys change
+    public static final int BASE_ROTATE_Y = 0;
+    public static final int JOINT_ROTATE_X = 1;
+    public static final int THIRD_SPIN = 2;
+    public static final int FIRST_STRETCH_Y = 3;
+    public static final int SECOND_STRETCH_X = 4;
+    public static final int THIRD_STRETCH_Y = 5;
+    public static final int SCALAR_TARGETS = 6;
+
+    // Rotation targets, whole node orientations
+    public static final int BASE_ROTATION = 0;
+    public static final int JOINT_ROTATION = 1;
+    public static final int ROTATION_TARGETS = 2;
+
+    // Interpolation of a channel
+    public static final int LINEAR = 0;
+    public static final int SPLINE = 1;
+    public static final int SLERP = 2;
+
+    private float duration;
+    private boolean looping = true;
+
+    private int channels;
+    private int[] target = new int[0], mode = new int[0], first = new int[0], keys = new int[0];
+
+    private int keyCount;
+    private float[] times = new float[0];
+    private float[] values = new float[0];
+    // x, y, z, w per key of rotation channels, at 4 * key
+    private float[] rotations = new float[0];
+    // Per key of rotation channels, for the segment it starts, at 3 * key: sign the next key is
+    // flipped by to take the shorter arc, arc angle (0 where slerp falls back to lerp) and 1 / sin(angle)
+    private float[] arcs = new float[0];
+
+    /**
+     * Adds a scalar channel.
+     *
+     * @param mode   {@link #LINEAR} or {@link #SPLINE}
+     * @param times  key times in seconds, strictly increasing
+     * @param values one value per key
+     */
+    public AnimationClip addChannel(int target, int mode, float[] times, float[] values) {
+        if (target < 0 || target >= SCALAR_TARGETS)
+            throw new IllegalArgumentException("Unknown scalar target: " + target);
+        if (mode != LINEAR && mode != SPLINE)
+            throw new IllegalArgumentException("Scalar channels interpolate LINEAR or SPLINE, not " + mode);
+        if (values.length != times.length)
+            throw new IllegalArgumentException(times.length + " key times but " + values.length + " values");
+
+        int key = addKeys(target, mode, times);
+        System.arraycopy(values, 0, this.values, key, values.length);
+        return this;
+    }
+
+    /**
+     * Adds a rotation channel, interpolated by slerp.
+     *
+     * @param times      key times in seconds, strictly increasing
+     * @param quaternions x, y, z, w of a unit quaternion per key
+     */
+    public AnimationClip addRotationChannel(int target, float[] times, float[] quaternions) {
+        if (target < 0 || target >= ROTATION_TARGETS)
+            throw new IllegalArgumentException("Unknown rotation target: " + target);
+        if (quaternions.length != times.length * 4)
+            throw new IllegalArgumentException(times.length + " key times but " + quaternions.length / 4f + " rotations");
+
+        int key = addKeys(target, SLERP, times);
+        System.arraycopy(quaternions, 0, rotations, key * 4, quaternions.length);
+
+        // Constant over a segment, so worked out once here rather than per evaluation
+        for (int k = key; k < key + times.length - 1; k++) {
+            int a = k * 4, b = a + 4;
+            float cos = rotations[a] * rotations[b] + rotations[a + 1] * rotations[b + 1]
+                    + rotations[a + 2] * rotations[b + 2] + rotations[a + 3] * rotations[b + 3];
+            arcs[k * 3] = cos < 0 ? -1 : 1;
+            cos = Math.abs(cos);
+            if (cos > 0.9995f) {
+                arcs[k * 3 + 1] = 0;
+                arcs[k * 3 + 2] = 0;
+            } else {
+                double angle = Math.acos(cos);
+                arcs[k * 3 + 1] = (float) angle;
+                arcs[k * 3 + 2] = (float) (1.0 / Math.sin(angle));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Plays the clip once and holds the last pose instead of starting over; clips loop by default.
+     */
+    public AnimationClip setLooping(boolean looping) {
+        this.looping = looping;
+        return this;
+    }
+
+    public boolean isLooping() {
+        return looping;
+    }
+
+    /**
+     * @return time of the last key of any channel
+     */
+    public float getDuration() {
+        return duration;
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    public int getTarget(int channel) {
+        return target[channel];
+    }
+
+    /**
+     * @return {@link #LINEAR}, {@link #SPLINE} or {@link #SLERP}
+     */
+    public int getMode(int channel) {
+        return mode[channel];
+    }
+
+    public int getFirstKey(int channel) {
+        return first[channel];
+    }
+
+    public int getKeyCount(int channel) {
+        return keys[channel];
+    }
+
+    // Shared key arrays, for AnimationBatch; indices as given by getFirstKey and getKeyCount
+
+    float[] times() {
+        return times;
+    }
+
+    float[] values() {
+        return values;
+    }
+
+    float[] rotations() {
+        return rotations;
+    }
+
+    float[] arcs() {
+        return arcs;
+    }
+
+    // Appends the channel and its key times, making room for its values; returns its first key
+    private int addKeys(int channelTarget, int channelMode, float[] keyTimes) {
+        if (keyTimes.length == 0)
+            throw new IllegalArgumentException("A channel needs at least one key");
+        for (int i = 1; i < keyTimes.length; i++) {
+            if (!(keyTimes[i] > keyTimes[i - 1]))
+                throw new IllegalArgumentException("Key times must increase: " + keyTimes[i - 1] + ", " + keyTimes[i]);
+        }
+        for (int c = 0; c < channels; c++) {
+            if (target[c] == channelTarget && (mode[c] == SLERP) == (channelMode == SLERP))
+                throw new IllegalArgumentException("Target " + channelTarget + " is already animated");
+        }
+
+        if (channels == target.length) {
+            int capacity = Math.max(4, channels * 2);
+            target = Arrays.copyOf(target, capacity);
+            mode = Arrays.copyOf(mode, capacity);
+            first = Arrays.copyOf(first, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        int key = keyCount;
+        keyCount += keyTimes.length;
+        if (times.length < keyCount) {
+            int capacity = Math.max(keyCount, times.length * 2);
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity);
+            rotations = Arrays.copyOf(rotations, capacity * 4);
+            arcs = Arrays.copyOf(arcs, capacity * 3);
+        }
+
+        System.arraycopy(keyTimes, 0, times, key, keyTimes.length);
+        target[channels] = channelTarget;
+        mode[channels] = channelMode;
+        first[channels] = key;
+        keys[channels] = keyTimes.length;
+        channels++;
+        duration = Math.max(duration, keyTimes[keyTimes.length - 1]);
+        return key;
+    }
+}
@@ -0,0 +1,487 @@
+package lwjgl.test.anim;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.CubeScene;
+import lwjgl.test.scene.SceneNode;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Poses of many copies of one {@link KinematicChain}, moved by inverse kinematics so each
+ * one's end effector reaches its own target.
+ * <p>
+ * Data is kept as planes over the arms: joint {@code j} of arm {@code a} is at
+ * {@code j * arms + a}, component {@code c} (x, y, z) of a target or tip at
+ * {@code c * arms + a}. {@link #forward()} places every tip from the joint values;
+ * {@link #solve()} runs cyclic coordinate descent: each sweep visits the joints from the
+ * tip to the root and sets each one, within its limits, to the value that brings the tip
+ * closest to the target with the others held, turning a revolute joint by the angle between
+ * tip and target around its axis and sliding a prismatic one by the distance along it. An
+ * arm stops once its tip is within the tolerance, once a sweep brings it less than 1% closer
+ * (the target is out of reach, or the limits hold it back), or after the maximum number of
+ * sweeps; starting from the last tick's pose, most arms need only a few.
+ * <p>
+ * Arms are processed in blocks. Within a block each step runs over every arm at once: one
+ * pass places the joint frames of the arms still being solved, then one pass per joint
+ * moves that joint of those arms, so the inner loops are plain array loops.
+ * {@link #solve(ForkJoinPool)} splits the arms into ranges for a fork/join pool; arms are
+ * independent and solved the same way either way, so parallel and serial solving give
+ * identical poses.
+ */
+public class IkBatch {
+
+    // Arms processed together
+    private static final int BLOCK = 256;
+    // Arms below which a range is not split further
+    private static final int GRAIN = 1024;
+
+    private static final float DEGREES = (float) (180 / Math.PI);
+    private static final float RADIANS = (float) (Math.PI / 180);
+    // Squared distance from a revolute axis below which the tip or target gives no direction
+    private static final float EPSILON = 1e-12f;
+    // An arm stops once a sweep leaves it farther than this times its last error
+    private static final float PROGRESS = 0.99f;
+
+    private final KinematicChain chain;
+    private final int arms;
+    private final int joints;
+
+    private final float[] values;
+    private final float[] targets;
+    private final float[] tips;
+    private final float[] errors;
+    private final int[] sweeps;
+
+    private int maxSweeps = 32;
+    private float tolerance = 0.01f;
+
+    // Per block: world pivot x, y, z and axis x, y, z of every joint, at (j * 6 + k) * BLOCK
+    private final ThreadLocal<float[]> blockFrames = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[joints * 6 * BLOCK];
+        }
+    };
+    // Per block: whether each arm is still being solved
+    private static final ThreadLocal<boolean[]> blockActive = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[BLOCK];
+        }
+    };
+
+    public IkBatch(KinematicChain chain, int arms) {
+        if (arms <= 0)
+            throw new IllegalArgumentException("Arm count must be positive: " + arms);
+        if (chain.getJointCount() == 0)
+            throw new IllegalArgumentException("The chain has no joints");
+        this.chain = chain;
+        this.arms = arms;
+        this.joints = chain.getJointCount();
+
+        values = new float[joints * arms];
+        targets = new float[3 * arms];
+        tips = new float[3 * arms];
+        errors = new float[arms];
+        sweeps = new int[arms];
+
+        // Every joint starts at 0, or at its limit nearest to it
+        for (int j = 0; j < joints; j++)
+            Arrays.fill(values, j * arms, (j + 1) * arms, Math.max(chain.getMin(j), Math.min(chain.getMax(j), 0)));
+    }
+
+    public KinematicChain getChain() {
+        return chain;
+    }
+
+    public int getArmCount() {
+        return arms;
+    }
+
+    /**
+     * Stops solving an arm after {@code sweeps} passes over its joints; 32 by default.
+     */
+    public IkBatch setMaxSweeps(int sweeps) {
+        if (sweeps < 0)
+            throw new IllegalArgumentException("Sweep count must not be negative: " + sweeps);
+        this.maxSweeps = sweeps;
+        return this;
+    }
+
+    /**
+     * Counts an arm as solved once its tip is within {@code distance} of its target; 0.01 by default.
+     */
+    public IkBatch setTolerance(float distance) {
+        if (!(distance >= 0))
+            throw new IllegalArgumentException("Tolerance must not be negative: " + distance);
+        this.tolerance = distance;
+        return this;
+    }
+
+    /**
+     * Sets a joint of an arm, as is; solving clamps it to the joint's limits once it moves it.
+     */
+    public IkBatch setValue(int arm, int joint, float value) {
+        values[joint * arms + arm] = value;
+        return this;
+    }
+
+    public float getValue(int arm, int joint) {
+        return values[joint * arms + arm];
+    }
+
+    public IkBatch setTarget(int arm, float x, float y, float z) {
+        targets[arm] = x;
+        targets[arms + arm] = y;
+        targets[2 * arms + arm] = z;
+        return this;
+    }
+
+    /**
+     * @return component {@code c} (0 to 2 for x, y, z) of an arm's end effector as of the last solve or forward pass
+     */
+    public float getTip(int arm, int c) {
+        return tips[c * arms + arm];
+    }
+
+    /**
+     * @return distance from an arm's end effector to its target as of the last solve or forward pass
+     */
+    public float getError(int arm) {
+        return errors[arm];
+    }
+
+    /**
+     * @return sweeps the last solve took for an arm; {@link #getError} tells whether it got there
+     */
+    public int getSweeps(int arm) {
+        return sweeps[arm];
+    }
+
+    /**
+     * @return the joint value planes, for bulk readers and writers; see the class comment for the layout
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the target planes, for bulk writers; see the class comment for the layout
+     */
+    public float[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return the tip planes, for bulk readers; see the class comment for the layout
+     */
+    public float[] getTips() {
+        return tips;
+    }
+
+    /**
+     * Places every end effector from the joint values and measures its distance to the
+     * target, on the calling thread.
+     */
+    public void forward() {
+        forward(0, arms);
+    }
+
+    /**
+     * Places every end effector, split over {@code pool}, or on the calling thread if {@code pool} is null.
+     */
+    public void forward(ForkJoinPool pool) {
+        if (pool == null || arms <= GRAIN)
+            forward(0, arms);
+        else
+            pool.invoke(new Range(this, 0, arms, false));
+    }
+
+    /**
+     * Moves every arm towards its target on the calling thread.
+     */
+    public void solve() {
+        solve(0, arms);
+    }
+
+    /**
+     * Moves every arm towards its target, split over {@code pool}, or on the calling thread if {@code pool} is null.
+     */
+    public void solve(ForkJoinPool pool) {
+        if (pool == null || arms <= GRAIN)
+            solve(0, arms);
+        else
+            pool.invoke(new Range(this, 0, arms, true));
+    }
+
+    /**
+     * Takes an arm's joint values from the arm of {@code scene}; the chain must be a
+     * {@link KinematicChain#arm} chain.
+     */
+    public IkBatch setPose(int arm, CubeScene scene) {
+        checkArmChain();
+        values[KinematicChain.BASE_YAW * arms + arm] = scene.getBase().getRotateY();
+        values[KinematicChain.FIRST_STRETCH * arms + arm] = scene.getFirstCube().getStretchY();
+        values[KinematicChain.JOINT_ROLL * arms + arm] = scene.getJoint().getRotateX();
+        values[KinematicChain.SECOND_STRETCH * arms + arm] = scene.getSecondCube().getStretchX();
+        values[KinematicChain.THIRD_STRETCH * arms + arm] = scene.getThirdCube().getStretchY();
+        return this;
+    }
+
+    /**
+     * Poses the arm of {@code scene} like {@code arm}, touching only what changed; the chain
+     * must be a {@link KinematicChain#arm} chain.
+     */
+    public void apply(int arm, CubeScene scene) {
+        checkArmChain();
+        SceneNode base = scene.getBase(), joint = scene.getJoint();
+        Cube3D first = scene.getFirstCube(), second = scene.getSecondCube(), third = scene.getThirdCube();
+
+        float yaw = getValue(arm, KinematicChain.BASE_YAW), roll = getValue(arm, KinematicChain.JOINT_ROLL);
+        if (base.getRotateY() != yaw)
+            base.setRotateY(yaw);
+        if (joint.getRotateX() != roll)
+            joint.setRotateX(roll);
+
+        float firstStretch = getValue(arm, KinematicChain.FIRST_STRETCH);
+        float secondStretch = getValue(arm, KinematicChain.SECOND_STRETCH);
+        float thirdStretch = getValue(arm, KinematicChain.THIRD_STRETCH);
+        if (first.getStretchY() != firstStretch || second.getStretchX() != secondStretch || third.getStretchY() != thirdStretch)
+            scene.setStretches(firstStretch, secondStretch, thirdStretch);
+    }
+
+    private void checkArmChain() {
+        if (!chain.isArm())
+            throw new IllegalStateException("Not a batch of cube arms");
+    }
+
+    // Places arms [from, to)
+    private void forward(int from, int to) {
+        final float[] frames = blockFrames.get();
+        final boolean[] active = blockActive.get();
+        for (int start = from; start < to; start += BLOCK) {
+            Arrays.fill(active, true);
+            place(frames, active, false, start, Math.min(to, start + BLOCK));
+        }
+    }
+
+    // Solves arms [from, to)
+    private void solve(int from, int to) {
+        final float[] frames = blockFrames.get();
+        final boolean[] active = blockActive.get();
+
+        for (int start = from; start < to; start += BLOCK) {
+            int end = Math.min(to, start + BLOCK);
+            Arrays.fill(sweeps, start, end, 0);
+            Arrays.fill(active, true);
+
+            for (int sweep = 0; ; sweep++) {
+                if (place(frames, active, sweep > 0, start, end) == 0 || sweep == maxSweeps)
+                    break;
+
+                for (int j = joints - 1; j >= 0; j--) {
+                    if (chain.getType(j) == KinematicChain.REVOLUTE)
+                        turn(j, frames, active, start, end);
+                    else
+                        slide(j, frames, active, start, end);
+                }
+                for (int a = start; a < end; a++) {
+                    if (active[a - start])
+                        sweeps[a]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Composes the joint frames of the active arms in [start, end) from the root, keeping
+     * every joint's world pivot and axis in {@code frames}, and places the tips. Arms within
+     * the tolerance of their targets, or, if {@code swept}, hardly closer than before the
+     * last sweep, stop being active.
+     *
+     * @return how many of the arms are still active
+     */
+    private int place(float[] frames, boolean[] active, boolean swept, int start, int end) {
+        final float[] offset = chain.offsets(), axis = chain.axes(), gain = chain.gains(), tip = chain.tip();
+        int unsolved = 0;
+
+        for (int a = start; a < end; a++) {
+            int i = a - start;
+            if (!active[i])
+                continue;
+            // Rotation (rows) and origin of the current frame
+            float r00 = 1, r01 = 0, r02 = 0, r10 = 0, r11 = 1, r12 = 0, r20 = 0, r21 = 0, r22 = 1;
+            float px = 0, py = 0, pz = 0;
+
+            for (int j = 0; j < joints; j++) {
+                float ox = offset[j * 3], oy = offset[j * 3 + 1], oz = offset[j * 3 + 2];
+                px += r00 * ox + r01 * oy + r02 * oz;
+                py += r10 * ox + r11 * oy + r12 * oz;
+                pz += r20 * ox + r21 * oy + r22 * oz;
+
+                float nx = axis[j * 3], ny = axis[j * 3 + 1], nz = axis[j * 3 + 2];
+                float wx = r00 * nx + r01 * ny + r02 * nz;
+                float wy = r10 * nx + r11 * ny + r12 * nz;
+                float wz = r20 * nx + r21 * ny + r22 * nz;
+
+                int f = j * 6 * BLOCK + i;
+                frames[f] = px;
+                frames[f + BLOCK] = py;
+                frames[f + 2 * BLOCK] = pz;
+                frames[f + 3 * BLOCK] = wx;
+                frames[f + 4 * BLOCK] = wy;
+                frames[f + 5 * BLOCK] = wz;
+
+                float value = values[j * arms + a];
+                if (chain.getType(j) == KinematicChain.PRISMATIC) {
+                    float d = gain[j] * value;
+                    px += wx * d;
+                    py += wy * d;
+                    pz += wz * d;
+                    continue;
+                }
+
+                // r = r * rotation around the joint's own axis (Rodrigues)
+                float angle = value * RADIANS;
+                float c = (float) Math.cos(angle), s = (float) Math.sin(angle), t = 1 - c;
+                float m00 = t * nx * nx + c, m01 = t * nx * ny - s * nz, m02 = t * nx * nz + s * ny;
+                float m10 = t * nx * ny + s * nz, m11 = t * ny * ny + c, m12 = t * ny * nz - s * nx;
+                float m20 = t * nx * nz - s * ny, m21 = t * ny * nz + s * nx, m22 = t * nz * nz + c;
+
+                float a0 = r00, a1 = r01, a2 = r02;
+                r00 = a0 * m00 + a1 * m10 + a2 * m20;
+                r01 = a0 * m01 + a1 * m11 + a2 * m21;
+                r02 = a0 * m02 + a1 * m12 + a2 * m22;
+                a0 = r10;
+                a1 = r11;
+                a2 = r12;
+                r10 = a0 * m00 + a1 * m10 + a2 * m20;
+                r11 = a0 * m01 + a1 * m11 + a2 * m21;
+                r12 = a0 * m02 + a1 * m12 + a2 * m22;
+                a0 = r20;
+                a1 = r21;
+                a2 = r22;
+                r20 = a0 * m00 + a1 * m10 + a2 * m20;
+                r21 = a0 * m01 + a1 * m11 + a2 * m21;
+                r22 = a0 * m02 + a1 * m12 + a2 * m22;
+            }
+
+            float x = px + r00 * tip[0] + r01 * tip[1] + r02 * tip[2];
+            float y = py + r10 * tip[0] + r11 * tip[1] + r12 * tip[2];
+            float z = pz + r20 * tip[0] + r21 * tip[1] + r22 * tip[2];
+            tips[a] = x;
+            tips[arms + a] = y;
+            tips[2 * arms + a] = z;
+
+            float dx = targets[a] - x, dy = targets[arms + a] - y, dz = targets[2 * arms + a] - z;
+            float error = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (error <= tolerance || swept && error > errors[a] * PROGRESS)
+                active[i] = false;
+            else
+                unsolved++;
+            errors[a] = error;
+        }
+        return unsolved;
+    }
+
+    // Turns revolute joint j of the active arms in [start, end), carrying their tips along
+    private void turn(int j, float[] frames, boolean[] active, int start, int end) {
+        final int f = j * 6 * BLOCK, v = j * arms;
+
+        for (int a = start; a < end; a++) {
+            if (!active[a - start])
+                continue;
+            int i = f + a - start;
+            float cx = frames[i], cy = frames[i + BLOCK], cz = frames[i + 2 * BLOCK];
+            float nx = frames[i + 3 * BLOCK], ny = frames[i + 4 * BLOCK], nz = frames[i + 5 * BLOCK];
+
+            // Pivot to tip and pivot to target, compared across the axis
+            float ux = tips[a] - cx, uy = tips[arms + a] - cy, uz = tips[2 * arms + a] - cz;
+            float wx = targets[a] - cx, wy = targets[arms + a] - cy, wz = targets[2 * arms + a] - cz;
+            float un = ux * nx + uy * ny + uz * nz, wn = wx * nx + wy * ny + wz * nz;
+            float dot = ux * wx + uy * wy + uz * wz - un * wn;
+            float cross = nx * (uy * wz - uz * wy) + ny * (uz * wx - ux * wz) + nz * (ux * wy - uy * wx);
+            if (ux * ux + uy * uy + uz * uz - un * un < EPSILON || wx * wx + wy * wy + wz * wz - wn * wn < EPSILON)
+                continue;
+
+            float old = values[v + a];
+            float wanted = old + (float) Math.atan2(cross, dot) * DEGREES;
+            float value = chain.clamp(j, wanted, values, arms, a);
+            values[v + a] = value;
+
+            // Rotate the tip around the axis by the angle actually turned; unless a limit cut
+            // the turn short, its cosine and sine are those of the angle between the two
+            float c, s;
+            if (value == wanted) {
+                float inv = 1 / (float) Math.sqrt(dot * dot + cross * cross);
+                c = dot * inv;
+                s = cross * inv;
+            } else {
+                float angle = (value - old) * RADIANS;
+                c = (float) Math.cos(angle);
+                s = (float) Math.sin(angle);
+            }
+            float k = un * (1 - c);
+            tips[a] = cx + ux * c + (ny * uz - nz * uy) * s + nx * k;
+            tips[arms + a] = cy + uy * c + (nz * ux - nx * uz) * s + ny * k;
+            tips[2 * arms + a] = cz + uz * c + (nx * uy - ny * ux) * s + nz * k;
+        }
+    }
+
+    // Slides prismatic joint j of the active arms in [start, end), carrying their tips along
+    private void slide(int j, float[] frames, boolean[] active, int start, int end) {
+        final int f = j * 6 * BLOCK, v = j * arms;
+        final float gain = chain.gains()[j];
+
+        for (int a = start; a < end; a++) {
+            if (!active[a - start])
+                continue;
+            int i = f + a - start;
+            float nx = frames[i + 3 * BLOCK], ny = frames[i + 4 * BLOCK], nz = frames[i + 5 * BLOCK];
+
+            float along = (targets[a] - tips[a]) * nx + (targets[arms + a] - tips[arms + a]) * ny
+                    + (targets[2 * arms + a] - tips[2 * arms + a]) * nz;
+            float old = values[v + a];
+            float value = chain.clamp(j, old + along / gain, values, arms, a);
+            values[v + a] = value;
+
+            float d = (value - old) * gain;
+            tips[a] += nx * d;
+            tips[arms + a] += ny * d;
+            tips[2 * arms + a] += nz * d;
+        }
+    }
+
+    // Splits the arms in halves down to GRAIN
+    private static final class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IkBatch batch;
+        private final int from, to;
+        private final boolean solve;
+
+        Range(IkBatch batch, int from, int to, boolean solve) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.solve = solve;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                if (solve)
+                    batch.solve(from, to);
+                else
+                    batch.forward(from, to);
+                return;
+            }
+            // Split on a block boundary, so no block is shared by two tasks
+            int mid = from + ((to - from) / 2 + BLOCK - 1) / BLOCK * BLOCK;
+            invokeAll(new Range(batch, from, mid, solve), new Range(batch, mid, to, solve));
+        }
+    }
+}
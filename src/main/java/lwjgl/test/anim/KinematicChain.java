@@ -0,0 +1,252 @@
+package lwjgl.test.anim;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.CubeScene;
+import lwjgl.test.scene.SceneNode;
+
+import java.util.Arrays;
+
+/**
+ * A serial chain of one-axis joints from a fixed root to an end effector, with limits on the
+ * joint values, for {@link IkBatch}.
+ * <p>
+ * Every joint first moves by a fixed offset in the frame of the joint before it, then either
+ * turns its frame around its axis by its value in degrees ({@link #REVOLUTE}) or slides it
+ * along the axis by {@code gain} times its value ({@link #PRISMATIC}). The end effector sits
+ * at the tip offset in the frame of the last joint. Values are clamped to a range per joint,
+ * and a coupled limit keeps one joint's value within some distance of another's.
+ * <p>
+ * {@link #arm(CubeScene)} models the cube arm, so the arrow key limits hold for solved poses
+ * too; the third cube's spin leaves the tip where it is and is not a joint.
+ */
+public class KinematicChain {
+
+    // Joint types
+    public static final int REVOLUTE = 0;
+    public static final int PRISMATIC = 1;
+
+    // Joints of arm()
+    public static final int BASE_YAW = 0;
+    public static final int FIRST_STRETCH = 1;
+    public static final int JOINT_ROLL = 2;
+    public static final int SECOND_STRETCH = 3;
+    public static final int THIRD_STRETCH = 4;
+    public static final int ARM_JOINTS = 5;
+
+    // The keys stretch the arm without bound; solutions stay below this
+    private static final float MAX_STRETCH = 32;
+
+    private int joints;
+    private int[] type = new int[0];
+    // x, y, z per joint, at 3 * joint
+    private float[] offset = new float[0], axis = new float[0];
+    private float[] gain = new float[0], min = new float[0], max = new float[0];
+    private final float[] tip = new float[3];
+
+    // value[coupled] <= value[limiting] + coupledMax, per coupled limit
+    private int couplings;
+    private int[] coupled = new int[0], limiting = new int[0];
+    private float[] coupledMax = new float[0];
+
+    private boolean arm;
+
+    /**
+     * Appends a joint turning around {@code (ax, ay, az)} after moving by {@code (ox, oy, oz)}.
+     *
+     * @return the new joint's index
+     */
+    public int addRevolute(float ox, float oy, float oz, float ax, float ay, float az) {
+        return addJoint(REVOLUTE, ox, oy, oz, ax, ay, az, 1);
+    }
+
+    /**
+     * Appends a joint sliding {@code gain} units along {@code (ax, ay, az)} per unit of its
+     * value, after moving by {@code (ox, oy, oz)}.
+     *
+     * @return the new joint's index
+     */
+    public int addPrismatic(float ox, float oy, float oz, float ax, float ay, float az, float gain) {
+        if (gain == 0)
+            throw new IllegalArgumentException("A prismatic joint needs a non-zero gain");
+        return addJoint(PRISMATIC, ox, oy, oz, ax, ay, az, gain);
+    }
+
+    /**
+     * Places the end effector in the frame of the last joint.
+     */
+    public KinematicChain setTip(float x, float y, float z) {
+        tip[0] = x;
+        tip[1] = y;
+        tip[2] = z;
+        return this;
+    }
+
+    /**
+     * Limits a joint's value to {@code [min, max]}; joints are unlimited by default.
+     */
+    public KinematicChain setLimits(int joint, float min, float max) {
+        checkJoint(joint);
+        if (!(min <= max))
+            throw new IllegalArgumentException("Empty limits for joint " + joint + ": " + min + ", " + max);
+
+        this.min[joint] = min;
+        this.max[joint] = max;
+        return this;
+    }
+
+    /**
+     * Keeps {@code value[joint] <= value[other] + maxAbove}. The solver holds this by limiting
+     * whichever of the two joints it is moving.
+     */
+    public KinematicChain addCoupledLimit(int joint, int other, float maxAbove) {
+        checkJoint(joint);
+        checkJoint(other);
+        if (joint == other)
+            throw new IllegalArgumentException("A joint cannot limit itself: " + joint);
+
+        if (couplings == coupled.length) {
+            int capacity = Math.max(2, couplings * 2);
+            coupled = Arrays.copyOf(coupled, capacity);
+            limiting = Arrays.copyOf(limiting, capacity);
+            coupledMax = Arrays.copyOf(coupledMax, capacity);
+        }
+        coupled[couplings] = joint;
+        limiting[couplings] = other;
+        coupledMax[couplings] = maxAbove;
+        couplings++;
+        return this;
+    }
+
+    public int getJointCount() {
+        return joints;
+    }
+
+    /**
+     * @return {@link #REVOLUTE} or {@link #PRISMATIC}
+     */
+    public int getType(int joint) {
+        return type[joint];
+    }
+
+    public float getMin(int joint) {
+        return min[joint];
+    }
+
+    public float getMax(int joint) {
+        return max[joint];
+    }
+
+    /**
+     * @return whether this chain was built by {@link #arm(CubeScene)}, with its joint order
+     */
+    public boolean isArm() {
+        return arm;
+    }
+
+    /**
+     * Clamps a value for {@code joint} to its own limits and to the coupled limits it takes
+     * part in, given the other joints' values in {@code values} at {@code values[j * stride + index]}.
+     */
+    public float clamp(int joint, float value, float[] values, int stride, int index) {
+        float lo = min[joint], hi = max[joint];
+        for (int c = 0; c < couplings; c++) {
+            if (coupled[c] == joint)
+                hi = Math.min(hi, values[limiting[c] * stride + index] + coupledMax[c]);
+            else if (limiting[c] == joint)
+                lo = Math.max(lo, values[coupled[c] * stride + index] - coupledMax[c]);
+        }
+        // A coupled limit can cross the joint's own range; the joint's own limits win
+        if (lo > max[joint])
+            lo = max[joint];
+        if (hi < lo)
+            hi = lo;
+        return value < lo ? lo : value > hi ? hi : value;
+    }
+
+    /**
+     * Models the cube arm of {@code scene} in its current shape. Joint values are the
+     * arrow-key properties: the base's Y angle, the first cube's Y stretch, the joint's X
+     * angle, the second cube's X stretch and the third cube's Y stretch; the tip is the
+     * bottom of the third cube, in world space.
+     * <p>
+     * Stretches are limited as the shrink keys limit them, to at least 1, and as
+     * {@code EXTEND_THIRD} does, keeping the third cube a cube shorter than the first.
+     */
+    public static KinematicChain arm(CubeScene scene) {
+        Cube3D first = scene.getFirstCube(), second = scene.getSecondCube(), third = scene.getThirdCube();
+        SceneNode base = scene.getBase(), joint = scene.getJoint();
+        float firstStretch = first.getStretchY(), secondStretch = second.getStretchX(), thirdStretch = third.getStretchY();
+
+        // Stretching the first or third cube by 1 moves it by 1 and grows it by a cube size,
+        // so its far end moves by 1 + size / 2; stretching the second moves the third by 2
+        float firstGain = 1 + first.getSize() / 2;
+        float secondGain = 2;
+        float thirdGain = 1 + third.getSize() / 2;
+        float tipY = third.getyPos() - third.getSize() * thirdStretch / 2;
+
+        KinematicChain chain = new KinematicChain();
+        chain.addRevolute(base.getTranslateX(), base.getTranslateY(), base.getTranslateZ(), 0, 1, 0);
+        chain.addPrismatic(0, joint.getTranslateY() - firstGain * firstStretch, 0, 0, 1, 0, firstGain);
+        chain.addRevolute(joint.getTranslateX(), 0, joint.getTranslateZ(), 1, 0, 0);
+        chain.addPrismatic(third.getxPos() - secondGain * secondStretch, 0, 0, 1, 0, 0, secondGain);
+        chain.addPrismatic(0, tipY + thirdGain * thirdStretch, 0, 0, -1, 0, thirdGain);
+
+        chain.setLimits(FIRST_STRETCH, 1, MAX_STRETCH)
+                .setLimits(SECOND_STRETCH, 1, MAX_STRETCH)
+                .setLimits(THIRD_STRETCH, 1, MAX_STRETCH)
+                .addCoupledLimit(THIRD_STRETCH, FIRST_STRETCH, -1);
+        chain.arm = true;
+        return chain;
+    }
+
+    // Joint data, for IkBatch
+
+    float[] offsets() {
+        return offset;
+    }
+
+    float[] axes() {
+        return axis;
+    }
+
+    float[] gains() {
+        return gain;
+    }
+
+    float[] tip() {
+        return tip;
+    }
+
+    private int addJoint(int jointType, float ox, float oy, float oz, float ax, float ay, float az, float jointGain) {
+        float length = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (!(length > 0))
+            throw new IllegalArgumentException("Joint axis must not be zero");
+
+        if (joints == type.length) {
+            int capacity = Math.max(4, joints * 2);
+            type = Arrays.copyOf(type, capacity);
+            offset = Arrays.copyOf(offset, capacity * 3);
+            axis = Arrays.copyOf(axis, capacity * 3);
+            gain = Arrays.copyOf(gain, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+        }
+        int j = joints++;
+        type[j] = jointType;
+        offset[j * 3] = ox;
+        offset[j * 3 + 1] = oy;
+        offset[j * 3 + 2] = oz;
+        axis[j * 3] = ax / length;
+        axis[j * 3 + 1] = ay / length;
+        axis[j * 3 + 2] = az / length;
+        gain[j] = jointGain;
+        min[j] = Float.NEGATIVE_INFINITY;
+        max[j] = Float.POSITIVE_INFINITY;
+        return j;
+    }
+
+    private void checkJoint(int joint) {
+        if (joint < 0 || joint >= joints)
+            throw new IllegalArgumentException("No joint " + joint + " in a chain of " + joints);
+    }
+}
@@ -0,0 +1,122 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.anim.AnimationBatch;
+import lwjgl.test.anim.AnimationClip;
+import lwjgl.test.math.Quaternion;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times {@link AnimationBatch} evaluating a clip that drives every target of the arm (spline
+ * and linear scalar channels, slerped base and joint rotations, 32 keys each) over many rigs
+ * at random phases and speeds, ticking at 60 Hz:
+ * <ul>
+ * <li>serially on the calling thread;</li>
+ * <li>split over a fork/join pool of one thread per core.</li>
+ * </ul>
+ * The two must produce identical poses; the benchmark fails if they do not.
+ * <p>
+ * Usage: {@code AnimationBenchmark [ticks] [rigCounts...]}. Each size prints one tab separated
+ * line: rigs, serial ms per tick, parallel ms per tick, both per 10k rigs.
+ */
+public class AnimationBenchmark {
+
+    private static final int KEYS = 32;
+    private static final float KEY_SECONDS = 0.25f;
+    private static final double TICK_SECONDS = 1.0 / 60;
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int[] sizes = {1000, 10000, 100000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        AnimationClip clip = clip(new Random(42));
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int rigs : sizes)
+                run(clip, rigs, ticks, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void run(AnimationClip clip, int rigs, int ticks, ForkJoinPool pool) {
+        Random random = new Random(7);
+        AnimationBatch serial = new AnimationBatch(clip, rigs);
+        AnimationBatch parallel = new AnimationBatch(clip, rigs);
+        for (int r = 0; r < rigs; r++) {
+            float phase = random.nextFloat() * clip.getDuration();
+            float speed = 0.5f + random.nextFloat();
+            serial.setPhase(r, phase).setSpeed(r, speed);
+            parallel.setPhase(r, phase).setSpeed(r, speed);
+        }
+
+        // Warm up both paths, then time each over the same ticks
+        for (int tick = 0; tick < Math.min(ticks, 100); tick++) {
+            serial.evaluate(tick * TICK_SECONDS);
+            parallel.evaluate(tick * TICK_SECONDS, pool);
+        }
+
+        long t0 = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++)
+            serial.evaluate(tick * TICK_SECONDS);
+        long t1 = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++)
+            parallel.evaluate(tick * TICK_SECONDS, pool);
+        long t2 = System.nanoTime();
+
+        if (!Arrays.equals(serial.getValues(), parallel.getValues())
+                || !Arrays.equals(serial.getRotations(), parallel.getRotations()))
+            throw new IllegalStateException("Parallel evaluation of " + rigs + " rigs differs from serial");
+
+        double serialMs = (t1 - t0) / 1e6 / ticks;
+        double parallelMs = (t2 - t1) / 1e6 / ticks;
+        double per10k = 10000.0 / rigs;
+        System.out.printf("%d rigs, %d channels: serial %.3f ms per tick (%.3f per 10k rigs), " +
+                        "parallel on %d threads %.3f ms per tick (%.3f per 10k rigs)%n",
+                rigs, clip.getChannelCount(), serialMs, serialMs * per10k,
+                pool.getParallelism(), parallelMs, parallelMs * per10k);
+        System.out.printf("%d\t%.4f\t%.4f\t%.4f\t%.4f%n", rigs, serialMs, parallelMs, serialMs * per10k, parallelMs * per10k);
+    }
+
+    // Random keys on every target, the last key equal to the first so the loop is seamless
+    private static AnimationClip clip(Random random) {
+        float[] times = new float[KEYS];
+        for (int k = 0; k < KEYS; k++)
+            times[k] = k * KEY_SECONDS;
+
+        AnimationClip clip = new AnimationClip();
+        for (int target = 0; target < AnimationClip.SCALAR_TARGETS; target++) {
+            boolean stretch = target >= AnimationClip.FIRST_STRETCH_Y;
+            float[] values = new float[KEYS];
+            for (int k = 0; k < KEYS - 1; k++)
+                values[k] = stretch ? 2 + random.nextFloat() * 8 : (random.nextFloat() - 0.5f) * 180;
+            values[KEYS - 1] = values[0];
+            clip.addChannel(target, stretch ? AnimationClip.LINEAR : AnimationClip.SPLINE, times, values);
+        }
+
+        Quaternion q = new Quaternion();
+        for (int target = 0; target < AnimationClip.ROTATION_TARGETS; target++) {
+            float[] rotations = new float[KEYS * 4];
+            for (int k = 0; k < KEYS - 1; k++) {
+                q.identity()
+                        .rotateZ((random.nextFloat() - 0.5f) * 90)
+                        .rotateY((random.nextFloat() - 0.5f) * 360)
+                        .rotateX((random.nextFloat() - 0.5f) * 90);
+                rotations[k * 4] = q.x;
+                rotations[k * 4 + 1] = q.y;
+                rotations[k * 4 + 2] = q.z;
+                rotations[k * 4 + 3] = q.w;
+            }
+            System.arraycopy(rotations, 0, rotations, (KEYS - 1) * 4, 4);
+            clip.addRotationChannel(target, times, rotations);
+        }
+        return clip;
+    }
+}
@@ -0,0 +1,72 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.gl.RecordingBackend;
+import lwjgl.test.math.Quaternion;
+import lwjgl.test.scene.CubeStore;
+
+/**
+ * Headless throughput check for {@link CubeStore}: every frame moves and turns all cubes,
+ * then encodes and submits them through a {@link RecordingBackend}.
+ * <p>
+ * Usage: {@code CubeStoreBenchmark [cubes] [frames] [budgetMs]}. Exits with status 1 when the
+ * average frame takes longer than the budget, so it can gate a build.
+ */
+public class CubeStoreBenchmark {
+
+    public static void main(String[] args) {
+        int cubes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double budgetMs = args.length > 2 ? Double.parseDouble(args[2]) : 50.0;
+
+        CubeStore store = new CubeStore(cubes);
+        int side = (int) Math.ceil(Math.cbrt(cubes));
+        for (int i = 0; i < cubes; i++) {
+            int handle = store.add(0.5f, i % side, (i / side) % side, i / (side * side));
+            store.setRotation(handle, i % 90, i % 45, 0);
+            store.setColor(handle, 0xff000000 | i);
+        }
+
+        RecordingBackend gl = new RecordingBackend(false);
+        Quaternion spin = new Quaternion().rotationAxis(0.5f, 0.3f, 1.0f, 0.1f);
+
+        // Warm up
+        for (int i = 0; i < Math.max(5, frames / 10); i++)
+            frame(store, gl, spin);
+
+        long updateNanos = 0, encodeNanos = 0, worst = 0;
+        int drawCalls = 0;
+        for (int i = 0; i < frames; i++) {
+            long t0 = System.nanoTime();
+            store.translateAll(0.001f, 0.0f, -0.001f);
+            store.rotateAll(spin);
+            long t1 = System.nanoTime();
+            gl.reset();
+            drawCalls = store.render(gl);
+            long t2 = System.nanoTime();
+
+            updateNanos += t1 - t0;
+            encodeNanos += t2 - t1;
+            worst = Math.max(worst, t2 - t0);
+        }
+
+        double updateMs = updateNanos / 1e6 / frames;
+        double encodeMs = encodeNanos / 1e6 / frames;
+        double frameMs = updateMs + encodeMs;
+        System.out.printf("%d cubes, %d frames: update %.3f ms, encode+submit %.3f ms (%d draw calls), " +
+                        "frame %.3f ms avg / %.3f ms worst, budget %.3f ms%n",
+                cubes, frames, updateMs, encodeMs, drawCalls, frameMs, worst / 1e6, budgetMs);
+        System.out.printf("%d\t%.4f\t%.4f\t%.4f\t%.4f%n", cubes, updateMs, encodeMs, frameMs, worst / 1e6);
+
+        if (frameMs > budgetMs) {
+            System.out.println("Over budget");
+            System.exit(1);
+        }
+    }
+
+    private static void frame(CubeStore store, RecordingBackend gl, Quaternion spin) {
+        store.translateAll(0.001f, 0.0f, -0.001f);
+        store.rotateAll(spin);
+        gl.reset();
+        store.render(gl);
+    }
+}
@@ -0,0 +1,67 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.scene.CubeStore;
+import lwjgl.test.scene.CubeTransform;
+import lwjgl.test.scene.CubeVertices;
+
+import java.util.Random;
+
+/**
+ * Transforms the corners and face normals of randomly placed and rotated cubes with both
+ * {@link CubeTransform} kernels and reports the batched kernel's speedup over the scalar one.
+ * Both must produce bit-identical vertices.
+ * <p>
+ * Usage: {@code CubeTransformBenchmark [iterations] [cubeCounts...]}. Each size prints one tab
+ * separated line: cubes, scalar ms, batch ms, speedup.
+ */
+public class CubeTransformBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("Kernel picked for this VM: " + CubeTransform.get());
+        for (int cubes : sizes)
+            run(cubes, iterations);
+    }
+
+    private static void run(int cubes, int iterations) {
+        Random random = new Random(42);
+        CubeStore store = new CubeStore(cubes);
+        for (int i = 0; i < cubes; i++) {
+            int handle = store.add(1.0f, (random.nextFloat() - 0.5f) * 300,
+                    (random.nextFloat() - 0.5f) * 300, (random.nextFloat() - 0.5f) * 300);
+            store.setExtents(handle, 0.5f + random.nextFloat(), 0.5f + random.nextFloat(), 0.5f + random.nextFloat());
+            store.setRotation(handle, random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+        }
+
+        CubeVertices scalar = new CubeVertices(), batch = new CubeVertices();
+        double scalarMs = time(store, CubeTransform.SCALAR, scalar, iterations);
+        double batchMs = time(store, CubeTransform.BATCH, batch, iterations);
+        if (!scalar.sameAs(batch))
+            throw new IllegalStateException("Batched and scalar kernels disagree for " + cubes + " cubes");
+
+        double vertices = cubes * (CubeVertices.CORNERS + CubeVertices.FACES);
+        System.out.printf("%d cubes: scalar %.3f ms, batch %.3f ms (%.1f M vertices/s), %.2fx%n",
+                cubes, scalarMs, batchMs, vertices / batchMs / 1000, scalarMs / batchMs);
+        System.out.printf("%d\t%.4f\t%.4f\t%.3f%n", cubes, scalarMs, batchMs, scalarMs / batchMs);
+    }
+
+    // Best of the timed iterations, after as many warm-up rounds
+    private static double time(CubeStore store, CubeTransform kernel, CubeVertices dst, int iterations) {
+        long best = Long.MAX_VALUE;
+        for (int i = -iterations; i < iterations; i++) {
+            long start = System.nanoTime();
+            store.transformVertices(kernel, dst);
+            long elapsed = System.nanoTime() - start;
+            if (i >= 0)
+                best = Math.min(best, elapsed);
+        }
+        return best / 1e6;
+    }
+}
@@ -0,0 +1,102 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.math.Frustum;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.scene.Bvh;
+import lwjgl.test.scene.CubeStore;
+
+import java.util.Random;
+
+/**
+ * Headless frustum culling benchmark: cubes scattered well beyond the cube scene's view
+ * volume, 1% of them moving every frame, the {@link Bvh} refit below the moved ones and
+ * queried against the scene's projection. A linear scan over all boxes is timed as well.
+ * <p>
+ * Usage: {@code CullingBenchmark [frames] [cubeCounts...]}. Each size prints one tab separated
+ * line: cubes, drawn, culled, refit ms, BVH cull ms, linear cull ms.
+ */
+public class CullingBenchmark {
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        // Same view volume as CubeScene
+        Frustum frustum = new Frustum().set(new Matrix4f()
+                .ortho(-30, 30, -30, 30, -300, 300)
+                .rotate(1.0f, 1.0f, 0.0f, 0.0f));
+
+        for (int cubes : sizes)
+            run(cubes, frames, frustum);
+    }
+
+    private static void run(int cubes, int frames, Frustum frustum) {
+        Random random = new Random(42);
+        CubeStore store = new CubeStore(cubes);
+        for (int i = 0; i < cubes; i++) {
+            int handle = store.add(1.0f + random.nextFloat(),
+                    (random.nextFloat() - 0.5f) * 300, (random.nextFloat() - 0.5f) * 300, (random.nextFloat() - 0.5f) * 1200);
+            store.setRotation(handle, random.nextFloat() * 360, random.nextFloat() * 360, 0);
+        }
+
+        float[] bounds = new float[cubes * 6];
+        store.computeBounds(bounds);
+        Bvh bvh = new Bvh();
+        long buildStart = System.nanoTime();
+        bvh.build(bounds, cubes);
+        double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+        int[] visible = new int[cubes];
+        int moving = Math.max(1, cubes / 100);
+        long refitNanos = 0, cullNanos = 0, linearNanos = 0;
+        int drawn = 0;
+
+        for (int frame = -frames / 5; frame < frames; frame++) {
+            for (int i = 0; i < moving; i++) {
+                int handle = random.nextInt(cubes);
+                store.setPosition(handle,
+                        store.getX(handle) + random.nextFloat() - 0.5f,
+                        store.getY(handle) + random.nextFloat() - 0.5f,
+                        store.getZ(handle) + random.nextFloat() - 0.5f);
+                // Nothing is removed, so handles and slots coincide
+                store.computeBounds(handle, 1, bounds);
+                bvh.markMoved(handle);
+            }
+            long t0 = System.nanoTime();
+            bvh.refitMoved();
+            long t1 = System.nanoTime();
+            drawn = bvh.query(frustum, visible);
+            long t2 = System.nanoTime();
+            int linear = 0;
+            for (int i = 0, o = 0; i < cubes; i++, o += 6) {
+                if (frustum.intersects(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], bounds[o + 4], bounds[o + 5]))
+                    visible[linear++] = i;
+            }
+            long t3 = System.nanoTime();
+
+            if (linear != drawn)
+                throw new IllegalStateException("BVH found " + drawn + " visible cubes, linear scan " + linear);
+
+            // Negative frames are warm-up
+            if (frame >= 0) {
+                refitNanos += t1 - t0;
+                cullNanos += t2 - t1;
+                linearNanos += t3 - t2;
+            }
+        }
+
+        double refitMs = refitNanos / 1e6 / frames;
+        double cullMs = cullNanos / 1e6 / frames;
+        double linearMs = linearNanos / 1e6 / frames;
+        System.out.printf("%d cubes (build %.1f ms, %d nodes): %d drawn, %d culled; per frame refit %.3f ms, " +
+                        "BVH cull %.3f ms (%d nodes visited), linear cull %.3f ms%n",
+                cubes, buildMs, bvh.getNodeCount(), drawn, cubes - drawn, refitMs, cullMs,
+                bvh.getLastNodesVisited(), linearMs);
+        System.out.printf("%d\t%d\t%d\t%.4f\t%.4f\t%.4f%n", cubes, drawn, cubes - drawn, refitMs, cullMs, linearMs);
+    }
+}
@@ -0,0 +1,180 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.CubeScene;
+import lwjgl.test.anim.IkBatch;
+import lwjgl.test.anim.KinematicChain;
+import lwjgl.test.math.Matrix4f;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times {@link IkBatch} keeping the tips of many cube arms on targets circling points the
+ * arms can reach, ticking at 60 Hz: every arm starts in a random pose within the key limits
+ * and each tick solves from the last tick's pose,
+ * <ul>
+ * <li>serially on the calling thread;</li>
+ * <li>split over a fork/join pool of one thread per core.</li>
+ * </ul>
+ * The two must produce identical poses; the benchmark fails if they do not. Before timing, it
+ * also checks the chain's forward kinematics against the scene: for poses reached with random
+ * keys, the tip must lie on the bottom centre of the third cube as the scene graph places it.
+ * <p>
+ * Usage: {@code IkBenchmark [ticks] [armCounts...]}. Each size prints one tab separated line:
+ * arms, serial ms per tick, parallel ms per tick, both per 10k arms, sweeps per arm per tick,
+ * fraction of arms on target after the last tick.
+ */
+public class IkBenchmark {
+
+    private static final double TICK_SECONDS = 1.0 / 60;
+    private static final float RADIUS = 3;
+    // Poses the forward kinematics are checked on, and how far their tips may be off
+    private static final int CHECKED_POSES = 200;
+    private static final float MAX_TIP_ERROR = 1e-4f;
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int[] sizes = {1000, 10000, 100000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        KinematicChain chain = KinematicChain.arm(new CubeScene());
+        checkForward(chain);
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (int arms : sizes)
+                run(chain, arms, ticks, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void run(KinematicChain chain, int arms, int ticks, ForkJoinPool pool) {
+        Random random = new Random(7);
+        IkBatch serial = new IkBatch(chain, arms);
+        IkBatch parallel = new IkBatch(chain, arms);
+        for (int a = 0; a < arms; a++) {
+            float first = 2 + random.nextFloat() * 10;
+            serial.setValue(a, KinematicChain.BASE_YAW, (random.nextFloat() - 0.5f) * 360)
+                    .setValue(a, KinematicChain.FIRST_STRETCH, first)
+                    .setValue(a, KinematicChain.JOINT_ROLL, (random.nextFloat() - 0.5f) * 180)
+                    .setValue(a, KinematicChain.SECOND_STRETCH, 1 + random.nextFloat() * 8)
+                    .setValue(a, KinematicChain.THIRD_STRETCH, 1 + random.nextFloat() * (first - 2));
+        }
+        System.arraycopy(serial.getValues(), 0, parallel.getValues(), 0, serial.getValues().length);
+
+        // Each target circles the arm's starting tip, at its own speed, in the XY plane
+        serial.forward();
+        float[] centers = serial.getTips().clone();
+        float[] speeds = new float[arms], phases = new float[arms];
+        for (int a = 0; a < arms; a++) {
+            speeds[a] = (float) (Math.PI * (0.5 + random.nextFloat()));
+            phases[a] = (float) (Math.PI * 2 * random.nextFloat());
+        }
+
+        // Warm up both paths, then time each over the same ticks
+        int warmup = Math.min(ticks, 60);
+        for (int tick = 0; tick < warmup; tick++) {
+            aim(serial, centers, speeds, phases, tick);
+            serial.solve();
+            aim(parallel, centers, speeds, phases, tick);
+            parallel.solve(pool);
+        }
+
+        long serialNanos = 0, parallelNanos = 0, sweeps = 0;
+        for (int tick = warmup; tick < warmup + ticks; tick++) {
+            aim(serial, centers, speeds, phases, tick);
+            long t0 = System.nanoTime();
+            serial.solve();
+            long t1 = System.nanoTime();
+            serialNanos += t1 - t0;
+
+            aim(parallel, centers, speeds, phases, tick);
+            t0 = System.nanoTime();
+            parallel.solve(pool);
+            t1 = System.nanoTime();
+            parallelNanos += t1 - t0;
+
+            for (int a = 0; a < arms; a++)
+                sweeps += serial.getSweeps(a);
+        }
+
+        if (!Arrays.equals(serial.getValues(), parallel.getValues()))
+            throw new IllegalStateException("Parallel solving of " + arms + " arms differs from serial");
+
+        int onTarget = 0;
+        for (int a = 0; a < arms; a++) {
+            if (serial.getError(a) <= 0.01f)
+                onTarget++;
+        }
+
+        double serialMs = serialNanos / 1e6 / ticks;
+        double parallelMs = parallelNanos / 1e6 / ticks;
+        double per10k = 10000.0 / arms;
+        double sweepsPerArm = (double) sweeps / ticks / arms;
+        double solved = (double) onTarget / arms;
+        System.out.printf("%d arms: serial %.3f ms per tick (%.3f per 10k arms), parallel on %d threads %.3f ms " +
+                        "per tick (%.3f per 10k arms); %.2f sweeps per arm per tick, %.1f%% on target%n",
+                arms, serialMs, serialMs * per10k, pool.getParallelism(), parallelMs, parallelMs * per10k,
+                sweepsPerArm, 100 * solved);
+        System.out.printf("%d\t%.4f\t%.4f\t%.4f\t%.4f\t%.3f\t%.4f%n", arms, serialMs, parallelMs, serialMs * per10k,
+                parallelMs * per10k, sweepsPerArm, solved);
+    }
+
+    // Compares the chain's tips for key-driven poses with the third cube's bottom centre
+    private static void checkForward(KinematicChain chain) {
+        Random random = new Random(7);
+        CubeScene scene = new CubeScene();
+        float[] initial = scene.writeState(new float[CubeScene.STATE_SIZE]);
+        IkBatch batch = new IkBatch(chain, CHECKED_POSES);
+        float[] expected = new float[3 * CHECKED_POSES];
+        Matrix4f bottom = new Matrix4f();
+        for (int a = 0; a < CHECKED_POSES; a++) {
+            // A few seconds of random keys from the start, as a user would hold them
+            scene.readState(initial);
+            for (int held = 0; held < 4; held++) {
+                int keys = random.nextInt(1 << 6), ticks = 1 + random.nextInt(60);
+                for (int tick = 0; tick < ticks; tick++)
+                    scene.update(keys);
+            }
+            batch.setPose(a, scene);
+
+            scene.getRoot().updateWorld();
+            Cube3D third = scene.getThirdCube();
+            bottom.mul(scene.getThirdNode().getWorldMatrix(), third.getModelMatrix())
+                    .translate(0, -third.getSize() * third.getStretchY() / 2, 0);
+            expected[3 * a] = bottom.m30;
+            expected[3 * a + 1] = bottom.m31;
+            expected[3 * a + 2] = bottom.m32;
+        }
+        batch.forward();
+
+        float worst = 0;
+        for (int a = 0; a < CHECKED_POSES; a++) {
+            for (int c = 0; c < 3; c++)
+                worst = Math.max(worst, Math.abs(batch.getTip(a, c) - expected[3 * a + c]));
+            if (!(worst <= MAX_TIP_ERROR))
+                throw new IllegalStateException(String.format("Tip of key-driven pose %d is (%.4f, %.4f, %.4f), " +
+                                "the third cube's bottom is at (%.4f, %.4f, %.4f)", a, batch.getTip(a, 0),
+                        batch.getTip(a, 1), batch.getTip(a, 2), expected[3 * a], expected[3 * a + 1], expected[3 * a + 2]));
+        }
+        System.out.printf("Forward kinematics of %d key-driven poses within %.1e of the scene%n", CHECKED_POSES, worst);
+    }
+
+    private static void aim(IkBatch batch, float[] centers, float[] speeds, float[] phases, int tick) {
+        int arms = batch.getArmCount();
+        float[] targets = batch.getTargets();
+        double time = tick * TICK_SECONDS;
+        for (int a = 0; a < arms; a++) {
+            double angle = time * speeds[a] + phases[a];
+            targets[a] = centers[a] + RADIUS * (float) Math.cos(angle);
+            targets[arms + a] = centers[arms + a] + RADIUS * (float) Math.sin(angle);
+            targets[2 * arms + a] = centers[2 * arms + a];
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.mesh.Mesh;
+import lwjgl.test.mesh.ObjLoader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Generates a torus OBJ file of about the requested size and reports how fast {@link ObjLoader}
+ * reads it with 1 to N threads. Every parallel load is checked against the sequential one.
+ * <p>
+ * Usage: {@code ObjLoaderBenchmark [megabytes] [threads...]}. Each thread count prints one tab
+ * separated line: threads, megabytes, best ms, MB/s.
+ */
+public class ObjLoaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int[] threads = {1, 2, 4, Runtime.getRuntime().availableProcessors()};
+        if (args.length > 1) {
+            threads = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                threads[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        File file = File.createTempFile("torus", ".obj");
+        file.deleteOnExit();
+        writeTorus(file, megabytes * 1000000L);
+        double mb = file.length() / 1e6;
+
+        Mesh reference = ObjLoader.load(file.getPath());
+        System.out.printf("%.1f MB: %d vertices, %d triangles%n", mb, reference.getVertexCount(), reference.getTriangleCount());
+
+        for (int n : threads) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                Mesh mesh = ObjLoader.load(file.getPath(), n);
+                best = Math.min(best, System.nanoTime() - start);
+                if (!same(reference, mesh))
+                    throw new IllegalStateException("Loading with " + n + " threads gave a different mesh");
+            }
+            double ms = best / 1e6;
+            System.out.printf("%d threads: %.1f ms, %.1f MB/s%n", n, ms, mb / (ms / 1000));
+            System.out.printf("%d\t%.1f\t%.3f\t%.1f%n", n, mb, ms, mb / (ms / 1000));
+        }
+        if (!file.delete())
+            System.err.println("Could not delete " + file);
+    }
+
+    // Quads with positions, texture coordinates and normals; every other face uses relative indices
+    private static void writeTorus(File file, long bytes) throws IOException {
+        // About 130 bytes of file per grid cell
+        int side = (int) Math.max(8, Math.sqrt(bytes / 130.0));
+        try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            out.write("# torus " + side + "x" + side + "\no torus\n");
+            for (int i = 0; i < side; i++) {
+                double u = 2 * Math.PI * i / side;
+                for (int j = 0; j < side; j++) {
+                    double v = 2 * Math.PI * j / side;
+                    double r = 3 + Math.cos(v);
+                    out.write("v " + (float) (r * Math.cos(u)) + " " + (float) (r * Math.sin(u)) + " " + (float) Math.sin(v) + "\n");
+                    out.write("vt " + (float) i / side + " " + (float) j / side + "\n");
+                    out.write("vn " + (float) (Math.cos(v) * Math.cos(u)) + " " + (float) (Math.cos(v) * Math.sin(u))
+                            + " " + (float) Math.sin(v) + "\n");
+                }
+            }
+            int count = side * side;
+            for (int i = 0; i < side; i++) {
+                for (int j = 0; j < side; j++) {
+                    int a = i * side + j + 1, b = ((i + 1) % side) * side + j + 1;
+                    int c = ((i + 1) % side) * side + (j + 1) % side + 1, d = i * side + (j + 1) % side + 1;
+                    if ((i + j) % 2 == 0)
+                        out.write("f " + a + "/" + a + "/" + a + " " + b + "/" + b + "/" + b + " "
+                                + c + "/" + c + "/" + c + " " + d + "/" + d + "/" + d + "\n");
+                    else
+                        out.write("f " + (a - count - 1) + "//" + (a - count - 1) + " " + (b - count - 1) + "//" + (b - count - 1)
+                                + " " + (c - count - 1) + "//" + (c - count - 1) + " " + (d - count - 1) + "//" + (d - count - 1) + "\n");
+                }
+            }
+        }
+    }
+
+    private static boolean same(Mesh a, Mesh b) {
+        if (a.getVertexCount() != b.getVertexCount() || a.getIndexCount() != b.getIndexCount())
+            return false;
+        IntBuffer ia = a.getIndices(), ib = b.getIndices();
+        for (int i = 0; i < a.getIndexCount(); i++) {
+            if (ia.get(i) != ib.get(i))
+                return false;
+        }
+        return sameFloats(a.getPositions(), b.getPositions(), a.getVertexCount() * 3)
+                && sameFloats(a.getNormals(), b.getNormals(), a.getVertexCount() * 3);
+    }
+
+    private static boolean sameFloats(FloatBuffer a, FloatBuffer b, int n) {
+        for (int i = 0; i < n; i++) {
+            if (Float.floatToIntBits(a.get(i)) != Float.floatToIntBits(b.get(i)))
+                return false;
+        }
+        return true;
+    }
+}
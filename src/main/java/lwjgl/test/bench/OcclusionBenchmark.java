@@ -0,0 +1,118 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.raster.FrameCapture;
+import lwjgl.test.raster.Framebuffer;
+import lwjgl.test.raster.SoftwareBackend;
+import lwjgl.test.scene.CubeStore;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Renders a wall sliding across the cube scene's view volume in front of randomly placed
+ * cubes with the software backend, once plainly and once with Hi-Z occlusion culling, and
+ * reports how many cubes were culled and how much frame time that saved. The wall is drawn
+ * first, so it is the frame's occluder; the cubes are drawn as instances behind it. Every
+ * frame must come out the same both ways.
+ * <p>
+ * Usage: {@code OcclusionBenchmark [frames] [cubeCounts...]}. Each size prints one tab
+ * separated line: cubes, occluded cubes per frame, drawn cubes per frame, ms per frame
+ * without and with culling, ms saved per frame.
+ */
+public class OcclusionBenchmark {
+
+    private static final int WIDTH = 600, HEIGHT = 600;
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int[] sizes = {1000, 10000, 50000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        for (int cubes : sizes)
+            run(cubes, frames);
+    }
+
+    private static void run(int cubes, int frames) {
+        Random random = new Random(42);
+        CubeStore store = new CubeStore(cubes);
+        for (int i = 0; i < cubes; i++) {
+            int handle = store.add(0.5f + random.nextFloat(),
+                    (random.nextFloat() - 0.5f) * 60, (random.nextFloat() - 0.5f) * 60, -280 + random.nextFloat() * 460);
+            store.setRotation(handle, random.nextFloat() * 360, random.nextFloat() * 360, 0);
+            store.setColor(handle, Framebuffer.pack(random.nextFloat(), random.nextFloat(), random.nextFloat(), 1f));
+        }
+
+        SoftwareBackend plain = new SoftwareBackend(new Framebuffer(WIDTH, HEIGHT));
+        SoftwareBackend culled = new SoftwareBackend(new Framebuffer(WIDTH, HEIGHT)).setOcclusionCulling(true);
+        FloatBuffer wall = BufferUtils.createFloatBuffer(16);
+        Matrix4f model = new Matrix4f();
+
+        // The first frames warm up the JIT and are not counted
+        int warmup = Math.min(10, frames / 2);
+        long plainNanos = 0, culledNanos = 0;
+        long testedBefore = 0, occludedBefore = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            if (frame == warmup) {
+                testedBefore = culled.getObjectsTested();
+                occludedBefore = culled.getObjectsOccluded();
+            }
+            // Covers two thirds of the view, sliding from side to side
+            float x = (float) Math.sin(frame * 0.1) * 20;
+            model.identity().translate(x, 0, 200).scale(40, 45, 2).get(wall);
+
+            long t0 = System.nanoTime();
+            render(plain, wall, store);
+            long t1 = System.nanoTime();
+            render(culled, wall, store);
+            long t2 = System.nanoTime();
+
+            int expected = FrameCapture.checksum(plain.getFramebuffer().getColor());
+            int actual = FrameCapture.checksum(culled.getFramebuffer().getColor());
+            if (actual != expected)
+                throw new IllegalStateException(String.format("Frame %d with %d cubes came out %08x with culling, %08x without",
+                        frame, cubes, actual, expected));
+            if (frame >= warmup) {
+                plainNanos += t1 - t0;
+                culledNanos += t2 - t1;
+            }
+        }
+
+        int measured = frames - warmup;
+        double occluded = (double) (culled.getObjectsOccluded() - occludedBefore) / measured;
+        double drawn = (double) (culled.getObjectsTested() - testedBefore) / measured - occluded;
+        double plainMs = plainNanos / 1e6 / measured, culledMs = culledNanos / 1e6 / measured;
+        System.out.printf("%d cubes: %.0f occluded and %.0f drawn per frame (%.1f%% culled, %d occluders); " +
+                        "%.3f ms per frame plain, %.3f ms with Hi-Z, %.3f ms saved%n",
+                cubes, occluded, drawn, 100 * occluded / (occluded + drawn), culled.getOccluders(),
+                plainMs, culledMs, plainMs - culledMs);
+        System.out.printf("%d\t%.1f\t%.1f\t%.4f\t%.4f\t%.4f%n", cubes, occluded, drawn, plainMs, culledMs, plainMs - culledMs);
+    }
+
+    // The wall with the scene's projection and state, then the cubes
+    private static void render(SoftwareBackend gl, FloatBuffer wall, CubeStore store) {
+        gl.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        gl.viewport(0, 0, WIDTH, HEIGHT);
+        gl.matrixMode(GL_PROJECTION);
+        gl.loadIdentity();
+        gl.ortho(-30, 30, -30, 30, -300, 300);
+        gl.rotate(1.0f, 1.0f, 0.0f, 0.0f);
+        gl.matrixMode(GL_MODELVIEW);
+        gl.enable(GL_DEPTH_TEST);
+        gl.enable(GL_CULL_FACE);
+
+        gl.loadMatrix(wall);
+        gl.drawQuads(Cube3D.getUnitVertices(), Cube3D.getFaceColors(), Cube3D.VERTEX_COUNT);
+        gl.loadIdentity();
+        store.render(gl);
+        gl.finish();
+    }
+}
@@ -0,0 +1,123 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.math.Ray;
+import lwjgl.test.metrics.Histogram;
+import lwjgl.test.scene.Bvh;
+import lwjgl.test.scene.CubeStore;
+
+import java.util.Random;
+
+/**
+ * Headless picking benchmark: rays through random points of a window showing the cube
+ * scene's view volume, cast into a {@link Bvh} over randomly placed and rotated cubes, each
+ * one timed on its own. The first picks are checked against a linear scan over every cube.
+ * <p>
+ * Usage: {@code PickingBenchmark [picks] [cubeCounts...]}. Each size prints one tab separated
+ * line: cubes, hits, mean us, p50 us, p99 us, max us, mean nodes visited.
+ */
+public class PickingBenchmark {
+
+    private static final int WIDTH = 1280, HEIGHT = 720;
+    private static final int CHECKED = 20;
+
+    public static void main(String[] args) {
+        int picks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        // Same view volume as CubeScene
+        Matrix4f inverse = new Matrix4f()
+                .ortho(-30, 30, -30, 30, -300, 300)
+                .rotate(1.0f, 1.0f, 0.0f, 0.0f)
+                .invertAffine();
+
+        for (int cubes : sizes)
+            run(cubes, picks, inverse);
+    }
+
+    private static void run(int cubes, int picks, Matrix4f inverse) {
+        // Only what lies between the near and far planes can be picked
+        float depth = 2 * (float) Math.sqrt(inverse.m20 * inverse.m20 + inverse.m21 * inverse.m21 + inverse.m22 * inverse.m22);
+
+        Random random = new Random(42);
+        // Packed into the view volume so that most rays hit something
+        final CubeStore store = new CubeStore(cubes);
+        for (int i = 0; i < cubes; i++) {
+            int handle = store.add(0.5f + random.nextFloat(),
+                    (random.nextFloat() - 0.5f) * 60, (random.nextFloat() - 0.5f) * 60, (random.nextFloat() - 0.5f) * 600);
+            store.setRotation(handle, random.nextFloat() * 360, random.nextFloat() * 360, 0);
+        }
+
+        float[] bounds = new float[cubes * 6];
+        store.computeBounds(bounds);
+        Bvh bvh = new Bvh();
+        long buildStart = System.nanoTime();
+        bvh.build(bounds, cubes);
+        double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+        // Nothing is removed, so items and slots coincide
+        Bvh.RayTest test = new Bvh.RayTest() {
+            @Override
+            public float intersect(int item, Ray ray, float maxDistance) {
+                return store.intersectRay(item, ray, maxDistance);
+            }
+        };
+
+        Ray ray = new Ray();
+        Histogram latency = new Histogram();
+        long nodesVisited = 0;
+        int hits = 0;
+
+        for (int pick = -picks / 5; pick < picks; pick++) {
+            ray.setFromWindow(inverse, random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT, WIDTH, HEIGHT);
+
+            long start = System.nanoTime();
+            int hit = bvh.raycast(ray, test, depth);
+            long nanos = System.nanoTime() - start;
+
+            if (pick >= 0 && pick < CHECKED)
+                check(store, cubes, ray, depth, hit, bvh.getLastHitDistance());
+
+            // Negative picks are warm-up
+            if (pick >= 0) {
+                latency.record(nanos);
+                nodesVisited += bvh.getLastNodesVisited();
+                if (hit >= 0)
+                    hits++;
+            }
+        }
+
+        double mean = latency.getMean() / 1e3;
+        double p50 = latency.getPercentile(50) / 1e3;
+        double p99 = latency.getPercentile(99) / 1e3;
+        double max = latency.getMax() / 1e3;
+        double visited = (double) nodesVisited / picks;
+        System.out.printf("%d cubes (build %.1f ms, %d nodes): %d of %d picks hit; per pick mean %.2f us, " +
+                        "p50 %.2f us, p99 %.2f us, max %.2f us, %.1f nodes visited%n",
+                cubes, buildMs, bvh.getNodeCount(), hits, picks, mean, p50, p99, max, visited);
+        System.out.printf("%d\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.1f%n", cubes, hits, mean, p50, p99, max, visited);
+    }
+
+    private static void check(CubeStore store, int cubes, Ray ray, float depth, int hit, float distance) {
+        int nearest = -1;
+        float best = depth;
+        for (int i = 0; i < cubes; i++) {
+            float d = store.intersectRay(i, ray, best);
+            if (d < best) {
+                best = d;
+                nearest = i;
+            }
+        }
+        // Two cubes at exactly the same distance may be told apart either way
+        if (nearest < 0)
+            best = Float.POSITIVE_INFINITY;
+        if (best != distance || (nearest < 0) != (hit < 0))
+            throw new IllegalStateException("BVH picked " + hit + " at " + distance
+                    + ", linear scan " + nearest + " at " + best);
+    }
+}
@@ -0,0 +1,96 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.CubeScene;
+import lwjgl.test.raster.FrameCapture;
+import lwjgl.test.raster.Framebuffer;
+import lwjgl.test.raster.SoftwareBackend;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders the cube scene with the software backend at 600x600, 1080p and 4K, once drawing
+ * every triangle immediately and then tile-parallel on 1 to N threads, and reports how the
+ * frame rate scales. Every run must end on the same image as the immediate one.
+ * <p>
+ * Usage: {@code RasterScalingBenchmark [frames] [threads...]}, by default powers of two up to
+ * the number of processors. Each run prints one tab separated line: width, height, threads
+ * (0 for immediate), frames per second, speedup over one tiled thread (over immediate drawing
+ * until one thread was measured).
+ */
+public class RasterScalingBenchmark {
+
+    private static final int[][] RESOLUTIONS = {{600, 600}, {1920, 1080}, {3840, 2160}};
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int[] threads;
+        if (args.length > 1) {
+            threads = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                threads[i - 1] = Integer.parseInt(args[i]);
+        } else {
+            int processors = Runtime.getRuntime().availableProcessors();
+            int count = 32 - Integer.numberOfLeadingZeros(processors);
+            threads = new int[Integer.bitCount(processors) == 1 ? count : count + 1];
+            for (int i = 0; i < count; i++)
+                threads[i] = 1 << i;
+            threads[threads.length - 1] = processors;
+        }
+
+        for (int[] resolution : RESOLUTIONS) {
+            int width = resolution[0], height = resolution[1];
+            int[] reference = new int[1];
+            double single = run(width, height, frames, 0, reference, 0);
+            for (int n : threads) {
+                double fps = run(width, height, frames, n, reference, single);
+                if (n == 1)
+                    single = fps;
+            }
+        }
+    }
+
+    // Returns frames per second; threads 0 draws immediately and stores the checksum in reference
+    private static double run(int width, int height, int frames, int threads, int[] reference, double single) {
+        Framebuffer framebuffer = new Framebuffer(width, height);
+        ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : null;
+        SoftwareBackend gl = new SoftwareBackend(framebuffer, pool);
+        gl.clearColor(0.0f, 0.0f, 0.0f, 0.0f);
+
+        // Warm up on a scene of its own, so the measured frames always start from the same pose
+        render(new CubeScene(), gl, Math.min(frames, 100), width, height);
+
+        long start = System.nanoTime();
+        render(new CubeScene(), gl, frames, width, height);
+        double fps = frames / ((System.nanoTime() - start) / 1e9);
+        if (pool != null)
+            pool.shutdown();
+
+        int checksum = FrameCapture.checksum(framebuffer.getColor());
+        if (threads == 0)
+            reference[0] = checksum;
+        else if (checksum != reference[0])
+            throw new IllegalStateException(String.format("%dx%d on %d threads ended on frame %08x instead of %08x",
+                    width, height, threads, checksum, reference[0]));
+
+        double speedup = threads == 0 ? 1.0 : fps / single;
+        if (threads == 0) {
+            System.out.printf("%dx%d immediate: %.1f fps%n", width, height, fps);
+        } else {
+            long binned = gl.getTiles().getBinnedReferences();
+            System.out.printf("%dx%d %d threads: %.1f fps, %.2fx, %d tiles, %.2f tiles per triangle%n", width, height,
+                    threads, fps, speedup, gl.getTiles().getTileCount(),
+                    (double) binned / (2 * (gl.getQuadsSubmitted() - gl.getQuadsCulled())));
+        }
+        System.out.printf("%d\t%d\t%d\t%.1f\t%.3f%n", width, height, threads, fps, speedup);
+        return fps;
+    }
+
+    private static void render(CubeScene scene, SoftwareBackend gl, int frames, int width, int height) {
+        for (int frame = 0; frame < frames; frame++) {
+            // Same script as HeadlessRenderer
+            scene.update(CubeScene.KEY_RIGHT | ((frame / 90) % 2 == 1 ? CubeScene.KEY_SHIFT : 0));
+            scene.render(gl, width, height);
+            gl.finish();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.CubeScene;
+import lwjgl.test.HelloWorld;
+import lwjgl.test.Simulation;
+import lwjgl.test.anim.AnimationBatch;
+import lwjgl.test.input.InputRecorder;
+import lwjgl.test.input.InputReplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Records a scripted session the way {@code HelloWorld --record} does, then replays the log the
+ * way {@code --replay} does, once with the keys alone and once with the demo clip playing.
+ * <p>
+ * The recording drives a {@link Simulation} through {@link Simulation#step(long)} with frames
+ * of irregular length, so some run several ticks and some none, while random keys are held for
+ * random stretches. The replay must end with the recording's state hash; the benchmark fails
+ * if it does not.
+ * <p>
+ * Usage: {@code ReplayBenchmark [ticks]}. Each run prints one tab separated line: animated (0
+ * or 1), ticks, log bytes, recording seconds, replay seconds, replayed ticks per second.
+ */
+public class ReplayBenchmark {
+
+    private static final double TICK_RATE = 60;
+    private static final int MAX_TICKS_PER_FRAME = 8;
+
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        File file = File.createTempFile("input", ".cubi");
+        file.deleteOnExit();
+        // Warm up
+        run(file, Math.min(ticks, 100000), false, false);
+        run(file, Math.min(ticks, 100000), true, false);
+
+        run(file, ticks, false, true);
+        run(file, ticks, true, true);
+    }
+
+    private static void run(File file, int ticks, boolean animated, boolean print) throws IOException {
+        Simulation recorded = new Simulation(new CubeScene(), TICK_RATE, MAX_TICKS_PER_FRAME);
+        if (animated)
+            recorded.setAnimation(new AnimationBatch(HelloWorld.demoClip(), 1), 0);
+
+        long start = System.nanoTime();
+        long recordedTicks;
+        try (InputRecorder recorder = new InputRecorder(file.getPath(), recorded.getTickNanos(),
+                animated ? InputRecorder.ANIMATED : 0)) {
+            recorded.setRecorder(recorder);
+            script(recorded, ticks);
+            recordedTicks = recorder.getTicks();
+        }
+        double recordSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        Simulation replayed;
+        long replayedTicks;
+        try (InputReplay replay = new InputReplay(file.getPath())) {
+            replayed = HelloWorld.replay(replay);
+            replayedTicks = replay.getTicks();
+        }
+        double replaySeconds = (System.nanoTime() - start) / 1e9;
+
+        if (replayedTicks != recordedTicks)
+            throw new IllegalStateException("Replayed " + replayedTicks + " ticks of " + recordedTicks + " recorded");
+        if (replayed.getStateHash() != recorded.getStateHash())
+            throw new IllegalStateException(String.format("Replay%s ended with state hash %016x, recording with %016x",
+                    animated ? " with the clip" : "", replayed.getStateHash(), recorded.getStateHash()));
+
+        if (print) {
+            System.out.printf("%s: %d ticks, %d byte log, recorded in %.3f s, replayed in %.3f s (%.0f ticks/s), " +
+                            "state hash %016x%n", animated ? "Animated" : "Keys only", recordedTicks, file.length(),
+                    recordSeconds, replaySeconds, recordedTicks / replaySeconds, replayed.getStateHash());
+            System.out.printf("%d\t%d\t%d\t%.6f\t%.6f\t%.0f%n", animated ? 1 : 0, recordedTicks, file.length(),
+                    recordSeconds, replaySeconds, recordedTicks / replaySeconds);
+        }
+    }
+
+    // Steps until at least the given number of ticks ran, on a made-up clock: frames last up to
+    // three ticks, or now and then a stall longer than the simulation catches up on
+    private static void script(Simulation simulation, int ticks) {
+        Random random = new Random(7);
+        long tickNanos = simulation.getTickNanos();
+        long now = 0, ran = simulation.step(now);
+        int keys = 0, held = 0;
+        while (ran < ticks) {
+            if (held-- <= 0) {
+                keys = random.nextInt(1 << 6);
+                held = random.nextInt(120);
+            }
+            simulation.setKeys(keys);
+            now += random.nextInt(50) == 0
+                    ? tickNanos * (MAX_TICKS_PER_FRAME + 4)
+                    : (long) (random.nextDouble() * 3 * tickNanos);
+            ran += simulation.step(now);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.CubeScene;
+import lwjgl.test.scene.SceneFile;
+import lwjgl.test.scene.SceneNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes a large scene to a {@link SceneFile}, then times opening it, reading every cube
+ * lazily, and loading the cube arm back as a live graph.
+ * <p>
+ * Usage: {@code SceneFileBenchmark [cubes] [file]}. The last line of output is tab separated:
+ * cubes, file bytes, write ms, open ms, read-all ms.
+ */
+public class SceneFileBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int cubeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String path = args.length > 1 ? args[1] : "scene-benchmark.cubes";
+
+        // A root with groups of up to 1000 cubes each
+        SceneNode root = new SceneNode("root");
+        SceneNode group = null;
+        for (int i = 0; i < cubeCount; i++) {
+            if (i % 1000 == 0)
+                root.addChild(group = new SceneNode("group" + i / 1000).setTranslation(i / 1000, 0, 0));
+            group.addChild(new SceneNode("cube" + i, new Cube3D(0.5f, 0, i % 1000, 0).setRotateY(i % 360)));
+        }
+
+        long t0 = System.nanoTime();
+        SceneFile.write(root, path);
+        long t1 = System.nanoTime();
+        SceneFile scene = SceneFile.open(path);
+        long t2 = System.nanoTime();
+
+        // Touch every cube the way a streaming consumer would
+        Cube3D cube = new Cube3D();
+        double checksum = 0;
+        for (int i = 0; i < scene.getCubeCount(); i++)
+            checksum += scene.readCube(i, cube).getyPos();
+        long t3 = System.nanoTime();
+
+        double writeMs = (t1 - t0) / 1e6, openMs = (t2 - t1) / 1e6, readMs = (t3 - t2) / 1e6;
+        long bytes = new File(path).length();
+        System.out.printf("%d cubes, %d nodes, %.1f MB: write %.1f ms, open %.3f ms, read all cubes %.1f ms (checksum %.0f)%n",
+                scene.getCubeCount(), scene.getNodeCount(), bytes / 1e6, writeMs, openMs, readMs, checksum);
+
+        // The arm survives a round trip unchanged
+        CubeScene arm = new CubeScene();
+        arm.update(CubeScene.KEY_RIGHT | CubeScene.KEY_SHIFT);
+        SceneFile.write(arm.getRoot(), path);
+        SceneNode loaded = SceneFile.open(path).load();
+        if (!sameGraph(arm.getRoot(), loaded))
+            throw new IllegalStateException("Cube arm changed in a round trip");
+
+        if (!new File(path).delete())
+            System.err.println("Could not delete " + path);
+        System.out.printf("%d\t%d\t%.3f\t%.4f\t%.3f%n", cubeCount, bytes, writeMs, openMs, readMs);
+    }
+
+    private static boolean sameGraph(SceneNode a, SceneNode b) {
+        float[] sa = new float[Cube3D.STATE_SIZE], sb = new float[Cube3D.STATE_SIZE];
+        a.writeState(sa, 0);
+        b.writeState(sb, 0);
+        if (!a.getName().equals(b.getName()) || !Arrays.equals(sa, sb))
+            return false;
+        if ((a.getCube() == null) != (b.getCube() == null))
+            return false;
+        if (a.getCube() != null) {
+            a.getCube().writeState(sa, 0);
+            b.getCube().writeState(sb, 0);
+            if (!Arrays.equals(sa, sb))
+                return false;
+        }
+        if (a.getChildren().size() != b.getChildren().size())
+            return false;
+        for (int i = 0; i < a.getChildren().size(); i++) {
+            if (!sameGraph(a.getChildren().get(i), b.getChildren().get(i)))
+                return false;
+        }
+        return true;
+    }
+}
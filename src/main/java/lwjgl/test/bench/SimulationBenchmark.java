@@ -0,0 +1,55 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.CubeScene;
+
+/**
+ * Steps the cube scene's simulation as fast as the CPU allows, with nothing drawn and no
+ * timestep throttling, to measure simulation throughput on its own.
+ * <p>
+ * Every tick applies scripted input and takes a state snapshot, the same work the windowed
+ * loop does per tick. Each {@code interpolateEvery} ticks the last two snapshots are also
+ * blended into a second scene and its world matrices updated, like a rendered frame would.
+ * <p>
+ * Usage: {@code SimulationBenchmark [ticks] [interpolateEvery]}. The last line of output is tab
+ * separated: ticks, seconds, ticks per second.
+ */
+public class SimulationBenchmark {
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        int interpolateEvery = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        CubeScene scene = new CubeScene();
+        CubeScene view = new CubeScene();
+        float[] previous = scene.writeState(new float[CubeScene.STATE_SIZE]);
+        float[] current = previous.clone();
+        float[] blended = new float[CubeScene.STATE_SIZE];
+
+        // Warm up
+        run(scene, view, Math.min(ticks, 200000), interpolateEvery, previous, current, blended);
+
+        long start = System.nanoTime();
+        run(scene, view, ticks, interpolateEvery, previous, current, blended);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d ticks in %.3f s, %.0f ticks/s (%.1f ns per tick), base at %.0f degrees%n",
+                ticks, seconds, ticks / seconds, seconds * 1e9 / ticks, scene.getBase().getRotateY());
+        System.out.printf("%d\t%.6f\t%.0f%n", ticks, seconds, ticks / seconds);
+    }
+
+    private static void run(CubeScene scene, CubeScene view, int ticks, int interpolateEvery,
+                            float[] previous, float[] current, float[] blended) {
+        for (int tick = 0; tick < ticks; tick++) {
+            // Same script as HeadlessRenderer: turn the arm, then swing the second segment
+            boolean swing = (tick / 90) % 2 == 1;
+            System.arraycopy(current, 0, previous, 0, CubeScene.STATE_SIZE);
+            scene.update(false, false, false, true, swing, false);
+            scene.writeState(current);
+
+            if (interpolateEvery > 0 && tick % interpolateEvery == 0) {
+                CubeScene.interpolate(previous, current, 0.5f, blended);
+                view.readState(blended).getRoot().updateWorld();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.gl.GLStateCache;
+import lwjgl.test.gl.RecordingBackend;
+import lwjgl.test.gl.RenderQueue;
+import lwjgl.test.math.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Counts the GL state changes per frame of a scene of cubes in two culling modes and nine
+ * materials (the shared face colors or one of eight flat colors), drawn two ways into a
+ * {@link RecordingBackend}:
+ * <ul>
+ * <li>directly, every cube setting its culling and color before it draws, after the same
+ * per-frame projection setup {@code CubeScene} does;</li>
+ * <li>through a {@link RenderQueue} flushed into a {@link GLStateCache}, so commands are
+ * grouped by state and material and repeated setup is dropped.</li>
+ * </ul>
+ * Queued state changes are bounded by the number of state and material combinations, so per
+ * cube they must fall as the scene grows; the benchmark fails if they do not. It also fails
+ * if, from ten thousand cubes up, the best queued frame takes more than {@value #MAX_SLOWDOWN}
+ * times the best direct one. The recording backend only counts, so the direct path costs
+ * little more than its calls, while the queue copies, sorts and replays every command.
+ * <p>
+ * Usage: {@code StateChangeBenchmark [frames] [cubeCounts...]}, counts ascending. Each size
+ * prints one tab separated line: cubes, direct changes, queued changes, queued changes per
+ * cube, direct ms, queued ms (means over the timed frames), best queued frame over best
+ * direct frame.
+ */
+public class StateChangeBenchmark {
+
+    private static final int COLORS = 8;
+
+    // Limit on best queued over best direct frame time, and the scene size it applies from
+    private static final int MAX_SLOWDOWN = 12;
+    private static final int MIN_TIMED_CUBES = 10000;
+    // Commands drawn each way before timing
+    private static final int WARMUP_COMMANDS = 2000000;
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int[] sizes = {10, 100, 1000, 10000, 100000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        double previousPerCube = Double.POSITIVE_INFINITY;
+        for (int cubes : sizes) {
+            double perCube = run(cubes, frames);
+            if (perCube >= previousPerCube)
+                throw new IllegalStateException("Queued state changes per cube did not fall at " + cubes + " cubes");
+            previousPerCube = perCube;
+        }
+    }
+
+    private static double run(int cubes, int frames) {
+        Random random = new Random(42);
+        Matrix4f projection = new Matrix4f()
+                .ortho(-30, 30, -30, 30, -300, 300)
+                .rotate(1.0f, 1.0f, 0.0f, 0.0f);
+
+        // Per cube: model matrix, culling, material (0 = face colors, else a flat color) and depth
+        FloatBuffer[] matrices = new FloatBuffer[cubes];
+        boolean[] culled = new boolean[cubes];
+        int[] materials = new int[cubes];
+        float[] depths = new float[cubes];
+        Matrix4f model = new Matrix4f();
+        for (int i = 0; i < cubes; i++) {
+            model.identity()
+                    .translate((random.nextFloat() - 0.5f) * 60, (random.nextFloat() - 0.5f) * 60, (random.nextFloat() - 0.5f) * 600)
+                    .rotate(random.nextFloat() * 360, 0.0f, 1.0f, 0.0f);
+            matrices[i] = model.get(BufferUtils.createFloatBuffer(16));
+            culled[i] = random.nextBoolean();
+            materials[i] = random.nextInt(COLORS + 1);
+            float z = projection.m02 * model.m30 + projection.m12 * model.m31 + projection.m22 * model.m32 + projection.m32;
+            depths[i] = (z + 1) * 0.5f;
+        }
+        float[] palette = new float[(COLORS + 1) * 3];
+        for (int i = 3; i < palette.length; i++)
+            palette[i] = random.nextFloat();
+
+        RecordingBackend direct = new RecordingBackend(false);
+        RecordingBackend recorded = new RecordingBackend(false);
+        GLStateCache cache = new GLStateCache(recorded);
+        RenderQueue queue = new RenderQueue(cubes);
+        long directNanos = 0, queuedNanos = 0;
+        long bestDirect = Long.MAX_VALUE, bestQueued = Long.MAX_VALUE;
+
+        // The last frame is counted, the cache being warm by then. Negative frames are warm-up,
+        // enough for both paths to be compiled however small the scene
+        int warmup = (WARMUP_COMMANDS + cubes - 1) / cubes;
+        for (int frame = -warmup; frame < frames; frame++) {
+            direct.reset();
+            recorded.reset();
+
+            long t0 = System.nanoTime();
+            drawDirect(direct, matrices, culled, materials, palette);
+            long t1 = System.nanoTime();
+            drawQueued(queue, cache, matrices, culled, materials, depths, palette);
+            long t2 = System.nanoTime();
+
+            if (direct.getDrawCalls() != recorded.getDrawCalls())
+                throw new IllegalStateException("Queue drew " + recorded.getDrawCalls() + " cubes, not " + direct.getDrawCalls());
+            if (frame >= 0) {
+                directNanos += t1 - t0;
+                queuedNanos += t2 - t1;
+                bestDirect = Math.min(bestDirect, t1 - t0);
+                bestQueued = Math.min(bestQueued, t2 - t1);
+            }
+        }
+
+        int directChanges = direct.getStateChanges(), queuedChanges = recorded.getStateChanges();
+        double perCube = (double) queuedChanges / cubes;
+        double directMs = directNanos / 1e6 / Math.max(1, frames);
+        double queuedMs = queuedNanos / 1e6 / Math.max(1, frames);
+        double slowdown = frames > 0 ? (double) bestQueued / Math.max(1, bestDirect) : 0;
+        System.out.printf("%d cubes: %d state changes per frame direct (%.2f per cube), %d queued (%.4f per cube); " +
+                        "%d of %d cached calls skipped; direct %.3f ms, queued %.3f ms, best frames %.1fx apart%n",
+                cubes, directChanges, (double) directChanges / cubes, queuedChanges, perCube,
+                cache.getSkippedCalls() / frames, (cache.getSkippedCalls() + cache.getForwardedCalls()) / frames,
+                directMs, queuedMs, slowdown);
+        System.out.printf("%d\t%d\t%d\t%.4f\t%.4f\t%.4f\t%.2f%n", cubes, directChanges, queuedChanges, perCube,
+                directMs, queuedMs, slowdown);
+        if (cubes >= MIN_TIMED_CUBES && slowdown > MAX_SLOWDOWN)
+            throw new IllegalStateException(String.format("Queued frames of %d cubes took %.1f times the direct ones",
+                    cubes, slowdown));
+        return perCube;
+    }
+
+    // Every cube sets its state and color and draws; in methods of their own, so each path is
+    // compiled as a whole rather than replaced on the stack of a loop over both
+    private static void drawDirect(GLBackend gl, FloatBuffer[] matrices, boolean[] culled, int[] materials,
+                                   float[] palette) {
+        setup(gl);
+        for (int i = 0; i < matrices.length; i++) {
+            if (culled[i])
+                gl.enable(GL_CULL_FACE);
+            else
+                gl.disable(GL_CULL_FACE);
+            int m = materials[i];
+            if (m != 0)
+                gl.color(palette[m * 3], palette[m * 3 + 1], palette[m * 3 + 2]);
+            gl.loadMatrix(matrices[i]);
+            gl.drawQuads(Cube3D.getUnitVertices(), m == 0 ? Cube3D.getFaceColors() : null, Cube3D.VERTEX_COUNT);
+        }
+    }
+
+    private static void drawQueued(RenderQueue queue, GLBackend gl, FloatBuffer[] matrices, boolean[] culled,
+                                   int[] materials, float[] depths, float[] palette) {
+        setup(gl);
+        for (int i = 0; i < matrices.length; i++) {
+            int m = materials[i];
+            int state = RenderQueue.STATE_DEPTH_TEST | (culled[i] ? RenderQueue.STATE_CULL_FACE : 0);
+            queue.submitQuads(RenderQueue.key(0, state, m, depths[i]), matrices[i], Cube3D.getUnitVertices(),
+                    m == 0 ? Cube3D.getFaceColors() : null, Cube3D.VERTEX_COUNT,
+                    palette[m * 3], palette[m * 3 + 1], palette[m * 3 + 2]);
+        }
+        queue.flush(gl);
+    }
+
+    // The projection setup CubeScene.render runs every frame
+    private static void setup(GLBackend gl) {
+        gl.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        gl.viewport(0, 0, 600, 600);
+        gl.matrixMode(GL_PROJECTION);
+        gl.loadIdentity();
+        gl.ortho(-30, 30, -30, 30, -300, 300);
+        gl.rotate(1.0f, 1.0f, 0.0f, 0.0f);
+        gl.matrixMode(GL_MODELVIEW);
+        gl.enable(GL_DEPTH_TEST);
+    }
+}
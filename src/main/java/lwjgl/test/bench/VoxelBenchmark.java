@@ -0,0 +1,75 @@
+package lwjgl.test.bench;
+
+import lwjgl.test.gl.RecordingBackend;
+import lwjgl.test.voxel.VoxelWorld;
+
+import java.util.Random;
+
+/**
+ * Builds a dense terrain of grid-aligned blocks and compares the quads a naive renderer draws
+ * (six per block, as stacked {@code Cube3D}s do) with the greedy-meshed {@link VoxelWorld}.
+ * Then edits single blocks at random and times the incremental remesh.
+ * <p>
+ * Usage: {@code VoxelBenchmark [side] [height] [edits]}. The last line of output is tab
+ * separated: blocks, naive quads, exposed faces, greedy quads, full mesh ms, ms per edit.
+ */
+public class VoxelBenchmark {
+
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int edits = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        VoxelWorld world = new VoxelWorld(1.0f);
+        long buildStart = System.nanoTime();
+        terrain(world, side, height);
+        double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+        long meshStart = System.nanoTime();
+        int chunks = world.remesh();
+        double meshMs = (System.nanoTime() - meshStart) / 1e6;
+
+        long blocks = world.getBlockCount();
+        long naive = blocks * 6, exposed = world.getExposedFaces(), quads = world.getQuadCount();
+        System.out.printf("%d blocks in %d chunks (filled in %.1f ms, meshed in %.1f ms)%n",
+                blocks, chunks, buildMs, meshMs);
+        System.out.printf("Quads: %d naive, %d without hidden faces (%.1fx fewer), %d greedy (%.1fx fewer)%n",
+                naive, exposed, (double) naive / exposed, quads, (double) naive / quads);
+
+        RecordingBackend gl = new RecordingBackend(false);
+        int drawn = world.render(gl);
+        if (drawn != quads || gl.getVertices() != quads * 4)
+            throw new IllegalStateException("Drew " + drawn + " quads (" + gl.getVertices() + " vertices) of " + quads);
+
+        // Dig and fill single blocks near the surface, remeshing after each like a frame would
+        Random random = new Random(7);
+        long editNanos = 0, remeshed = 0;
+        for (int i = 0; i < edits; i++) {
+            int x = random.nextInt(side), z = random.nextInt(side), y = surface(x, z, height) - random.nextInt(3);
+            world.set(x, y, z, world.get(x, y, z) == 0 ? 1 + random.nextInt(3) : 0);
+            long start = System.nanoTime();
+            remeshed += world.remesh();
+            editNanos += System.nanoTime() - start;
+        }
+        double editMs = edits > 0 ? editNanos / 1e6 / edits : 0;
+        System.out.printf("%d edits: %.3f ms and %.2f chunks remeshed per edit, %d greedy quads after%n",
+                edits, editMs, edits > 0 ? (double) remeshed / edits : 0, world.getQuadCount());
+        System.out.printf("%d\t%d\t%d\t%d\t%.3f\t%.4f%n", blocks, naive, exposed, quads, meshMs, editMs);
+    }
+
+    // Rolling hills: stone below, dirt, then a grass top layer
+    private static void terrain(VoxelWorld world, int side, int height) {
+        for (int x = 0; x < side; x++) {
+            for (int z = 0; z < side; z++) {
+                int top = surface(x, z, height);
+                for (int y = 0; y <= top; y++)
+                    world.set(x, y, z, y == top ? 3 : (y > top - 4 ? 2 : 1));
+            }
+        }
+    }
+
+    private static int surface(int x, int z, int height) {
+        double h = 0.5 + 0.25 * Math.sin(x * 0.05) * Math.cos(z * 0.04) + 0.15 * Math.sin((x + z) * 0.11);
+        return Math.max(1, (int) (h * height));
+    }
+}
@@ -0,0 +1,145 @@
+package lwjgl.test.gl;
+
+import lwjgl.test.Cube3D;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+
+/**
+ * Instanced cube drawing for {@link LwjglBackend}.
+ * <p>
+ * With OpenGL 3.3 the instance records are fed straight from client memory as per-instance
+ * attributes and all cubes go out in one glDrawArraysInstanced. Older contexts fall back to
+ * one glMultMatrixf + glDrawArrays per cube. Must be created with the context current.
+ */
+final class CubeInstancing {
+
+    private static final int POSITION = 0, ROW0 = 1, ROW1 = 2, ROW2 = 3, COLOR = 4;
+    private static final int STRIDE = 16 * 4;
+
+    private static final String VERTEX_SHADER = "#version 120\n" +
+            "attribute vec3 position;\n" +
+            "attribute vec4 row0;\n" +
+            "attribute vec4 row1;\n" +
+            "attribute vec4 row2;\n" +
+            "attribute vec4 color;\n" +
+            "void main() {\n" +
+            "    vec4 p = vec4(position, 1.0);\n" +
+            "    gl_FrontColor = color;\n" +
+            "    gl_Position = gl_ModelViewProjectionMatrix * vec4(dot(row0, p), dot(row1, p), dot(row2, p), 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER = "#version 120\n" +
+            "void main() {\n" +
+            "    gl_FragColor = gl_Color;\n" +
+            "}\n";
+
+    private final boolean instanced;
+    private final int program;
+
+    // Fallback path scratch
+    private final FloatBuffer matrix = BufferUtils.createFloatBuffer(16);
+
+    CubeInstancing() {
+        instanced = GL.getCapabilities().OpenGL33;
+        program = instanced ? createProgram() : 0;
+    }
+
+    void draw(FloatBuffer instances, int count) {
+        if (count == 0)
+            return;
+        if (instances.remaining() < count * 16)
+            throw new IllegalArgumentException("Buffer holds fewer than " + count + " instances");
+
+        if (instanced)
+            drawInstanced(instances, count);
+        else
+            drawOneByOne(instances, count);
+    }
+
+    private void drawInstanced(FloatBuffer instances, int count) {
+        long address = memAddress(instances);
+
+        glUseProgram(program);
+
+        glEnableVertexAttribArray(POSITION);
+        glVertexAttribPointer(POSITION, 3, GL_FLOAT, false, 0, Cube3D.getUnitVertices());
+
+        for (int attrib = ROW0; attrib <= COLOR; attrib++) {
+            glEnableVertexAttribArray(attrib);
+            glVertexAttribPointer(attrib, 4, GL_FLOAT, false, STRIDE, address + (attrib - ROW0) * 16);
+            glVertexAttribDivisor(attrib, 1);
+        }
+
+        glDrawArraysInstanced(GL_QUADS, 0, Cube3D.VERTEX_COUNT, count);
+
+        for (int attrib = ROW0; attrib <= COLOR; attrib++) {
+            glVertexAttribDivisor(attrib, 0);
+            glDisableVertexAttribArray(attrib);
+        }
+        glDisableVertexAttribArray(POSITION);
+
+        glUseProgram(0);
+    }
+
+    private void drawOneByOne(FloatBuffer instances, int count) {
+        glEnableClientState(GL_VERTEX_ARRAY);
+        glVertexPointer(3, GL_FLOAT, 0, Cube3D.getUnitVertices());
+
+        int o = instances.position();
+        for (int i = 0; i < count; i++, o += 16) {
+            // Rows of the instance record -> column-major matrix
+            matrix.put(0, instances.get(o)).put(1, instances.get(o + 4)).put(2, instances.get(o + 8)).put(3, 0f);
+            matrix.put(4, instances.get(o + 1)).put(5, instances.get(o + 5)).put(6, instances.get(o + 9)).put(7, 0f);
+            matrix.put(8, instances.get(o + 2)).put(9, instances.get(o + 6)).put(10, instances.get(o + 10)).put(11, 0f);
+            matrix.put(12, instances.get(o + 3)).put(13, instances.get(o + 7)).put(14, instances.get(o + 11)).put(15, 1f);
+
+            glPushMatrix();
+            glMultMatrixf(matrix);
+            glColor4f(instances.get(o + 12), instances.get(o + 13), instances.get(o + 14), instances.get(o + 15));
+            glDrawArrays(GL_QUADS, 0, Cube3D.VERTEX_COUNT);
+            glPopMatrix();
+        }
+
+        glDisableClientState(GL_VERTEX_ARRAY);
+    }
+
+    private static int createProgram() {
+        int vs = compile(GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fs = compile(GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+
+        int program = glCreateProgram();
+        glAttachShader(program, vs);
+        glAttachShader(program, fs);
+        glBindAttribLocation(program, POSITION, "position");
+        glBindAttribLocation(program, ROW0, "row0");
+        glBindAttribLocation(program, ROW1, "row1");
+        glBindAttribLocation(program, ROW2, "row2");
+        glBindAttribLocation(program, COLOR, "color");
+        glLinkProgram(program);
+
+        if (glGetProgrami(program, GL_LINK_STATUS) != GL_TRUE)
+            throw new IllegalStateException("Failed to link the cube instancing program: " + glGetProgramInfoLog(program));
+
+        glDeleteShader(vs);
+        glDeleteShader(fs);
+        return program;
+    }
+
+    private static int compile(int type, String source) {
+        int shader = glCreateShader(type);
+        glShaderSource(shader, source);
+        glCompileShader(shader);
+
+        if (glGetShaderi(shader, GL_COMPILE_STATUS) != GL_TRUE)
+            throw new IllegalStateException("Failed to compile the cube instancing shader: " + glGetShaderInfoLog(shader));
+        return shader;
+    }
+}
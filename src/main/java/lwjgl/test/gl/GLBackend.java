@@ -0,0 +1,71 @@
+package lwjgl.test.gl;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The subset of fixed-function OpenGL the cube scenes need.
+ * <p>
+ * Everything that draws goes through this interface, so the same scene code can
+ * run against a real context ({@link LwjglBackend}) or without a GPU at all
+ * ({@link RecordingBackend}). Enum arguments are the plain GL11 constants.
+ */
+public interface GLBackend {
+
+    void clearColor(float r, float g, float b, float a);
+
+    void clear(int mask);
+
+    void viewport(int x, int y, int width, int height);
+
+    void enable(int cap);
+
+    void disable(int cap);
+
+    void matrixMode(int mode);
+
+    void loadIdentity();
+
+    void ortho(double left, double right, double bottom, double top, double zNear, double zFar);
+
+    /**
+     * Replaces the current matrix with 16 column-major values starting at the buffer's position.
+     */
+    void loadMatrix(FloatBuffer matrix);
+
+    void pushMatrix();
+
+    void popMatrix();
+
+    void translate(float x, float y, float z);
+
+    void rotate(float angle, float x, float y, float z);
+
+    void color(float r, float g, float b);
+
+    /**
+     * Draws {@code vertexCount} vertices as GL_QUADS.
+     *
+     * @param vertices xyz triples, starting at the buffer's position
+     * @param colors   rgb triples matching {@code vertices}, or {@code null} to keep the current color
+     */
+    void drawQuads(FloatBuffer vertices, FloatBuffer colors, int vertexCount);
+
+    /**
+     * Draws {@code count} unit cubes (edge 1, centered at the origin) in one call, each
+     * transformed by its instance record on top of the current modelview matrix.
+     *
+     * @param instances records of 16 floats starting at the buffer's position: the three rows
+     *                  of an affine model matrix, then the cube's RGBA color
+     */
+    void drawCubeInstances(FloatBuffer instances, int count);
+
+    /**
+     * Draws indexed GL_TRIANGLES in the current color.
+     *
+     * @param vertices   xyz triples, starting at the buffer's position
+     * @param indices    vertex indices, three per triangle, starting at the buffer's position
+     * @param indexCount number of indices to draw
+     */
+    void drawTriangles(FloatBuffer vertices, IntBuffer indices, int indexCount);
+}
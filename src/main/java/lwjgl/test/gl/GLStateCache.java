@@ -0,0 +1,352 @@
+package lwjgl.test.gl;
+
+import lwjgl.test.math.Matrix4f;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_MODELVIEW;
+import static org.lwjgl.opengl.GL11.GL_PROJECTION;
+
+/**
+ * {@link GLBackend} that shadows the GL state it has set and drops calls that would not
+ * change it, before passing the rest on to another backend.
+ * <p>
+ * Enables, the clear color, the viewport, the matrix mode and the current color are compared
+ * against their last values. The projection matrix is kept entirely on the CPU: loads,
+ * {@code ortho}, {@code rotate}, {@code translate} and the matrix stack in projection mode
+ * only update a shadow copy, which is uploaded with one {@code loadMatrix} before the next
+ * draw if it differs from the uploaded one. A scene that sets up the same projection every
+ * frame therefore costs nothing after the first. Modelview calls are passed straight on:
+ * comparing 16 floats per draw costs more than the rare repeated load it would save.
+ * Other matrix modes are passed on as they are set, along with every matrix call made in them.
+ * <p>
+ * Anything that touches the GL behind this object's back must be followed by {@link #invalidate()}.
+ */
+public class GLStateCache implements GLBackend {
+
+    private static final int MAX_CAPS = 16;
+
+    private final GLBackend target;
+
+    // Known enable state per cap seen so far
+    private final int[] caps = new int[MAX_CAPS];
+    private final boolean[] capEnabled = new boolean[MAX_CAPS];
+    private int capCount;
+
+    private boolean clearColorKnown;
+    private float clearR, clearG, clearB, clearA;
+
+    private boolean viewportKnown;
+    private int viewportX, viewportY, viewportWidth, viewportHeight;
+
+    // The mode the caller believes is current, and the one the target actually has, or 0 if unknown
+    private int mode = GL_MODELVIEW;
+    private int targetMode;
+
+    private boolean colorKnown;
+    private float colorR, colorG, colorB;
+
+    // Projection as the caller built it, and as last uploaded
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f uploadedProjection = new Matrix4f();
+    // GL only guarantees two levels of projection stack
+    private final Matrix4f[] projectionStack = {new Matrix4f(), new Matrix4f()};
+    private int projectionDepth;
+    private boolean projectionUploaded;
+    // Set by every projection call, so draws compare the two matrices only after one
+    private boolean projectionChanged;
+
+    private final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+
+    private int forwarded;
+    private int skipped;
+
+    public GLStateCache(GLBackend target) {
+        this.target = target;
+    }
+
+    public GLBackend getTarget() {
+        return target;
+    }
+
+    /**
+     * @return calls passed on to the target since the last {@link #resetCounters()}
+     */
+    public int getForwardedCalls() {
+        return forwarded;
+    }
+
+    /**
+     * @return calls dropped as redundant since the last {@link #resetCounters()}
+     */
+    public int getSkippedCalls() {
+        return skipped;
+    }
+
+    public void resetCounters() {
+        forwarded = 0;
+        skipped = 0;
+    }
+
+    /**
+     * Forgets all shadowed state, so the next call of every kind reaches the target. The
+     * projection built so far is kept and uploaded again before the next draw.
+     */
+    public void invalidate() {
+        capCount = 0;
+        clearColorKnown = false;
+        viewportKnown = false;
+        targetMode = 0;
+        colorKnown = false;
+        projectionUploaded = false;
+    }
+
+    @Override
+    public void clearColor(float r, float g, float b, float a) {
+        if (clearColorKnown && r == clearR && g == clearG && b == clearB && a == clearA) {
+            skipped++;
+            return;
+        }
+        clearR = r;
+        clearG = g;
+        clearB = b;
+        clearA = a;
+        clearColorKnown = true;
+        forwarded++;
+        target.clearColor(r, g, b, a);
+    }
+
+    @Override
+    public void clear(int mask) {
+        forwarded++;
+        target.clear(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        if (viewportKnown && x == viewportX && y == viewportY && width == viewportWidth && height == viewportHeight) {
+            skipped++;
+            return;
+        }
+        viewportX = x;
+        viewportY = y;
+        viewportWidth = width;
+        viewportHeight = height;
+        viewportKnown = true;
+        forwarded++;
+        target.viewport(x, y, width, height);
+    }
+
+    @Override
+    public void enable(int cap) {
+        setCap(cap, true);
+    }
+
+    @Override
+    public void disable(int cap) {
+        setCap(cap, false);
+    }
+
+    @Override
+    public void matrixMode(int mode) {
+        this.mode = mode;
+        if (mode != GL_PROJECTION && mode != GL_MODELVIEW) {
+            // Other stacks, e.g. the texture matrix, are not shadowed: switch now and pass every
+            // matrix call on while in them, and upload the projection again afterwards rather
+            // than trust the shadow of a target that was in a mode this object does not follow
+            switchTargetMode(mode);
+            projectionUploaded = false;
+            return;
+        }
+        // Only switched on the target once a call there needs it
+        skipped++;
+    }
+
+    @Override
+    public void loadIdentity() {
+        if (mode == GL_PROJECTION) {
+            projection.identity();
+            projectionChanged = true;
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.loadIdentity();
+    }
+
+    @Override
+    public void ortho(double left, double right, double bottom, double top, double zNear, double zFar) {
+        if (mode == GL_PROJECTION) {
+            projection.ortho((float) left, (float) right, (float) bottom, (float) top, (float) zNear, (float) zFar);
+            projectionChanged = true;
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.ortho(left, right, bottom, top, zNear, zFar);
+    }
+
+    @Override
+    public void loadMatrix(FloatBuffer matrix) {
+        if (mode == GL_PROJECTION) {
+            projection.set(matrix);
+            projectionChanged = true;
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.loadMatrix(matrix);
+    }
+
+    @Override
+    public void pushMatrix() {
+        if (mode == GL_PROJECTION) {
+            if (projectionDepth == projectionStack.length)
+                throw new IllegalStateException("Projection matrix stack overflow");
+            projectionStack[projectionDepth++].set(projection);
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.pushMatrix();
+    }
+
+    @Override
+    public void popMatrix() {
+        if (mode == GL_PROJECTION) {
+            if (projectionDepth == 0)
+                throw new IllegalStateException("Projection matrix stack underflow");
+            projection.set(projectionStack[--projectionDepth]);
+            projectionChanged = true;
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.popMatrix();
+    }
+
+    @Override
+    public void translate(float x, float y, float z) {
+        if (mode == GL_PROJECTION) {
+            projection.translate(x, y, z);
+            projectionChanged = true;
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.translate(x, y, z);
+    }
+
+    @Override
+    public void rotate(float angle, float x, float y, float z) {
+        if (mode == GL_PROJECTION) {
+            projection.rotate(angle, x, y, z);
+            projectionChanged = true;
+            skipped++;
+            return;
+        }
+        forwardMatrixCall();
+        target.rotate(angle, x, y, z);
+    }
+
+    @Override
+    public void color(float r, float g, float b) {
+        if (colorKnown && r == colorR && g == colorG && b == colorB) {
+            skipped++;
+            return;
+        }
+        colorR = r;
+        colorG = g;
+        colorB = b;
+        colorKnown = true;
+        forwarded++;
+        target.color(r, g, b);
+    }
+
+    @Override
+    public void drawQuads(FloatBuffer vertices, FloatBuffer colors, int vertexCount) {
+        syncProjection();
+        forwarded++;
+        target.drawQuads(vertices, colors, vertexCount);
+        // GL leaves the current color undefined after drawing with a color array
+        if (colors != null)
+            colorKnown = false;
+    }
+
+    @Override
+    public void drawCubeInstances(FloatBuffer instances, int count) {
+        syncProjection();
+        forwarded++;
+        target.drawCubeInstances(instances, count);
+        colorKnown = false;
+    }
+
+    @Override
+    public void drawTriangles(FloatBuffer vertices, IntBuffer indices, int indexCount) {
+        syncProjection();
+        forwarded++;
+        target.drawTriangles(vertices, indices, indexCount);
+    }
+
+    private void setCap(int cap, boolean enabled) {
+        int i = 0;
+        while (i < capCount && caps[i] != cap)
+            i++;
+        if (i < capCount && capEnabled[i] == enabled) {
+            skipped++;
+            return;
+        }
+        if (i == capCount && capCount < MAX_CAPS) {
+            caps[i] = cap;
+            capCount++;
+        }
+        if (i < MAX_CAPS)
+            capEnabled[i] = enabled;
+
+        forwarded++;
+        if (enabled)
+            target.enable(cap);
+        else
+            target.disable(cap);
+    }
+
+    // Puts the target in the caller's matrix mode for a call that must reach it
+    private void forwardMatrixCall() {
+        switchTargetMode(mode);
+        forwarded++;
+    }
+
+    private void switchTargetMode(int mode) {
+        if (targetMode != mode) {
+            targetMode = mode;
+            forwarded++;
+            target.matrixMode(mode);
+        }
+    }
+
+    // Uploads the shadow projection if the target's differs from it
+    private void syncProjection() {
+        if (projectionUploaded && !projectionChanged)
+            return;
+        projectionChanged = false;
+        if (projectionUploaded && sameMatrix(projection, uploadedProjection))
+            return;
+
+        switchTargetMode(GL_PROJECTION);
+        forwarded++;
+        target.loadMatrix(projection.get(matrixBuffer));
+        uploadedProjection.set(projection);
+        projectionUploaded = true;
+        // The draw being forwarded may push and multiply matrices, e.g. instancing fallbacks
+        switchTargetMode(mode);
+    }
+
+    private static boolean sameMatrix(Matrix4f a, Matrix4f b) {
+        return a.m00 == b.m00 && a.m01 == b.m01 && a.m02 == b.m02 && a.m03 == b.m03
+                && a.m10 == b.m10 && a.m11 == b.m11 && a.m12 == b.m12 && a.m13 == b.m13
+                && a.m20 == b.m20 && a.m21 == b.m21 && a.m22 == b.m22 && a.m23 == b.m23
+                && a.m30 == b.m30 && a.m31 == b.m31 && a.m32 == b.m32 && a.m33 == b.m33;
+    }
+}
@@ -0,0 +1,148 @@
+package lwjgl.test.gl;
+
+import lwjgl.test.Cube3D;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+
+/**
+ * {@link GLBackend} on top of the current LWJGL context.
+ * <p>
+ * Quads are submitted with client-side vertex arrays, so a cube costs a handful of
+ * JNI calls instead of one per vertex.
+ */
+public class LwjglBackend implements GLBackend {
+
+    // Created on first use, when a context is known to be current
+    private CubeInstancing instancing;
+
+    // Submitted since the last resetCounters()
+    private int drawCalls;
+    private int verticesDrawn;
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getVertices() {
+        return verticesDrawn;
+    }
+
+    public void resetCounters() {
+        drawCalls = 0;
+        verticesDrawn = 0;
+    }
+
+    @Override
+    public void clearColor(float r, float g, float b, float a) {
+        glClearColor(r, g, b, a);
+    }
+
+    @Override
+    public void clear(int mask) {
+        glClear(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void enable(int cap) {
+        glEnable(cap);
+    }
+
+    @Override
+    public void disable(int cap) {
+        glDisable(cap);
+    }
+
+    @Override
+    public void matrixMode(int mode) {
+        glMatrixMode(mode);
+    }
+
+    @Override
+    public void loadIdentity() {
+        glLoadIdentity();
+    }
+
+    @Override
+    public void ortho(double left, double right, double bottom, double top, double zNear, double zFar) {
+        glOrtho(left, right, bottom, top, zNear, zFar);
+    }
+
+    @Override
+    public void loadMatrix(FloatBuffer matrix) {
+        glLoadMatrixf(matrix);
+    }
+
+    @Override
+    public void pushMatrix() {
+        glPushMatrix();
+    }
+
+    @Override
+    public void popMatrix() {
+        glPopMatrix();
+    }
+
+    @Override
+    public void translate(float x, float y, float z) {
+        glTranslatef(x, y, z);
+    }
+
+    @Override
+    public void rotate(float angle, float x, float y, float z) {
+        glRotatef(angle, x, y, z);
+    }
+
+    @Override
+    public void color(float r, float g, float b) {
+        glColor3f(r, g, b);
+    }
+
+    @Override
+    public void drawQuads(FloatBuffer vertices, FloatBuffer colors, int vertexCount) {
+        glEnableClientState(GL_VERTEX_ARRAY);
+        glVertexPointer(3, GL_FLOAT, 0, vertices);
+
+        if (colors != null) {
+            glEnableClientState(GL_COLOR_ARRAY);
+            glColorPointer(3, GL_FLOAT, 0, colors);
+        }
+
+        glDrawArrays(GL_QUADS, 0, vertexCount);
+        drawCalls++;
+        verticesDrawn += vertexCount;
+
+        if (colors != null)
+            glDisableClientState(GL_COLOR_ARRAY);
+        glDisableClientState(GL_VERTEX_ARRAY);
+    }
+
+    @Override
+    public void drawCubeInstances(FloatBuffer instances, int count) {
+        if (instancing == null)
+            instancing = new CubeInstancing();
+        instancing.draw(instances, count);
+        drawCalls++;
+        verticesDrawn += count * Cube3D.VERTEX_COUNT;
+    }
+
+    @Override
+    public void drawTriangles(FloatBuffer vertices, IntBuffer indices, int indexCount) {
+        glEnableClientState(GL_VERTEX_ARRAY);
+        glVertexPointer(3, GL_FLOAT, 0, vertices);
+
+        nglDrawElements(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT, memAddress(indices));
+        drawCalls++;
+        verticesDrawn += indexCount;
+
+        glDisableClientState(GL_VERTEX_ARRAY);
+    }
+}
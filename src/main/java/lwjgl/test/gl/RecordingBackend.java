@@ -0,0 +1,218 @@
+package lwjgl.test.gl;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link GLBackend} that touches no GL at all. It counts calls and keeps a copy of
+ * every submitted vertex batch, so scene code can be checked on machines without a GPU.
+ * Benchmarks only count, so copying vertices does not dominate what they measure.
+ */
+public class RecordingBackend implements GLBackend {
+
+    private final boolean keepVertices;
+    private final List<float[]> vertexBatches = new ArrayList<float[]>();
+    private int drawCalls;
+    private int vertices;
+    private int instances;
+    private int matrixCalls;
+    private int stateCalls;
+    private int colorCalls;
+    private int stateChanges;
+    private int stackDepth;
+
+    public RecordingBackend() {
+        this(true);
+    }
+
+    /**
+     * @param keepVertices whether to copy every drawQuads batch for {@link #getVertexBatch}, or only count
+     */
+    public RecordingBackend(boolean keepVertices) {
+        this.keepVertices = keepVertices;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        vertexBatches.clear();
+        drawCalls = 0;
+        vertices = 0;
+        instances = 0;
+        matrixCalls = 0;
+        stateCalls = 0;
+        colorCalls = 0;
+        stateChanges = 0;
+        stackDepth = 0;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return cubes submitted through drawCubeInstances
+     */
+    public int getInstances() {
+        return instances;
+    }
+
+    public int getMatrixCalls() {
+        return matrixCalls;
+    }
+
+    public int getStateCalls() {
+        return stateCalls;
+    }
+
+    public int getColorCalls() {
+        return colorCalls;
+    }
+
+    /**
+     * @return calls that change GL state rather than draw or transform: enables, disables,
+     * clear color, viewport, matrix mode and current color
+     */
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    public int getStackDepth() {
+        return stackDepth;
+    }
+
+    /**
+     * @return the vertices of the {@code index}-th drawQuads call, as xyz triples
+     */
+    public float[] getVertexBatch(int index) {
+        if (!keepVertices)
+            throw new IllegalStateException("Vertex batches are only counted");
+        return vertexBatches.get(index);
+    }
+
+    @Override
+    public void clearColor(float r, float g, float b, float a) {
+        stateCalls++;
+        stateChanges++;
+    }
+
+    @Override
+    public void clear(int mask) {
+        stateCalls++;
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        stateCalls++;
+        stateChanges++;
+    }
+
+    @Override
+    public void enable(int cap) {
+        stateCalls++;
+        stateChanges++;
+    }
+
+    @Override
+    public void disable(int cap) {
+        stateCalls++;
+        stateChanges++;
+    }
+
+    @Override
+    public void matrixMode(int mode) {
+        matrixCalls++;
+        stateChanges++;
+    }
+
+    @Override
+    public void loadIdentity() {
+        matrixCalls++;
+    }
+
+    @Override
+    public void ortho(double left, double right, double bottom, double top, double zNear, double zFar) {
+        matrixCalls++;
+    }
+
+    @Override
+    public void loadMatrix(FloatBuffer matrix) {
+        matrixCalls++;
+    }
+
+    @Override
+    public void pushMatrix() {
+        matrixCalls++;
+        stackDepth++;
+    }
+
+    @Override
+    public void popMatrix() {
+        matrixCalls++;
+        if (--stackDepth < 0)
+            throw new IllegalStateException("Matrix stack underflow");
+    }
+
+    @Override
+    public void translate(float x, float y, float z) {
+        matrixCalls++;
+    }
+
+    @Override
+    public void rotate(float angle, float x, float y, float z) {
+        matrixCalls++;
+    }
+
+    @Override
+    public void color(float r, float g, float b) {
+        colorCalls++;
+        stateChanges++;
+    }
+
+    @Override
+    public void drawQuads(FloatBuffer vertices, FloatBuffer colors, int vertexCount) {
+        if (vertexCount % 4 != 0)
+            throw new IllegalArgumentException("Quads need a multiple of 4 vertices, got " + vertexCount);
+
+        if (keepVertices) {
+            float[] copy = new float[vertexCount * 3];
+            int base = vertices.position();
+            for (int i = 0; i < copy.length; i++)
+                copy[i] = vertices.get(base + i);
+            vertexBatches.add(copy);
+        }
+
+        drawCalls++;
+        this.vertices += vertexCount;
+        if (colors != null)
+            colorCalls++;
+    }
+
+    @Override
+    public void drawCubeInstances(FloatBuffer instances, int count) {
+        if (instances.remaining() < count * 16)
+            throw new IllegalArgumentException("Buffer holds fewer than " + count + " instances");
+
+        drawCalls++;
+        this.instances += count;
+        vertices += count * 24;
+    }
+
+    @Override
+    public void drawTriangles(FloatBuffer vertices, IntBuffer indices, int indexCount) {
+        if (indexCount % 3 != 0)
+            throw new IllegalArgumentException("Triangles need a multiple of 3 indices, got " + indexCount);
+        if (indices.remaining() < indexCount)
+            throw new IllegalArgumentException("Buffer holds fewer than " + indexCount + " indices");
+
+        drawCalls++;
+        this.vertices += indexCount;
+    }
+}
@@ -0,0 +1,363 @@
+package lwjgl.test.gl;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_CULL_FACE;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11.GL_MODELVIEW;
+
+/**
+ * Draw commands collected over a frame, then sorted and submitted in one go.
+ * <p>
+ * Drawables write fixed-size records into a ring of plain arrays instead of calling the
+ * backend: a 64-bit sort key, the draw, its color and its modelview matrix. Vertex and index
+ * buffers stay where they are and are referenced by index. {@link #flush} sorts the pending
+ * commands by key and replays them, so commands sharing GL state and material end up next to
+ * each other and opaque ones run front to back; state is only set where it changes from the
+ * previous command. Submit through a {@link GLStateCache} to drop what repeats across frames.
+ * <p>
+ * Keys are built by {@link #key}: layer in the top 8 bits, then the {@code STATE_*} bits,
+ * a 24-bit material id and a 24-bit depth. Commands with equal keys keep their submission
+ * order.
+ */
+public class RenderQueue {
+
+    // GL state a command is drawn with, in the key
+    public static final int STATE_CULL_FACE = 1;
+    public static final int STATE_DEPTH_TEST = 1 << 1;
+
+    private static final int KIND_QUADS = 0, KIND_TRIANGLES = 1;
+
+    // Record layout: ints and floats per slot, and their offsets
+    private static final int KIND = 0, COUNT = 1, VERTICES = 2, EXTRA = 3, INTS = 4;
+    private static final int RED = 0, GREEN = 1, BLUE = 2, MATRIX = 3, FLOATS = MATRIX + 16;
+
+    // The ring, a record per slot: its key, its ints and its floats
+    private long[] recordKeys;
+    private int[] recordInts;
+    private float[] recordFloats;
+    private int capacity;
+    // Oldest pending record and number of pending records
+    private int start, count;
+
+    // Buffers referenced by pending records
+    private Object[] resources = new Object[64];
+    private int resourceCount;
+
+    // Sort scratch: keys and submission indices in draw order, plus the radix sort's second
+    // pair of arrays
+    private long[] keys = new long[0], keysTmp = new long[0];
+    private int[] order = new int[0], orderTmp = new int[0];
+    private final int[] digitCounts = new int[8 * 256];
+    // Keys of the last flush in submission order, and how many, to notice a frame repeating them
+    private long[] submittedKeys = new long[0];
+    private int submittedCount = -1;
+    // The sorted records' ints and floats, in draw order
+    private int[] sortedInts = new int[0];
+    private float[] sortedFloats = new float[0];
+
+    // A command's matrix, handed to loadMatrix
+    private final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+
+    private int lastCommands;
+    private int lastStateChanges;
+
+    public RenderQueue(int initialCapacity) {
+        capacity = Math.max(16, initialCapacity);
+        recordKeys = new long[capacity];
+        recordInts = new int[capacity * INTS];
+        recordFloats = new float[capacity * FLOATS];
+    }
+
+    /**
+     * @param layer    coarse pass, drawn in increasing order (0 to 255)
+     * @param state    {@code STATE_*} bits the command needs; the others are disabled
+     * @param material id of what the command is colored with, 0 to 2^24 - 1
+     * @param depth    0 (near) to 1 (far); clamped
+     */
+    public static long key(int layer, int state, int material, float depth) {
+        if (layer < 0 || layer > 255)
+            throw new IllegalArgumentException("Layer out of range: " + layer);
+        if (material < 0 || material > 0xffffff)
+            throw new IllegalArgumentException("Material out of range: " + material);
+        // Compared by hand: Math.min and max on floats order -0 and NaN, which is slow here
+        int quantized = (int) ((depth > 1 ? 1 : depth > 0 ? depth : 0) * 0xffffff);
+        return (long) layer << 56 | (long) (state & 0xff) << 48 | (long) material << 24 | quantized;
+    }
+
+    /**
+     * @return commands waiting for {@link #flush}
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return commands replayed by the last {@link #flush}
+     */
+    public int getLastCommands() {
+        return lastCommands;
+    }
+
+    /**
+     * @return enables and disables the last {@link #flush} issued
+     */
+    public int getLastStateChanges() {
+        return lastStateChanges;
+    }
+
+    /**
+     * Queues a GL_QUADS draw.
+     *
+     * @param modelview 16 column-major floats at the buffer's position, copied right away
+     * @param colors    rgb per vertex, or {@code null} to draw in (r, g, b)
+     */
+    public void submitQuads(long key, FloatBuffer modelview, FloatBuffer vertices, FloatBuffer colors, int vertexCount,
+                            float r, float g, float b) {
+        int o = append(key, KIND_QUADS, modelview, vertexCount, r, g, b);
+        recordInts[o + VERTICES] = reference(vertices);
+        recordInts[o + EXTRA] = colors == null ? -1 : reference(colors);
+    }
+
+    /**
+     * Queues an indexed GL_TRIANGLES draw in (r, g, b).
+     *
+     * @param modelview 16 column-major floats at the buffer's position, copied right away
+     */
+    public void submitTriangles(long key, FloatBuffer modelview, FloatBuffer vertices, IntBuffer indices, int indexCount,
+                                float r, float g, float b) {
+        int o = append(key, KIND_TRIANGLES, modelview, indexCount, r, g, b);
+        recordInts[o + VERTICES] = reference(vertices);
+        recordInts[o + EXTRA] = reference(indices);
+    }
+
+    /**
+     * Drops every pending command.
+     */
+    public void clear() {
+        start = (start + count) % capacity;
+        count = 0;
+        Arrays.fill(resources, 0, resourceCount, null);
+        resourceCount = 0;
+    }
+
+    /**
+     * Sorts the pending commands by key and draws them, leaving the modelview matrix mode current.
+     *
+     * @return how many commands were drawn
+     */
+    public int flush(GLBackend gl) {
+        int n = count;
+        // Records already in draw order are replayed where they lie
+        boolean gathered = sort();
+        if (gathered)
+            gather();
+
+        gl.matrixMode(GL_MODELVIEW);
+        int state = -1;
+        int stateChanges = 0;
+        final long[] keys = gathered ? this.keys : submittedKeys;
+        final int[] ints = gathered ? sortedInts : recordInts;
+        final float[] floats = gathered ? sortedFloats : recordFloats;
+        final FloatBuffer matrix = matrixBuffer;
+        for (int i = 0, r = gathered ? 0 : start; i < n; i++) {
+            int o = r * INTS, f = r * FLOATS;
+            if (++r == capacity)
+                r = 0;
+            int commandState = (int) (keys[i] >>> 48) & 0xff;
+            if (commandState != state) {
+                stateChanges += setCap(gl, GL_CULL_FACE, STATE_CULL_FACE, commandState, state);
+                stateChanges += setCap(gl, GL_DEPTH_TEST, STATE_DEPTH_TEST, commandState, state);
+                state = commandState;
+            }
+
+            for (int j = 0; j < 16; j++)
+                matrix.put(j, floats[f + MATRIX + j]);
+            gl.loadMatrix(matrix);
+
+            int extra = ints[o + EXTRA];
+            FloatBuffer vertices = (FloatBuffer) resources[ints[o + VERTICES]];
+            if (ints[o + KIND] == KIND_QUADS) {
+                if (extra < 0)
+                    gl.color(floats[f + RED], floats[f + GREEN], floats[f + BLUE]);
+                gl.drawQuads(vertices, extra < 0 ? null : (FloatBuffer) resources[extra], ints[o + COUNT]);
+            } else {
+                gl.color(floats[f + RED], floats[f + GREEN], floats[f + BLUE]);
+                gl.drawTriangles(vertices, (IntBuffer) resources[extra], ints[o + COUNT]);
+            }
+        }
+
+        clear();
+        lastCommands = n;
+        lastStateChanges = stateChanges;
+        return n;
+    }
+
+    // Enables or disables cap as the command needs, unless the previous command needed the same
+    private static int setCap(GLBackend gl, int cap, int bit, int state, int previous) {
+        boolean on = (state & bit) != 0;
+        if (previous >= 0 && ((previous & bit) != 0) == on)
+            return 0;
+        if (on)
+            gl.enable(cap);
+        else
+            gl.disable(cap);
+        return 1;
+    }
+
+    // Writes the common part of a record and returns the offset of its ints
+    private int append(long key, int kind, FloatBuffer modelview, int elementCount, float r, float g, float b) {
+        if (count == capacity)
+            grow();
+
+        int slot = start + count;
+        if (slot >= capacity)
+            slot -= capacity;
+        int o = slot * INTS, f = slot * FLOATS;
+        recordKeys[slot] = key;
+        recordInts[o + KIND] = kind;
+        recordInts[o + COUNT] = elementCount;
+        recordFloats[f + RED] = r;
+        recordFloats[f + GREEN] = g;
+        recordFloats[f + BLUE] = b;
+        int position = modelview.position();
+        modelview.get(recordFloats, f + MATRIX, 16);
+        modelview.position(position);
+        count++;
+        return o;
+    }
+
+    private int reference(Object buffer) {
+        // Consecutive commands mostly share their buffers, e.g. a mesh's vertices and colors
+        if (resourceCount > 0 && resources[resourceCount - 1] == buffer)
+            return resourceCount - 1;
+        if (resourceCount > 1 && resources[resourceCount - 2] == buffer)
+            return resourceCount - 2;
+        if (resourceCount == resources.length)
+            resources = Arrays.copyOf(resources, resourceCount * 2);
+        resources[resourceCount] = buffer;
+        return resourceCount++;
+    }
+
+    // Doubles the ring, unwrapping the pending records to its start
+    private void grow() {
+        long[] biggerKeys = new long[capacity * 2];
+        int[] biggerInts = new int[capacity * 2 * INTS];
+        float[] biggerFloats = new float[capacity * 2 * FLOATS];
+        // The pending records run from start to the end of the ring, then wrap around to 0
+        int head = Math.min(count, capacity - start), tail = count - head;
+        System.arraycopy(recordKeys, start, biggerKeys, 0, head);
+        System.arraycopy(recordKeys, 0, biggerKeys, head, tail);
+        System.arraycopy(recordInts, start * INTS, biggerInts, 0, head * INTS);
+        System.arraycopy(recordInts, 0, biggerInts, head * INTS, tail * INTS);
+        System.arraycopy(recordFloats, start * FLOATS, biggerFloats, 0, head * FLOATS);
+        System.arraycopy(recordFloats, 0, biggerFloats, head * FLOATS, tail * FLOATS);
+        recordKeys = biggerKeys;
+        recordInts = biggerInts;
+        recordFloats = biggerFloats;
+        capacity *= 2;
+        start = 0;
+    }
+
+    // Copies the pending records in draw order to the start of sortedInts and sortedFloats.
+    // Loads that depend on nothing but order overlap their cache misses, which the replay's
+    // backend calls between records would not let them do; the replay then reads in order.
+    private void gather() {
+        int n = count;
+        if (sortedInts.length < n * INTS) {
+            sortedInts = new int[capacity * INTS];
+            sortedFloats = new float[capacity * FLOATS];
+        }
+        final int[] ints = recordInts, toInts = sortedInts;
+        final float[] floats = recordFloats, toFloats = sortedFloats;
+        for (int i = 0; i < n; i++) {
+            int slot = start + order[i];
+            if (slot >= capacity)
+                slot -= capacity;
+            System.arraycopy(ints, slot * INTS, toInts, i * INTS, INTS);
+            System.arraycopy(floats, slot * FLOATS, toFloats, i * FLOATS, FLOATS);
+        }
+    }
+
+    // Copies the pending keys to submittedKeys. If they are not in order already, fills keys
+    // and order[0, count) with them and their submission indices in key order, stable, and
+    // returns true. A frame submitting the same keys as the last keeps the last one's order.
+    private boolean sort() {
+        int n = count;
+        if (keys.length < n) {
+            keys = new long[capacity];
+            keysTmp = new long[capacity];
+            order = new int[capacity];
+            orderTmp = new int[capacity];
+            submittedKeys = new long[capacity];
+            submittedCount = -1;
+        }
+
+        // Keys compare unsigned; flipping the top bit lets signed comparisons do that
+        boolean repeated = n == submittedCount, ascending = true;
+        long previous = Long.MIN_VALUE;
+        final long[] submitted = submittedKeys;
+        for (int i = 0, slot = start; i < n; i++) {
+            long key = recordKeys[slot];
+            repeated &= key == submitted[i];
+            submitted[i] = key;
+            ascending &= (key ^ Long.MIN_VALUE) >= previous;
+            previous = key ^ Long.MIN_VALUE;
+            if (++slot == capacity)
+                slot = 0;
+        }
+        submittedCount = n;
+        if (ascending)
+            return false;
+        if (repeated)
+            return true;
+
+        // Counts of every byte value at every byte of the keys, all in one pass
+        final int[] counts = digitCounts;
+        Arrays.fill(counts, 0);
+        long[] from = keys, to = keysTmp;
+        int[] fromOrder = order, toOrder = orderTmp;
+        for (int i = 0; i < n; i++) {
+            long key = submitted[i];
+            from[i] = key;
+            fromOrder[i] = i;
+            for (int b = 0; b < 8; b++)
+                counts[b << 8 | (int) (key >>> (b << 3)) & 0xff]++;
+        }
+
+        // Least significant byte first; a byte that is the same in every key needs no pass
+        for (int b = 0; b < 8; b++) {
+            int shift = b << 3, c0 = b << 8;
+            if (n == 0 || counts[c0 | (int) (from[0] >>> shift) & 0xff] == n)
+                continue;
+
+            for (int d = 0, sum = 0; d < 256; d++) {
+                int c = counts[c0 + d];
+                counts[c0 + d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long key = from[i];
+                int at = counts[c0 | (int) (key >>> shift) & 0xff]++;
+                to[at] = key;
+                toOrder[at] = fromOrder[i];
+            }
+
+            long[] k = from;
+            from = to;
+            to = k;
+            int[] s = fromOrder;
+            fromOrder = toOrder;
+            toOrder = s;
+        }
+        keys = from;
+        keysTmp = to;
+        order = fromOrder;
+        orderTmp = toOrder;
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package lwjgl.test.input;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the keys held during every simulation tick to a compact binary log, for {@link InputReplay}.
+ * <p>
+ * Format, big-endian like {@link DataOutputStream}: magic "CUBI", version, tick length in
+ * nanoseconds (long), flags (int, {@link #ANIMATED} if the demo clip posed the arm), then runs of identical ticks as a key mask byte followed by the run length
+ * as an unsigned LEB128 varint. Holding a key for a minute at 60 ticks per second takes three bytes.
+ */
+public class InputRecorder implements Closeable {
+
+    static final int MAGIC = 'C' << 24 | 'U' << 16 | 'B' << 8 | 'I';
+    // 2: several arrow keys may act in the same tick; 3: header flags
+    static final int VERSION = 3;
+
+    /**
+     * Header flag: the demo animation played over the keys, so replays must play it too.
+     */
+    public static final int ANIMATED = 1;
+
+    private final DataOutputStream out;
+    private int runKeys = -1;
+    private long runLength;
+    private long ticks;
+
+    /**
+     * @param flags {@link #ANIMATED} or 0
+     */
+    public InputRecorder(String path, long tickNanos, int flags) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(tickNanos);
+        out.writeInt(flags);
+    }
+
+    /**
+     * Appends one tick.
+     *
+     * @param keys {@code CubeScene.KEY_*} bits; only the low 8 bits are kept
+     */
+    public void record(int keys) throws IOException {
+        keys &= 0xff;
+        if (keys != runKeys) {
+            flushRun();
+            runKeys = keys;
+        }
+        runLength++;
+        ticks++;
+    }
+
+    /**
+     * @return ticks recorded so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushRun();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushRun() throws IOException {
+        if (runLength == 0)
+            return;
+        out.writeByte(runKeys);
+        long n = runLength;
+        while ((n & ~0x7fL) != 0) {
+            out.writeByte((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte((int) n);
+        runLength = 0;
+    }
+}
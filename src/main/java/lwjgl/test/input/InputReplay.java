@@ -0,0 +1,105 @@
+package lwjgl.test.input;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads a log written by {@link InputRecorder} back one tick at a time, without any window or GLFW.
+ */
+public class InputReplay implements Closeable {
+
+    private final DataInputStream in;
+    private final long tickNanos;
+    private final int flags;
+    private int runKeys;
+    private long runLeft;
+    private boolean ended;
+    private long ticks;
+
+    public InputReplay(String path) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+        try {
+            if (in.readInt() != InputRecorder.MAGIC)
+                throw new IOException(path + " is not an input log");
+            int version = in.readInt();
+            if (version != InputRecorder.VERSION)
+                throw new IOException("Unsupported input log version " + version + " in " + path);
+            tickNanos = in.readLong();
+            flags = in.readInt();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return tick length of the recording, in nanoseconds
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @return the recording's header flags, such as {@link InputRecorder#ANIMATED}
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return ticks returned by {@link #next()} so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return whether there is another tick to {@link #next()}
+     */
+    public boolean hasNext() throws IOException {
+        while (runLeft == 0 && !ended) {
+            int keys = in.read();
+            if (keys < 0) {
+                ended = true;
+                break;
+            }
+            runKeys = keys;
+            runLeft = readLength();
+        }
+        return runLeft > 0;
+    }
+
+    /**
+     * @return the keys held during the next tick
+     */
+    public int next() throws IOException {
+        if (!hasNext())
+            throw new IllegalStateException("Input log ended after " + ticks + " ticks");
+        runLeft--;
+        ticks++;
+        return runKeys;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private long readLength() throws IOException {
+        long n = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("Input log truncated after " + ticks + " ticks");
+            if (shift > 56)
+                throw new IOException("Corrupt run length after " + ticks + " ticks");
+            n |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return n;
+        }
+    }
+}
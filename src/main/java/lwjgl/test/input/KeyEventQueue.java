@@ -0,0 +1,91 @@
+package lwjgl.test.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer, single-consumer ring buffer of key events.
+ * <p>
+ * The GLFW key callback {@link #offer}s events on the thread polling the window; whichever
+ * thread runs the simulation {@link #poll}s them. Each event is packed into one int, so the
+ * queue never allocates. When the consumer falls so far behind that the ring is full, new
+ * events are dropped and counted rather than blocking the window thread.
+ */
+public class KeyEventQueue {
+
+    private final int[] events;
+    private final int mask;
+    // Next slot to read, only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write, only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long dropped;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public KeyEventQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        events = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Appends an event; producer thread only.
+     *
+     * @param key    GLFW key code, 0 to 65535
+     * @param action GLFW_RELEASE, GLFW_PRESS or GLFW_REPEAT
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offer(int key, int action) {
+        long t = tail.get();
+        if (t - head.get() == events.length) {
+            dropped++; // only the producer writes it
+            return false;
+        }
+        events[(int) t & mask] = encode(key, action);
+        // Publishes the event to the consumer
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest event; consumer thread only.
+     *
+     * @return the packed event (see {@link #keyOf} and {@link #actionOf}), or -1 if the queue is empty
+     */
+    public int poll() {
+        long h = head.get();
+        if (h == tail.get())
+            return -1;
+        int event = events[(int) h & mask];
+        head.lazySet(h + 1);
+        return event;
+    }
+
+    /**
+     * @return events dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public int getCapacity() {
+        return events.length;
+    }
+
+    public static int encode(int key, int action) {
+        return (key & 0xffff) << 2 | (action & 3);
+    }
+
+    public static int keyOf(int event) {
+        return event >>> 2;
+    }
+
+    public static int actionOf(int event) {
+        return event & 3;
+    }
+}
@@ -0,0 +1,114 @@
+package lwjgl.test.input;
+
+import lwjgl.test.CubeScene;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * Which keys are held down, maintained from key events instead of polling.
+ * <p>
+ * Besides a bitset over all GLFW key codes it keeps the {@code CubeScene.KEY_*} mask the
+ * simulation consumes. Which GLFW keys produce which mask bits is a table that can be changed
+ * with {@link #bind}; several keys may share a bit, which then stays set while any of them is
+ * held. Every event costs the same regardless of how many bindings there are.
+ */
+public class KeyState {
+
+    private static final int KEY_CODES = GLFW_KEY_LAST + 1;
+
+    private final long[] down = new long[(KEY_CODES + 63) / 64];
+    // GLFW key code -> mask bits it sets
+    private final int[] bindings = new int[KEY_CODES];
+    // How many held keys currently set each mask bit
+    private final int[] holds = new int[32];
+    private int mask;
+
+    /**
+     * Creates a state with the default bindings: arrows, and both SHIFT and CTRL keys.
+     */
+    public KeyState() {
+        bind(GLFW_KEY_UP, CubeScene.KEY_UP);
+        bind(GLFW_KEY_DOWN, CubeScene.KEY_DOWN);
+        bind(GLFW_KEY_LEFT, CubeScene.KEY_LEFT);
+        bind(GLFW_KEY_RIGHT, CubeScene.KEY_RIGHT);
+        bind(GLFW_KEY_LEFT_SHIFT, CubeScene.KEY_SHIFT);
+        bind(GLFW_KEY_RIGHT_SHIFT, CubeScene.KEY_SHIFT);
+        bind(GLFW_KEY_LEFT_CONTROL, CubeScene.KEY_CTRL);
+        bind(GLFW_KEY_RIGHT_CONTROL, CubeScene.KEY_CTRL);
+    }
+
+    /**
+     * Makes {@code key} produce {@code bits} (0 to unbind). Only call while no keys are held.
+     */
+    public KeyState bind(int key, int bits) {
+        checkKey(key);
+        bindings[key] = bits;
+        return this;
+    }
+
+    /**
+     * @return the mask bits {@code key} produces
+     */
+    public int getBinding(int key) {
+        checkKey(key);
+        return bindings[key];
+    }
+
+    /**
+     * Applies every event waiting in {@code queue}.
+     *
+     * @return the number of events applied
+     */
+    public int drain(KeyEventQueue queue) {
+        int n = 0;
+        for (int event = queue.poll(); event >= 0; event = queue.poll()) {
+            apply(KeyEventQueue.keyOf(event), KeyEventQueue.actionOf(event));
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Applies one key event; unknown keys and repeats change nothing.
+     */
+    public void apply(int key, int action) {
+        if (key < 0 || key >= KEY_CODES || action == GLFW_REPEAT)
+            return;
+
+        long bit = 1L << (key & 63);
+        boolean wasDown = (down[key >> 6] & bit) != 0;
+        boolean isDown = action == GLFW_PRESS;
+        if (wasDown == isDown)
+            return;
+
+        if (isDown)
+            down[key >> 6] |= bit;
+        else
+            down[key >> 6] &= ~bit;
+
+        for (int bits = bindings[key]; bits != 0; bits &= bits - 1) {
+            int i = Integer.numberOfTrailingZeros(bits);
+            holds[i] += isDown ? 1 : -1;
+            if (holds[i] > 0)
+                mask |= 1 << i;
+            else
+                mask &= ~(1 << i);
+        }
+    }
+
+    public boolean isDown(int key) {
+        return key >= 0 && key < KEY_CODES && (down[key >> 6] & 1L << (key & 63)) != 0;
+    }
+
+    /**
+     * @return the {@code CubeScene.KEY_*} bits of every bound key held down
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    private static void checkKey(int key) {
+        if (key < 0 || key >= KEY_CODES)
+            throw new IllegalArgumentException("Not a GLFW key code: " + key);
+    }
+}
@@ -0,0 +1,74 @@
+package lwjgl.test.math;
+
+/**
+ * The six clip planes of a projection (times view) matrix, for testing boxes against the view volume.
+ * <p>
+ * Planes are extracted straight from the matrix rows, so any projection works, including the
+ * rotated glOrtho the cube scene uses. A point is inside a plane when {@code a*x + b*y + c*z + d >= 0}.
+ */
+public class Frustum {
+
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTS = 1;
+    public static final int INSIDE = 2;
+
+    // left, right, bottom, top, near, far; 4 floats each
+    private final float[] planes = new float[24];
+
+    /**
+     * Sets the planes from a combined projection * view matrix; boxes are then tested in world space.
+     */
+    public Frustum set(Matrix4f m) {
+        setPlane(0, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+        setPlane(1, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+        setPlane(2, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+        setPlane(3, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+        setPlane(4, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+        setPlane(5, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+        return this;
+    }
+
+    /**
+     * @return whether the axis-aligned box touches the view volume
+     */
+    public boolean intersects(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        final float[] p = planes;
+        for (int i = 0; i < 24; i += 4) {
+            float a = p[i], b = p[i + 1], c = p[i + 2];
+            // The box corner furthest along the plane normal
+            float x = a >= 0 ? maxX : minX;
+            float y = b >= 0 ? maxY : minY;
+            float z = c >= 0 ? maxZ : minZ;
+            if (a * x + b * y + c * z + p[i + 3] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE} (completely within the view volume)
+     */
+    public int test(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        final float[] p = planes;
+        int result = INSIDE;
+        for (int i = 0; i < 24; i += 4) {
+            float a = p[i], b = p[i + 1], c = p[i + 2], d = p[i + 3];
+            float px = a >= 0 ? maxX : minX, nx = a >= 0 ? minX : maxX;
+            float py = b >= 0 ? maxY : minY, ny = b >= 0 ? minY : maxY;
+            float pz = c >= 0 ? maxZ : minZ, nz = c >= 0 ? minZ : maxZ;
+            if (a * px + b * py + c * pz + d < 0)
+                return OUTSIDE;
+            if (a * nx + b * ny + c * nz + d < 0)
+                result = INTERSECTS;
+        }
+        return result;
+    }
+
+    private void setPlane(int index, float a, float b, float c, float d) {
+        int o = index * 4;
+        planes[o] = a;
+        planes[o + 1] = b;
+        planes[o + 2] = c;
+        planes[o + 3] = d;
+    }
+}
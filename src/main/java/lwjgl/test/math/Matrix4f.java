@@ -0,0 +1,249 @@
+package lwjgl.test.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 4x4 float matrix laid out like OpenGL: column-major, {@code mCR} is column C, row R.
+ * <p>
+ * All operations work in place and never allocate. Operations that append a transform
+ * ({@link #translate}, {@link #rotate}, {@link #ortho}, ...) post-multiply exactly like
+ * their fixed-function counterparts, so a chain of calls reads the same as the GL code.
+ */
+public class Matrix4f {
+
+    public float m00, m01, m02, m03;
+    public float m10, m11, m12, m13;
+    public float m20, m21, m22, m23;
+    public float m30, m31, m32, m33;
+
+    public Matrix4f() {
+        identity();
+    }
+
+    public Matrix4f identity() {
+        m00 = 1; m01 = 0; m02 = 0; m03 = 0;
+        m10 = 0; m11 = 1; m12 = 0; m13 = 0;
+        m20 = 0; m21 = 0; m22 = 1; m23 = 0;
+        m30 = 0; m31 = 0; m32 = 0; m33 = 1;
+        return this;
+    }
+
+    public Matrix4f set(Matrix4f m) {
+        m00 = m.m00; m01 = m.m01; m02 = m.m02; m03 = m.m03;
+        m10 = m.m10; m11 = m.m11; m12 = m.m12; m13 = m.m13;
+        m20 = m.m20; m21 = m.m21; m22 = m.m22; m23 = m.m23;
+        m30 = m.m30; m31 = m.m31; m32 = m.m32; m33 = m.m33;
+        return this;
+    }
+
+    /**
+     * this = this * r
+     */
+    public Matrix4f mul(Matrix4f r) {
+        return mul(this, r);
+    }
+
+    /**
+     * this = a * b. Either argument may be {@code this}.
+     */
+    public Matrix4f mul(Matrix4f a, Matrix4f b) {
+        float n00 = a.m00 * b.m00 + a.m10 * b.m01 + a.m20 * b.m02 + a.m30 * b.m03;
+        float n01 = a.m01 * b.m00 + a.m11 * b.m01 + a.m21 * b.m02 + a.m31 * b.m03;
+        float n02 = a.m02 * b.m00 + a.m12 * b.m01 + a.m22 * b.m02 + a.m32 * b.m03;
+        float n03 = a.m03 * b.m00 + a.m13 * b.m01 + a.m23 * b.m02 + a.m33 * b.m03;
+        float n10 = a.m00 * b.m10 + a.m10 * b.m11 + a.m20 * b.m12 + a.m30 * b.m13;
+        float n11 = a.m01 * b.m10 + a.m11 * b.m11 + a.m21 * b.m12 + a.m31 * b.m13;
+        float n12 = a.m02 * b.m10 + a.m12 * b.m11 + a.m22 * b.m12 + a.m32 * b.m13;
+        float n13 = a.m03 * b.m10 + a.m13 * b.m11 + a.m23 * b.m12 + a.m33 * b.m13;
+        float n20 = a.m00 * b.m20 + a.m10 * b.m21 + a.m20 * b.m22 + a.m30 * b.m23;
+        float n21 = a.m01 * b.m20 + a.m11 * b.m21 + a.m21 * b.m22 + a.m31 * b.m23;
+        float n22 = a.m02 * b.m20 + a.m12 * b.m21 + a.m22 * b.m22 + a.m32 * b.m23;
+        float n23 = a.m03 * b.m20 + a.m13 * b.m21 + a.m23 * b.m22 + a.m33 * b.m23;
+        float n30 = a.m00 * b.m30 + a.m10 * b.m31 + a.m20 * b.m32 + a.m30 * b.m33;
+        float n31 = a.m01 * b.m30 + a.m11 * b.m31 + a.m21 * b.m32 + a.m31 * b.m33;
+        float n32 = a.m02 * b.m30 + a.m12 * b.m31 + a.m22 * b.m32 + a.m32 * b.m33;
+        float n33 = a.m03 * b.m30 + a.m13 * b.m31 + a.m23 * b.m32 + a.m33 * b.m33;
+        m00 = n00; m01 = n01; m02 = n02; m03 = n03;
+        m10 = n10; m11 = n11; m12 = n12; m13 = n13;
+        m20 = n20; m21 = n21; m22 = n22; m23 = n23;
+        m30 = n30; m31 = n31; m32 = n32; m33 = n33;
+        return this;
+    }
+
+    /**
+     * Same as glTranslatef.
+     */
+    public Matrix4f translate(float x, float y, float z) {
+        m30 += m00 * x + m10 * y + m20 * z;
+        m31 += m01 * x + m11 * y + m21 * z;
+        m32 += m02 * x + m12 * y + m22 * z;
+        m33 += m03 * x + m13 * y + m23 * z;
+        return this;
+    }
+
+    /**
+     * Same as glScalef.
+     */
+    public Matrix4f scale(float x, float y, float z) {
+        m00 *= x; m01 *= x; m02 *= x; m03 *= x;
+        m10 *= y; m11 *= y; m12 *= y; m13 *= y;
+        m20 *= z; m21 *= z; m22 *= z; m23 *= z;
+        return this;
+    }
+
+    /**
+     * Same as glRotatef: {@code angle} in degrees around the axis (x, y, z).
+     */
+    public Matrix4f rotate(float angle, float x, float y, float z) {
+        float len = (float) Math.sqrt(x * x + y * y + z * z);
+        if (len == 0.0f)
+            return this;
+        x /= len;
+        y /= len;
+        z /= len;
+
+        double rad = Math.toRadians(angle);
+        float c = (float) Math.cos(rad);
+        float s = (float) Math.sin(rad);
+        float t = 1.0f - c;
+
+        // Rotation part of the glRotate matrix
+        float r00 = x * x * t + c, r01 = y * x * t + z * s, r02 = x * z * t - y * s;
+        float r10 = x * y * t - z * s, r11 = y * y * t + c, r12 = y * z * t + x * s;
+        float r20 = x * z * t + y * s, r21 = y * z * t - x * s, r22 = z * z * t + c;
+
+        return mul3x3(r00, r01, r02, r10, r11, r12, r20, r21, r22);
+    }
+
+    /**
+     * Appends the rotation described by the unit quaternion {@code q}.
+     */
+    public Matrix4f rotate(Quaternion q) {
+        float xx = q.x * q.x, yy = q.y * q.y, zz = q.z * q.z;
+        float xy = q.x * q.y, xz = q.x * q.z, yz = q.y * q.z;
+        float wx = q.w * q.x, wy = q.w * q.y, wz = q.w * q.z;
+
+        return mul3x3(1 - 2 * (yy + zz), 2 * (xy + wz), 2 * (xz - wy),
+                2 * (xy - wz), 1 - 2 * (xx + zz), 2 * (yz + wx),
+                2 * (xz + wy), 2 * (yz - wx), 1 - 2 * (xx + yy));
+    }
+
+    /**
+     * Same as glOrtho.
+     */
+    public Matrix4f ortho(float left, float right, float bottom, float top, float zNear, float zFar) {
+        float sx = 2.0f / (right - left);
+        float sy = 2.0f / (top - bottom);
+        float sz = -2.0f / (zFar - zNear);
+        float tx = -(right + left) / (right - left);
+        float ty = -(top + bottom) / (top - bottom);
+        float tz = -(zFar + zNear) / (zFar - zNear);
+
+        // this * O, with O only having a diagonal and a translation column
+        float n30 = m00 * tx + m10 * ty + m20 * tz + m30;
+        float n31 = m01 * tx + m11 * ty + m21 * tz + m31;
+        float n32 = m02 * tx + m12 * ty + m22 * tz + m32;
+        float n33 = m03 * tx + m13 * ty + m23 * tz + m33;
+        m00 *= sx; m01 *= sx; m02 *= sx; m03 *= sx;
+        m10 *= sy; m11 *= sy; m12 *= sy; m13 *= sy;
+        m20 *= sz; m21 *= sz; m22 *= sz; m23 *= sz;
+        m30 = n30; m31 = n31; m32 = n32; m33 = n33;
+        return this;
+    }
+
+    /**
+     * Inverts this matrix in place, assuming it is affine (last row 0, 0, 0, 1), as every
+     * model, view and orthographic projection matrix is.
+     *
+     * @throws IllegalStateException if the matrix is singular
+     */
+    public Matrix4f invertAffine() {
+        float det = m00 * (m11 * m22 - m21 * m12) - m10 * (m01 * m22 - m21 * m02) + m20 * (m01 * m12 - m11 * m02);
+        if (det == 0 || Float.isNaN(det))
+            throw new IllegalStateException("Matrix is not invertible");
+        float s = 1.0f / det;
+
+        float n00 = (m11 * m22 - m21 * m12) * s;
+        float n10 = (m20 * m12 - m10 * m22) * s;
+        float n20 = (m10 * m21 - m20 * m11) * s;
+        float n01 = (m21 * m02 - m01 * m22) * s;
+        float n11 = (m00 * m22 - m20 * m02) * s;
+        float n21 = (m20 * m01 - m00 * m21) * s;
+        float n02 = (m01 * m12 - m11 * m02) * s;
+        float n12 = (m10 * m02 - m00 * m12) * s;
+        float n22 = (m00 * m11 - m10 * m01) * s;
+        float n30 = -(n00 * m30 + n10 * m31 + n20 * m32);
+        float n31 = -(n01 * m30 + n11 * m31 + n21 * m32);
+        float n32 = -(n02 * m30 + n12 * m31 + n22 * m32);
+
+        m00 = n00; m01 = n01; m02 = n02; m03 = 0;
+        m10 = n10; m11 = n11; m12 = n12; m13 = 0;
+        m20 = n20; m21 = n21; m22 = n22; m23 = 0;
+        m30 = n30; m31 = n31; m32 = n32; m33 = 1;
+        return this;
+    }
+
+    /**
+     * Writes the world-space bounds of the box with half extents (hx, hy, hz) around the
+     * local origin, transformed by this matrix, as minX, minY, minZ, maxX, maxY, maxZ.
+     * Only the affine part is used.
+     */
+    public void transformBox(float hx, float hy, float hz, float[] dst, int offset) {
+        float ex = Math.abs(m00) * hx + Math.abs(m10) * hy + Math.abs(m20) * hz;
+        float ey = Math.abs(m01) * hx + Math.abs(m11) * hy + Math.abs(m21) * hz;
+        float ez = Math.abs(m02) * hx + Math.abs(m12) * hy + Math.abs(m22) * hz;
+        dst[offset] = m30 - ex;
+        dst[offset + 1] = m31 - ey;
+        dst[offset + 2] = m32 - ez;
+        dst[offset + 3] = m30 + ex;
+        dst[offset + 4] = m31 + ey;
+        dst[offset + 5] = m32 + ez;
+    }
+
+    /**
+     * Writes the 16 values in column-major order at the buffer's position, ready for glLoadMatrixf.
+     * The buffer's position is left unchanged.
+     */
+    public FloatBuffer get(FloatBuffer dst) {
+        int p = dst.position();
+        dst.put(p, m00).put(p + 1, m01).put(p + 2, m02).put(p + 3, m03);
+        dst.put(p + 4, m10).put(p + 5, m11).put(p + 6, m12).put(p + 7, m13);
+        dst.put(p + 8, m20).put(p + 9, m21).put(p + 10, m22).put(p + 11, m23);
+        dst.put(p + 12, m30).put(p + 13, m31).put(p + 14, m32).put(p + 15, m33);
+        return dst;
+    }
+
+    /**
+     * Reads 16 column-major values starting at the buffer's position, leaving the position unchanged.
+     */
+    public Matrix4f set(FloatBuffer src) {
+        int p = src.position();
+        m00 = src.get(p); m01 = src.get(p + 1); m02 = src.get(p + 2); m03 = src.get(p + 3);
+        m10 = src.get(p + 4); m11 = src.get(p + 5); m12 = src.get(p + 6); m13 = src.get(p + 7);
+        m20 = src.get(p + 8); m21 = src.get(p + 9); m22 = src.get(p + 10); m23 = src.get(p + 11);
+        m30 = src.get(p + 12); m31 = src.get(p + 13); m32 = src.get(p + 14); m33 = src.get(p + 15);
+        return this;
+    }
+
+    // this = this * R, where R is a pure 3x3 rotation/scale given column by column
+    private Matrix4f mul3x3(float r00, float r01, float r02,
+                            float r10, float r11, float r12,
+                            float r20, float r21, float r22) {
+        float n00 = m00 * r00 + m10 * r01 + m20 * r02;
+        float n01 = m01 * r00 + m11 * r01 + m21 * r02;
+        float n02 = m02 * r00 + m12 * r01 + m22 * r02;
+        float n03 = m03 * r00 + m13 * r01 + m23 * r02;
+        float n10 = m00 * r10 + m10 * r11 + m20 * r12;
+        float n11 = m01 * r10 + m11 * r11 + m21 * r12;
+        float n12 = m02 * r10 + m12 * r11 + m22 * r12;
+        float n13 = m03 * r10 + m13 * r11 + m23 * r12;
+        float n20 = m00 * r20 + m10 * r21 + m20 * r22;
+        float n21 = m01 * r20 + m11 * r21 + m21 * r22;
+        float n22 = m02 * r20 + m12 * r21 + m22 * r22;
+        float n23 = m03 * r20 + m13 * r21 + m23 * r22;
+        m00 = n00; m01 = n01; m02 = n02; m03 = n03;
+        m10 = n10; m11 = n11; m12 = n12; m13 = n13;
+        m20 = n20; m21 = n21; m22 = n22; m23 = n23;
+        return this;
+    }
+}
@@ -0,0 +1,136 @@
+package lwjgl.test.math;
+
+/**
+ * Unit quaternion for rotations. Like {@link Matrix4f}, every operation works in place
+ * and appending a rotation post-multiplies, so {@code rotateZ(a).rotateY(b)} matches
+ * {@code glRotatef(a, 0, 0, 1); glRotatef(b, 0, 1, 0)}. Angles are in degrees.
+ */
+public class Quaternion {
+
+    public float x, y, z, w;
+
+    public Quaternion() {
+        identity();
+    }
+
+    public Quaternion identity() {
+        x = 0;
+        y = 0;
+        z = 0;
+        w = 1;
+        return this;
+    }
+
+    public Quaternion set(Quaternion q) {
+        x = q.x;
+        y = q.y;
+        z = q.z;
+        w = q.w;
+        return this;
+    }
+
+    public Quaternion set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    /**
+     * Sets this to a rotation of {@code angle} degrees around the axis (ax, ay, az).
+     */
+    public Quaternion rotationAxis(float angle, float ax, float ay, float az) {
+        float len = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (len == 0.0f)
+            return identity();
+
+        double half = Math.toRadians(angle) * 0.5;
+        float s = (float) Math.sin(half) / len;
+        return set(ax * s, ay * s, az * s, (float) Math.cos(half));
+    }
+
+    public Quaternion rotateX(float angle) {
+        double half = Math.toRadians(angle) * 0.5;
+        return mul((float) Math.sin(half), 0, 0, (float) Math.cos(half));
+    }
+
+    public Quaternion rotateY(float angle) {
+        double half = Math.toRadians(angle) * 0.5;
+        return mul(0, (float) Math.sin(half), 0, (float) Math.cos(half));
+    }
+
+    public Quaternion rotateZ(float angle) {
+        double half = Math.toRadians(angle) * 0.5;
+        return mul(0, 0, (float) Math.sin(half), (float) Math.cos(half));
+    }
+
+    /**
+     * this = this * q
+     */
+    public Quaternion mul(Quaternion q) {
+        return mul(q.x, q.y, q.z, q.w);
+    }
+
+    /**
+     * this = this * (qx, qy, qz, qw)
+     */
+    public Quaternion mul(float qx, float qy, float qz, float qw) {
+        float nx = w * qx + x * qw + y * qz - z * qy;
+        float ny = w * qy - x * qz + y * qw + z * qx;
+        float nz = w * qz + x * qy - y * qx + z * qw;
+        float nw = w * qw - x * qx - y * qy - z * qz;
+        return set(nx, ny, nz, nw);
+    }
+
+    public Quaternion normalize() {
+        float len = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (len == 0.0f)
+            return identity();
+        float inv = 1.0f / len;
+        return set(x * inv, y * inv, z * inv, w * inv);
+    }
+
+    /**
+     * Writes the angles x, y, z (degrees) into {@code dst} such that
+     * {@code identity().rotateZ(z).rotateY(y).rotateX(x)} gives this rotation, which is how
+     * scene nodes compose theirs. y is within [-90, 90].
+     */
+    public float[] getEulerAngles(float[] dst) {
+        float sinY = -2 * (x * z - w * y);
+        dst[0] = (float) Math.toDegrees(Math.atan2(2 * (y * z + w * x), 1 - 2 * (x * x + y * y)));
+        dst[1] = (float) Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, sinY))));
+        dst[2] = (float) Math.toDegrees(Math.atan2(2 * (x * y + w * z), 1 - 2 * (y * y + z * z)));
+        return dst;
+    }
+
+    /**
+     * Spherical interpolation from this rotation towards {@code target}, along the shorter arc.
+     */
+    public Quaternion slerp(Quaternion target, float t) {
+        float tx = target.x, ty = target.y, tz = target.z, tw = target.w;
+        float cos = x * tx + y * ty + z * tz + w * tw;
+        if (cos < 0.0f) {
+            cos = -cos;
+            tx = -tx;
+            ty = -ty;
+            tz = -tz;
+            tw = -tw;
+        }
+
+        float s0, s1;
+        if (cos > 0.9995f) {
+            // Nearly parallel: linear interpolation is accurate and avoids dividing by ~0
+            s0 = 1.0f - t;
+            s1 = t;
+        } else {
+            double angle = Math.acos(cos);
+            double invSin = 1.0 / Math.sin(angle);
+            s0 = (float) (Math.sin((1.0 - t) * angle) * invSin);
+            s1 = (float) (Math.sin(t * angle) * invSin);
+        }
+
+        set(s0 * x + s1 * tx, s0 * y + s1 * ty, s0 * z + s1 * tz, s0 * w + s1 * tw);
+        return normalize();
+    }
+}
@@ -0,0 +1,124 @@
+package lwjgl.test.math;
+
+/**
+ * A half line from an origin along a unit direction, with the box tests picking needs.
+ * <p>
+ * Distances returned by the tests are along the direction from the origin, so they compare
+ * across boxes; a miss is {@link Float#POSITIVE_INFINITY}.
+ */
+public class Ray {
+
+    public float originX, originY, originZ;
+    public float dirX, dirY, dirZ;
+
+    // 1 / direction, for the slab test
+    private float invDirX, invDirY, invDirZ;
+
+    public Ray set(float originX, float originY, float originZ, float dirX, float dirY, float dirZ) {
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        if (length == 0)
+            throw new IllegalArgumentException("Ray direction is zero");
+
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.dirX = dirX / length;
+        this.dirY = dirY / length;
+        this.dirZ = dirZ / length;
+        invDirX = 1 / this.dirX;
+        invDirY = 1 / this.dirY;
+        invDirZ = 1 / this.dirZ;
+        return this;
+    }
+
+    /**
+     * Sets this ray to run through a window point, from the near to the far plane of the view.
+     *
+     * @param inverseViewProjection inverse of the affine projection * modelview the scene is drawn with
+     * @param x                     window x in pixels from the left edge
+     * @param y                     window y in pixels from the top edge, as GLFW reports the cursor
+     */
+    public Ray setFromWindow(Matrix4f inverseViewProjection, double x, double y, int width, int height) {
+        float ndcX = (float) (2 * x / width - 1);
+        float ndcY = (float) (1 - 2 * y / height);
+        final Matrix4f m = inverseViewProjection;
+
+        // The near point is at depth -1, the far one at +1; their difference is twice the z column
+        float nearX = m.m00 * ndcX + m.m10 * ndcY - m.m20 + m.m30;
+        float nearY = m.m01 * ndcX + m.m11 * ndcY - m.m21 + m.m31;
+        float nearZ = m.m02 * ndcX + m.m12 * ndcY - m.m22 + m.m32;
+        return set(nearX, nearY, nearZ, m.m20, m.m21, m.m22);
+    }
+
+    /**
+     * @return where the ray enters the world-axis aligned box, 0 if it starts inside, or
+     * {@link Float#POSITIVE_INFINITY} if it misses it or only reaches it beyond {@code maxDistance}
+     */
+    public float intersectBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                              float maxDistance) {
+        return slab(originX, originY, originZ, invDirX, invDirY, invDirZ,
+                minX, minY, minZ, maxX, maxY, maxZ, maxDistance);
+    }
+
+    /**
+     * Tests the box with half extents (hx, hy, hz) centered on the origin of a model space.
+     *
+     * @param inverseModel inverse of the affine matrix taking the box's model space to world space
+     * @return as {@link #intersectBox}, in world-space distance
+     */
+    public float intersectOrientedBox(Matrix4f inverseModel, float hx, float hy, float hz, float maxDistance) {
+        final Matrix4f m = inverseModel;
+        float ox = m.m00 * originX + m.m10 * originY + m.m20 * originZ + m.m30;
+        float oy = m.m01 * originX + m.m11 * originY + m.m21 * originZ + m.m31;
+        float oz = m.m02 * originX + m.m12 * originY + m.m22 * originZ + m.m32;
+
+        // The direction is not renormalized, so distances along it stay world distances
+        float dx = m.m00 * dirX + m.m10 * dirY + m.m20 * dirZ;
+        float dy = m.m01 * dirX + m.m11 * dirY + m.m21 * dirZ;
+        float dz = m.m02 * dirX + m.m12 * dirY + m.m22 * dirZ;
+        return slab(ox, oy, oz, 1 / dx, 1 / dy, 1 / dz, -hx, -hy, -hz, hx, hy, hz, maxDistance);
+    }
+
+    /**
+     * Slab test of the ray (ox, oy, oz) + t * (1 / idx, 1 / idy, 1 / idz) against a box.
+     *
+     * @return the entry distance t in [0, maxDistance], or {@link Float#POSITIVE_INFINITY}
+     */
+    public static float slab(float ox, float oy, float oz, float idx, float idy, float idz,
+                             float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                             float maxDistance) {
+        // An axis-parallel ray gives infinite t on that axis, which orders correctly; NaN only
+        // comes up when the origin lies exactly on a slab plane, and fails every comparison
+        // below, so that axis is simply skipped
+        float near = Float.NEGATIVE_INFINITY, far = Float.POSITIVE_INFINITY;
+
+        float t1 = (minX - ox) * idx, t2 = (maxX - ox) * idx;
+        float n = t1 < t2 ? t1 : t2, f = t1 < t2 ? t2 : t1;
+        if (n > near)
+            near = n;
+        if (f < far)
+            far = f;
+
+        t1 = (minY - oy) * idy;
+        t2 = (maxY - oy) * idy;
+        n = t1 < t2 ? t1 : t2;
+        f = t1 < t2 ? t2 : t1;
+        if (n > near)
+            near = n;
+        if (f < far)
+            far = f;
+
+        t1 = (minZ - oz) * idz;
+        t2 = (maxZ - oz) * idz;
+        n = t1 < t2 ? t1 : t2;
+        f = t1 < t2 ? t2 : t1;
+        if (n > near)
+            near = n;
+        if (f < far)
+            far = f;
+
+        if (near < 0)
+            near = 0;
+        return near <= far && near <= maxDistance ? near : Float.POSITIVE_INFINITY;
+    }
+}
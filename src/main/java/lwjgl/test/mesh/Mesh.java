@@ -0,0 +1,101 @@
+package lwjgl.test.mesh;
+
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.gl.RenderQueue;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Indexed triangle mesh in off-heap buffers: xyz positions, optional xyz normals, and three
+ * vertex indices per triangle.
+ */
+public class Mesh {
+
+    private final FloatBuffer positions;
+    private final FloatBuffer normals;
+    private final IntBuffer indices;
+    private final int vertexCount, indexCount;
+
+    /**
+     * @param normals one normal per vertex, or null if the mesh has none
+     */
+    public Mesh(FloatBuffer positions, FloatBuffer normals, IntBuffer indices, int vertexCount, int indexCount) {
+        if (positions.remaining() < vertexCount * 3 || (normals != null && normals.remaining() < vertexCount * 3))
+            throw new IllegalArgumentException("Vertex buffers hold fewer than " + vertexCount + " vertices");
+        if (indexCount % 3 != 0 || indices.remaining() < indexCount)
+            throw new IllegalArgumentException("Invalid index count " + indexCount);
+
+        this.positions = positions;
+        this.normals = normals;
+        this.indices = indices;
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+    }
+
+    public FloatBuffer getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return per-vertex normals, or null
+     */
+    public FloatBuffer getNormals() {
+        return normals;
+    }
+
+    public IntBuffer getIndices() {
+        return indices;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+
+    /**
+     * Writes the bounds of all positions as minX, minY, minZ, maxX, maxY, maxZ.
+     */
+    public void getBounds(float[] dst) {
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        int base = positions.position();
+        for (int i = 0; i < vertexCount; i++) {
+            int o = base + i * 3;
+            float x = positions.get(o), y = positions.get(o + 1), z = positions.get(o + 2);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        dst[0] = minX;
+        dst[1] = minY;
+        dst[2] = minZ;
+        dst[3] = maxX;
+        dst[4] = maxY;
+        dst[5] = maxZ;
+    }
+
+    /**
+     * Draws the mesh in the current color with the current modelview matrix.
+     */
+    public void render(GLBackend gl) {
+        gl.drawTriangles(positions, indices, indexCount);
+    }
+
+    /**
+     * Queues the mesh to be drawn in (r, g, b) with the given modelview matrix.
+     */
+    public void submit(RenderQueue queue, long key, FloatBuffer modelview, float r, float g, float b) {
+        queue.submitTriangles(key, modelview, positions, indices, indexCount, r, g, b);
+    }
+}
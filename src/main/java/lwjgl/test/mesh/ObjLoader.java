@@ -0,0 +1,471 @@
+package lwjgl.test.mesh;
+
+import org.lwjgl.BufferUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming Wavefront OBJ loader.
+ * <p>
+ * The file is read through a {@link FileChannel} into a reused 1 MiB buffer and parsed byte by
+ * byte; no line ever becomes a {@code String}. Vertex positions ({@code v}), normals ({@code vn})
+ * and faces ({@code f}, with any of the {@code p}, {@code p/t}, {@code p//n} and {@code p/t/n}
+ * forms and negative indices) are read; faces with more than three corners are triangulated as
+ * fans. Texture coordinates and everything else are skipped. Corners that share a position and
+ * normal become one vertex, deduplicated through a primitive hash map, and the result is written
+ * into off-heap buffers.
+ * <p>
+ * With more than one thread, the file is split into byte ranges that are parsed concurrently on
+ * a {@link ForkJoinPool}; only deduplication and the final copy run on the calling thread.
+ * <p>
+ * Numbers are parsed with a fast decimal parser that can be one unit in the last place off
+ * from {@link Float#parseFloat} for inputs with more than 17 significant digits.
+ */
+public final class ObjLoader {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    // Relative (negative) indices are stored resolved against the chunk's own vertex count, minus this
+    private static final int LOCAL = 1 << 30;
+
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private ObjLoader() {
+    }
+
+    public static Mesh load(String path) throws IOException {
+        return load(path, 1);
+    }
+
+    /**
+     * @param threads threads to parse with; 1 parses on the calling thread
+     */
+    public static Mesh load(String path, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = threads <= 1 ? 1 : (int) Math.max(1, Math.min(threads * 4L, size / BUFFER_BYTES));
+
+            Chunk[] chunks = new Chunk[chunkCount];
+            for (int i = 0; i < chunkCount; i++)
+                chunks[i] = new Chunk(channel, size * i / chunkCount, size * (i + 1) / chunkCount);
+
+            if (chunkCount == 1)
+                chunks[0].call();
+            else
+                parseInParallel(chunks, threads);
+
+            return merge(chunks, path);
+        }
+    }
+
+    private static void parseInParallel(Chunk[] chunks, int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Chunk> future : pool.invokeAll(Arrays.asList(chunks))) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new IllegalStateException("Parsing failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Mesh merge(Chunk[] chunks, String path) throws IOException {
+        int positionFloats = 0, normalFloats = 0, corners = 0;
+        boolean anyNormals = false;
+        for (Chunk chunk : chunks) {
+            positionFloats += chunk.positions.size;
+            normalFloats += chunk.normals.size;
+            corners += chunk.corners.size / 2;
+            anyNormals |= chunk.hasNormals;
+        }
+
+        // Attributes of the whole file, in file order, left in the chunks' lists
+        Attributes positions = new Attributes(chunks, false);
+        Attributes normals = new Attributes(chunks, true);
+        int positionCount = positionFloats / 3, normalCount = normalFloats / 3;
+
+        IntBuffer indices = BufferUtils.createIntBuffer(corners);
+        GrowableFloats outPositions = new GrowableFloats(Math.min(corners, positionCount * 2 + 16) * 3);
+        GrowableFloats outNormals = anyNormals ? new GrowableFloats(Math.min(corners, positionCount * 2 + 16) * 3) : null;
+        VertexMap vertices = new VertexMap(Math.min(corners, positionCount * 2));
+
+        int positionBase = 0, normalBase = 0;
+        for (Chunk chunk : chunks) {
+            int[] refs = chunk.corners.data;
+            for (int i = 0, n = chunk.corners.size; i < n; i += 2) {
+                int p = resolve(refs[i], positionBase);
+                int nrm = refs[i + 1] == 0 ? -1 : resolve(refs[i + 1], normalBase);
+                if (p < 0 || p >= positionCount || nrm >= normalCount || (refs[i + 1] != 0 && nrm < 0))
+                    throw new IOException("Face refers to a vertex that does not exist in " + path);
+
+                int next = vertices.size();
+                int index = vertices.putIfAbsent((long) p << 32 | (nrm + 1), next);
+                if (index == next) {
+                    positions.copy(p, outPositions);
+                    if (outNormals != null) {
+                        if (nrm >= 0)
+                            normals.copy(nrm, outNormals);
+                        else
+                            outNormals.addZero();
+                    }
+                }
+                indices.put(index);
+            }
+
+            positionBase += chunk.positions.size / 3;
+            normalBase += chunk.normals.size / 3;
+        }
+
+        indices.flip();
+        int vertexCount = vertices.size();
+        return new Mesh(outPositions.finish(), outNormals == null ? null : outNormals.finish(), indices,
+                vertexCount, corners);
+    }
+
+    // 1-based absolute index or chunk-local resolved index -> 0-based file-wide index
+    private static int resolve(int ref, int base) {
+        return ref > 0 ? ref - 1 : base + ref + LOCAL;
+    }
+
+    // Parses one byte range: every line that starts inside [start, end)
+    private static final class Chunk implements Callable<Chunk> {
+
+        final FloatList positions = new FloatList();
+        final FloatList normals = new FloatList();
+        // Position and normal reference per triangle corner; normal 0 means none
+        final IntList corners = new IntList();
+        boolean hasNormals;
+
+        private final FileChannel channel;
+        private final long start, end;
+        private ByteBuffer buf;
+        private int p;
+        private int[] faceP = new int[8], faceN = new int[8];
+
+        Chunk(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+            // Start one byte early: if that is not a newline, the first line belongs to the previous chunk
+            long bufOffset = start > 0 ? start - 1 : 0;
+            long readPosition = bufOffset;
+            boolean skipFirst = start > 0, eof = false;
+            int lineStart = 0;
+
+            while (true) {
+                int filled = buf.position();
+                int newline = indexOfNewline(lineStart, filled);
+                if (newline < 0) {
+                    if (!eof) {
+                        // Keep the partial line and read more behind it
+                        buf.limit(filled).position(lineStart);
+                        buf.compact();
+                        bufOffset += lineStart;
+                        lineStart = 0;
+                        if (!buf.hasRemaining())
+                            grow();
+                        int n = channel.read(buf, readPosition);
+                        if (n < 0)
+                            eof = true;
+                        else
+                            readPosition += n;
+                        continue;
+                    }
+                    if (lineStart >= filled)
+                        return this;
+                    newline = filled; // last line without a newline
+                }
+
+                if (skipFirst)
+                    skipFirst = false;
+                else if (bufOffset + lineStart >= end)
+                    return this;
+                else
+                    parseLine(lineStart, newline);
+
+                lineStart = newline + 1;
+            }
+        }
+
+        private int indexOfNewline(int from, int to) {
+            final ByteBuffer b = buf;
+            for (int i = from; i < to; i++) {
+                if (b.get(i) == '\n')
+                    return i;
+            }
+            return -1;
+        }
+
+        private void grow() {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(buf.capacity() * 2);
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+
+        private void parseLine(int from, int to) throws IOException {
+            p = from;
+            skipSpaces(to);
+            if (p + 1 >= to)
+                return;
+
+            byte c = buf.get(p), c1 = buf.get(p + 1);
+            if (c == 'v' && isSpace(c1)) {
+                p++;
+                positions.add(parseFloat(to), parseFloat(to), parseFloat(to));
+            } else if (c == 'v' && c1 == 'n' && p + 2 < to && isSpace(buf.get(p + 2))) {
+                p += 2;
+                normals.add(parseFloat(to), parseFloat(to), parseFloat(to));
+            } else if (c == 'f' && isSpace(c1)) {
+                p++;
+                parseFace(to);
+            }
+        }
+
+        private void parseFace(int to) throws IOException {
+            int n = 0;
+            while (true) {
+                skipSpaces(to);
+                if (p >= to)
+                    break;
+                if (n == faceP.length) {
+                    faceP = Arrays.copyOf(faceP, n * 2);
+                    faceN = Arrays.copyOf(faceN, n * 2);
+                }
+
+                faceP[n] = reference(parseInt(to), positions.size / 3);
+                faceN[n] = 0;
+                if (p < to && buf.get(p) == '/') {
+                    p++;
+                    if (p < to && buf.get(p) != '/' && !isSpace(buf.get(p)))
+                        parseInt(to); // texture coordinate, not kept
+                    if (p < to && buf.get(p) == '/') {
+                        p++;
+                        faceN[n] = reference(parseInt(to), normals.size / 3);
+                        hasNormals = true;
+                    }
+                }
+                n++;
+            }
+            if (n < 3)
+                throw new IOException("Face with fewer than 3 corners near byte " + p);
+
+            for (int i = 1; i + 1 < n; i++) {
+                corners.add(faceP[0], faceN[0]);
+                corners.add(faceP[i], faceN[i]);
+                corners.add(faceP[i + 1], faceN[i + 1]);
+            }
+        }
+
+        private int reference(int index, int localCount) throws IOException {
+            if (index == 0)
+                throw new IOException("Index 0 near byte " + p);
+            return index > 0 ? index : localCount + index - LOCAL;
+        }
+
+        private int parseInt(int to) throws IOException {
+            boolean negative = p < to && buf.get(p) == '-';
+            if (negative || (p < to && buf.get(p) == '+'))
+                p++;
+            int start = p;
+            long value = 0;
+            while (p < to) {
+                int d = buf.get(p) - '0';
+                if (d < 0 || d > 9)
+                    break;
+                value = value * 10 + d;
+                if (value > Integer.MAX_VALUE)
+                    throw new IOException("Index too large near byte " + p);
+                p++;
+            }
+            if (p == start)
+                throw new IOException("Expected a number near byte " + p);
+            return (int) (negative ? -value : value);
+        }
+
+        private float parseFloat(int to) throws IOException {
+            skipSpaces(to);
+            boolean negative = p < to && buf.get(p) == '-';
+            if (negative || (p < to && buf.get(p) == '+'))
+                p++;
+
+            long mantissa = 0;
+            int exponent = 0, digits = 0;
+            while (p < to) {
+                int d = buf.get(p) - '0';
+                if (d < 0 || d > 9)
+                    break;
+                if (mantissa < 100000000000000000L)
+                    mantissa = mantissa * 10 + d;
+                else
+                    exponent++;
+                digits++;
+                p++;
+            }
+            if (p < to && buf.get(p) == '.') {
+                p++;
+                while (p < to) {
+                    int d = buf.get(p) - '0';
+                    if (d < 0 || d > 9)
+                        break;
+                    if (mantissa < 100000000000000000L) {
+                        mantissa = mantissa * 10 + d;
+                        exponent--;
+                    }
+                    digits++;
+                    p++;
+                }
+            }
+            if (digits == 0)
+                throw new IOException("Expected a number near byte " + p);
+            if (p < to && (buf.get(p) == 'e' || buf.get(p) == 'E')) {
+                p++;
+                exponent += parseInt(to);
+            }
+
+            double value = mantissa;
+            if (exponent < 0)
+                value = -exponent < POW10.length ? value / POW10[-exponent] : value / Math.pow(10, -exponent);
+            else if (exponent > 0)
+                value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+            return (float) (negative ? -value : value);
+        }
+
+        private void skipSpaces(int to) {
+            while (p < to && isSpace(buf.get(p)))
+                p++;
+        }
+
+        private static boolean isSpace(byte c) {
+            return c == ' ' || c == '\t' || c == '\r';
+        }
+    }
+
+    // One attribute of the whole file, read from the lists the chunks parsed it into: the
+    // file's vertex i is in the list of the last chunk whose first vertex is at or before i
+    private static final class Attributes {
+        private final float[][] data;
+        private final int[] starts;
+        // Chunk of the last vertex copied; faces mostly refer to vertices of their own chunk
+        private int last;
+
+        Attributes(Chunk[] chunks, boolean normals) {
+            data = new float[chunks.length][];
+            starts = new int[chunks.length + 1];
+            for (int c = 0; c < chunks.length; c++) {
+                FloatList list = normals ? chunks[c].normals : chunks[c].positions;
+                data[c] = list.data;
+                starts[c + 1] = starts[c] + list.size / 3;
+            }
+        }
+
+        // Appends vertex i, which must exist, to out
+        void copy(int i, GrowableFloats out) {
+            int c = last;
+            if (i < starts[c] || i >= starts[c + 1]) {
+                c = Arrays.binarySearch(starts, i);
+                if (c < 0)
+                    c = -c - 2;
+                // Empty chunks start where the next one does
+                while (starts[c + 1] <= i)
+                    c++;
+                last = c;
+            }
+            out.add(data[c], (i - starts[c]) * 3);
+        }
+    }
+
+    private static final class FloatList {
+        float[] data = new float[3 * 1024];
+        int size;
+
+        void add(float x, float y, float z) {
+            if (size + 3 > data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            data[size] = x;
+            data[size + 1] = y;
+            data[size + 2] = z;
+            size += 3;
+        }
+    }
+
+    private static final class IntList {
+        int[] data = new int[2 * 1024];
+        int size;
+
+        void add(int a, int b) {
+            if (size + 2 > data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+            data[size] = a;
+            data[size + 1] = b;
+            size += 2;
+        }
+    }
+
+    // Off-heap float buffer that doubles when full
+    private static final class GrowableFloats {
+        FloatBuffer buffer;
+
+        GrowableFloats(int capacity) {
+            buffer = BufferUtils.createFloatBuffer(Math.max(48, capacity));
+        }
+
+        void add(float[] src, int offset) {
+            ensure();
+            buffer.put(src[offset]).put(src[offset + 1]).put(src[offset + 2]);
+        }
+
+        void addZero() {
+            ensure();
+            buffer.put(0).put(0).put(0);
+        }
+
+        FloatBuffer finish() {
+            buffer.flip();
+            return buffer;
+        }
+
+        private void ensure() {
+            if (buffer.remaining() < 3) {
+                FloatBuffer bigger = BufferUtils.createFloatBuffer(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package lwjgl.test.metrics;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Per-phase frame timings and per-frame counters, kept in {@link Histogram}s and periodically
+ * appended to a tab separated file.
+ * <p>
+ * Instrumentation is switched on with {@code -Dcubes.metrics=true}. The flag is a static final
+ * constant, so with it off the JIT folds every {@code if (FrameMetrics.ENABLED)} and every call
+ * below away and the frame loop runs exactly as it would without them.
+ * <p>
+ * A frame is timed as a chain of laps: {@link #start()} once, then {@link #lap(int, long)} at the
+ * end of each phase, which charges the time since the previous lap to that phase. Nothing is
+ * allocated while recording; only {@link #exportIfDue(long)} writes to disk.
+ * <p>
+ * Every export writes one line per phase and counter with: wall clock millis, name, samples,
+ * p50, p99, p99.9, max and mean (nanoseconds for phases), then starts a new interval.
+ */
+public class FrameMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("cubes.metrics");
+
+    private final String[] phaseNames;
+    private final String[] counterNames;
+    private final Histogram[] phases;
+    private final Histogram[] counters;
+    private final Histogram frames = new Histogram();
+    private final String file;
+    private final long intervalNanos;
+    private long nextExport = -1;
+    private long frameStart;
+
+    /**
+     * @param file           where to append exports, or null to only keep the numbers in memory
+     * @param intervalMillis how often {@link #exportIfDue(long)} writes
+     */
+    public FrameMetrics(String[] phaseNames, String[] counterNames, String file, long intervalMillis) {
+        this.phaseNames = phaseNames.clone();
+        this.counterNames = counterNames.clone();
+        this.phases = new Histogram[phaseNames.length];
+        this.counters = new Histogram[counterNames.length];
+        for (int i = 0; i < phases.length; i++)
+            phases[i] = new Histogram();
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = new Histogram();
+        this.file = file;
+        this.intervalNanos = intervalMillis * 1000000L;
+    }
+
+    /**
+     * Marks the start of a frame.
+     *
+     * @return the time to pass to the first {@link #lap}
+     */
+    public long start() {
+        if (!ENABLED)
+            return 0;
+        return frameStart = System.nanoTime();
+    }
+
+    /**
+     * Charges the time since {@code since} to {@code phase}.
+     *
+     * @return the current time, to pass to the next lap
+     */
+    public long lap(int phase, long since) {
+        if (!ENABLED)
+            return 0;
+        long now = System.nanoTime();
+        phases[phase].record(now - since);
+        return now;
+    }
+
+    /**
+     * Records this frame's value of {@code counter}.
+     */
+    public void count(int counter, long value) {
+        if (ENABLED)
+            counters[counter].record(value);
+    }
+
+    /**
+     * Ends the frame started by {@link #start()}, recording its total time.
+     *
+     * @return the current time
+     */
+    public long end() {
+        if (!ENABLED)
+            return 0;
+        long now = System.nanoTime();
+        frames.record(now - frameStart);
+        return now;
+    }
+
+    public Histogram getPhase(int phase) {
+        return phases[phase];
+    }
+
+    public Histogram getCounter(int counter) {
+        return counters[counter];
+    }
+
+    /**
+     * @return total frame times
+     */
+    public Histogram getFrames() {
+        return frames;
+    }
+
+    /**
+     * Appends the current interval to the file and starts a new one, if an interval has passed
+     * since the last export.
+     *
+     * @return whether an export happened
+     */
+    public boolean exportIfDue(long nowNanos) {
+        if (!ENABLED || file == null)
+            return false;
+        if (nextExport < 0)
+            nextExport = nowNanos + intervalNanos;
+        if (nowNanos < nextExport)
+            return false;
+
+        nextExport = nowNanos + intervalNanos;
+        export();
+        return true;
+    }
+
+    /**
+     * Appends the current interval to the file and starts a new one.
+     */
+    public void export() {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            long time = System.currentTimeMillis();
+            write(out, time, "frame", frames);
+            for (int i = 0; i < phases.length; i++)
+                write(out, time, phaseNames[i], phases[i]);
+            for (int i = 0; i < counters.length; i++)
+                write(out, time, counterNames[i], counters[i]);
+        } catch (IOException e) {
+            // Losing metrics must not take the renderer down
+            System.err.println("Could not export frame metrics to " + file + ": " + e);
+        }
+        reset();
+    }
+
+    public void reset() {
+        frames.reset();
+        for (Histogram phase : phases)
+            phase.reset();
+        for (Histogram counter : counters)
+            counter.reset();
+    }
+
+    private static void write(PrintWriter out, long time, String name, Histogram h) {
+        out.printf("%d\t%s\t%d\t%d\t%d\t%d\t%d\t%.1f%n", time, name, h.getCount(),
+                h.getPercentile(50), h.getPercentile(99), h.getPercentile(99.9), h.getMax(), h.getMean());
+    }
+}
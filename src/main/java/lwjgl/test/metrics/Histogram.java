@@ -0,0 +1,114 @@
+package lwjgl.test.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of non-negative long values with log-linear buckets, in the style of HdrHistogram.
+ * <p>
+ * Values below 128 are counted exactly. Above that, every power of two is split into 64
+ * buckets, so a reported percentile is at most 1/64 (about 1.6%) above the recorded value.
+ * Recording is a few shifts and an array increment, allocates nothing and is not thread safe.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Exact values below this
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    // Enough for any long: shifts from 1 to 63 - SUB_BUCKET_BITS
+    private static final int BUCKETS = LINEAR + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Counts one value; negative values are counted as 0.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[indexOf(value)]++;
+        count++;
+        total += value;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Adds everything counted by {@code other} to this histogram.
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the smallest value recorded, or 0 if there were none
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket the percentile falls in, never more than {@link #getMax()};
+     * 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, highestValueOf(i));
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR)
+            return (int) value;
+        // value >>> shift lands in [SUB_BUCKETS, LINEAR)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR)
+            return index;
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
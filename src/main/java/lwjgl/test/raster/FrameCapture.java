@@ -0,0 +1,160 @@
+package lwjgl.test.raster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams framebuffer contents into a preallocated, memory-mapped capture file.
+ * <p>
+ * The whole file is sized and mapped up front, so capturing a frame is one off-heap to
+ * off-heap copy; pixels never pass through the Java heap. Layout, all little-endian:
+ * <pre>
+ * header   magic "CUBF", version, width, height, frame capacity, frames captured, bytes per frame (7 ints, 32 bytes reserved)
+ * index    per frame: long file offset, int frame number, int checksum (16 bytes)
+ * frames   raw RGBA rows, bottom-up like glReadPixels, each frame starting on a 4 KiB boundary
+ * </pre>
+ * The checksum is {@code 31 * hash + pixel} over the frame's packed pixels starting from 1,
+ * the same one {@code HeadlessRenderer} prints, so golden images can be compared without reading pixels.
+ */
+public class FrameCapture implements Closeable {
+
+    public static final int MAGIC = 'C' | 'U' << 8 | 'B' << 16 | 'F' << 24;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    public static final int INDEX_ENTRY_BYTES = 16;
+
+    private static final int PAGE = 4096;
+    // Frames per mapping are limited so that no single mapping comes near 2 GiB
+    private static final long MAX_MAPPING = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] chunks;
+    private final int width, height, frameBytes, capacity, framesPerChunk;
+    private final long firstFrame, frameStride;
+    private int captured;
+
+    /**
+     * Creates (or truncates) {@code path} with room for {@code capacity} frames of the given size.
+     */
+    public FrameCapture(String path, int width, int height, int capacity) throws IOException {
+        if (width <= 0 || height <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("Invalid capture size: " + capacity + " frames of " + width + "x" + height);
+
+        this.width = width;
+        this.height = height;
+        this.capacity = capacity;
+        this.frameBytes = width * height * 4;
+        this.frameStride = align(frameBytes);
+        this.firstFrame = align(HEADER_BYTES + (long) capacity * INDEX_ENTRY_BYTES);
+        this.framesPerChunk = (int) Math.max(1, Math.min(capacity, MAX_MAPPING / frameStride));
+
+        file = new RandomAccessFile(path, "rw");
+        try {
+            channel = file.getChannel();
+            file.setLength(0);
+            file.setLength(firstFrame + capacity * frameStride);
+
+            header = map(0, firstFrame);
+            header.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putInt(8, width)
+                    .putInt(12, height)
+                    .putInt(16, capacity)
+                    .putInt(20, 0)
+                    .putInt(24, frameBytes);
+
+            chunks = new MappedByteBuffer[(capacity + framesPerChunk - 1) / framesPerChunk];
+            for (int i = 0; i < chunks.length; i++) {
+                int frames = Math.min(framesPerChunk, capacity - i * framesPerChunk);
+                chunks[i] = map(firstFrame + i * framesPerChunk * frameStride, frames * frameStride);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return frames captured so far
+     */
+    public int getCaptured() {
+        return captured;
+    }
+
+    /**
+     * Appends the framebuffer's color as the next frame.
+     *
+     * @param frame number stored in the index, e.g. the simulation tick
+     * @return the frame's checksum
+     */
+    public int capture(Framebuffer framebuffer, int frame) {
+        if (framebuffer.getWidth() != width || framebuffer.getHeight() != height)
+            throw new IllegalArgumentException("Framebuffer is " + framebuffer.getWidth() + "x" + framebuffer.getHeight()
+                    + ", capture is " + width + "x" + height);
+        if (captured == capacity)
+            throw new IllegalStateException("Capture file is full: " + capacity + " frames");
+
+        int slot = captured;
+        MappedByteBuffer chunk = chunks[slot / framesPerChunk];
+        int offset = (int) ((slot % framesPerChunk) * frameStride);
+
+        ByteBuffer src = framebuffer.getColorBytes();
+        int srcPosition = src.position(), srcLimit = src.limit();
+        src.limit(srcPosition + frameBytes);
+        chunk.position(offset);
+        chunk.put(src);
+        src.limit(srcLimit).position(srcPosition);
+
+        int checksum = checksum(framebuffer.getColor());
+        int entry = HEADER_BYTES + slot * INDEX_ENTRY_BYTES;
+        header.putLong(entry, firstFrame + slot * frameStride)
+                .putInt(entry + 8, frame)
+                .putInt(entry + 12, checksum);
+        header.putInt(20, ++captured);
+        return checksum;
+    }
+
+    /**
+     * Flushes everything to disk and releases the file. The mappings stay valid until they are
+     * garbage collected, which is how mapped files work in Java.
+     */
+    @Override
+    public void close() throws IOException {
+        header.force();
+        for (MappedByteBuffer chunk : chunks)
+            chunk.force();
+        file.close();
+    }
+
+    /**
+     * @return the checksum stored for captured frames in the index
+     */
+    public static int checksum(IntBuffer pixels) {
+        int hash = 1;
+        for (int i = 0, n = pixels.capacity(); i < n; i++)
+            hash = 31 * hash + pixels.get(i);
+        return hash;
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + PAGE - 1) / PAGE * PAGE;
+    }
+}
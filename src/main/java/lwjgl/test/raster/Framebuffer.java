@@ -0,0 +1,139 @@
+package lwjgl.test.raster;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Off-heap color + depth buffer for the software renderer.
+ * <p>
+ * Rows are stored bottom-up like glReadPixels returns them. Each color pixel is one int
+ * whose little-endian bytes are R, G, B, A, so the color memory can be dumped as raw RGBA.
+ * A framebuffer created with {@code argbPremultiplied} instead holds native-order ints of
+ * premultiplied A, R, G, B from the high byte down, the layout of JavaFX's
+ * {@code PixelFormat.getIntArgbPreInstance()}, so an image can be shown straight from its memory.
+ */
+public class Framebuffer {
+
+    private final int width, height;
+    private final ByteBuffer colorBytes;
+    private final IntBuffer color;
+    private final FloatBuffer depth;
+    private final boolean argb;
+
+    public Framebuffer(int width, int height) {
+        this(width, height, ByteBuffer.allocateDirect(width * height * 4));
+    }
+
+    /**
+     * Renders color into caller-provided memory (for example a region of a mapped file).
+     *
+     * @param colorBytes at least {@code width * height * 4} bytes starting at its position
+     */
+    public Framebuffer(int width, int height, ByteBuffer colorBytes) {
+        this(width, height, colorBytes, false);
+    }
+
+    /**
+     * @param colorBytes        at least {@code width * height * 4} bytes starting at its position
+     * @param argbPremultiplied whether to store pixels as premultiplied ARGB ints in native
+     *                          byte order rather than as RGBA bytes; see {@link #packColor}
+     */
+    public Framebuffer(int width, int height, ByteBuffer colorBytes, boolean argbPremultiplied) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Framebuffer size must be positive: " + width + "x" + height);
+        if (colorBytes.remaining() < width * height * 4)
+            throw new IllegalArgumentException("Color buffer too small for " + width + "x" + height);
+
+        this.width = width;
+        this.height = height;
+        this.colorBytes = colorBytes;
+        this.argb = argbPremultiplied;
+        this.color = colorBytes.slice().order(argb ? ByteOrder.nativeOrder() : ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        this.depth = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isArgbPremultiplied() {
+        return argb;
+    }
+
+    /**
+     * @return the color memory this framebuffer was created over
+     */
+    public ByteBuffer getColorBytes() {
+        return colorBytes;
+    }
+
+    public IntBuffer getColor() {
+        return color;
+    }
+
+    public FloatBuffer getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the packed RGBA value at (x, y), y counted from the bottom row
+     */
+    public int getPixel(int x, int y) {
+        return color.get(y * width + x);
+    }
+
+    public void clearColor(int rgba) {
+        clearColor(rgba, 0, 0, width, height);
+    }
+
+    public void clearColor(int rgba, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++)
+                color.put(row + x, rgba);
+        }
+    }
+
+    public void clearDepth(float value) {
+        clearDepth(value, 0, 0, width, height);
+    }
+
+    public void clearDepth(float value, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++)
+                depth.put(row + x, value);
+        }
+    }
+
+    /**
+     * Packs a GL-style float color into the default pixel format, RGBA bytes.
+     */
+    public static int pack(float r, float g, float b, float a) {
+        return toByte(r) | toByte(g) << 8 | toByte(b) << 16 | toByte(a) << 24;
+    }
+
+    /**
+     * Packs a GL-style float color into this framebuffer's pixel format.
+     */
+    public int packColor(float r, float g, float b, float a) {
+        if (!argb)
+            return pack(r, g, b, a);
+        float alpha = Math.max(0.0f, Math.min(1.0f, a));
+        return toByte(a) << 24 | toByte(r * alpha) << 16 | toByte(g * alpha) << 8 | toByte(b * alpha);
+    }
+
+    private static int toByte(float c) {
+        if (c <= 0.0f)
+            return 0;
+        if (c >= 1.0f)
+            return 255;
+        return (int) (c * 255.0f + 0.5f);
+    }
+}
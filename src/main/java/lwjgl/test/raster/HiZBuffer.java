@@ -0,0 +1,319 @@
+package lwjgl.test.raster;
+
+import java.util.Arrays;
+
+/**
+ * Coarse depth pyramid for occlusion culling in the software renderer.
+ * <p>
+ * Level 0 has one cell per {@code cellSize x cellSize} block of pixels, holding a depth that
+ * every pixel of the block is known to have been written at or in front of, or 1 if nothing
+ * is known. Each further level halves the resolution and keeps the farthest of the cells below
+ * it. Only occluders feed it, one convex window-space quad at a time ({@link #addQuad}), and a
+ * cell only takes an occluder's depth if the occluder covers all of its pixel centers, so the
+ * pyramid never claims more than the depth buffer will hold once the occluders are drawn.
+ * <p>
+ * {@link #isOccluded} then compares the nearest depth of a screen rectangle against the
+ * farthest depth of the few cells covering it, on the level where it spans at most two
+ * cells each way. Levels above 0 are brought up to date lazily, only over the cells that
+ * occluders changed since the last test.
+ */
+public class HiZBuffer {
+
+    // Level 0 cells along the longer side by default; finer costs more per occluder than it culls
+    public static final int DEFAULT_CELLS = 128;
+    public static final int MIN_CELL_SIZE = 4;
+
+    // Tolerance for the rasterizer snapping vertices and rounding depth differently from us
+    private static final float EDGE_MARGIN = 1.0f / 64;
+    private static final float DEPTH_MARGIN = 1e-5f;
+
+    private final int width, height, cellSize;
+    private final float[][] levels;
+    private final int[] levelWidth, levelHeight;
+
+    // Level 0 cells changed since the pyramid was last built, inclusive
+    private int dirtyX0, dirtyY0, dirtyX1, dirtyY1;
+    private boolean empty = true;
+
+    // Scratch for addQuad: the two depth planes and the four edges
+    private final float[] planeA = new float[2], planeB = new float[2], planeC = new float[2];
+    private final float[] edgeX = new float[4], edgeY = new float[4], edgeC = new float[4];
+
+    /**
+     * Creates a pyramid with at most {@link #DEFAULT_CELLS} level 0 cells along the longer side,
+     * each at least {@link #MIN_CELL_SIZE} pixels.
+     */
+    public HiZBuffer(int width, int height) {
+        this(width, height, Math.max(MIN_CELL_SIZE, (Math.max(width, height) + DEFAULT_CELLS - 1) / DEFAULT_CELLS));
+    }
+
+    /**
+     * @param width    framebuffer width in pixels
+     * @param height   framebuffer height in pixels
+     * @param cellSize pixels per level 0 cell along each axis
+     */
+    public HiZBuffer(int width, int height, int cellSize) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Size must be positive: " + width + "x" + height);
+        if (cellSize < 1)
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+
+        int w = (width + cellSize - 1) / cellSize, h = (height + cellSize - 1) / cellSize;
+        int count = 1;
+        for (int lw = w, lh = h; lw > 1 || lh > 1; lw = (lw + 1) / 2, lh = (lh + 1) / 2)
+            count++;
+        levels = new float[count][];
+        levelWidth = new int[count];
+        levelHeight = new int[count];
+        for (int l = 0; l < count; l++) {
+            levelWidth[l] = w;
+            levelHeight[l] = h;
+            levels[l] = new float[w * h];
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+        }
+        clear();
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @return whether no occluder has covered a cell since the last {@link #clear()}
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Forgets every occluder, like clearing the depth buffer to 1.
+     */
+    public void clear() {
+        for (float[] level : levels)
+            Arrays.fill(level, 1.0f);
+        empty = true;
+        dirtyX0 = Integer.MAX_VALUE;
+        dirtyY0 = Integer.MAX_VALUE;
+        dirtyX1 = -1;
+        dirtyY1 = -1;
+    }
+
+    /**
+     * Adds a convex quad that is being drawn with depth testing and writing, in window
+     * coordinates as {@link Rasterizer} takes them, in either winding. Non-convex quads are
+     * ignored.
+     *
+     * @param clipX0 first column the quad may touch
+     * @param clipY0 first row the quad may touch
+     * @param clipX1 one past the last column the quad may touch
+     * @param clipY1 one past the last row the quad may touch
+     */
+    public void addQuad(float[] x, float[] y, float[] z, int clipX0, int clipY0, int clipX1, int clipY1) {
+        float area = 0;
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) & 3;
+            area += x[i] * y[j] - x[j] * y[i];
+        }
+        if (area == 0 || Float.isNaN(area))
+            return;
+        float sign = area > 0 ? 1 : -1;
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) & 3, k = (i + 2) & 3;
+            if (((x[j] - x[i]) * (y[k] - y[j]) - (y[j] - y[i]) * (x[k] - x[j])) * sign < 0)
+                return;
+        }
+
+        float minZ = Math.min(Math.min(z[0], z[1]), Math.min(z[2], z[3]));
+        float maxZ = Math.max(Math.max(z[0], z[1]), Math.max(z[2], z[3]));
+        if (maxZ < 0 || minZ > 1)
+            return;
+
+        // Depth planes of the two triangles the rasterizer splits the quad into
+        if (!plane(x, y, z, 0, 1, 2, 0) || !plane(x, y, z, 0, 2, 3, 1))
+            return;
+
+        float minX = Math.min(Math.min(x[0], x[1]), Math.min(x[2], x[3]));
+        float maxX = Math.max(Math.max(x[0], x[1]), Math.max(x[2], x[3]));
+        float minY = Math.min(Math.min(y[0], y[1]), Math.min(y[2], y[3]));
+        float maxY = Math.max(Math.max(y[0], y[1]), Math.max(y[2], y[3]));
+
+        // Cells whose pixels all lie within both the quad's bounds and the clip rectangle
+        int x0 = Math.max(cellAtOrAfter(Math.max(clipX0, (int) Math.ceil(minX - 0.5f))), 0);
+        int y0 = Math.max(cellAtOrAfter(Math.max(clipY0, (int) Math.ceil(minY - 0.5f))), 0);
+        int x1 = cellEndingBefore(Math.min(clipX1, (int) Math.floor(maxX - 0.5f) + 1), width);
+        int y1 = cellEndingBefore(Math.min(clipY1, (int) Math.floor(maxY - 0.5f) + 1), height);
+        if (x0 > x1 || y0 > y1)
+            return;
+
+        // Edge i as a half-plane ex * px + ey * py + ec >= margin, inside being positive
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) & 3;
+            float dx = x[j] - x[i], dy = y[j] - y[i];
+            edgeX[i] = -dy * sign;
+            edgeY[i] = dx * sign;
+            edgeC[i] = (dy * x[i] - dx * y[i]) * sign - (float) Math.sqrt(dx * dx + dy * dy) * EDGE_MARGIN;
+        }
+
+        final float[] level0 = levels[0];
+        final int cellsX = levelWidth[0];
+        boolean changed = false;
+        for (int cy = y0; cy <= y1; cy++) {
+            // Pixel centers of the cell's first and last rows; a convex quad covers a cell iff it
+            // covers its four corner pixel centers, so both rows bound the columns in between
+            float py0 = cy * cellSize + 0.5f, py1 = Math.min((cy + 1) * cellSize, height) - 0.5f;
+            float left = Float.NEGATIVE_INFINITY, right = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < 4 && left <= right; i++) {
+                float c = Math.min(edgeY[i] * py0, edgeY[i] * py1) + edgeC[i];
+                if (edgeX[i] > 0)
+                    left = Math.max(left, -c / edgeX[i]);
+                else if (edgeX[i] < 0)
+                    right = Math.min(right, -c / edgeX[i]);
+                else if (c < 0)
+                    right = Float.NEGATIVE_INFINITY;
+            }
+            if (!(left <= right))
+                continue;
+
+            // Cells with px0 >= left and px1 <= right, give or take one at each end
+            int from = Math.max(x0, (int) Math.floor((left - 0.5f) / cellSize));
+            int to = Math.min(x1, (int) Math.ceil((right - 0.5f) / cellSize));
+            // Planes are extreme at the corners: per plane, the row picks one y and the x end by the slope
+            float near0 = Math.min(planeB[0] * py0, planeB[0] * py1) + planeC[0];
+            float far0 = Math.max(planeB[0] * py0, planeB[0] * py1) + planeC[0];
+            float near1 = Math.min(planeB[1] * py0, planeB[1] * py1) + planeC[1];
+            float far1 = Math.max(planeB[1] * py0, planeB[1] * py1) + planeC[1];
+            final float a0 = planeA[0], a1 = planeA[1];
+
+            int row = cy * cellsX;
+            for (int cx = from; cx <= to; cx++) {
+                float px0 = cx * cellSize + 0.5f, px1 = Math.min((cx + 1) * cellSize, width) - 0.5f;
+                if (px0 < left || px1 > right)
+                    continue;
+
+                float n0 = near0 + (a0 > 0 ? a0 * px0 : a0 * px1), f0 = far0 + (a0 > 0 ? a0 * px1 : a0 * px0);
+                float n1 = near1 + (a1 > 0 ? a1 * px0 : a1 * px1), f1 = far1 + (a1 > 0 ? a1 * px1 : a1 * px0);
+                float near = n0 < n1 ? n0 : n1;
+                float far = f0 > f1 ? f0 : f1;
+                if (far > maxZ)
+                    far = maxZ;
+                far += DEPTH_MARGIN;
+                // Fragments outside [0, 1] are never written
+                if (near < DEPTH_MARGIN || far > 1)
+                    continue;
+
+                if (far < level0[row + cx]) {
+                    level0[row + cx] = far;
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            empty = false;
+            dirtyX0 = Math.min(dirtyX0, x0);
+            dirtyY0 = Math.min(dirtyY0, y0);
+            dirtyX1 = Math.max(dirtyX1, x1);
+            dirtyY1 = Math.max(dirtyY1, y1);
+        }
+    }
+
+    /**
+     * @param minX  left edge of the window-space bounds of everything that would be drawn
+     * @param minZ  nearest depth of it
+     * @return whether every pixel it could touch already holds something nearer than {@code minZ}
+     */
+    public boolean isOccluded(float minX, float minY, float maxX, float maxY, float minZ) {
+        if (empty)
+            return false;
+
+        // Pixels whose centers the bounds may cover, one more each way for vertex snapping
+        int px0 = Math.max(0, (int) Math.ceil(minX - 0.5f) - 1);
+        int py0 = Math.max(0, (int) Math.ceil(minY - 0.5f) - 1);
+        int px1 = Math.min(width - 1, (int) Math.floor(maxX - 0.5f) + 1);
+        int py1 = Math.min(height - 1, (int) Math.floor(maxY - 0.5f) + 1);
+        if (px0 > px1 || py0 > py1)
+            return false;
+
+        build();
+        int cx0 = px0 / cellSize, cy0 = py0 / cellSize, cx1 = px1 / cellSize, cy1 = py1 / cellSize;
+        int l = 0;
+        while ((cx1 >> l) - (cx0 >> l) > 1 || (cy1 >> l) - (cy0 >> l) > 1)
+            l++;
+
+        final float[] level = levels[l];
+        final int w = levelWidth[l];
+        for (int cy = cy0 >> l; cy <= cy1 >> l; cy++) {
+            for (int cx = cx0 >> l; cx <= cx1 >> l; cx++) {
+                if (!(minZ > level[cy * w + cx] + DEPTH_MARGIN))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // Propagates the dirty level 0 cells up the pyramid
+    private void build() {
+        if (dirtyX1 < 0)
+            return;
+
+        int x0 = dirtyX0, y0 = dirtyY0, x1 = dirtyX1, y1 = dirtyY1;
+        for (int l = 1; l < levels.length; l++) {
+            x0 >>= 1;
+            y0 >>= 1;
+            x1 >>= 1;
+            y1 >>= 1;
+            final float[] below = levels[l - 1], level = levels[l];
+            final int wb = levelWidth[l - 1], hb = levelHeight[l - 1], w = levelWidth[l];
+            for (int cy = y0; cy <= y1; cy++) {
+                int by = cy * 2, byNext = Math.min(by + 1, hb - 1);
+                for (int cx = x0; cx <= x1; cx++) {
+                    int bx = cx * 2, bxNext = Math.min(bx + 1, wb - 1);
+                    level[cy * w + cx] = Math.max(
+                            Math.max(below[by * wb + bx], below[by * wb + bxNext]),
+                            Math.max(below[byNext * wb + bx], below[byNext * wb + bxNext]));
+                }
+            }
+        }
+
+        dirtyX0 = Integer.MAX_VALUE;
+        dirtyY0 = Integer.MAX_VALUE;
+        dirtyX1 = -1;
+        dirtyY1 = -1;
+    }
+
+    // First cell starting at or after pixel column or row p
+    private int cellAtOrAfter(int p) {
+        return (p + cellSize - 1) / cellSize;
+    }
+
+    // Last cell ending at or before p (exclusive), a cell cut short by the edge ending at size
+    private int cellEndingBefore(int p, int size) {
+        if (p >= size)
+            return (size - 1) / cellSize;
+        return p / cellSize - 1;
+    }
+
+    // Fits z = a * x + b * y + c through vertices i, j, k into slot p; false if degenerate
+    private boolean plane(float[] x, float[] y, float[] z, int i, int j, int k, int p) {
+        double ux = x[j] - x[i], uy = y[j] - y[i], uz = z[j] - z[i];
+        double vx = x[k] - x[i], vy = y[k] - y[i], vz = z[k] - z[i];
+        double det = ux * vy - uy * vx;
+        if (det == 0)
+            return false;
+        double a = (uz * vy - uy * vz) / det;
+        double b = (ux * vz - uz * vx) / det;
+        planeA[p] = (float) a;
+        planeB[p] = (float) b;
+        planeC[p] = (float) (z[i] - a * x[i] - b * y[i]);
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+package lwjgl.test.raster;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Fills window-space triangles into a {@link Framebuffer}.
+ * <p>
+ * Coordinates are in pixels with the origin at the bottom-left corner and depth in [0, 1],
+ * i.e. after the viewport transform. Triangles must be counter-clockwise; the caller
+ * handles culling and winding. Fragments outside the clip rectangle or the depth range
+ * are dropped, which is all the clipping an orthographic projection needs.
+ * <p>
+ * Vertices are snapped to 1/256 of a pixel and the edge functions are stepped in exact
+ * integer arithmetic, with depth evaluated from its plane at every pixel. A pixel's result
+ * therefore does not depend on where the clip rectangle starts, so a triangle split across
+ * tiles fills exactly the pixels it fills in one piece.
+ */
+public final class Rasterizer {
+
+    private static final int SUBPIXEL_BITS = 8;
+    private static final int SUBPIXELS = 1 << SUBPIXEL_BITS;
+
+    // Window coordinates beyond this many pixels would overflow the edge functions
+    private static final float GUARD_BAND = 1 << 22;
+
+    private Rasterizer() {
+    }
+
+    /**
+     * @param depthTest whether to apply GL_LESS against and write to the depth buffer
+     * @param clipX0    first column to touch
+     * @param clipY0    first row to touch
+     * @param clipX1    one past the last column to touch
+     * @param clipY1    one past the last row to touch
+     */
+    public static void fillTriangle(Framebuffer fb,
+                                    float x0, float y0, float z0,
+                                    float x1, float y1, float z1,
+                                    float x2, float y2, float z2,
+                                    int rgba, boolean depthTest,
+                                    int clipX0, int clipY0, int clipX1, int clipY1) {
+        if (!inGuardBand(x0, y0) || !inGuardBand(x1, y1) || !inGuardBand(x2, y2))
+            return;
+
+        long fx0 = snap(x0), fy0 = snap(y0);
+        long fx1 = snap(x1), fy1 = snap(y1);
+        long fx2 = snap(x2), fy2 = snap(y2);
+
+        long area = (fx1 - fx0) * (fy2 - fy0) - (fx2 - fx0) * (fy1 - fy0);
+        if (area <= 0)
+            return;
+
+        // Pixel bounds of the triangle, sampled at pixel centers
+        final long half = SUBPIXELS / 2;
+        int minX = Math.max(clipX0, (int) ((Math.min(fx0, Math.min(fx1, fx2)) - half + SUBPIXELS - 1) >> SUBPIXEL_BITS));
+        int maxX = Math.min(clipX1 - 1, (int) ((Math.max(fx0, Math.max(fx1, fx2)) - half) >> SUBPIXEL_BITS));
+        int minY = Math.max(clipY0, (int) ((Math.min(fy0, Math.min(fy1, fy2)) - half + SUBPIXELS - 1) >> SUBPIXEL_BITS));
+        int maxY = Math.min(clipY1 - 1, (int) ((Math.max(fy0, Math.max(fy1, fy2)) - half) >> SUBPIXEL_BITS));
+        if (minX > maxX || minY > maxY)
+            return;
+
+        // Edge function steps: w_i is the (unnormalized) weight of vertex i
+        long dw0dx = -(fy2 - fy1) * SUBPIXELS, dw0dy = (fx2 - fx1) * SUBPIXELS;
+        long dw1dx = -(fy0 - fy2) * SUBPIXELS, dw1dy = (fx0 - fx2) * SUBPIXELS;
+        long dw2dx = -(fy1 - fy0) * SUBPIXELS, dw2dy = (fx1 - fx0) * SUBPIXELS;
+
+        long px = ((long) minX << SUBPIXEL_BITS) + half;
+        long py = ((long) minY << SUBPIXEL_BITS) + half;
+        long w0Row = (fx2 - fx1) * (py - fy1) - (fy2 - fy1) * (px - fx1);
+        long w1Row = (fx0 - fx2) * (py - fy2) - (fy0 - fy2) * (px - fx2);
+        long w2Row = (fx1 - fx0) * (py - fy0) - (fy1 - fy0) * (px - fx0);
+
+        // Depth plane z = dzdx * x + dzdy * y + zc over pixel-center coordinates
+        double invArea = 1.0 / area;
+        double ax = (fx0 - fx2) / (double) SUBPIXELS, ay = (fy0 - fy2) / (double) SUBPIXELS;
+        double bx = (fx1 - fx2) / (double) SUBPIXELS, by = (fy1 - fy2) / (double) SUBPIXELS;
+        double scale = invArea * SUBPIXELS * SUBPIXELS;
+        float dzdx = (float) (((z0 - z2) * by - (z1 - z2) * ay) * scale);
+        float dzdy = (float) (((z1 - z2) * ax - (z0 - z2) * bx) * scale);
+        float zc = (float) (z2 - dzdx * (fx2 / (double) SUBPIXELS) - dzdy * (fy2 / (double) SUBPIXELS));
+
+        final int width = fb.getWidth();
+        final IntBuffer color = fb.getColor();
+        final FloatBuffer depth = fb.getDepth();
+
+        for (int y = minY; y <= maxY; y++) {
+            // Each edge function is linear along the row, so the covered pixels form one span
+            long left = minX, right = maxX;
+            left = Math.max(left, spanStart(w0Row, dw0dx, minX));
+            left = Math.max(left, spanStart(w1Row, dw1dx, minX));
+            left = Math.max(left, spanStart(w2Row, dw2dx, minX));
+            right = Math.min(right, spanEnd(w0Row, dw0dx, minX));
+            right = Math.min(right, spanEnd(w1Row, dw1dx, minX));
+            right = Math.min(right, spanEnd(w2Row, dw2dx, minX));
+
+            if (left <= right) {
+                float zRow = zc + dzdy * (y + 0.5f);
+                int row = y * width;
+                // Pixel centers are exact in float, so z is the same wherever the span was clipped
+                float cx = left + 0.5f;
+                for (int index = row + (int) left, end = row + (int) right; index <= end; index++, cx += 1.0f) {
+                    float z = zRow + dzdx * cx;
+                    if (z >= 0.0f && z <= 1.0f) {
+                        if (!depthTest) {
+                            color.put(index, rgba);
+                        } else if (z < depth.get(index)) {
+                            depth.put(index, z);
+                            color.put(index, rgba);
+                        }
+                    }
+                }
+            }
+
+            w0Row += dw0dy;
+            w1Row += dw1dy;
+            w2Row += dw2dy;
+        }
+    }
+
+    // First column at or after x0 where w + dwdx * (x - x0) >= 0, or Long.MAX_VALUE if none
+    private static long spanStart(long w, long dwdx, int x0) {
+        if (w >= 0)
+            return x0;
+        if (dwdx <= 0)
+            return Long.MAX_VALUE;
+        return x0 + (-w + dwdx - 1) / dwdx;
+    }
+
+    // Last column at or after x0 where w + dwdx * (x - x0) >= 0, or Long.MIN_VALUE if none
+    private static long spanEnd(long w, long dwdx, int x0) {
+        if (dwdx >= 0)
+            return Long.MAX_VALUE;
+        if (w < 0)
+            return Long.MIN_VALUE;
+        return x0 + w / -dwdx;
+    }
+
+    private static boolean inGuardBand(float x, float y) {
+        return Math.abs(x) < GUARD_BAND && Math.abs(y) < GUARD_BAND;
+    }
+
+    private static long snap(float coordinate) {
+        return (long) Math.floor(coordinate * (double) SUBPIXELS + 0.5);
+    }
+}
@@ -0,0 +1,528 @@
+package lwjgl.test.raster;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.math.Matrix4f;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Pure-Java {@link GLBackend} that rasterizes into a {@link Framebuffer}.
+ * <p>
+ * It keeps its own projection and modelview stacks, so scenes written against the
+ * fixed-function API render the same as on a real context: quads are front-facing when
+ * counter-clockwise, GL_CULL_FACE drops back faces and GL_DEPTH_TEST is GL_LESS against
+ * a depth buffer cleared to 1. Faces are flat shaded with their first vertex color.
+ * Only primitives fully in front of the eye (w &gt; 0) are drawn, which covers every
+ * orthographic projection.
+ * <p>
+ * Created with a {@link ForkJoinPool}, it transforms and culls on the calling thread but
+ * only bins the resulting triangles into a {@link TileRasterizer}, which fills the tiles in
+ * parallel on {@link #finish()}. Call it before reading the framebuffer in either mode.
+ * <p>
+ * With {@link #setOcclusionCulling} on, draws with depth testing are first checked against a
+ * {@link HiZBuffer} and skipped if the depth test would reject every pixel they could touch.
+ * Each draw call (each instance of {@link #drawCubeInstances}) is one object to test. The
+ * pyramid is cleared with the depth buffer and fed, as they are drawn, the quads of the first
+ * few objects of a frame that cover enough of the viewport; submit big near objects first to
+ * make the most of it. The image is the same either way.
+ */
+public class SoftwareBackend implements GLBackend {
+
+    private static final int STACK_DEPTH = 32;
+
+    private final Framebuffer framebuffer;
+    private final TileRasterizer tiles;
+
+    private final Matrix4f[] modelview = createStack();
+    private final Matrix4f[] projection = createStack();
+    private int modelviewTop, projectionTop;
+    private boolean projectionMode;
+
+    // Scratch state for drawQuads
+    private final Matrix4f mvp = new Matrix4f();
+    private final Matrix4f instance = new Matrix4f();
+    private final float[] sx = new float[4], sy = new float[4], sz = new float[4];
+
+    private int viewportX, viewportY, viewportWidth, viewportHeight;
+    private int clearRgba;
+    private int currentRgba;
+    private boolean cullFace, depthTest;
+
+    private long quadsSubmitted, quadsCulled;
+    private long trianglesSubmitted, trianglesCulled;
+
+    // Occlusion culling, off while hiZ is null
+    private HiZBuffer hiZ;
+    private int maxOccluders = 16;
+    private float minOccluderFraction = 1.0f / 64;
+    private int frameOccluders;
+    // Whether the quads being drawn feed hiZ
+    private boolean occluding;
+    private long objectsTested, objectsOccluded, occluders;
+
+    public SoftwareBackend(Framebuffer framebuffer) {
+        this(framebuffer, null);
+    }
+
+    /**
+     * @param pool where to rasterize tiles, or {@code null} to fill every triangle immediately
+     *             on the calling thread
+     */
+    public SoftwareBackend(Framebuffer framebuffer, ForkJoinPool pool) {
+        this.framebuffer = framebuffer;
+        this.tiles = pool == null ? null : new TileRasterizer(framebuffer, pool);
+        this.viewportWidth = framebuffer.getWidth();
+        this.viewportHeight = framebuffer.getHeight();
+        this.currentRgba = framebuffer.packColor(1f, 1f, 1f, 1f);
+    }
+
+    public Framebuffer getFramebuffer() {
+        return framebuffer;
+    }
+
+    /**
+     * @return the tile binner, or {@code null} when rasterizing immediately
+     */
+    public TileRasterizer getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Like glFinish: returns once everything drawn so far is in the framebuffer.
+     */
+    public void finish() {
+        if (tiles != null)
+            tiles.flush();
+    }
+
+    /**
+     * @return quads passed to drawQuads since creation
+     */
+    public long getQuadsSubmitted() {
+        return quadsSubmitted;
+    }
+
+    /**
+     * @return quads dropped by back-face culling since creation
+     */
+    public long getQuadsCulled() {
+        return quadsCulled;
+    }
+
+    /**
+     * @return triangles passed to drawTriangles since creation
+     */
+    public long getTrianglesSubmitted() {
+        return trianglesSubmitted;
+    }
+
+    /**
+     * @return triangles dropped by back-face culling since creation
+     */
+    public long getTrianglesCulled() {
+        return trianglesCulled;
+    }
+
+    /**
+     * Turns occlusion culling against a default sized {@link HiZBuffer} on or off; see the
+     * class comment.
+     */
+    public SoftwareBackend setOcclusionCulling(boolean enabled) {
+        if (!enabled)
+            hiZ = null;
+        else if (hiZ == null)
+            hiZ = new HiZBuffer(framebuffer.getWidth(), framebuffer.getHeight());
+        return this;
+    }
+
+    public boolean isOcclusionCulling() {
+        return hiZ != null;
+    }
+
+    /**
+     * Sets which objects become occluders: at most {@code maxOccluders} per depth clear, each
+     * covering at least {@code minViewportFraction} of the viewport with its screen bounds.
+     * 16 and 1/64 by default.
+     */
+    public SoftwareBackend setOccluders(int maxOccluders, float minViewportFraction) {
+        if (maxOccluders < 0)
+            throw new IllegalArgumentException("Occluder count must not be negative: " + maxOccluders);
+        this.maxOccluders = maxOccluders;
+        this.minOccluderFraction = minViewportFraction;
+        return this;
+    }
+
+    /**
+     * @return objects checked against the Hi-Z pyramid since creation
+     */
+    public long getObjectsTested() {
+        return objectsTested;
+    }
+
+    /**
+     * @return objects skipped as fully occluded since creation
+     */
+    public long getObjectsOccluded() {
+        return objectsOccluded;
+    }
+
+    /**
+     * @return objects whose quads fed the Hi-Z pyramid since creation
+     */
+    public long getOccluders() {
+        return occluders;
+    }
+
+    @Override
+    public void clearColor(float r, float g, float b, float a) {
+        clearRgba = framebuffer.packColor(r, g, b, a);
+    }
+
+    @Override
+    public void clear(int mask) {
+        if (hiZ != null && (mask & GL_DEPTH_BUFFER_BIT) != 0) {
+            hiZ.clear();
+            frameOccluders = 0;
+        }
+        // Like glClear, this is limited by the framebuffer, not by the viewport
+        if (tiles != null) {
+            tiles.clear(mask, clearRgba, 1.0f);
+            return;
+        }
+        if ((mask & GL_COLOR_BUFFER_BIT) != 0)
+            framebuffer.clearColor(clearRgba);
+        if ((mask & GL_DEPTH_BUFFER_BIT) != 0)
+            framebuffer.clearDepth(1.0f);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        viewportX = x;
+        viewportY = y;
+        viewportWidth = width;
+        viewportHeight = height;
+    }
+
+    @Override
+    public void enable(int cap) {
+        setCap(cap, true);
+    }
+
+    @Override
+    public void disable(int cap) {
+        setCap(cap, false);
+    }
+
+    @Override
+    public void matrixMode(int mode) {
+        if (mode != GL_PROJECTION && mode != GL_MODELVIEW)
+            throw new UnsupportedOperationException("Unsupported matrix mode: " + mode);
+        projectionMode = mode == GL_PROJECTION;
+    }
+
+    @Override
+    public void loadIdentity() {
+        current().identity();
+    }
+
+    @Override
+    public void ortho(double left, double right, double bottom, double top, double zNear, double zFar) {
+        current().ortho((float) left, (float) right, (float) bottom, (float) top, (float) zNear, (float) zFar);
+    }
+
+    @Override
+    public void loadMatrix(FloatBuffer matrix) {
+        current().set(matrix);
+    }
+
+    @Override
+    public void pushMatrix() {
+        if (projectionMode) {
+            if (projectionTop + 1 == STACK_DEPTH)
+                throw new IllegalStateException("Projection stack overflow");
+            projection[projectionTop + 1].set(projection[projectionTop]);
+            projectionTop++;
+        } else {
+            if (modelviewTop + 1 == STACK_DEPTH)
+                throw new IllegalStateException("Modelview stack overflow");
+            modelview[modelviewTop + 1].set(modelview[modelviewTop]);
+            modelviewTop++;
+        }
+    }
+
+    @Override
+    public void popMatrix() {
+        if (projectionMode) {
+            if (projectionTop == 0)
+                throw new IllegalStateException("Projection stack underflow");
+            projectionTop--;
+        } else {
+            if (modelviewTop == 0)
+                throw new IllegalStateException("Modelview stack underflow");
+            modelviewTop--;
+        }
+    }
+
+    @Override
+    public void translate(float x, float y, float z) {
+        current().translate(x, y, z);
+    }
+
+    @Override
+    public void rotate(float angle, float x, float y, float z) {
+        current().rotate(angle, x, y, z);
+    }
+
+    @Override
+    public void color(float r, float g, float b) {
+        currentRgba = framebuffer.packColor(r, g, b, 1f);
+    }
+
+    @Override
+    public void drawQuads(FloatBuffer vertices, FloatBuffer colors, int vertexCount) {
+        mvp.mul(projection[projectionTop], modelview[modelviewTop]);
+        if (occluded(vertices, vertices.position(), vertexCount, true))
+            return;
+        rasterQuads(vertices, colors, vertexCount, currentRgba);
+        occluding = false;
+    }
+
+    @Override
+    public void drawCubeInstances(FloatBuffer instances, int count) {
+        FloatBuffer unit = Cube3D.getUnitVertices();
+        int o = instances.position();
+
+        for (int i = 0; i < count; i++, o += 16) {
+            Matrix4f m = instance;
+            m.m00 = instances.get(o);     m.m10 = instances.get(o + 1); m.m20 = instances.get(o + 2);  m.m30 = instances.get(o + 3);
+            m.m01 = instances.get(o + 4); m.m11 = instances.get(o + 5); m.m21 = instances.get(o + 6);  m.m31 = instances.get(o + 7);
+            m.m02 = instances.get(o + 8); m.m12 = instances.get(o + 9); m.m22 = instances.get(o + 10); m.m32 = instances.get(o + 11);
+            m.m03 = 0; m.m13 = 0; m.m23 = 0; m.m33 = 1;
+
+            int rgba = framebuffer.packColor(instances.get(o + 12), instances.get(o + 13),
+                    instances.get(o + 14), instances.get(o + 15));
+
+            mvp.mul(projection[projectionTop], modelview[modelviewTop]).mul(m);
+            if (occludedUnitCube())
+                continue;
+            rasterQuads(unit, null, Cube3D.VERTEX_COUNT, rgba);
+            occluding = false;
+        }
+    }
+
+    @Override
+    public void drawTriangles(FloatBuffer vertices, IntBuffer indices, int indexCount) {
+        mvp.mul(projection[projectionTop], modelview[modelviewTop]);
+
+        final int clipX0 = Math.max(0, viewportX), clipY0 = Math.max(0, viewportY);
+        final int clipX1 = Math.min(framebuffer.getWidth(), viewportX + viewportWidth);
+        final int clipY1 = Math.min(framebuffer.getHeight(), viewportY + viewportHeight);
+        int vBase = vertices.position(), iBase = indices.position();
+
+        // Meshes are tested as a whole, over every vertex in the buffer, but never occlude
+        if (occluded(vertices, vBase, (vertices.limit() - vBase) / 3, false))
+            return;
+
+        triangles:
+        for (int t = 0; t + 3 <= indexCount; t += 3) {
+            trianglesSubmitted++;
+            for (int i = 0; i < 3; i++) {
+                if (!toWindow(vertices, vBase + indices.get(iBase + t + i) * 3, i))
+                    continue triangles;
+            }
+
+            boolean back = (sx[1] - sx[0]) * (sy[2] - sy[0]) - (sx[2] - sx[0]) * (sy[1] - sy[0]) < 0.0f;
+            if (back && cullFace) {
+                trianglesCulled++;
+                continue;
+            }
+            if (!back)
+                fill(sx[0], sy[0], sz[0], sx[1], sy[1], sz[1], sx[2], sy[2], sz[2],
+                        currentRgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+            else
+                fill(sx[0], sy[0], sz[0], sx[2], sy[2], sz[2], sx[1], sy[1], sz[1],
+                        currentRgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+        }
+    }
+
+    // Object space -> clip space -> window space into slot i of sx/sy/sz; false if behind the eye
+    private boolean toWindow(FloatBuffer vertices, int o, int i) {
+        float x = vertices.get(o), y = vertices.get(o + 1), z = vertices.get(o + 2);
+
+        float cw = mvp.m03 * x + mvp.m13 * y + mvp.m23 * z + mvp.m33;
+        if (cw <= 0.0f)
+            return false;
+        float invW = 1.0f / cw;
+        float nx = (mvp.m00 * x + mvp.m10 * y + mvp.m20 * z + mvp.m30) * invW;
+        float ny = (mvp.m01 * x + mvp.m11 * y + mvp.m21 * z + mvp.m31) * invW;
+        float nz = (mvp.m02 * x + mvp.m12 * y + mvp.m22 * z + mvp.m32) * invW;
+
+        sx[i] = viewportX + (nx + 1.0f) * (viewportWidth * 0.5f);
+        sy[i] = viewportY + (ny + 1.0f) * (viewportHeight * 0.5f);
+        sz[i] = (nz + 1.0f) * 0.5f;
+        return true;
+    }
+
+    /**
+     * Tests the object made of the first {@code vertexCount} vertices from {@code base} against
+     * the Hi-Z pyramid under the current mvp; see {@link #occluded(float, float, float, float, float, boolean)}.
+     */
+    private boolean occluded(FloatBuffer vertices, int base, int vertexCount, boolean mayOcclude) {
+        if (hiZ == null || !depthTest || vertexCount == 0)
+            return false;
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int v = 0; v < vertexCount; v++) {
+            // Not drawn at all if any vertex is behind the eye; nothing to gain
+            if (!toWindow(vertices, base + v * 3, 0))
+                return false;
+            minX = Math.min(minX, sx[0]);
+            maxX = Math.max(maxX, sx[0]);
+            minY = Math.min(minY, sy[0]);
+            maxY = Math.max(maxY, sy[0]);
+            minZ = Math.min(minZ, sz[0]);
+        }
+        return occluded(minX, minY, maxX, maxY, minZ, mayOcclude);
+    }
+
+    /**
+     * Same as {@link #occluded(FloatBuffer, int, int, boolean)} for a unit cube, from its eight
+     * corners rather than the 24 vertices of its faces.
+     */
+    private boolean occludedUnitCube() {
+        if (hiZ == null || !depthTest)
+            return false;
+
+        final Matrix4f m = mvp;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 1) == 0 ? -0.5f : 0.5f;
+            float y = (corner & 2) == 0 ? -0.5f : 0.5f;
+            float z = (corner & 4) == 0 ? -0.5f : 0.5f;
+            float cw = m.m03 * x + m.m13 * y + m.m23 * z + m.m33;
+            if (cw <= 0.0f)
+                return false;
+            float invW = 1.0f / cw;
+            float wx = viewportX + ((m.m00 * x + m.m10 * y + m.m20 * z + m.m30) * invW + 1.0f) * (viewportWidth * 0.5f);
+            float wy = viewportY + ((m.m01 * x + m.m11 * y + m.m21 * z + m.m31) * invW + 1.0f) * (viewportHeight * 0.5f);
+            float wz = ((m.m02 * x + m.m12 * y + m.m22 * z + m.m32) * invW + 1.0f) * 0.5f;
+            minX = Math.min(minX, wx);
+            maxX = Math.max(maxX, wx);
+            minY = Math.min(minY, wy);
+            maxY = Math.max(maxY, wy);
+            minZ = Math.min(minZ, wz);
+        }
+        return occluded(minX, minY, maxX, maxY, minZ, true);
+    }
+
+    /**
+     * Tests window-space bounds against the Hi-Z pyramid, counting the object. If it is drawn
+     * and {@code mayOcclude}, also decides whether its quads should feed the pyramid.
+     *
+     * @return whether it is hidden and must be skipped
+     */
+    private boolean occluded(float minX, float minY, float maxX, float maxY, float minZ, boolean mayOcclude) {
+        objectsTested++;
+        if (hiZ.isOccluded(minX, minY, maxX, maxY, minZ)) {
+            objectsOccluded++;
+            return true;
+        }
+
+        if (mayOcclude && frameOccluders < maxOccluders) {
+            float w = Math.min(maxX, viewportX + viewportWidth) - Math.max(minX, viewportX);
+            float h = Math.min(maxY, viewportY + viewportHeight) - Math.max(minY, viewportY);
+            if (w > 0 && h > 0 && w * h >= minOccluderFraction * viewportWidth * viewportHeight) {
+                frameOccluders++;
+                occluders++;
+                occluding = true;
+            }
+        }
+        return false;
+    }
+
+    // Transforms quads by mvp and fills them
+    private void rasterQuads(FloatBuffer vertices, FloatBuffer colors, int vertexCount, int flatRgba) {
+        final int clipX0 = Math.max(0, viewportX), clipY0 = Math.max(0, viewportY);
+        final int clipX1 = Math.min(framebuffer.getWidth(), viewportX + viewportWidth);
+        final int clipY1 = Math.min(framebuffer.getHeight(), viewportY + viewportHeight);
+
+        int vBase = vertices.position();
+        int cBase = colors != null ? colors.position() : 0;
+
+        quads:
+        for (int q = 0; q + 4 <= vertexCount; q += 4) {
+            quadsSubmitted++;
+
+            for (int i = 0; i < 4; i++) {
+                if (!toWindow(vertices, vBase + (q + i) * 3, i))
+                    continue quads;
+            }
+
+            // Signed area of the whole polygon decides the facing, like GL does
+            float area = (sx[0] * sy[1] - sx[1] * sy[0]) + (sx[1] * sy[2] - sx[2] * sy[1])
+                    + (sx[2] * sy[3] - sx[3] * sy[2]) + (sx[3] * sy[0] - sx[0] * sy[3]);
+            boolean back = area < 0.0f;
+            if (back && cullFace) {
+                quadsCulled++;
+                continue;
+            }
+
+            if (occluding)
+                hiZ.addQuad(sx, sy, sz, clipX0, clipY0, clipX1, clipY1);
+
+            int rgba = flatRgba;
+            if (colors != null) {
+                int c = cBase + q * 3;
+                rgba = framebuffer.packColor(colors.get(c), colors.get(c + 1), colors.get(c + 2), 1f);
+            }
+
+            if (!back) {
+                fill(sx[0], sy[0], sz[0], sx[1], sy[1], sz[1], sx[2], sy[2], sz[2],
+                        rgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+                fill(sx[0], sy[0], sz[0], sx[2], sy[2], sz[2], sx[3], sy[3], sz[3],
+                        rgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+            } else {
+                fill(sx[0], sy[0], sz[0], sx[2], sy[2], sz[2], sx[1], sy[1], sz[1],
+                        rgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+                fill(sx[0], sy[0], sz[0], sx[3], sy[3], sz[3], sx[2], sy[2], sz[2],
+                        rgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+            }
+        }
+    }
+
+    private void fill(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2,
+                      int rgba, boolean depthTest, int clipX0, int clipY0, int clipX1, int clipY1) {
+        if (tiles != null)
+            tiles.add(x0, y0, z0, x1, y1, z1, x2, y2, z2, rgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+        else
+            Rasterizer.fillTriangle(framebuffer, x0, y0, z0, x1, y1, z1, x2, y2, z2,
+                    rgba, depthTest, clipX0, clipY0, clipX1, clipY1);
+    }
+
+    private Matrix4f current() {
+        return projectionMode ? projection[projectionTop] : modelview[modelviewTop];
+    }
+
+    private void setCap(int cap, boolean value) {
+        if (cap == GL_CULL_FACE)
+            cullFace = value;
+        else if (cap == GL_DEPTH_TEST)
+            depthTest = value;
+        else
+            throw new UnsupportedOperationException("Unsupported capability: " + cap);
+    }
+
+    private static Matrix4f[] createStack() {
+        Matrix4f[] stack = new Matrix4f[STACK_DEPTH];
+        for (int i = 0; i < STACK_DEPTH; i++)
+            stack[i] = new Matrix4f();
+        return stack;
+    }
+}
@@ -0,0 +1,226 @@
+package lwjgl.test.raster;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Defers window-space triangles and fills them into a {@link Framebuffer} tile by tile on a
+ * {@link ForkJoinPool}.
+ * <p>
+ * The framebuffer is split into tiles. {@link #add} records a triangle once and bins
+ * its index into every tile its bounds touch; {@link #flush()} then hands the tiles to the
+ * pool, each worker filling its tiles' triangles in submission order clipped to the tile.
+ * Tiles never share pixels, so the workers need no locks, and since {@link Rasterizer}
+ * gives the same pixels however a triangle is clipped, the image is identical to drawing
+ * every triangle immediately on one thread.
+ * <p>
+ * By default tiles are bands as wide as the framebuffer: {@link Rasterizer} finds the covered
+ * span of each row once per triangle and tile, so narrow tiles repeat that work for every
+ * column of tiles a triangle crosses.
+ * <p>
+ * A clear is deferred too and done by each tile before its triangles. Not thread safe:
+ * one thread adds and flushes.
+ */
+public class TileRasterizer {
+
+    public static final int DEFAULT_TILE_HEIGHT = 16;
+
+    private static final int TRIANGLE_FLOATS = 9;
+
+    private final Framebuffer framebuffer;
+    private final ForkJoinPool pool;
+    private final int tileWidth, tileHeight, tilesX, tilesY;
+
+    // Triangles in submission order
+    private float[] coords = new float[256 * TRIANGLE_FLOATS];
+    private int[] rgba = new int[256];
+    private boolean[] depthTest = new boolean[256];
+    private int[] clip = new int[256 * 4];
+    private int triangles;
+
+    // Per tile, the indices of the triangles touching it
+    private final int[][] bins;
+    private final int[] binCounts;
+
+    private int clearMask;
+    private int clearRgba;
+    private float clearDepth;
+
+    private long binned;
+
+    public TileRasterizer(Framebuffer framebuffer, ForkJoinPool pool) {
+        this(framebuffer, pool, framebuffer.getWidth(), DEFAULT_TILE_HEIGHT);
+    }
+
+    /**
+     * @param tileWidth  tile width in pixels, at most the framebuffer's
+     * @param tileHeight tile height in pixels, at most the framebuffer's
+     */
+    public TileRasterizer(Framebuffer framebuffer, ForkJoinPool pool, int tileWidth, int tileHeight) {
+        if (tileWidth < 1 || tileHeight < 1)
+            throw new IllegalArgumentException("Tile size must be positive: " + tileWidth + "x" + tileHeight);
+
+        this.framebuffer = framebuffer;
+        this.pool = pool;
+        this.tileWidth = Math.min(tileWidth, framebuffer.getWidth());
+        this.tileHeight = Math.min(tileHeight, framebuffer.getHeight());
+        this.tilesX = (framebuffer.getWidth() + this.tileWidth - 1) / this.tileWidth;
+        this.tilesY = (framebuffer.getHeight() + this.tileHeight - 1) / this.tileHeight;
+        this.bins = new int[tilesX * tilesY][16];
+        this.binCounts = new int[tilesX * tilesY];
+    }
+
+    public int getTileCount() {
+        return bins.length;
+    }
+
+    /**
+     * @return triangles waiting for the next {@link #flush()}
+     */
+    public int getPendingTriangles() {
+        return triangles;
+    }
+
+    /**
+     * @return tile references written by {@link #add} since creation; divided by the triangles
+     * added, how many tiles an average triangle was binned into
+     */
+    public long getBinnedReferences() {
+        return binned;
+    }
+
+    /**
+     * Records a counter-clockwise window-space triangle, with the same arguments as
+     * {@link Rasterizer#fillTriangle}.
+     */
+    public void add(float x0, float y0, float z0,
+                    float x1, float y1, float z1,
+                    float x2, float y2, float z2,
+                    int rgba, boolean depthTest,
+                    int clipX0, int clipY0, int clipX1, int clipY1) {
+        // Conservative pixel bounds; Rasterizer drops whatever the tiles over-include
+        int minX = Math.max(clipX0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(clipX1 - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(clipY0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(clipY1 - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY)
+            return;
+
+        if (triangles == this.rgba.length)
+            grow();
+        int t = triangles++;
+        int o = t * TRIANGLE_FLOATS;
+        coords[o] = x0;
+        coords[o + 1] = y0;
+        coords[o + 2] = z0;
+        coords[o + 3] = x1;
+        coords[o + 4] = y1;
+        coords[o + 5] = z1;
+        coords[o + 6] = x2;
+        coords[o + 7] = y2;
+        coords[o + 8] = z2;
+        this.rgba[t] = rgba;
+        this.depthTest[t] = depthTest;
+        clip[t * 4] = clipX0;
+        clip[t * 4 + 1] = clipY0;
+        clip[t * 4 + 2] = clipX1;
+        clip[t * 4 + 3] = clipY1;
+
+        for (int ty = minY / tileHeight, ty1 = maxY / tileHeight; ty <= ty1; ty++) {
+            for (int tx = minX / tileWidth, tx1 = maxX / tileWidth; tx <= tx1; tx++) {
+                int tile = ty * tilesX + tx;
+                int n = binCounts[tile];
+                if (n == bins[tile].length)
+                    bins[tile] = Arrays.copyOf(bins[tile], n * 2);
+                bins[tile][n] = t;
+                binCounts[tile] = n + 1;
+                binned++;
+            }
+        }
+    }
+
+    /**
+     * Records a glClear of the whole framebuffer. Triangles added before it are flushed first.
+     *
+     * @param mask GL_COLOR_BUFFER_BIT and/or GL_DEPTH_BUFFER_BIT
+     */
+    public void clear(int mask, int rgba, float depth) {
+        if (triangles > 0)
+            flush();
+        if ((mask & GL_COLOR_BUFFER_BIT) != 0)
+            clearRgba = rgba;
+        if ((mask & GL_DEPTH_BUFFER_BIT) != 0)
+            clearDepth = depth;
+        clearMask |= mask & (GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+    }
+
+    /**
+     * Rasterizes everything recorded so far and waits for it, after which the framebuffer
+     * holds the finished image.
+     */
+    public void flush() {
+        if (triangles == 0 && clearMask == 0)
+            return;
+
+        pool.invoke(new Tiles(0, bins.length));
+
+        triangles = 0;
+        clearMask = 0;
+        Arrays.fill(binCounts, 0);
+    }
+
+    private void renderTile(int tile) {
+        int x0 = (tile % tilesX) * tileWidth, y0 = (tile / tilesX) * tileHeight;
+        int x1 = Math.min(x0 + tileWidth, framebuffer.getWidth());
+        int y1 = Math.min(y0 + tileHeight, framebuffer.getHeight());
+
+        if ((clearMask & GL_COLOR_BUFFER_BIT) != 0)
+            framebuffer.clearColor(clearRgba, x0, y0, x1, y1);
+        if ((clearMask & GL_DEPTH_BUFFER_BIT) != 0)
+            framebuffer.clearDepth(clearDepth, x0, y0, x1, y1);
+
+        final int[] bin = bins[tile];
+        final float[] c = coords;
+        for (int i = 0, n = binCounts[tile]; i < n; i++) {
+            int t = bin[i], o = t * TRIANGLE_FLOATS, k = t * 4;
+            Rasterizer.fillTriangle(framebuffer, c[o], c[o + 1], c[o + 2], c[o + 3], c[o + 4], c[o + 5],
+                    c[o + 6], c[o + 7], c[o + 8], rgba[t], depthTest[t],
+                    Math.max(x0, clip[k]), Math.max(y0, clip[k + 1]),
+                    Math.min(x1, clip[k + 2]), Math.min(y1, clip[k + 3]));
+        }
+    }
+
+    private void grow() {
+        int capacity = rgba.length * 2;
+        coords = Arrays.copyOf(coords, capacity * TRIANGLE_FLOATS);
+        rgba = Arrays.copyOf(rgba, capacity);
+        depthTest = Arrays.copyOf(depthTest, capacity);
+        clip = Arrays.copyOf(clip, capacity * 4);
+    }
+
+    // Splits the tile range in halves down to single tiles, so idle workers can steal the rest
+    private final class Tiles extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int start, end;
+
+        Tiles(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                renderTile(start);
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new Tiles(start, mid), new Tiles(mid, end));
+        }
+    }
+}
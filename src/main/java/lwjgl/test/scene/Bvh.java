@@ -0,0 +1,389 @@
+package lwjgl.test.scene;
+
+import lwjgl.test.math.Frustum;
+import lwjgl.test.math.Ray;
+
+import java.util.Arrays;
+
+/**
+ * Bounding-volume hierarchy over axis-aligned boxes, stored in flat arrays.
+ * <p>
+ * Items are indices into a caller-owned bounds array of 6 floats per item (minX, minY, minZ,
+ * maxX, maxY, maxZ). The tree is built top-down with median splits along the longest axis
+ * and nodes are laid out in pre-order, so every subtree covers one contiguous range of the
+ * item permutation and children always come after their parent.
+ * <p>
+ * When items move, update their bounds in the array and either {@link #refit()} the whole
+ * tree, {@link #refit(int)} a single moved item, or {@link #markMoved(int)} each moved item
+ * and {@link #refitMoved()} once per frame; the topology stays the same. Rebuild after adding
+ * or removing items, or once refitting has loosened the tree too much.
+ */
+public class Bvh {
+
+    /**
+     * Exact ray test of one item, for {@link #raycast}.
+     */
+    public interface RayTest {
+
+        /**
+         * @return the distance along the ray to the item, or {@link Float#POSITIVE_INFINITY}
+         * if the ray misses it or reaches it only beyond {@code maxDistance}
+         */
+        float intersect(int item, Ray ray, float maxDistance);
+    }
+
+    private static final int LEAF_SIZE = 4;
+    private static final int MAX_DEPTH = 64;
+
+    private float[] itemBounds;
+    private int itemCount;
+
+    private int[] items = new int[0];
+    private int[] itemLeaf = new int[0];
+
+    private float[] nodeBounds = new float[0];
+    private int[] nodeStart = new int[0], nodeCount = new int[0];
+    private int[] nodeRight = new int[0], nodeParent = new int[0];
+    private boolean[] nodeDirty = new boolean[0];
+    private int nodes;
+
+    private final int[] stack = new int[MAX_DEPTH * 2];
+    private final float[] stackDistance = new float[MAX_DEPTH * 2];
+    private int lastNodesVisited;
+    private float lastHitDistance = Float.POSITIVE_INFINITY;
+
+    /**
+     * Builds the tree over items [0, count) of {@code bounds}. The array is kept and read
+     * again by the refit and query methods.
+     */
+    public void build(float[] bounds, int count) {
+        if (bounds.length < count * 6)
+            throw new IllegalArgumentException("Bounds array too small for " + count + " items");
+
+        itemBounds = bounds;
+        itemCount = count;
+
+        if (items.length < count) {
+            items = new int[count];
+            itemLeaf = new int[count];
+        }
+        // Every split leaves at least 2 items per leaf, so there are at most count nodes
+        int maxNodes = Math.max(1, count);
+        if (nodeStart.length < maxNodes) {
+            nodeBounds = new float[maxNodes * 6];
+            nodeStart = new int[maxNodes];
+            nodeCount = new int[maxNodes];
+            nodeRight = new int[maxNodes];
+            nodeParent = new int[maxNodes];
+            nodeDirty = new boolean[maxNodes];
+        }
+
+        for (int i = 0; i < count; i++)
+            items[i] = i;
+
+        nodes = 0;
+        buildNode(-1, 0, count, 0);
+        Arrays.fill(nodeDirty, 0, nodes, false);
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return nodes visited by the last query
+     */
+    public int getLastNodesVisited() {
+        return lastNodesVisited;
+    }
+
+    /**
+     * @return the distance to the item found by the last {@link #raycast}, infinite if none
+     */
+    public float getLastHitDistance() {
+        return lastHitDistance;
+    }
+
+    /**
+     * Recomputes every node's bounds from the current item bounds.
+     */
+    public void refit() {
+        // Children come after their parents, so a reverse sweep sees them first
+        for (int node = nodes - 1; node >= 0; node--)
+            computeNodeBounds(node);
+    }
+
+    /**
+     * Recomputes the bounds of the leaf holding {@code item} and of its ancestors, stopping
+     * as soon as a node's bounds come out unchanged.
+     */
+    public void refit(int item) {
+        for (int node = itemLeaf[item]; node >= 0; node = nodeParent[node]) {
+            if (!computeNodeBounds(node))
+                break;
+        }
+    }
+
+    /**
+     * Flags the leaf holding {@code item} for the next {@link #refitMoved()}.
+     */
+    public void markMoved(int item) {
+        nodeDirty[itemLeaf[item]] = true;
+    }
+
+    /**
+     * Refits every node below which an item was {@link #markMoved(int) marked}, in one
+     * sweep, so shared ancestors of many moved items are recomputed only once.
+     */
+    public void refitMoved() {
+        for (int node = nodes - 1; node >= 0; node--) {
+            if (nodeDirty[node]) {
+                nodeDirty[node] = false;
+                int parent = nodeParent[node];
+                if (computeNodeBounds(node) && parent >= 0)
+                    nodeDirty[parent] = true;
+            }
+        }
+    }
+
+    /**
+     * Collects the items whose boxes touch the frustum.
+     *
+     * @param out receives item indices; must have room for every item
+     * @return how many items were written
+     */
+    public int query(Frustum frustum, int[] out) {
+        lastNodesVisited = 0;
+        if (nodes == 0 || itemCount == 0)
+            return 0;
+
+        final float[] nb = nodeBounds, ib = itemBounds;
+        int found = 0;
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            lastNodesVisited++;
+
+            int o = node * 6;
+            int result = frustum.test(nb[o], nb[o + 1], nb[o + 2], nb[o + 3], nb[o + 4], nb[o + 5]);
+            if (result == Frustum.OUTSIDE)
+                continue;
+
+            int start = nodeStart[node], end = start + nodeCount[node];
+            if (result == Frustum.INSIDE) {
+                // The whole subtree is visible, no need to test further down
+                System.arraycopy(items, start, out, found, end - start);
+                found += end - start;
+            } else if (nodeRight[node] < 0) {
+                for (int i = start; i < end; i++) {
+                    int item = items[i], b = item * 6;
+                    if (frustum.intersects(ib[b], ib[b + 1], ib[b + 2], ib[b + 3], ib[b + 4], ib[b + 5]))
+                        out[found++] = item;
+                }
+            } else {
+                stack[top++] = nodeRight[node];
+                stack[top++] = node + 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the item the ray hits first. Children are visited nearest box first and any
+     * subtree whose box starts beyond the closest hit so far is skipped, so only the few
+     * items along the ray near the answer reach {@code test}.
+     *
+     * @return the nearest item hit, or -1; its distance is {@link #getLastHitDistance()}
+     */
+    public int raycast(Ray ray, RayTest test) {
+        return raycast(ray, test, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * As {@link #raycast(Ray, RayTest)}, ignoring items further than {@code maxDistance}.
+     */
+    public int raycast(Ray ray, RayTest test, float maxDistance) {
+        lastNodesVisited = 0;
+        lastHitDistance = Float.POSITIVE_INFINITY;
+        if (nodes == 0 || itemCount == 0)
+            return -1;
+
+        final float[] nb = nodeBounds;
+        float best = maxDistance;
+        int hit = -1;
+
+        float rootDistance = ray.intersectBox(nb[0], nb[1], nb[2], nb[3], nb[4], nb[5], best);
+        if (rootDistance == Float.POSITIVE_INFINITY)
+            return -1;
+
+        int top = 0;
+        stack[top] = 0;
+        stackDistance[top++] = rootDistance;
+
+        while (top > 0) {
+            int node = stack[--top];
+            // A closer hit may have turned up since the node was pushed
+            if (stackDistance[top] > best)
+                continue;
+            lastNodesVisited++;
+
+            int right = nodeRight[node];
+            if (right < 0) {
+                for (int i = nodeStart[node], end = i + nodeCount[node]; i < end; i++) {
+                    int item = items[i];
+                    float distance = test.intersect(item, ray, best);
+                    if (distance < best) {
+                        best = distance;
+                        hit = item;
+                    }
+                }
+                continue;
+            }
+
+            int left = node + 1, l = left * 6, r = right * 6;
+            float leftDistance = ray.intersectBox(nb[l], nb[l + 1], nb[l + 2], nb[l + 3], nb[l + 4], nb[l + 5], best);
+            float rightDistance = ray.intersectBox(nb[r], nb[r + 1], nb[r + 2], nb[r + 3], nb[r + 4], nb[r + 5], best);
+
+            // Push the farther child first so the nearer one is searched first
+            if (leftDistance <= rightDistance) {
+                top = push(right, rightDistance, top);
+                top = push(left, leftDistance, top);
+            } else {
+                top = push(left, leftDistance, top);
+                top = push(right, rightDistance, top);
+            }
+        }
+
+        if (hit >= 0)
+            lastHitDistance = best;
+        return hit;
+    }
+
+    private int push(int node, float distance, int top) {
+        if (distance != Float.POSITIVE_INFINITY) {
+            stack[top] = node;
+            stackDistance[top++] = distance;
+        }
+        return top;
+    }
+
+    private void buildNode(int parent, int start, int end, int depth) {
+        int node = nodes++;
+        nodeParent[node] = parent;
+        nodeStart[node] = start;
+        nodeCount[node] = end - start;
+
+        if (end - start <= LEAF_SIZE || depth == MAX_DEPTH - 1) {
+            nodeRight[node] = -1;
+            for (int i = start; i < end; i++)
+                itemLeaf[items[i]] = node;
+            computeNodeBounds(node);
+            return;
+        }
+
+        // Split at the median centroid along the axis where centroids spread the most
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int i = start; i < end; i++) {
+            int b = items[i] * 6;
+            float cx = itemBounds[b] + itemBounds[b + 3];
+            float cy = itemBounds[b + 1] + itemBounds[b + 4];
+            float cz = itemBounds[b + 2] + itemBounds[b + 5];
+            minX = Math.min(minX, cx);
+            maxX = Math.max(maxX, cx);
+            minY = Math.min(minY, cy);
+            maxY = Math.max(maxY, cy);
+            minZ = Math.min(minZ, cz);
+            maxZ = Math.max(maxZ, cz);
+        }
+        float ex = maxX - minX, ey = maxY - minY, ez = maxZ - minZ;
+        int axis = ex >= ey && ex >= ez ? 0 : (ey >= ez ? 1 : 2);
+
+        int mid = (start + end) >>> 1;
+        select(start, end, mid, axis);
+
+        buildNode(node, start, mid, depth + 1);
+        nodeRight[node] = nodes;
+        buildNode(node, mid, end, depth + 1);
+        computeNodeBounds(node);
+    }
+
+    // Partially sorts items[start, end) so that position k holds the item a full sort would put there
+    private void select(int start, int end, int k, int axis) {
+        int lo = start, hi = end - 1;
+        while (lo < hi) {
+            float pivot = centroid(items[(lo + hi) >>> 1], axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroid(items[i], axis) < pivot)
+                    i++;
+                while (centroid(items[j], axis) > pivot)
+                    j--;
+                if (i <= j) {
+                    int t = items[i];
+                    items[i] = items[j];
+                    items[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    private float centroid(int item, int axis) {
+        int b = item * 6 + axis;
+        return itemBounds[b] + itemBounds[b + 3];
+    }
+
+    // Returns whether the bounds changed
+    private boolean computeNodeBounds(int node) {
+        float minX, minY, minZ, maxX, maxY, maxZ;
+        final float[] nb = nodeBounds;
+
+        if (nodeRight[node] < 0) {
+            minX = minY = minZ = Float.POSITIVE_INFINITY;
+            maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+            final float[] ib = itemBounds;
+            for (int i = nodeStart[node], end = i + nodeCount[node]; i < end; i++) {
+                int b = items[i] * 6;
+                minX = Math.min(minX, ib[b]);
+                minY = Math.min(minY, ib[b + 1]);
+                minZ = Math.min(minZ, ib[b + 2]);
+                maxX = Math.max(maxX, ib[b + 3]);
+                maxY = Math.max(maxY, ib[b + 4]);
+                maxZ = Math.max(maxZ, ib[b + 5]);
+            }
+        } else {
+            int l = (node + 1) * 6, r = nodeRight[node] * 6;
+            minX = Math.min(nb[l], nb[r]);
+            minY = Math.min(nb[l + 1], nb[r + 1]);
+            minZ = Math.min(nb[l + 2], nb[r + 2]);
+            maxX = Math.max(nb[l + 3], nb[r + 3]);
+            maxY = Math.max(nb[l + 4], nb[r + 4]);
+            maxZ = Math.max(nb[l + 5], nb[r + 5]);
+        }
+
+        int o = node * 6;
+        boolean changed = nb[o] != minX || nb[o + 1] != minY || nb[o + 2] != minZ
+                || nb[o + 3] != maxX || nb[o + 4] != maxY || nb[o + 5] != maxZ;
+        nb[o] = minX;
+        nb[o + 1] = minY;
+        nb[o + 2] = minZ;
+        nb[o + 3] = maxX;
+        nb[o + 4] = maxY;
+        nb[o + 5] = maxZ;
+        return changed;
+    }
+}
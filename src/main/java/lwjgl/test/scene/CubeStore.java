@@ -0,0 +1,442 @@
+package lwjgl.test.scene;
+
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.math.Quaternion;
+import lwjgl.test.math.Ray;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for large numbers of cubes.
+ * <p>
+ * Instead of one {@code Cube3D} object per box, every property lives in its own primitive
+ * array and a cube is addressed by an int handle. Live cubes are kept densely packed
+ * (removal moves the last cube into the hole), so bulk updates and encoding are straight
+ * loops over the arrays. Rotations are stored as quaternions; Euler angles are converted
+ * once when set, never per frame.
+ * <p>
+ * {@link #render(GLBackend)} encodes the cubes into instance records of
+ * {@link #FLOATS_PER_INSTANCE} floats (three rows of the affine model matrix, then RGBA)
+ * and submits them with one instanced draw per {@link #BATCH_SIZE} cubes.
+ */
+public class CubeStore {
+
+    public static final int FLOATS_PER_INSTANCE = 16;
+    public static final int BATCH_SIZE = 1 << 16;
+
+    private static final int ENCODE_CHUNK = 1024;
+
+    private int count;
+    private int capacity;
+
+    // Per cube, indexed by dense slot
+    private float[] posX, posY, posZ;
+    private float[] sizeX, sizeY, sizeZ;
+    private float[] rotX, rotY, rotZ, rotW;
+    private int[] color;
+    private int[] slotToHandle;
+
+    // Per handle: dense slot, or -1 when free. Free handles form a list through nextFree.
+    private int[] handleToSlot;
+    private int[] nextFree;
+    private int freeHead = -1;
+    private int handleCount;
+
+    private final Quaternion scratch = new Quaternion();
+    private final float[] encodeChunk = new float[ENCODE_CHUNK * FLOATS_PER_INSTANCE];
+    private FloatBuffer batch;
+
+    public CubeStore(int initialCapacity) {
+        capacity = Math.max(16, initialCapacity);
+        posX = new float[capacity];
+        posY = new float[capacity];
+        posZ = new float[capacity];
+        sizeX = new float[capacity];
+        sizeY = new float[capacity];
+        sizeZ = new float[capacity];
+        rotX = new float[capacity];
+        rotY = new float[capacity];
+        rotZ = new float[capacity];
+        rotW = new float[capacity];
+        color = new int[capacity];
+        slotToHandle = new int[capacity];
+        handleToSlot = new int[capacity];
+        nextFree = new int[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Adds an axis-aligned cube with edge {@code size}, white, and returns its handle.
+     */
+    public int add(float size, float x, float y, float z) {
+        if (count == capacity)
+            grow();
+
+        int handle;
+        if (freeHead >= 0) {
+            handle = freeHead;
+            freeHead = nextFree[handle];
+        } else {
+            handle = handleCount++;
+        }
+
+        int slot = count++;
+        handleToSlot[handle] = slot;
+        slotToHandle[slot] = handle;
+
+        posX[slot] = x;
+        posY[slot] = y;
+        posZ[slot] = z;
+        sizeX[slot] = size;
+        sizeY[slot] = size;
+        sizeZ[slot] = size;
+        rotX[slot] = 0;
+        rotY[slot] = 0;
+        rotZ[slot] = 0;
+        rotW[slot] = 1;
+        color[slot] = 0xffffffff;
+        return handle;
+    }
+
+    /**
+     * Removes a cube. Its handle may be handed out again by a later {@link #add}.
+     */
+    public void remove(int handle) {
+        int slot = slot(handle);
+        int last = --count;
+
+        if (slot != last) {
+            posX[slot] = posX[last];
+            posY[slot] = posY[last];
+            posZ[slot] = posZ[last];
+            sizeX[slot] = sizeX[last];
+            sizeY[slot] = sizeY[last];
+            sizeZ[slot] = sizeZ[last];
+            rotX[slot] = rotX[last];
+            rotY[slot] = rotY[last];
+            rotZ[slot] = rotZ[last];
+            rotW[slot] = rotW[last];
+            color[slot] = color[last];
+
+            int movedHandle = slotToHandle[last];
+            slotToHandle[slot] = movedHandle;
+            handleToSlot[movedHandle] = slot;
+        }
+
+        handleToSlot[handle] = -1;
+        nextFree[handle] = freeHead;
+        freeHead = handle;
+    }
+
+    public boolean contains(int handle) {
+        return handle >= 0 && handle < handleCount && handleToSlot[handle] >= 0;
+    }
+
+    public CubeStore setPosition(int handle, float x, float y, float z) {
+        int slot = slot(handle);
+        posX[slot] = x;
+        posY[slot] = y;
+        posZ[slot] = z;
+        return this;
+    }
+
+    /**
+     * Sets the edge lengths, i.e. size * stretch of a {@code Cube3D}.
+     */
+    public CubeStore setExtents(int handle, float x, float y, float z) {
+        int slot = slot(handle);
+        sizeX[slot] = x;
+        sizeY[slot] = y;
+        sizeZ[slot] = z;
+        return this;
+    }
+
+    /**
+     * Sets the rotation from Euler angles in degrees, applied Z, then Y, then X like {@code Cube3D}.
+     */
+    public CubeStore setRotation(int handle, float rotateX, float rotateY, float rotateZ) {
+        scratch.identity().rotateZ(rotateZ).rotateY(rotateY).rotateX(rotateX);
+        return setRotation(handle, scratch);
+    }
+
+    public CubeStore setRotation(int handle, Quaternion q) {
+        int slot = slot(handle);
+        rotX[slot] = q.x;
+        rotY[slot] = q.y;
+        rotZ[slot] = q.z;
+        rotW[slot] = q.w;
+        return this;
+    }
+
+    /**
+     * @param rgba packed with red in the lowest byte, like the software framebuffer
+     */
+    public CubeStore setColor(int handle, int rgba) {
+        color[slot(handle)] = rgba;
+        return this;
+    }
+
+    public float getX(int handle) {
+        return posX[slot(handle)];
+    }
+
+    public float getY(int handle) {
+        return posY[slot(handle)];
+    }
+
+    public float getZ(int handle) {
+        return posZ[slot(handle)];
+    }
+
+    public int getColor(int handle) {
+        return color[slot(handle)];
+    }
+
+    /**
+     * Moves every cube by the same offset.
+     */
+    public void translateAll(float dx, float dy, float dz) {
+        final float[] px = posX, py = posY, pz = posZ;
+        for (int i = 0, n = count; i < n; i++) {
+            px[i] += dx;
+            py[i] += dy;
+            pz[i] += dz;
+        }
+    }
+
+    /**
+     * Appends the same rotation to every cube (each turns around its own center).
+     */
+    public void rotateAll(Quaternion q) {
+        final float qx = q.x, qy = q.y, qz = q.z, qw = q.w;
+        final float[] x = rotX, y = rotY, z = rotZ, w = rotW;
+        for (int i = 0, n = count; i < n; i++) {
+            float ax = x[i], ay = y[i], az = z[i], aw = w[i];
+            x[i] = aw * qx + ax * qw + ay * qz - az * qy;
+            y[i] = aw * qy - ax * qz + ay * qw + az * qx;
+            z[i] = aw * qz + ax * qy - ay * qx + az * qw;
+            w[i] = aw * qw - ax * qx - ay * qy - az * qz;
+        }
+    }
+
+    /**
+     * Writes instance records for the cubes in slots [from, from + n) at the buffer's
+     * position, advancing it by {@code n * FLOATS_PER_INSTANCE}.
+     */
+    public void encode(int from, int n, FloatBuffer dst) {
+        if (from < 0 || n < 0 || from + n > count)
+            throw new IndexOutOfBoundsException("Range " + from + "+" + n + " outside of " + count + " cubes");
+
+        // Records are built in a small heap chunk and copied over in bulk,
+        // which is much cheaper than bounds-checked puts into direct memory
+        final float[] chunk = encodeChunk;
+        for (int start = from, end = from + n; start < end; ) {
+            int chunkEnd = Math.min(end, start + ENCODE_CHUNK);
+            int o = 0;
+            for (int i = start; i < chunkEnd; i++, o += FLOATS_PER_INSTANCE)
+                encodeSlot(i, chunk, o);
+            dst.put(chunk, 0, o);
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     * Like {@link #encode(int, int, FloatBuffer)}, for the slots listed in {@code slots[from, from + n)}.
+     */
+    public void encode(int[] slots, int from, int n, FloatBuffer dst) {
+        final float[] chunk = encodeChunk;
+        for (int start = from, end = from + n; start < end; ) {
+            int chunkEnd = Math.min(end, start + ENCODE_CHUNK);
+            int o = 0;
+            for (int i = start; i < chunkEnd; i++, o += FLOATS_PER_INSTANCE) {
+                int slot = slots[i];
+                if (slot < 0 || slot >= count)
+                    throw new IndexOutOfBoundsException("Slot " + slot + " outside of " + count + " cubes");
+                encodeSlot(slot, chunk, o);
+            }
+            dst.put(chunk, 0, o);
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     * Writes the world-space box of every cube, 6 floats per slot (minX, minY, minZ, maxX, maxY, maxZ).
+     */
+    public void computeBounds(float[] dst) {
+        computeBounds(0, count, dst);
+    }
+
+    /**
+     * Writes the world-space boxes of slots [from, from + n) at their slot offsets in {@code dst}.
+     */
+    public void computeBounds(int from, int n, float[] dst) {
+        for (int i = from, end = from + n; i < end; i++) {
+            float x = rotX[i], y = rotY[i], z = rotZ[i], w = rotW[i];
+            float xx = x * x, yy = y * y, zz = z * z;
+            float xy = x * y, xz = x * z, yz = y * z;
+            float wx = w * x, wy = w * y, wz = w * z;
+            float hx = sizeX[i] * 0.5f, hy = sizeY[i] * 0.5f, hz = sizeZ[i] * 0.5f;
+
+            // Half extents of the rotated box along the world axes
+            float ex = Math.abs(1 - 2 * (yy + zz)) * hx + Math.abs(2 * (xy - wz)) * hy + Math.abs(2 * (xz + wy)) * hz;
+            float ey = Math.abs(2 * (xy + wz)) * hx + Math.abs(1 - 2 * (xx + zz)) * hy + Math.abs(2 * (yz - wx)) * hz;
+            float ez = Math.abs(2 * (xz - wy)) * hx + Math.abs(2 * (yz + wx)) * hy + Math.abs(1 - 2 * (xx + yy)) * hz;
+
+            int o = i * 6;
+            dst[o] = posX[i] - ex;
+            dst[o + 1] = posY[i] - ey;
+            dst[o + 2] = posZ[i] - ez;
+            dst[o + 3] = posX[i] + ex;
+            dst[o + 4] = posY[i] + ey;
+            dst[o + 5] = posZ[i] + ez;
+        }
+    }
+
+    /**
+     * Intersects a ray with the oriented box of the cube in {@code slot}: the ray is taken
+     * into the cube's frame with the conjugate rotation and tested against its half extents.
+     *
+     * @return the distance along the ray to the box, or {@link Float#POSITIVE_INFINITY} on a
+     * miss or beyond {@code maxDistance}
+     */
+    public float intersectRay(int slot, Ray ray, float maxDistance) {
+        float x = rotX[slot], y = rotY[slot], z = rotZ[slot], w = rotW[slot];
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+
+        // Rows of the inverse rotation are the cube's axes
+        float ax = 1 - 2 * (yy + zz), ay = 2 * (xy + wz), az = 2 * (xz - wy);
+        float bx = 2 * (xy - wz), by = 1 - 2 * (xx + zz), bz = 2 * (yz + wx);
+        float cx = 2 * (xz + wy), cy = 2 * (yz - wx), cz = 1 - 2 * (xx + yy);
+
+        float px = ray.originX - posX[slot], py = ray.originY - posY[slot], pz = ray.originZ - posZ[slot];
+        float dx = ray.dirX, dy = ray.dirY, dz = ray.dirZ;
+        float hx = sizeX[slot] * 0.5f, hy = sizeY[slot] * 0.5f, hz = sizeZ[slot] * 0.5f;
+
+        return Ray.slab(ax * px + ay * py + az * pz, bx * px + by * py + bz * pz, cx * px + cy * py + cz * pz,
+                1 / (ax * dx + ay * dy + az * dz), 1 / (bx * dx + by * dy + bz * dz), 1 / (cx * dx + cy * dy + cz * dz),
+                -hx, -hy, -hz, hx, hy, hz, maxDistance);
+    }
+
+    /**
+     * Writes the world-space corners and face normals of every cube into {@code dst}, in slot
+     * order, with the kernel picked for this VM by {@link CubeTransform#get()}.
+     */
+    public void transformVertices(CubeVertices dst) {
+        transformVertices(CubeTransform.get(), dst);
+    }
+
+    public void transformVertices(CubeTransform kernel, CubeVertices dst) {
+        kernel.transform(posX, posY, posZ, sizeX, sizeY, sizeZ, rotX, rotY, rotZ, rotW, count, dst);
+    }
+
+    /**
+     * @return the dense slot currently holding the cube, as used by bounds arrays and slot lists
+     */
+    public int slotOf(int handle) {
+        return slot(handle);
+    }
+
+    /**
+     * Draws every cube with one instanced draw call per batch of {@link #BATCH_SIZE}.
+     *
+     * @return how many draw calls were issued
+     */
+    public int render(GLBackend gl) {
+        if (batch == null)
+            batch = BufferUtils.createFloatBuffer(BATCH_SIZE * FLOATS_PER_INSTANCE);
+
+        int drawCalls = 0;
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, count - from);
+            batch.clear();
+            encode(from, n, batch);
+            batch.flip();
+            gl.drawCubeInstances(batch, n);
+            drawCalls++;
+        }
+        return drawCalls;
+    }
+
+    /**
+     * Draws the cubes in {@code slots[0, n)}, for example the result of a visibility query.
+     *
+     * @return how many draw calls were issued
+     */
+    public int render(GLBackend gl, int[] slots, int n) {
+        if (batch == null)
+            batch = BufferUtils.createFloatBuffer(BATCH_SIZE * FLOATS_PER_INSTANCE);
+
+        int drawCalls = 0;
+        for (int from = 0; from < n; from += BATCH_SIZE) {
+            int batchSize = Math.min(BATCH_SIZE, n - from);
+            batch.clear();
+            encode(slots, from, batchSize, batch);
+            batch.flip();
+            gl.drawCubeInstances(batch, batchSize);
+            drawCalls++;
+        }
+        return drawCalls;
+    }
+
+    // Rows of T * R * S, then the color
+    private void encodeSlot(int i, float[] chunk, int o) {
+        float x = rotX[i], y = rotY[i], z = rotZ[i], w = rotW[i];
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+        float sx = sizeX[i], sy = sizeY[i], sz = sizeZ[i];
+
+        chunk[o] = (1 - 2 * (yy + zz)) * sx;
+        chunk[o + 1] = 2 * (xy - wz) * sy;
+        chunk[o + 2] = 2 * (xz + wy) * sz;
+        chunk[o + 3] = posX[i];
+
+        chunk[o + 4] = 2 * (xy + wz) * sx;
+        chunk[o + 5] = (1 - 2 * (xx + zz)) * sy;
+        chunk[o + 6] = 2 * (yz - wx) * sz;
+        chunk[o + 7] = posY[i];
+
+        chunk[o + 8] = 2 * (xz - wy) * sx;
+        chunk[o + 9] = 2 * (yz + wx) * sy;
+        chunk[o + 10] = (1 - 2 * (xx + yy)) * sz;
+        chunk[o + 11] = posZ[i];
+
+        int c = color[i];
+        chunk[o + 12] = (c & 0xff) / 255f;
+        chunk[o + 13] = (c >>> 8 & 0xff) / 255f;
+        chunk[o + 14] = (c >>> 16 & 0xff) / 255f;
+        chunk[o + 15] = (c >>> 24) / 255f;
+    }
+
+    private int slot(int handle) {
+        int slot = handle >= 0 && handle < handleCount ? handleToSlot[handle] : -1;
+        if (slot < 0)
+            throw new IllegalArgumentException("No cube with handle " + handle);
+        return slot;
+    }
+
+    private void grow() {
+        capacity = capacity + (capacity >> 1);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        posZ = Arrays.copyOf(posZ, capacity);
+        sizeX = Arrays.copyOf(sizeX, capacity);
+        sizeY = Arrays.copyOf(sizeY, capacity);
+        sizeZ = Arrays.copyOf(sizeZ, capacity);
+        rotX = Arrays.copyOf(rotX, capacity);
+        rotY = Arrays.copyOf(rotY, capacity);
+        rotZ = Arrays.copyOf(rotZ, capacity);
+        rotW = Arrays.copyOf(rotW, capacity);
+        color = Arrays.copyOf(color, capacity);
+        slotToHandle = Arrays.copyOf(slotToHandle, capacity);
+        handleToSlot = Arrays.copyOf(handleToSlot, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+    }
+}
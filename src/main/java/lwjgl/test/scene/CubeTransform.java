@@ -0,0 +1,255 @@
+package lwjgl.test.scene;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Computes the world-space corners and face normals of many cubes per call, from the flat
+ * per-cube arrays {@link CubeStore} keeps: position, edge lengths and rotation quaternion.
+ * <p>
+ * {@link #BATCH} works through the cubes in blocks, one component at a time: every pass is
+ * a plain loop over consecutive array elements with the same arithmetic for each, which
+ * HotSpot's superword optimization compiles to SIMD instructions. {@link #SCALAR} is the
+ * straightforward version, one cube and one coordinate at a time like {@code Cube3D} builds
+ * its box, and stays the fallback where the JIT does not vectorize. Both evaluate the same
+ * expressions in the same order, so their results are bit-identical.
+ * <p>
+ * {@link #get()} is chosen once at startup: {@code -Dcubes.transform=batch} or {@code scalar}
+ * forces a kernel, the default {@code auto} takes the batched one unless the VM runs
+ * interpreted or has superword turned off. Kernels may be used from several threads at once.
+ */
+public abstract class CubeTransform {
+
+    public static final CubeTransform SCALAR = new Scalar();
+    public static final CubeTransform BATCH = new Batch();
+
+    private static final CubeTransform SELECTED = select(System.getProperty("cubes.transform", "auto"));
+
+    // Axis (0 = x) and direction of each face's normal, in CubeVertices order
+    private static final int[] FACE_AXIS = {2, 2, 1, 1, 0, 0};
+    private static final float[] FACE_SIGN = {1f, -1f, 1f, -1f, 1f, -1f};
+
+    /**
+     * @return the kernel picked for this VM at startup
+     */
+    public static CubeTransform get() {
+        return SELECTED;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Transforms cubes [0, n) of the given arrays into {@code dst}, whose count is set to {@code n}.
+     */
+    public abstract void transform(float[] posX, float[] posY, float[] posZ,
+                                   float[] sizeX, float[] sizeY, float[] sizeZ,
+                                   float[] rotX, float[] rotY, float[] rotZ, float[] rotW,
+                                   int n, CubeVertices dst);
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    private static CubeTransform select(String name) {
+        if (name.equals("batch"))
+            return BATCH;
+        if (name.equals("scalar"))
+            return SCALAR;
+        if (!name.equals("auto"))
+            throw new IllegalArgumentException("Unknown cube transform: " + name);
+
+        if (System.getProperty("java.vm.info", "").contains("interpreted"))
+            return SCALAR;
+        try {
+            HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(hotspot.getVMOption("UseSuperWord").getValue()) ? BATCH : SCALAR;
+        } catch (RuntimeException | LinkageError e) {
+            // Not HotSpot: the batched loops are no slower without SIMD, so keep them
+            return BATCH;
+        }
+    }
+
+    private static final class Scalar extends CubeTransform {
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public void transform(float[] posX, float[] posY, float[] posZ,
+                              float[] sizeX, float[] sizeY, float[] sizeZ,
+                              float[] rotX, float[] rotY, float[] rotZ, float[] rotW,
+                              int n, CubeVertices dst) {
+            dst.setCount(n);
+            final float[] x = dst.getX(), y = dst.getY(), z = dst.getZ();
+            final float[] nx = dst.getNormalX(), ny = dst.getNormalY(), nz = dst.getNormalZ();
+            final float[] a = new float[9];
+
+            for (int i = 0; i < n; i++) {
+                float qx = rotX[i], qy = rotY[i], qz = rotZ[i], qw = rotW[i];
+                float xx = qx * qx, yy = qy * qy, zz = qz * qz;
+                float xy = qx * qy, xz = qx * qz, yz = qy * qz;
+                float wx = qw * qx, wy = qw * qy, wz = qw * qz;
+
+                // Columns of the rotation matrix: the cube's own x, y and z axes
+                a[0] = 1 - 2 * (yy + zz);
+                a[1] = 2 * (xy + wz);
+                a[2] = 2 * (xz - wy);
+                a[3] = 2 * (xy - wz);
+                a[4] = 1 - 2 * (xx + zz);
+                a[5] = 2 * (yz + wx);
+                a[6] = 2 * (xz + wy);
+                a[7] = 2 * (yz - wx);
+                a[8] = 1 - 2 * (xx + yy);
+
+                for (int f = 0; f < CubeVertices.FACES; f++) {
+                    int axis = FACE_AXIS[f] * 3;
+                    float sign = FACE_SIGN[f];
+                    nx[f * n + i] = sign * a[axis];
+                    ny[f * n + i] = sign * a[axis + 1];
+                    nz[f * n + i] = sign * a[axis + 2];
+                }
+
+                float hx = sizeX[i] * 0.5f, hy = sizeY[i] * 0.5f, hz = sizeZ[i] * 0.5f;
+                for (int c = 0; c < CubeVertices.CORNERS; c++) {
+                    float sx = (c & 1) != 0 ? 1f : -1f;
+                    float sy = (c & 2) != 0 ? 1f : -1f;
+                    float sz = (c & 4) != 0 ? 1f : -1f;
+                    x[c * n + i] = posX[i] + sx * (a[0] * hx) + sy * (a[3] * hy) + sz * (a[6] * hz);
+                    y[c * n + i] = posY[i] + sx * (a[1] * hx) + sy * (a[4] * hy) + sz * (a[7] * hz);
+                    z[c * n + i] = posZ[i] + sx * (a[2] * hx) + sy * (a[5] * hy) + sz * (a[8] * hz);
+                }
+            }
+        }
+    }
+
+    private static final class Batch extends CubeTransform {
+
+        // Cubes per block, small enough for the block's temporaries to stay in cache
+        private static final int BLOCK = 256;
+
+        private final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+            @Override
+            protected Block initialValue() {
+                return new Block();
+            }
+        };
+
+        @Override
+        public String getName() {
+            return "batch";
+        }
+
+        @Override
+        public void transform(float[] posX, float[] posY, float[] posZ,
+                              float[] sizeX, float[] sizeY, float[] sizeZ,
+                              float[] rotX, float[] rotY, float[] rotZ, float[] rotW,
+                              int n, CubeVertices dst) {
+            dst.setCount(n);
+            Block b = blocks.get();
+            for (int from = 0; from < n; from += BLOCK) {
+                int m = Math.min(BLOCK, n - from);
+
+                // Every loop below indexes all its arrays alike; with the source or target offset by
+                // another amount C2 could not rule out overlap and would not vectorize
+                b.axes(rotX, rotY, rotZ, rotW, from, m);
+                for (int f = 0; f < CubeVertices.FACES; f++) {
+                    int o = f * n + from;
+                    float sign = FACE_SIGN[f];
+                    int axis = FACE_AXIS[f];
+                    b.scatter(b.axes[axis * 3], sign, dst.getNormalX(), o, m);
+                    b.scatter(b.axes[axis * 3 + 1], sign, dst.getNormalY(), o, m);
+                    b.scatter(b.axes[axis * 3 + 2], sign, dst.getNormalZ(), o, m);
+                }
+
+                b.halfAxes(sizeX, sizeY, sizeZ, from, m);
+                for (int c = 0; c < CubeVertices.CORNERS; c++) {
+                    float sx = (c & 1) != 0 ? 1f : -1f;
+                    float sy = (c & 2) != 0 ? 1f : -1f;
+                    float sz = (c & 4) != 0 ? 1f : -1f;
+                    int o = c * n + from;
+                    b.corners(posX, from, 0, sx, sy, sz, dst.getX(), o, m);
+                    b.corners(posY, from, 1, sx, sy, sz, dst.getY(), o, m);
+                    b.corners(posZ, from, 2, sx, sy, sz, dst.getZ(), o, m);
+                }
+            }
+        }
+    }
+
+    // Temporaries of one block of cubes for the batched kernel
+    private static final class Block {
+
+        private static final int BLOCK = Batch.BLOCK;
+
+        // Inputs copied out of the caller's arrays
+        private final float[] qx = new float[BLOCK], qy = new float[BLOCK], qz = new float[BLOCK], qw = new float[BLOCK];
+        private final float[] half = new float[BLOCK], position = new float[BLOCK];
+
+        // Components of the rotated x, y and z axes (x axis x, x axis y, ...), then the same scaled by the half extents
+        private final float[][] axes = new float[9][BLOCK];
+        private final float[][] halfAxes = new float[9][BLOCK];
+
+        private final float[] out = new float[BLOCK];
+
+        void axes(float[] rotX, float[] rotY, float[] rotZ, float[] rotW, int from, int m) {
+            System.arraycopy(rotX, from, qx, 0, m);
+            System.arraycopy(rotY, from, qy, 0, m);
+            System.arraycopy(rotZ, from, qz, 0, m);
+            System.arraycopy(rotW, from, qw, 0, m);
+
+            final float[] x = qx, y = qy, z = qz, w = qw;
+            final float[] xAxisX = axes[0], xAxisY = axes[1], xAxisZ = axes[2];
+            final float[] yAxisX = axes[3], yAxisY = axes[4], yAxisZ = axes[5];
+            final float[] zAxisX = axes[6], zAxisY = axes[7], zAxisZ = axes[8];
+            for (int j = 0; j < m; j++) {
+                float xx = x[j] * x[j], yy = y[j] * y[j], zz = z[j] * z[j];
+                float xy = x[j] * y[j], xz = x[j] * z[j], yz = y[j] * z[j];
+                float wx = w[j] * x[j], wy = w[j] * y[j], wz = w[j] * z[j];
+
+                xAxisX[j] = 1 - 2 * (yy + zz);
+                xAxisY[j] = 2 * (xy + wz);
+                xAxisZ[j] = 2 * (xz - wy);
+                yAxisX[j] = 2 * (xy - wz);
+                yAxisY[j] = 1 - 2 * (xx + zz);
+                yAxisZ[j] = 2 * (yz + wx);
+                zAxisX[j] = 2 * (xz + wy);
+                zAxisY[j] = 2 * (yz - wx);
+                zAxisZ[j] = 1 - 2 * (xx + yy);
+            }
+        }
+
+        void halfAxes(float[] sizeX, float[] sizeY, float[] sizeZ, int from, int m) {
+            float[][] sizes = {sizeX, sizeY, sizeZ};
+            for (int axis = 0; axis < 3; axis++) {
+                System.arraycopy(sizes[axis], from, half, 0, m);
+                final float[] h = half;
+                for (int component = axis * 3; component < axis * 3 + 3; component++) {
+                    final float[] a = axes[component], scaled = halfAxes[component];
+                    for (int j = 0; j < m; j++)
+                        scaled[j] = a[j] * (h[j] * 0.5f);
+                }
+            }
+        }
+
+        // Writes sign * values[0, m) to dst[o, o + m)
+        void scatter(float[] values, float sign, float[] dst, int o, int m) {
+            final float[] t = out;
+            for (int j = 0; j < m; j++)
+                t[j] = sign * values[j];
+            System.arraycopy(t, 0, dst, o, m);
+        }
+
+        // One world component of one corner for the whole block
+        void corners(float[] pos, int from, int component, float sx, float sy, float sz, float[] dst, int o, int m) {
+            System.arraycopy(pos, from, position, 0, m);
+            final float[] p = position, t = out;
+            final float[] xHalf = halfAxes[component], yHalf = halfAxes[3 + component], zHalf = halfAxes[6 + component];
+            for (int j = 0; j < m; j++)
+                t[j] = p[j] + sx * xHalf[j] + sy * yHalf[j] + sz * zHalf[j];
+            System.arraycopy(t, 0, dst, o, m);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package lwjgl.test.scene;
+
+/**
+ * World-space corners and face normals of a batch of cubes, as written by {@link CubeTransform}.
+ * <p>
+ * Every component is a plane of its own: corner {@code c} of cube {@code i} is at index
+ * {@code c * count + i} of the x, y and z arrays, the normal of face {@code f} at
+ * {@code f * count + i} of the normal arrays. Corner {@code c} lies on the positive side of
+ * the cube's x, y and z axes where bits 0, 1 and 2 of {@code c} are set. Faces come in the
+ * order {@link lwjgl.test.Cube3D} draws them: front (+z), back, top (+y), bottom, right (+x), left.
+ */
+public class CubeVertices {
+
+    public static final int CORNERS = 8;
+    public static final int FACES = 6;
+
+    private int count;
+    private float[] x = new float[0], y = new float[0], z = new float[0];
+    private float[] normalX = new float[0], normalY = new float[0], normalZ = new float[0];
+
+    /**
+     * Sets the number of cubes and makes room for them; the contents are undefined until written.
+     */
+    public CubeVertices setCount(int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Negative cube count: " + count);
+
+        if (x.length < count * CORNERS) {
+            int capacity = Math.max(count, x.length / CORNERS * 3 / 2);
+            x = new float[capacity * CORNERS];
+            y = new float[capacity * CORNERS];
+            z = new float[capacity * CORNERS];
+            normalX = new float[capacity * FACES];
+            normalY = new float[capacity * FACES];
+            normalZ = new float[capacity * FACES];
+        }
+        this.count = count;
+        return this;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public float[] getX() {
+        return x;
+    }
+
+    public float[] getY() {
+        return y;
+    }
+
+    public float[] getZ() {
+        return z;
+    }
+
+    public float[] getNormalX() {
+        return normalX;
+    }
+
+    public float[] getNormalY() {
+        return normalY;
+    }
+
+    public float[] getNormalZ() {
+        return normalZ;
+    }
+
+    /**
+     * @return whether both hold the same cubes with bit-identical components
+     */
+    public boolean sameAs(CubeVertices other) {
+        if (count != other.count)
+            return false;
+        int corners = count * CORNERS, normals = count * FACES;
+        return same(x, other.x, corners) && same(y, other.y, corners) && same(z, other.z, corners)
+                && same(normalX, other.normalX, normals) && same(normalY, other.normalY, normals)
+                && same(normalZ, other.normalZ, normals);
+    }
+
+    private static boolean same(float[] a, float[] b, int n) {
+        for (int i = 0; i < n; i++) {
+            if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i]))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,267 @@
+package lwjgl.test.scene;
+
+import lwjgl.test.Cube3D;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary scene file: every cube's properties plus the node hierarchy, read through
+ * a memory mapping.
+ * <p>
+ * {@link #open(String)} only maps the file and checks the header, so it takes the same time
+ * for ten cubes or a million. Records are decoded straight from the mapping when asked for,
+ * one at a time with {@link #readCube}/{@link #readNode}, or as a whole live graph with
+ * {@link #load()}. {@link #write} produces a file from a live scene graph.
+ * <p>
+ * Layout, little-endian:
+ * <pre>
+ * header  magic "CUBS", version, cube count, node count, names size in bytes (5 ints, 32 bytes reserved)
+ * cubes   Cube3D.STATE_SIZE floats each, in Cube3D.writeState order: size, stretch xyz, rotate xyz,
+ *         additional Y rotation, rotation point xyz, position xyz, color flag (0 or 1)
+ * nodes   parent index (-1 for the root), cube index (-1 for none), name offset, name length,
+ *         then SceneNode.STATE_SIZE floats: translation xyz, rotation xyz (40 bytes each)
+ * names   UTF-8 bytes of all node names
+ * </pre>
+ * Nodes are in pre-order, so a node's parent always comes before it; node 0 is the root.
+ */
+public class SceneFile {
+
+    public static final int MAGIC = 'C' | 'U' << 8 | 'B' << 16 | 'S' << 24;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int CUBE_BYTES = Cube3D.STATE_SIZE * 4;
+    private static final int NODE_BYTES = 16 + SceneNode.STATE_SIZE * 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final FloatBuffer cubes;
+    private final int cubeCount, nodeCount;
+    private final int nodesOffset, namesOffset;
+    private final float[] scratch = new float[Math.max(Cube3D.STATE_SIZE, SceneNode.STATE_SIZE)];
+
+    private SceneFile(ByteBuffer buffer, String path) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException(path + " is not a scene file");
+        int version = buffer.getInt(4);
+        if (version != VERSION)
+            throw new IOException("Unsupported scene file version " + version + " in " + path);
+
+        cubeCount = buffer.getInt(8);
+        nodeCount = buffer.getInt(12);
+        int namesSize = buffer.getInt(16);
+        if (cubeCount < 0 || nodeCount < 1 || namesSize < 0)
+            throw new IOException("Corrupt scene file " + path);
+        // In long, so huge counts cannot wrap around to a size that matches the file
+        long nodes = HEADER_BYTES + (long) cubeCount * CUBE_BYTES;
+        long names = nodes + (long) nodeCount * NODE_BYTES;
+        if (names + namesSize != buffer.capacity())
+            throw new IOException("Corrupt scene file " + path);
+        // Both lie within the buffer now, so they fit an int
+        nodesOffset = (int) nodes;
+        namesOffset = (int) names;
+
+        ByteBuffer cubeBytes = buffer.duplicate();
+        cubeBytes.position(HEADER_BYTES).limit(nodesOffset);
+        cubes = cubeBytes.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /**
+     * Maps a scene file read-only. Nothing but the header is read until records are asked for.
+     */
+    public static SceneFile open(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(path + " is too large for a scene file");
+            // The mapping stays valid after the channel is closed
+            return new SceneFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+        }
+    }
+
+    public int getCubeCount() {
+        return cubeCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return one property of a cube, read straight from the mapping
+     * @param field index into the cube record, in Cube3D.writeState order
+     */
+    public float getCubeField(int cube, int field) {
+        checkIndex(cube, cubeCount, "cube");
+        if (field < 0 || field >= Cube3D.STATE_SIZE)
+            throw new IndexOutOfBoundsException("Cube field " + field);
+        return cubes.get(cube * Cube3D.STATE_SIZE + field);
+    }
+
+    /**
+     * Copies cube {@code index} into {@code dst}.
+     */
+    public Cube3D readCube(int index, Cube3D dst) {
+        checkIndex(index, cubeCount, "cube");
+        int p = index * Cube3D.STATE_SIZE;
+        for (int i = 0; i < Cube3D.STATE_SIZE; i++)
+            scratch[i] = cubes.get(p + i);
+        return dst.readState(scratch, 0);
+    }
+
+    /**
+     * @return the parent node index, -1 for the root
+     */
+    public int getParent(int node) {
+        checkIndex(node, nodeCount, "node");
+        return buffer.getInt(nodesOffset + node * NODE_BYTES);
+    }
+
+    /**
+     * @return the index of the cube drawn by the node, -1 for none
+     */
+    public int getNodeCube(int node) {
+        checkIndex(node, nodeCount, "node");
+        return buffer.getInt(nodesOffset + node * NODE_BYTES + 4);
+    }
+
+    public String getNodeName(int node) {
+        checkIndex(node, nodeCount, "node");
+        int record = nodesOffset + node * NODE_BYTES;
+        int offset = buffer.getInt(record + 8), length = buffer.getInt(record + 12);
+        byte[] bytes = new byte[length];
+        ByteBuffer names = buffer.duplicate();
+        names.position(namesOffset + offset);
+        names.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Copies the local transform of node {@code index} into {@code dst}.
+     */
+    public SceneNode readNode(int index, SceneNode dst) {
+        checkIndex(index, nodeCount, "node");
+        int p = nodesOffset + index * NODE_BYTES + 16;
+        for (int i = 0; i < SceneNode.STATE_SIZE; i++)
+            scratch[i] = buffer.getFloat(p + i * 4);
+        return dst.readState(scratch, 0);
+    }
+
+    /**
+     * Builds the whole scene as live objects. Cubes referenced by several nodes are shared.
+     *
+     * @return the root node
+     */
+    public SceneNode load() {
+        Cube3D[] liveCubes = new Cube3D[cubeCount];
+        SceneNode[] nodes = new SceneNode[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int cube = getNodeCube(i);
+            Cube3D live = null;
+            if (cube >= 0) {
+                if (liveCubes[cube] == null)
+                    liveCubes[cube] = readCube(cube, new Cube3D());
+                live = liveCubes[cube];
+            }
+            nodes[i] = readNode(i, new SceneNode(getNodeName(i), live));
+
+            int parent = getParent(i);
+            if (i == 0 ? parent != -1 : parent < 0 || parent >= i)
+                throw new IllegalStateException("Node " + i + " has invalid parent " + parent);
+            if (parent >= 0)
+                nodes[parent].addChild(nodes[i]);
+        }
+        return nodes[0];
+    }
+
+    /**
+     * Writes the graph below {@code root} to {@code path}, replacing the file.
+     */
+    public static void write(SceneNode root, String path) throws IOException {
+        // Number nodes in pre-order and cubes in order of first use
+        List<SceneNode> nodes = new ArrayList<SceneNode>();
+        List<Cube3D> cubes = new ArrayList<Cube3D>();
+        Map<Cube3D, Integer> cubeIndex = new IdentityHashMap<Cube3D, Integer>();
+        List<SceneNode> stack = new ArrayList<SceneNode>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            SceneNode node = stack.remove(stack.size() - 1);
+            nodes.add(node);
+            Cube3D cube = node.getCube();
+            if (cube != null && !cubeIndex.containsKey(cube)) {
+                cubeIndex.put(cube, cubes.size());
+                cubes.add(cube);
+            }
+            List<SceneNode> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--)
+                stack.add(children.get(i));
+        }
+
+        byte[][] names = new byte[nodes.size()][];
+        long namesSize = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = nodes.get(i).getName().getBytes(UTF_8);
+            namesSize += names[i].length;
+        }
+        long size = HEADER_BYTES + (long) cubes.size() * CUBE_BYTES + (long) nodes.size() * NODE_BYTES + namesSize;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Scene too large for a scene file: " + size + " bytes");
+
+        Map<SceneNode, Integer> nodeIndex = new IdentityHashMap<SceneNode, Integer>();
+        for (int i = 0; i < nodes.size(); i++)
+            nodeIndex.put(nodes.get(i), i);
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(0);
+            file.setLength(size);
+            MappedByteBuffer out = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+
+            out.putInt(MAGIC).putInt(VERSION).putInt(cubes.size()).putInt(nodes.size()).putInt((int) namesSize);
+            out.position(HEADER_BYTES);
+
+            float[] state = new float[Math.max(Cube3D.STATE_SIZE, SceneNode.STATE_SIZE)];
+            for (Cube3D cube : cubes) {
+                cube.writeState(state, 0);
+                for (int i = 0; i < Cube3D.STATE_SIZE; i++)
+                    out.putFloat(state[i]);
+            }
+
+            int nameOffset = 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                SceneNode node = nodes.get(i);
+                Integer parent = node == root ? null : nodeIndex.get(node.getParent());
+                Integer cube = node.getCube() == null ? null : cubeIndex.get(node.getCube());
+                out.putInt(parent == null ? -1 : parent)
+                        .putInt(cube == null ? -1 : cube)
+                        .putInt(nameOffset)
+                        .putInt(names[i].length);
+                node.writeState(state, 0);
+                for (int j = 0; j < SceneNode.STATE_SIZE; j++)
+                    out.putFloat(state[j]);
+                nameOffset += names[i].length;
+            }
+
+            for (byte[] name : names)
+                out.put(name);
+            out.force();
+        }
+    }
+
+    private static void checkIndex(int index, int count, String what) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException(what + " " + index + " of " + count);
+    }
+}
@@ -0,0 +1,307 @@
+package lwjgl.test.scene;
+
+import lwjgl.test.Cube3D;
+import lwjgl.test.gl.GLBackend;
+import lwjgl.test.gl.RenderQueue;
+import lwjgl.test.math.Frustum;
+import lwjgl.test.math.Matrix4f;
+import lwjgl.test.math.Quaternion;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the scene graph: a local transform, an optional {@link Cube3D} drawn in that
+ * frame, and children that inherit it.
+ * <p>
+ * The local transform is a translation followed by a Z/Y/X rotation, the same order the
+ * cubes use. World matrices are propagated lazily: a setter only flags its node and marks
+ * the path up to the root, and {@link #updateWorld()} then walks just the flagged paths,
+ * recomposing the changed nodes and the subtrees below them. Untouched branches cost nothing.
+ */
+public class SceneNode {
+
+    // Floats written by writeState: translation, then rotation
+    public static final int STATE_SIZE = 6;
+
+    private final String name;
+    private final Cube3D cube;
+    private SceneNode parent;
+    private final List<SceneNode> children = new ArrayList<SceneNode>();
+
+    private float translateX, translateY, translateZ;
+    private float rotateX, rotateY, rotateZ;
+
+    private final Matrix4f local = new Matrix4f();
+    private final Matrix4f world = new Matrix4f();
+    private final Quaternion rotation = new Quaternion();
+    private boolean localDirty;
+    private boolean descendantDirty;
+    private int worldVersion;
+
+    // world * cube model, cached until either side changes
+    private final Matrix4f drawMatrix;
+    private final FloatBuffer drawBuffer;
+    private int drawWorldVersion = -1, drawModelVersion = -1;
+    private final float[] bounds = new float[6];
+
+    public SceneNode(String name) {
+        this(name, null);
+    }
+
+    public SceneNode(String name, Cube3D cube) {
+        this.name = name;
+        this.cube = cube;
+        this.drawMatrix = cube != null ? new Matrix4f() : null;
+        this.drawBuffer = cube != null ? BufferUtils.createFloatBuffer(16) : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Cube3D getCube() {
+        return cube;
+    }
+
+    public SceneNode getParent() {
+        return parent;
+    }
+
+    public List<SceneNode> getChildren() {
+        return children;
+    }
+
+    public SceneNode addChild(SceneNode child) {
+        if (child.parent != null)
+            throw new IllegalArgumentException("Node " + child.name + " already has a parent");
+        for (SceneNode p = this; p != null; p = p.parent)
+            if (p == child)
+                throw new IllegalArgumentException("Adding " + child.name + " would create a cycle");
+
+        child.parent = this;
+        children.add(child);
+        // The child's world matrix now depends on us
+        child.markDirty();
+        return this;
+    }
+
+    public SceneNode removeChild(SceneNode child) {
+        if (child.parent != this)
+            throw new IllegalArgumentException("Node " + child.name + " is not a child of " + name);
+        children.remove(child);
+        child.parent = null;
+        child.markDirty();
+        return this;
+    }
+
+    public float getTranslateX() {
+        return translateX;
+    }
+
+    public float getTranslateY() {
+        return translateY;
+    }
+
+    public float getTranslateZ() {
+        return translateZ;
+    }
+
+    public SceneNode setTranslation(float x, float y, float z) {
+        translateX = x;
+        translateY = y;
+        translateZ = z;
+        return markDirty();
+    }
+
+    public float getRotateX() {
+        return rotateX;
+    }
+
+    public SceneNode setRotateX(float rotateX) {
+        this.rotateX = rotateX;
+        return markDirty();
+    }
+
+    public float getRotateY() {
+        return rotateY;
+    }
+
+    public SceneNode setRotateY(float rotateY) {
+        this.rotateY = rotateY;
+        return markDirty();
+    }
+
+    public float getRotateZ() {
+        return rotateZ;
+    }
+
+    public SceneNode setRotateZ(float rotateZ) {
+        this.rotateZ = rotateZ;
+        return markDirty();
+    }
+
+    /**
+     * Copies the local transform into {@code dst} starting at {@code offset} ({@link #STATE_SIZE} floats).
+     */
+    public void writeState(float[] dst, int offset) {
+        dst[offset] = translateX;
+        dst[offset + 1] = translateY;
+        dst[offset + 2] = translateZ;
+        dst[offset + 3] = rotateX;
+        dst[offset + 4] = rotateY;
+        dst[offset + 5] = rotateZ;
+    }
+
+    /**
+     * Restores a local transform saved by {@link #writeState}; the node is only flagged if it differs.
+     */
+    public SceneNode readState(float[] src, int offset) {
+        if (src[offset] != translateX || src[offset + 1] != translateY || src[offset + 2] != translateZ)
+            setTranslation(src[offset], src[offset + 1], src[offset + 2]);
+        if (src[offset + 3] != rotateX)
+            setRotateX(src[offset + 3]);
+        if (src[offset + 4] != rotateY)
+            setRotateY(src[offset + 4]);
+        if (src[offset + 5] != rotateZ)
+            setRotateZ(src[offset + 5]);
+        return this;
+    }
+
+    /**
+     * @return the world matrix as of the last {@link #updateWorld()} on this node's root
+     */
+    public Matrix4f getWorldMatrix() {
+        return world;
+    }
+
+    /**
+     * Brings every world matrix in this subtree up to date, visiting only flagged paths.
+     *
+     * @return how many world matrices were recomposed
+     */
+    public int updateWorld() {
+        return update(false);
+    }
+
+    /**
+     * Draws the cubes of this subtree. Call {@link #updateWorld()} on the root first.
+     */
+    public void render(GLBackend gl) {
+        render(gl, null);
+    }
+
+    /**
+     * Draws the cubes of this subtree whose world-space boxes touch the frustum.
+     * Call {@link #updateWorld()} on the root first.
+     *
+     * @param frustum planes in world space, or {@code null} to draw everything
+     * @return how many cubes were drawn
+     */
+    public int render(GLBackend gl, Frustum frustum) {
+        int drawn = 0;
+
+        if (cube != null) {
+            updateDrawMatrix();
+            if (frustum == null || isVisible(frustum)) {
+                cube.render(gl, drawBuffer);
+                drawn++;
+            }
+        }
+
+        for (int i = 0; i < children.size(); i++)
+            drawn += children.get(i).render(gl, frustum);
+        return drawn;
+    }
+
+    /**
+     * Queues the cubes of this subtree whose world-space boxes touch the frustum, keyed by
+     * their depth in the view. Call {@link #updateWorld()} on the root first.
+     *
+     * @param viewProjection the matrix {@code frustum} was built from
+     * @return how many cubes were queued
+     */
+    public int submit(RenderQueue queue, Frustum frustum, Matrix4f viewProjection) {
+        int queued = 0;
+
+        if (cube != null) {
+            updateDrawMatrix();
+            if (frustum == null || isVisible(frustum)) {
+                final Matrix4f m = drawMatrix, p = viewProjection;
+                float z = p.m02 * m.m30 + p.m12 * m.m31 + p.m22 * m.m32 + p.m32;
+                cube.submit(queue, drawBuffer, (z + 1) * 0.5f);
+                queued++;
+            }
+        }
+
+        for (int i = 0; i < children.size(); i++)
+            queued += children.get(i).submit(queue, frustum, viewProjection);
+        return queued;
+    }
+
+    /**
+     * Writes the world-space box of this node's cube (minX, minY, minZ, maxX, maxY, maxZ),
+     * as of the last {@link #render} or {@link #submit} call.
+     */
+    public void getBounds(float[] dst) {
+        System.arraycopy(bounds, 0, dst, 0, 6);
+    }
+
+    private void updateDrawMatrix() {
+        int modelVersion = cube.getModelVersion();
+        if (drawWorldVersion != worldVersion || drawModelVersion != modelVersion) {
+            drawMatrix.mul(world, cube.getModelMatrix()).get(drawBuffer);
+            drawWorldVersion = worldVersion;
+            drawModelVersion = modelVersion;
+        }
+    }
+
+    private boolean isVisible(Frustum frustum) {
+        float size = cube.getSize();
+        drawMatrix.transformBox(size * cube.getStretchX() / 2, size * cube.getStretchY() / 2,
+                size * cube.getStretchZ() / 2, bounds, 0);
+        return frustum.intersects(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+    }
+
+    private int update(boolean parentChanged) {
+        int updated = 0;
+        boolean changed = parentChanged || localDirty;
+
+        if (localDirty) {
+            rotation.identity()
+                    .rotateZ(rotateZ)
+                    .rotateY(rotateY)
+                    .rotateX(rotateX);
+            local.identity()
+                    .translate(translateX, translateY, translateZ)
+                    .rotate(rotation);
+            localDirty = false;
+        }
+
+        if (changed) {
+            if (parent != null)
+                world.mul(parent.world, local);
+            else
+                world.set(local);
+            worldVersion++;
+            updated++;
+        }
+
+        if (changed || descendantDirty) {
+            for (int i = 0; i < children.size(); i++)
+                updated += children.get(i).update(changed);
+        }
+        descendantDirty = false;
+
+        return updated;
+    }
+
+    private SceneNode markDirty() {
+        localDirty = true;
+        for (SceneNode p = parent; p != null && !p.descendantDirty; p = p.parent)
+            p.descendantDirty = true;
+        return this;
+    }
+}
@@ -0,0 +1,80 @@
+package lwjgl.test.voxel;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from non-negative long keys to chunks, without boxing
+final class ChunkMap {
+
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private VoxelChunk[] values;
+    private int mask;
+    private int size;
+
+    ChunkMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new VoxelChunk[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the chunk stored for {@code key}, or null
+     */
+    VoxelChunk get(long key) {
+        int slot = slot(key);
+        while (true) {
+            long k = keys[slot];
+            if (k == key)
+                return values[slot];
+            if (k == EMPTY)
+                return null;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Stores {@code chunk} for {@code key}, which must not be in the map yet.
+     */
+    void put(long key, VoxelChunk chunk) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key)
+                throw new IllegalStateException("Chunk key already mapped: " + key);
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = chunk;
+        if (++size * 2 > keys.length)
+            grow();
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        VoxelChunk[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new VoxelChunk[oldValues.length * 2];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+            int slot = slot(oldKeys[i]);
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package lwjgl.test.voxel;
+
+import java.util.Arrays;
+
+import static lwjgl.test.voxel.VoxelChunk.SIZE;
+
+/**
+ * Turns a chunk's blocks into as few quads as possible.
+ * <p>
+ * For each of the six face directions the chunk is cut into slices. A slice's mask marks the
+ * cells whose face in that direction is visible: the block is solid and the cell beyond it is
+ * empty, looked up in the neighboring chunk at the border. Rectangles of equal block type are
+ * then grown greedily from the mask, first along a row, then over as many rows as match, and
+ * each becomes one quad. Faces between two solid blocks are never emitted.
+ */
+class GreedyMesher {
+
+    // Array strides of the x, y and z axes in VoxelChunk.blocks
+    private static final int[] STRIDE = {1, SIZE, SIZE * SIZE};
+
+    // Brightness per face direction (-x, +x, -y, +y, -z, +z), so flat colored faces stay distinguishable
+    private static final float[] SHADE = {0.7f, 0.8f, 0.5f, 1.0f, 0.6f, 0.9f};
+
+    private final int[] mask = new int[SIZE * SIZE];
+    private final int[] corner = new int[3];
+
+    private float[] vertices = new float[4096 * 12];
+    private float[] colors = new float[4096 * 12];
+    private int quads;
+
+    /**
+     * Rebuilds the chunk's mesh.
+     *
+     * @param neighbors the six chunks next to it (-x, +x, -y, +y, -z, +z), null where there is none
+     * @return the number of quads meshed
+     */
+    int mesh(VoxelChunk chunk, VoxelChunk[] neighbors, float blockSize, float[] palette) {
+        quads = 0;
+        int exposed = 0;
+
+        if (chunk.blockCount > 0) {
+            final byte[] blocks = chunk.blocks;
+            final int[] m = mask;
+
+            for (int d = 0; d < 3; d++) {
+                int u = (d + 1) % 3, v = (d + 2) % 3;
+                int sd = STRIDE[d], su = STRIDE[u], sv = STRIDE[v];
+
+                for (int side = -1; side <= 1; side += 2) {
+                    int direction = d * 2 + (side > 0 ? 1 : 0);
+                    VoxelChunk neighbor = neighbors[direction];
+                    byte[] beyond = neighbor != null && neighbor.blockCount > 0 ? neighbor.blocks : null;
+                    float shade = SHADE[direction];
+
+                    for (int s = 0; s < SIZE; s++) {
+                        // The cell beyond the face, inside this chunk or wrapped into the neighbor
+                        boolean border = side > 0 ? s == SIZE - 1 : s == 0;
+                        int wrap = side > 0 ? -(SIZE - 1) * sd : (SIZE - 1) * sd;
+
+                        for (int j = 0, n = 0; j < SIZE; j++) {
+                            for (int i = 0; i < SIZE; i++, n++) {
+                                int index = s * sd + i * su + j * sv;
+                                int type = blocks[index] & 0xff;
+                                if (type != 0) {
+                                    int other;
+                                    if (!border)
+                                        other = blocks[index + side * sd];
+                                    else
+                                        other = beyond == null ? 0 : beyond[index + wrap];
+                                    if (other != 0)
+                                        type = 0;
+                                    else
+                                        exposed++;
+                                }
+                                m[n] = type;
+                            }
+                        }
+
+                        merge(chunk, d, u, v, side, s + (side > 0 ? 1 : 0), blockSize, palette, shade);
+                    }
+                }
+            }
+        }
+
+        chunk.setMesh(vertices, colors, quads, exposed);
+        return quads;
+    }
+
+    // Greedily covers the mask with rectangles and emits one quad per rectangle
+    private void merge(VoxelChunk chunk, int d, int u, int v, int side, int plane,
+                       float blockSize, float[] palette, float shade) {
+        final int[] m = mask;
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; ) {
+                int type = m[j * SIZE + i];
+                if (type == 0) {
+                    i++;
+                    continue;
+                }
+
+                int w = 1;
+                while (i + w < SIZE && m[j * SIZE + i + w] == type)
+                    w++;
+
+                int h = 1;
+                rows:
+                while (j + h < SIZE) {
+                    int row = (j + h) * SIZE + i;
+                    for (int k = 0; k < w; k++) {
+                        if (m[row + k] != type)
+                            break rows;
+                    }
+                    h++;
+                }
+
+                for (int r = j; r < j + h; r++)
+                    Arrays.fill(m, r * SIZE + i, r * SIZE + i + w, 0);
+
+                emit(chunk, d, u, v, side, plane, i, j, w, h, blockSize,
+                        palette[type * 3] * shade, palette[type * 3 + 1] * shade, palette[type * 3 + 2] * shade);
+                i += w;
+            }
+        }
+    }
+
+    private void emit(VoxelChunk chunk, int d, int u, int v, int side, int plane, int i, int j, int w, int h,
+                      float blockSize, float r, float g, float b) {
+        if ((quads + 1) * 12 > vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            colors = Arrays.copyOf(colors, colors.length * 2);
+        }
+
+        // Counter-clockwise seen from the side the face points to; (u, v, d) is right-handed
+        int o = quads * 12;
+        if (side > 0) {
+            o = vertex(chunk, d, u, v, plane, i, j, blockSize, o);
+            o = vertex(chunk, d, u, v, plane, i + w, j, blockSize, o);
+            o = vertex(chunk, d, u, v, plane, i + w, j + h, blockSize, o);
+            vertex(chunk, d, u, v, plane, i, j + h, blockSize, o);
+        } else {
+            o = vertex(chunk, d, u, v, plane, i, j, blockSize, o);
+            o = vertex(chunk, d, u, v, plane, i, j + h, blockSize, o);
+            o = vertex(chunk, d, u, v, plane, i + w, j + h, blockSize, o);
+            vertex(chunk, d, u, v, plane, i + w, j, blockSize, o);
+        }
+
+        for (int k = quads * 12, end = k + 12; k < end; k += 3) {
+            colors[k] = r;
+            colors[k + 1] = g;
+            colors[k + 2] = b;
+        }
+        quads++;
+    }
+
+    private int vertex(VoxelChunk chunk, int d, int u, int v, int plane, int a, int b, float blockSize, int o) {
+        final int[] c = corner;
+        c[d] = plane;
+        c[u] = a;
+        c[v] = b;
+        vertices[o] = ((chunk.chunkX << VoxelChunk.SHIFT) + c[0]) * blockSize;
+        vertices[o + 1] = ((chunk.chunkY << VoxelChunk.SHIFT) + c[1]) * blockSize;
+        vertices[o + 2] = ((chunk.chunkZ << VoxelChunk.SHIFT) + c[2]) * blockSize;
+        return o + 3;
+    }
+}
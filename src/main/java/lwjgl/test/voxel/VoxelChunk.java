@@ -0,0 +1,101 @@
+package lwjgl.test.voxel;
+
+import lwjgl.test.gl.GLBackend;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * One {@link #SIZE}-cubed block of a {@link VoxelWorld}: a block type per cell and the quads
+ * last meshed from them.
+ */
+public class VoxelChunk {
+
+    public static final int SHIFT = 5;
+    public static final int SIZE = 1 << SHIFT;
+    public static final int MASK = SIZE - 1;
+
+    final int chunkX, chunkY, chunkZ;
+
+    // Block type per cell, 0 for empty, at x + SIZE * (y + SIZE * z)
+    final byte[] blocks = new byte[SIZE * SIZE * SIZE];
+    int blockCount;
+
+    boolean dirty;
+
+    private FloatBuffer vertices, colors;
+    private int quadCount;
+    private int exposedFaces;
+
+    VoxelChunk(int chunkX, int chunkY, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.chunkZ = chunkZ;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkY() {
+        return chunkY;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return merged quads in the current mesh
+     */
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    /**
+     * @return block faces not covered by a neighbor, i.e. the quads the mesh would have without merging
+     */
+    public int getExposedFaces() {
+        return exposedFaces;
+    }
+
+    /**
+     * @return the block type at chunk-local (x, y, z)
+     */
+    public int get(int x, int y, int z) {
+        return blocks[index(x, y, z)] & 0xff;
+    }
+
+    static int index(int x, int y, int z) {
+        return x + (y << SHIFT) + (z << (2 * SHIFT));
+    }
+
+    /**
+     * Replaces the mesh with {@code quads} quads from the mesher's arrays, growing the
+     * off-heap buffers when they are too small.
+     */
+    void setMesh(float[] quadVertices, float[] quadColors, int quads, int exposed) {
+        int floats = quads * 4 * 3;
+        if (vertices == null || vertices.capacity() < floats) {
+            int capacity = Math.max(floats, vertices == null ? 0 : vertices.capacity() * 3 / 2);
+            vertices = BufferUtils.createFloatBuffer(capacity);
+            colors = BufferUtils.createFloatBuffer(capacity);
+        }
+        vertices.clear();
+        vertices.put(quadVertices, 0, floats).flip();
+        colors.clear();
+        colors.put(quadColors, 0, floats).flip();
+        quadCount = quads;
+        exposedFaces = exposed;
+    }
+
+    int render(GLBackend gl) {
+        if (quadCount > 0)
+            gl.drawQuads(vertices, colors, quadCount * 4);
+        return quadCount;
+    }
+}
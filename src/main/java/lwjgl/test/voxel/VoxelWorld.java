@@ -0,0 +1,280 @@
+package lwjgl.test.voxel;
+
+import lwjgl.test.gl.GLBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static lwjgl.test.voxel.VoxelChunk.MASK;
+import static lwjgl.test.voxel.VoxelChunk.SHIFT;
+
+/**
+ * Grid-aligned cube world stored in {@link VoxelChunk chunks} of {@code SIZE}^3 blocks and drawn
+ * as greedy-meshed quads.
+ * <p>
+ * Block coordinates are integers, block (x, y, z) filling [x, x + 1] * blockSize on each axis.
+ * A block type is 1 to 255, 0 meaning empty, and selects a palette color. Changing a block
+ * only marks its chunk for remeshing, and the neighboring chunk as well when the block lies
+ * on the shared border; {@link #remesh()} (or {@link #render}) then rebuilds just the marked
+ * chunks.
+ * <p>
+ * Block coordinates must lie in [{@link #MIN_COORDINATE}, {@link #MAX_COORDINATE}] on every axis.
+ */
+public class VoxelWorld {
+
+    // Chunk keys pack each chunk coordinate, offset to be non-negative, into this many bits
+    private static final int CHUNK_BITS = 21;
+    private static final int CHUNK_OFFSET = 1 << (CHUNK_BITS - 1);
+
+    /**
+     * Lowest block coordinate on each axis, so every chunk coordinate fits its key.
+     */
+    public static final int MIN_COORDINATE = -CHUNK_OFFSET << SHIFT;
+    /**
+     * Highest block coordinate on each axis.
+     */
+    public static final int MAX_COORDINATE = (CHUNK_OFFSET << SHIFT) - 1;
+
+    private final float blockSize;
+    private final float[] palette = new float[256 * 3];
+
+    private final ChunkMap chunks = new ChunkMap(64);
+    private final List<VoxelChunk> chunkList = new ArrayList<VoxelChunk>();
+    private final List<VoxelChunk> dirty = new ArrayList<VoxelChunk>();
+
+    private final GreedyMesher mesher = new GreedyMesher();
+    private final VoxelChunk[] neighbors = new VoxelChunk[6];
+
+    private long blockCount;
+    private int lastRemeshed;
+    private long lastRemeshNanos;
+
+    public VoxelWorld(float blockSize) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        this.blockSize = blockSize;
+
+        // Spread the default colors over the hue circle so neighboring types differ
+        for (int type = 1; type < 256; type++) {
+            float hue = (type * 0.618034f) % 1.0f;
+            setColor(type, channel(hue + 1 / 3f), channel(hue), channel(hue - 1 / 3f));
+        }
+    }
+
+    public float getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the block type at (x, y, z), 0 where empty
+     */
+    public int get(int x, int y, int z) {
+        VoxelChunk chunk = getChunk(x, y, z);
+        return chunk == null ? 0 : chunk.get(x & MASK, y & MASK, z & MASK);
+    }
+
+    /**
+     * Places a block of {@code type}, or removes the block when {@code type} is 0.
+     */
+    public VoxelWorld set(int x, int y, int z, int type) {
+        if (type < 0 || type > 255)
+            throw new IllegalArgumentException("Block type out of range: " + type);
+
+        int cx = x >> SHIFT, cy = y >> SHIFT, cz = z >> SHIFT;
+        checkChunk(cx, cy, cz, x, y, z);
+        VoxelChunk chunk = chunks.get(key(cx, cy, cz));
+        if (chunk == null) {
+            if (type == 0)
+                return this;
+            chunk = new VoxelChunk(cx, cy, cz);
+            chunks.put(key(cx, cy, cz), chunk);
+            chunkList.add(chunk);
+            // Its new blocks may hide faces the neighbors used to show
+            for (int direction = 0; direction < 6; direction++)
+                markDirty(neighbor(chunk, direction));
+        }
+
+        int lx = x & MASK, ly = y & MASK, lz = z & MASK;
+        int index = VoxelChunk.index(lx, ly, lz);
+        int old = chunk.blocks[index] & 0xff;
+        if (old == type)
+            return this;
+
+        chunk.blocks[index] = (byte) type;
+        if (old == 0) {
+            chunk.blockCount++;
+            blockCount++;
+        } else if (type == 0) {
+            chunk.blockCount--;
+            blockCount--;
+        }
+
+        markDirty(chunk);
+        // Only blocks on the border show through to a neighbor, and only when they appear or disappear
+        if (old == 0 || type == 0) {
+            if (lx == 0)
+                markDirty(chunk(cx - 1, cy, cz));
+            else if (lx == MASK)
+                markDirty(chunk(cx + 1, cy, cz));
+            if (ly == 0)
+                markDirty(chunk(cx, cy - 1, cz));
+            else if (ly == MASK)
+                markDirty(chunk(cx, cy + 1, cz));
+            if (lz == 0)
+                markDirty(chunk(cx, cy, cz - 1));
+            else if (lz == MASK)
+                markDirty(chunk(cx, cy, cz + 1));
+        }
+        return this;
+    }
+
+    /**
+     * Sets the color of a block type; every chunk is remeshed with the new palette.
+     */
+    public VoxelWorld setColor(int type, float r, float g, float b) {
+        if (type < 1 || type > 255)
+            throw new IllegalArgumentException("Block type out of range: " + type);
+        palette[type * 3] = r;
+        palette[type * 3 + 1] = g;
+        palette[type * 3 + 2] = b;
+        for (VoxelChunk chunk : chunkList)
+            markDirty(chunk);
+        return this;
+    }
+
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    public int getChunkCount() {
+        return chunkList.size();
+    }
+
+    /**
+     * @return the chunk holding block (x, y, z), or null if nothing was ever placed in it
+     */
+    public VoxelChunk getChunk(int x, int y, int z) {
+        int cx = x >> SHIFT, cy = y >> SHIFT, cz = z >> SHIFT;
+        checkChunk(cx, cy, cz, x, y, z);
+        return chunks.get(key(cx, cy, cz));
+    }
+
+    /**
+     * @return chunks waiting to be remeshed
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * @return quads in the current meshes of all chunks
+     */
+    public long getQuadCount() {
+        long quads = 0;
+        for (VoxelChunk chunk : chunkList)
+            quads += chunk.getQuadCount();
+        return quads;
+    }
+
+    /**
+     * @return faces not hidden by a neighbor block in the current meshes, i.e. quads without merging
+     */
+    public long getExposedFaces() {
+        long faces = 0;
+        for (VoxelChunk chunk : chunkList)
+            faces += chunk.getExposedFaces();
+        return faces;
+    }
+
+    /**
+     * @return chunks rebuilt by the last {@link #remesh()}
+     */
+    public int getLastRemeshed() {
+        return lastRemeshed;
+    }
+
+    public long getLastRemeshNanos() {
+        return lastRemeshNanos;
+    }
+
+    /**
+     * Rebuilds the meshes of the chunks changed since the last call.
+     *
+     * @return how many chunks were remeshed
+     */
+    public int remesh() {
+        long start = System.nanoTime();
+        for (int i = 0; i < dirty.size(); i++) {
+            VoxelChunk chunk = dirty.get(i);
+            for (int direction = 0; direction < 6; direction++)
+                neighbors[direction] = neighbor(chunk, direction);
+            mesher.mesh(chunk, neighbors, blockSize, palette);
+            chunk.dirty = false;
+        }
+        lastRemeshed = dirty.size();
+        lastRemeshNanos = System.nanoTime() - start;
+        dirty.clear();
+        return lastRemeshed;
+    }
+
+    /**
+     * Remeshes what changed, then draws every chunk with one drawQuads call on top of the
+     * current modelview matrix.
+     *
+     * @return how many quads were drawn
+     */
+    public int render(GLBackend gl) {
+        remesh();
+        int quads = 0;
+        for (VoxelChunk chunk : chunkList)
+            quads += chunk.render(gl);
+        return quads;
+    }
+
+    // Direction: -x, +x, -y, +y, -z, +z
+    private VoxelChunk neighbor(VoxelChunk chunk, int direction) {
+        int sign = (direction & 1) == 0 ? -1 : 1;
+        int axis = direction >> 1;
+        return chunk(chunk.chunkX + (axis == 0 ? sign : 0),
+                chunk.chunkY + (axis == 1 ? sign : 0),
+                chunk.chunkZ + (axis == 2 ? sign : 0));
+    }
+
+    private void markDirty(VoxelChunk chunk) {
+        if (chunk != null && !chunk.dirty) {
+            chunk.dirty = true;
+            dirty.add(chunk);
+        }
+    }
+
+    // The chunk at chunk coordinates (cx, cy, cz), or null; past the edge of the key range,
+    // where neighbors of the outermost chunks lie, there are none
+    private VoxelChunk chunk(int cx, int cy, int cz) {
+        if (!inRange(cx, cy, cz))
+            return null;
+        return chunks.get(key(cx, cy, cz));
+    }
+
+    private static void checkChunk(int cx, int cy, int cz, int x, int y, int z) {
+        if (!inRange(cx, cy, cz))
+            throw new IllegalArgumentException("Block (" + x + ", " + y + ", " + z + ") outside ["
+                    + MIN_COORDINATE + ", " + MAX_COORDINATE + "]");
+    }
+
+    private static boolean inRange(int cx, int cy, int cz) {
+        return ((cx + CHUNK_OFFSET) | (cy + CHUNK_OFFSET) | (cz + CHUNK_OFFSET)) >>> CHUNK_BITS == 0;
+    }
+
+    // Unique and non-negative for chunk coordinates in range
+    private static long key(int cx, int cy, int cz) {
+        return (long) (cx + CHUNK_OFFSET) << (2 * CHUNK_BITS) | (long) (cy + CHUNK_OFFSET) << CHUNK_BITS
+                | (cz + CHUNK_OFFSET);
+    }
+
+    // One RGB channel of a hue wheel
+    private static float channel(float hue) {
+        float h = hue - (float) Math.floor(hue);
+        float c = Math.abs(h * 6 - 3) - 1;
+        return 0.3f + 0.7f * Math.max(0, Math.min(1, c));
+    }
+}
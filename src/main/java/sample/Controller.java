@@ -1,4 +1,171 @@
 package sample;
 
+import javafx.animation.AnimationTimer;
+import javafx.fxml.FXML;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyEvent;
+import lwjgl.test.CubeScene;
+import lwjgl.test.Simulation;
+import lwjgl.test.metrics.Histogram;
+
+/**
+ * Shows the frames of a {@link FrameRenderer} and feeds the keyboard to its simulation.
+ * <p>
+ * On every pulse the newest rendered frame, if any, replaces the image on screen. The frame
+ * it replaces goes back to the renderer a pulse later, once JavaFX has stopped reading it.
+ * Delivery latency is the time from a frame being rendered to the pulse that puts it up.
+ */
 public class Controller {
+
+    private static final long STATS_NANOS = 500000000L;
+
+    @FXML private ImageView view;
+    @FXML private ToggleButton pause;
+    @FXML private CheckBox occlusion;
+    @FXML private Label stats;
+
+    private FrameRenderer renderer;
+    private Simulation simulation;
+    private int keys;
+
+    private FrameRenderer.Frame showing, retiring;
+    private final Histogram latency = new Histogram();
+    private long shown;
+    private long frameLimit;
+    private Runnable onLimit;
+
+    private long statsStart, statsShown, statsRendered;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse();
+        }
+    };
+
+    /**
+     * Starts showing what {@code renderer} draws of {@code simulation}'s scene.
+     */
+    public void start(FrameRenderer renderer, Simulation simulation) {
+        this.renderer = renderer;
+        this.simulation = simulation;
+        view.setFitWidth(renderer.getWidth());
+        view.setFitHeight(renderer.getHeight());
+        renderer.setOcclusionCulling(occlusion.isSelected());
+        statsStart = System.nanoTime();
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Runs {@code onLimit} on the FX thread once {@code frames} frames have been shown.
+     */
+    public void setFrameLimit(long frames, Runnable onLimit) {
+        this.frameLimit = frames;
+        this.onLimit = onLimit;
+    }
+
+    /**
+     * @return nanoseconds from the end of rendering to the pulse showing it, for every frame shown
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public long getShown() {
+        return shown;
+    }
+
+    private void pulse() {
+        // Read by the last pulse's upload at the latest, so free to draw into again
+        if (retiring != null) {
+            renderer.release(retiring);
+            retiring = null;
+        }
+
+        FrameRenderer.Frame frame = renderer.take();
+        if (frame != null) {
+            latency.record(System.nanoTime() - frame.getRenderedNanos());
+            view.setImage(frame.getImage());
+            retiring = showing;
+            showing = frame;
+            shown++;
+        }
+
+        long now = System.nanoTime();
+        if (now - statsStart >= STATS_NANOS)
+            updateStats(now);
+
+        if (frameLimit > 0 && shown >= frameLimit && onLimit != null) {
+            Runnable limit = onLimit;
+            onLimit = null;
+            limit.run();
+        }
+    }
+
+    private void updateStats(long now) {
+        double seconds = (now - statsStart) / 1e9;
+        long rendered = renderer.getRendered();
+        stats.setText(String.format("%.0f fps rendered, %.0f shown, %d dropped, latency p50 %.1f ms p99 %.1f ms",
+                (rendered - statsRendered) / seconds, (shown - statsShown) / seconds, renderer.getDropped(),
+                latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6));
+        statsStart = now;
+        statsShown = shown;
+        statsRendered = rendered;
+    }
+
+    @FXML
+    private void onPause() {
+        renderer.setPaused(pause.isSelected());
+    }
+
+    @FXML
+    private void onOcclusion() {
+        renderer.setOcclusionCulling(occlusion.isSelected());
+    }
+
+    @FXML
+    private void onKeyPressed(KeyEvent event) {
+        int key = keyOf(event);
+        if (key != 0) {
+            keys |= key;
+            simulation.setKeys(keys);
+            event.consume();
+        }
+    }
+
+    @FXML
+    private void onKeyReleased(KeyEvent event) {
+        int key = keyOf(event);
+        if (key != 0) {
+            keys &= ~key;
+            simulation.setKeys(keys);
+            event.consume();
+        }
+    }
+
+    private static int keyOf(KeyEvent event) {
+        switch (event.getCode()) {
+            case UP:
+                return CubeScene.KEY_UP;
+            case DOWN:
+                return CubeScene.KEY_DOWN;
+            case LEFT:
+                return CubeScene.KEY_LEFT;
+            case RIGHT:
+                return CubeScene.KEY_RIGHT;
+            case SHIFT:
+                return CubeScene.KEY_SHIFT;
+            case CONTROL:
+                return CubeScene.KEY_CTRL;
+            default:
+                return 0;
+        }
+    }
 }
@@ -0,0 +1,210 @@
+package sample;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.util.Callback;
+import lwjgl.test.CubeScene;
+import lwjgl.test.Simulation;
+import lwjgl.test.raster.Framebuffer;
+import lwjgl.test.raster.SoftwareBackend;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders the cube scene with the software backend on a thread of its own, into images
+ * JavaFX shows without copying a pixel.
+ * <p>
+ * Every {@link Frame} is a {@link Framebuffer} in JavaFX's premultiplied ARGB layout whose
+ * color memory also backs a {@link PixelBuffer} and the {@link WritableImage} made from it.
+ * Frames rotate between the render thread and the FX thread: the renderer fills a free one
+ * and offers it as the latest frame, replacing (and freeing) any the FX thread had not taken
+ * yet; the FX thread {@link #take()}s the latest one to show and {@link #release}s frames it
+ * no longer shows. A frame is never written while JavaFX may still read it, as long as the
+ * FX thread releases a frame only a pulse after it stopped showing it. Like a mailbox swap
+ * chain, the renderer never waits for the display, so a pulse always gets the freshest frame
+ * at the cost of drawing frames nobody sees; pause it to give the core back.
+ * <p>
+ * Rows are bottom-up like the framebuffer's, so the image has to be shown flipped.
+ */
+public class FrameRenderer implements Runnable {
+
+    // Showing, no longer shown but maybe still being read, offered, rendering
+    private static final int FRAMES = 4;
+
+    /**
+     * One image and the memory it is drawn into.
+     */
+    public static final class Frame {
+
+        private final Framebuffer framebuffer;
+        private final SoftwareBackend gl;
+        private final PixelBuffer<IntBuffer> pixels;
+        private final WritableImage image;
+        private volatile long renderedNanos;
+
+        Frame(int width, int height) {
+            framebuffer = new Framebuffer(width, height, ByteBuffer.allocateDirect(width * height * 4), true);
+            gl = new SoftwareBackend(framebuffer);
+            gl.clearColor(0.0f, 0.0f, 0.0f, 1.0f);
+            pixels = new PixelBuffer<IntBuffer>(width, height, framebuffer.getColor(), PixelFormat.getIntArgbPreInstance());
+            image = new WritableImage(pixels);
+        }
+
+        public WritableImage getImage() {
+            return image;
+        }
+
+        /**
+         * @return System.nanoTime() when the renderer finished this frame
+         */
+        public long getRenderedNanos() {
+            return renderedNanos;
+        }
+    }
+
+    // Marks every pixel dirty; JavaFX uploads the whole image on the next pulse
+    private static final Callback<PixelBuffer<IntBuffer>, Rectangle2D> WHOLE_IMAGE =
+            new Callback<PixelBuffer<IntBuffer>, Rectangle2D>() {
+                @Override
+                public Rectangle2D call(PixelBuffer<IntBuffer> pixels) {
+                    return null;
+                }
+            };
+
+    private final int width, height;
+    private final Simulation simulation;
+    private final CubeScene view = new CubeScene();
+    private final float[] viewState = new float[CubeScene.STATE_SIZE];
+
+    private final BlockingQueue<Frame> free = new ArrayBlockingQueue<Frame>(FRAMES);
+    private final AtomicReference<Frame> latest = new AtomicReference<Frame>();
+
+    private volatile boolean running;
+    private volatile boolean paused;
+    private volatile boolean occlusion;
+    private volatile long rendered, dropped;
+    private Thread thread;
+
+    public FrameRenderer(int width, int height, Simulation simulation) {
+        this.width = width;
+        this.height = height;
+        this.simulation = simulation;
+        for (int i = 0; i < FRAMES; i++)
+            free.add(new Frame(width, height));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Stops rendering new frames, leaving the last one up; the simulation keeps running.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public void setOcclusionCulling(boolean occlusion) {
+        this.occlusion = occlusion;
+    }
+
+    /**
+     * @return frames rendered since start
+     */
+    public long getRendered() {
+        return rendered;
+    }
+
+    /**
+     * @return frames replaced by a newer one before the FX thread took them
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Starts rendering on a daemon thread.
+     */
+    public FrameRenderer start() {
+        if (thread != null)
+            throw new IllegalStateException("Renderer already started");
+
+        running = true;
+        thread = new Thread(this, "frame renderer");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stops the render thread and waits for it to finish.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+            thread = null;
+        }
+    }
+
+    /**
+     * Called on the FX thread.
+     *
+     * @return the newest finished frame, marked for upload, or null if none is new since the last call
+     */
+    public Frame take() {
+        Frame frame = latest.getAndSet(null);
+        if (frame != null)
+            frame.pixels.updateBuffer(WHOLE_IMAGE);
+        return frame;
+    }
+
+    /**
+     * Hands a frame the FX thread no longer reads back to the renderer.
+     */
+    public void release(Frame frame) {
+        free.add(frame);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                Frame frame = paused ? null : free.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    if (paused)
+                        Thread.sleep(10);
+                    continue;
+                }
+
+                // Draw the newest published ticks, never waiting for the simulation
+                simulation.getExchange().acquire().interpolate(System.nanoTime(), simulation.getTickNanos(), viewState);
+                frame.gl.setOcclusionCulling(occlusion);
+                view.readState(viewState)
+                        .render(frame.gl, width, height);
+                frame.gl.finish();
+                frame.renderedNanos = System.nanoTime();
+                rendered++;
+
+                Frame replaced = latest.getAndSet(frame);
+                if (replaced != null) {
+                    dropped++;
+                    free.add(replaced);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package sample;
+
+import javafx.application.Application;
+
+/**
+ * Starts {@link Main} with JavaFX on the class path. The launcher refuses a main class that
+ * is itself an {@link Application} unless JavaFX comes from the module path.
+ */
+public class Launcher {
+
+    public static void main(String[] args) {
+        Application.launch(Main.class, args);
+    }
+}
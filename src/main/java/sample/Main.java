@@ -1,80 +1,83 @@
 package sample;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
-import javafx.collections.ObservableList;
-import javafx.application.Application;
-import javafx.scene.*;
-import javafx.stage.*;
-import javafx.scene.shape.*;
-import javafx.scene.effect.*;
-import javafx.scene.paint.*;
-import javafx.scene.text.*;
-
-public class Main extends Application {
-
-    /*@Override
-    public void start(Stage primaryStage) throws Exception{
-        Parent root = FXMLLoader.load(getClass().getResource("sample.fxml"));
-        primaryStage.setTitle("Hello World");
-        primaryStage.setScene(new Scene(root, 300, 275));
-        primaryStage.show();
-    }
+import lwjgl.test.CubeScene;
+import lwjgl.test.Simulation;
+import lwjgl.test.metrics.Histogram;
 
+import java.util.Map;
 
-    public static void main(String[] args) {
-        launch(args);
-    }*/
+/**
+ * JavaFX viewer for the cube scene, drawn by the software backend off the FX thread.
+ * <p>
+ * Named parameters: {@code --width=} and {@code --height=} of the rendered image (default
+ * 640x480), and {@code --frames=N} to quit after showing N frames and print how late they
+ * were shown, e.g. when running headless under Monocle.
+ */
+public class Main extends Application {
 
-    Stage stage;
-    Scene scene;
+    private Simulation simulation;
+    private FrameRenderer renderer;
+    private Controller controller;
 
-    @Override public void start(Stage stage) {
-        stage.show();
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        Map<String, String> named = getParameters().getNamed();
+        int width = Integer.parseInt(value(named, "width", "640"));
+        int height = Integer.parseInt(value(named, "height", "480"));
+        long frames = Long.parseLong(value(named, "frames", "0"));
 
-        scene = new Scene(new Group(), 840, 680);
-        ObservableList<Node> content = ((Group)scene.getRoot()).getChildren();
+        simulation = new Simulation(new CubeScene(), 60, 5).start();
+        renderer = new FrameRenderer(width, height, simulation);
 
-        content.add(dropShadow());
-        stage.setScene(scene);    }
-    static Node dropShadow() {
-        Group g = new Group();
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("sample.fxml"));
+        Parent root = loader.load();
+        controller = loader.getController();
+        if (frames > 0) {
+            controller.setFrameLimit(frames, new Runnable() {
+                @Override
+                public void run() {
+                    report(controller.getLatency());
+                    Platform.exit();
+                }
+            });
+        }
 
-        DropShadow ds = new DropShadow();
-        ds.setOffsetY(3.0);
-        ds.setOffsetX(3.0);
-        ds.setColor(Color.GRAY);
+        primaryStage.setTitle("Cubes");
+        primaryStage.setScene(new Scene(root));
+        primaryStage.show();
+        root.requestFocus();
 
-        Text t = new Text();
-        t.setEffect(ds);
-        t.setCache(true);
-        t.setX(20.0f);
-        t.setY(70.0f);
-        t.setFill(Color.RED);
-        t.setText("JavaFX drop shadow effect");
-        t.setFont(Font.font("null", FontWeight.BOLD, 32));
+        controller.start(renderer.start(), simulation);
+    }
 
-        DropShadow ds1 = new DropShadow();
-        ds1.setOffsetY(4.0f);
-        ds1.setOffsetX(4.0f);
-        ds1.setColor(Color.CORAL);
+    @Override
+    public void stop() throws Exception {
+        if (controller != null)
+            controller.stop();
+        if (renderer != null)
+            renderer.stop();
+        if (simulation != null)
+            simulation.stop();
+    }
 
-        Circle c = new Circle();
-        c.setEffect(ds1);
-        c.setCenterX(50.0f);
-        c.setCenterY(325.0f);
-        c.setRadius(30.0f);
-        c.setFill(Color.RED);
-        c.setCache(true);
+    private void report(Histogram latency) {
+        System.out.printf("%d frames shown, %d rendered, %d dropped; latency ms: mean %.2f, p50 %.2f, p99 %.2f, max %.2f%n",
+                controller.getShown(), renderer.getRendered(), renderer.getDropped(), latency.getMean() / 1e6,
+                latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, latency.getMax() / 1e6);
+    }
 
-        g.getChildren().add(t);
-        g.getChildren().add(c);
-        return g;
+    private static String value(Map<String, String> named, String name, String defaultValue) {
+        String value = named.get(name);
+        return value != null ? value : defaultValue;
     }
+
     public static void main(String[] args) {
-        Application.launch(args);
+        launch(args);
     }
 }